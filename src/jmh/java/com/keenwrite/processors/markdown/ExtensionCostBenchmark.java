@@ -0,0 +1,102 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.processors.DefinitionProcessor;
+import com.keenwrite.processors.Processor;
+import com.keenwrite.processors.ProcessorContext;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.misc.Extension;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static com.keenwrite.ExportFormat.HTML_TEX_SVG;
+import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.bind;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the cost of each Markdown extension by parsing and rendering a
+ * manuscript with every extension except the one being measured. The
+ * difference between the throughput with all extensions ({@code none}
+ * excluded) and without a given extension is that extension's cost,
+ * including its interactions with the other extensions.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( SECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( value = 1, jvmArgsAppend = {"-Xmx4g"} )
+public class ExtensionCostBenchmark {
+  private static final String NONE = "none";
+
+  /**
+   * Simple class name of the extension to leave out.
+   */
+  @Param( {
+    NONE,
+    "DefinitionExtension",
+    "StrikethroughSubscriptExtension",
+    "SuperscriptExtension",
+    "TablesExtension",
+    "FencedDivExtension",
+    "ImageLinkExtension",
+    "TeXExtension",
+    "FencedBlockExtension",
+    "CaretExtension"
+  } )
+  public String excluded;
+
+  @Param( {"10000"} )
+  public int words;
+
+  private Manuscript mManuscript;
+  private String mText;
+  private ProcessorContext mContext;
+  private Processor<String> mProcessor;
+  private Parser mParser;
+  private HtmlRenderer mRenderer;
+
+  @Setup( Level.Trial )
+  public void setup() throws IOException {
+    mManuscript = new Manuscript( words );
+
+    final var context = mManuscript.createContext( HTML_TEX_SVG );
+    final var extensions = new ArrayList<Extension>();
+    var found = NONE.equals( excluded );
+
+    for( final var extension : MarkdownProcessor.create( context )
+                                                .getExtensions() ) {
+      if( extension.getClass().getSimpleName().equals( excluded ) ) {
+        found = true;
+      }
+      else {
+        extensions.add( extension );
+      }
+    }
+
+    if( !found ) {
+      throw new IllegalArgumentException( "Unknown extension: " + excluded );
+    }
+
+    mText = mManuscript.getText();
+    mContext = context;
+    mProcessor = new DefinitionProcessor( IDENTITY, context );
+    mParser = Parser.builder().extensions( extensions ).build();
+    mRenderer = HtmlRenderer.builder().extensions( extensions ).build();
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown() throws IOException {
+    mManuscript.delete();
+  }
+
+  @Benchmark
+  public String parseAndRender() {
+    final var document = mParser.parse( mText );
+    return mRenderer.render( bind( document, mContext, mProcessor ) );
+  }
+}
@@ -0,0 +1,176 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.Caret;
+import com.keenwrite.ExportFormat;
+import com.keenwrite.preferences.Workspace;
+import com.keenwrite.processors.ProcessorContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.nio.file.Files.*;
+import static java.util.Comparator.reverseOrder;
+
+/**
+ * Responsible for generating a reproducible Markdown document of a given
+ * length that exercises the features found in typical manuscripts: headings,
+ * paragraphs with emphasis, variables, TeX, tables, and images.
+ */
+final class Manuscript {
+  private static final String[] WORDS = {
+    "the", "of", "and", "a", "to", "in", "is", "you", "that", "it", "he",
+    "was", "for", "on", "are", "as", "with", "his", "they", "at", "be",
+    "this", "have", "from", "or", "one", "had", "by", "word", "but", "not",
+    "what", "all", "were", "we", "when", "your", "can", "said", "there",
+    "use", "an", "each", "which", "she", "do", "how", "their", "if", "will",
+    "orbit", "lattice", "harbour", "quantum", "meridian", "cathedral",
+  };
+
+  private static final String FIGURE = "images/figure.png";
+
+  private static final Map<String, String> DEFINITIONS = Map.of(
+    "{{book.title}}", "The Benchmark",
+    "{{book.author}}", "A. Writer",
+    "{{character.protagonist.name}}", "Alex",
+    "{{character.antagonist.name}}", "Morgan",
+    "{{location.city}}", "Vancouver"
+  );
+
+  private static final int WORDS_PER_PARAGRAPH = 100;
+
+  private final Path mDirectory;
+  private final Path mDocument;
+  private final String mText;
+  private final Workspace mWorkspace;
+
+  /**
+   * Writes a manuscript having the given number of words, and an image that
+   * it refers to, into a new temporary directory. Call {@link #delete()}
+   * when finished.
+   *
+   * @param words The approximate number of words to generate.
+   * @throws IOException Could not write the document or image.
+   */
+  Manuscript( final int words ) throws IOException {
+    mDirectory = createTempDirectory( "keenwrite-jmh" );
+    mDocument = mDirectory.resolve( "manuscript.md" );
+    mText = generate( words );
+
+    final var image = mDirectory.resolve( FIGURE );
+    createDirectories( image.getParent() );
+    ImageIO.write( new BufferedImage( 8, 8, TYPE_INT_RGB ), "png",
+                   image.toFile() );
+    writeString( mDocument, mText );
+
+    // Use defaults so that results do not depend on the user's settings.
+    mWorkspace = new Workspace(
+      mDirectory.resolve( "workspace.xml" ).toString() );
+  }
+
+  String getText() {
+    return mText;
+  }
+
+  /**
+   * Deletes the temporary directory, including the manuscript, the image,
+   * the workspace, and any files exported into it.
+   *
+   * @throws IOException Could not delete a file or directory.
+   */
+  void delete() throws IOException {
+    try( final var paths = walk( mDirectory ) ) {
+      // Delete files before the directories that contain them.
+      for( final var path : paths.sorted( reverseOrder() ).toList() ) {
+        deleteIfExists( path );
+      }
+    }
+  }
+
+  /**
+   * Creates a context for the manuscript without a preview pane or an
+   * editor.
+   *
+   * @param format The export format to configure.
+   * @return A context for {@link com.keenwrite.processors.ProcessorFactory}.
+   */
+  ProcessorContext createContext( final ExportFormat format ) {
+    final var exportPath = mDirectory.resolve(
+      format.toExportFilename( mDocument ).getName() );
+
+    return new ProcessorContext(
+      null,
+      new HashMap<>( DEFINITIONS ),
+      mDocument,
+      exportPath,
+      format,
+      mWorkspace,
+      Caret.builder().build()
+    );
+  }
+
+  private static String generate( final int words ) {
+    final var random = new Random( words );
+    final var variables = DEFINITIONS.keySet().toArray( new String[ 0 ] );
+    final var text = new StringBuilder( words * 8 );
+    var count = 0;
+    var paragraph = 0;
+
+    text.append( "# {{book.title}}\n\n" );
+
+    while( count < words ) {
+      if( paragraph % 10 == 0 ) {
+        text.append( "## Chapter " ).append( paragraph / 10 + 1 )
+            .append( "\n\n" );
+      }
+
+      for( int i = 0; i < WORDS_PER_PARAGRAPH && count < words; i++ ) {
+        final var word = WORDS[ random.nextInt( WORDS.length ) ];
+
+        if( i % 25 == 24 ) {
+          text.append( variables[ random.nextInt( variables.length ) ] );
+        }
+        else if( i % 17 == 16 ) {
+          text.append( '*' ).append( word ).append( '*' );
+        }
+        else {
+          text.append( word );
+        }
+
+        text.append( i % 12 == 11 ? ". " : " " );
+        count++;
+      }
+
+      if( paragraph % 3 == 0 ) {
+        text.append( "Hence $E = mc^2$ and $\\sum_{i=1}^n x_i$." );
+      }
+
+      text.append( "\n\n" );
+
+      if( paragraph % 15 == 7 ) {
+        text.append( "![Figure " ).append( paragraph ).append( "](" )
+            .append( FIGURE ).append( ")\n\n" );
+      }
+
+      if( paragraph % 20 == 13 ) {
+        text.append( """
+          | Name | Role | City |
+          |------|------|------|
+          | {{character.protagonist.name}} | hero | {{location.city}} |
+          | {{character.antagonist.name}} | rival | ~~unknown~~ |
+
+          """ );
+      }
+
+      paragraph++;
+    }
+
+    return text.toString();
+  }
+}
@@ -0,0 +1,60 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.ExportFormat;
+import com.keenwrite.processors.Processor;
+import com.keenwrite.processors.ProcessorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+import static com.keenwrite.processors.ProcessorFactory.createProcessors;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the throughput of the complete processor chain that the
+ * {@link ProcessorFactory} creates for a given export format. Run using
+ * {@code gradle jmh}, which also reports allocation rates.
+ * <p>
+ * A new chain is created before each invocation so that the results from
+ * previous invocations (e.g., the block cache used by the preview) cannot
+ * be reused. The preview chain ends without a preview pane, so
+ * {@link ExportFormat#NONE} measures everything up to displaying the HTML.
+ * </p>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( SECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( value = 1, jvmArgsAppend = {"-Xmx4g"} )
+public class ProcessorChainBenchmark {
+  @Param( {"NONE", "HTML_TEX_SVG", "XHTML_TEX"} )
+  public ExportFormat format;
+
+  @Param( {"1000", "10000", "100000", "500000"} )
+  public int words;
+
+  private Manuscript mManuscript;
+  private Processor<String> mChain;
+
+  @Setup( Level.Trial )
+  public void setupTrial() throws IOException {
+    mManuscript = new Manuscript( words );
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDownTrial() throws IOException {
+    mManuscript.delete();
+  }
+
+  @Setup( Level.Invocation )
+  public void setupInvocation() {
+    mChain = createProcessors( mManuscript.createContext( format ) );
+  }
+
+  @Benchmark
+  public String process() {
+    return mChain.apply( mManuscript.getText() );
+  }
+}
@@ -0,0 +1,406 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite;
+
+import com.keenwrite.editors.definition.RootTreeItem;
+import com.keenwrite.editors.definition.TreeItemMapper;
+import com.keenwrite.editors.definition.yaml.YamlTreeTransformer;
+import com.keenwrite.events.StatusEvent;
+import com.keenwrite.preferences.Workspace;
+import com.keenwrite.processors.ProcessorContext;
+import com.keenwrite.processors.text.ResolvedMap;
+import com.keenwrite.sigils.YamlSigilOperator;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static com.keenwrite.Bootstrap.APP_TITLE;
+import static com.keenwrite.Bootstrap.APP_VERSION;
+import static com.keenwrite.ExportFormat.NONE;
+import static com.keenwrite.Messages.get;
+import static com.keenwrite.PermissiveCertificate.installTrustManager;
+import static com.keenwrite.constants.Constants.STATUS_BAR_OK;
+import static com.keenwrite.editors.definition.MapInterpolator.interpolate;
+import static com.keenwrite.events.Bus.register;
+import static com.keenwrite.preferences.WorkspaceKeys.KEY_DEF_DELIM_BEGAN;
+import static com.keenwrite.preferences.WorkspaceKeys.KEY_DEF_DELIM_ENDED;
+import static com.keenwrite.processors.ProcessorFactory.createProcessors;
+import static com.keenwrite.processors.metrics.ProcessorMetrics.METRICS;
+import static java.lang.Runtime.getRuntime;
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Files.*;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Exports documents from the command-line without starting the user
+ * interface. All documents are rendered concurrently using the same
+ * resolved definitions and user preferences, which allows the caches that
+ * are shared between processors (e.g., rendered math) to be reused across
+ * files. For example:
+ *
+ * <pre>
+ * java -cp keenwrite.jar com.keenwrite.BatchRenderer \
+ *   --definitions variables.yaml --format HTML_TEX_SVG \
+ *   --workers 4 --output build "chapters/**.md"
+ * </pre>
+ * <p>
+ * Each input path is matched as a glob pattern (relative to the current
+ * directory) unless it names an existing file. The time taken to render
+ * each file is written to standard output; problems are written to
+ * standard error. The per-stage timings of the processors are written as
+ * JSON when the {@code --metrics} option is given.
+ * </p>
+ */
+public final class BatchRenderer {
+  private static final String ARG_DEFINITIONS = "--definitions";
+  private static final String ARG_FORMAT = "--format";
+  private static final String ARG_WORKERS = "--workers";
+  private static final String ARG_OUTPUT = "--output";
+  private static final String ARG_METRICS = "--metrics";
+
+  private final ExportFormat mFormat;
+  private final Path mOutput;
+  private final Workspace mWorkspace;
+  private final ResolvedMap mDefinitions;
+  private final String mOk = get( STATUS_BAR_OK, "OK" );
+
+  /**
+   * Creates a renderer that exports files into the given directory.
+   *
+   * @param format      The type of file to export, must not be
+   *                    {@link ExportFormat#NONE}.
+   * @param output      The directory to write exported files into.
+   * @param workspace   User preferences (e.g., typesetting options).
+   * @param definitions Fully interpolated definitions, shared read-only by
+   *                    all documents, along with their compiled automaton.
+   */
+  public BatchRenderer(
+    final ExportFormat format,
+    final Path output,
+    final Workspace workspace,
+    final Map<String, String> definitions ) {
+    assert format != null && format != NONE;
+    assert output != null;
+    assert workspace != null;
+    assert definitions != null;
+
+    mFormat = format;
+    mOutput = output;
+    mWorkspace = workspace;
+    mDefinitions = new ResolvedMap( definitions, workspace.toTokens(
+      KEY_DEF_DELIM_BEGAN, KEY_DEF_DELIM_ENDED ) );
+  }
+
+  /**
+   * Parses the command-line arguments and exports all matching files.
+   *
+   * @param args Command-line arguments.
+   */
+  public static void main( final String[] args ) {
+    try {
+      System.exit( run( args ) ? 0 : 1 );
+    } catch( final IllegalArgumentException ex ) {
+      err( ex.getMessage() );
+      usage();
+      System.exit( 2 );
+    } catch( final Exception ex ) {
+      err( ex.toString() );
+      System.exit( 1 );
+    }
+  }
+
+  private static boolean run( final String[] args ) throws Exception {
+    Path definitions = null;
+    ExportFormat format = null;
+    Path output = Path.of( "." );
+    Path metrics = null;
+    int workers = getRuntime().availableProcessors();
+    final var patterns = new ArrayList<String>();
+
+    for( int i = 0; i < args.length; i++ ) {
+      switch( args[ i ] ) {
+        case ARG_DEFINITIONS -> definitions = Path.of( value( args, ++i ) );
+        case ARG_FORMAT -> format = toFormat( value( args, ++i ) );
+        case ARG_OUTPUT -> output = Path.of( value( args, ++i ) );
+        case ARG_WORKERS -> workers = toWorkers( value( args, ++i ) );
+        case ARG_METRICS -> metrics = Path.of( value( args, ++i ) );
+        default -> patterns.add( args[ i ] );
+      }
+    }
+
+    if( format == null ) {
+      throw new IllegalArgumentException( "Missing " + ARG_FORMAT );
+    }
+
+    if( patterns.isEmpty() ) {
+      throw new IllegalArgumentException( "Missing input files" );
+    }
+
+    installTrustManager();
+    out( format( "%s version %s", APP_TITLE, APP_VERSION ) );
+
+    final var workspace = new Workspace();
+    final var resolved = resolve( definitions, workspace );
+    final var renderer =
+      new BatchRenderer( format, output, workspace, resolved );
+
+    METRICS.setEnabled( metrics != null );
+
+    final var success = renderer.render( find( patterns ), workers );
+
+    if( metrics != null ) {
+      writeString( metrics, METRICS.toJson(), UTF_8 );
+    }
+
+    return success;
+  }
+
+  /**
+   * Renders the given files using a fixed number of threads.
+   *
+   * @param paths   The documents to export.
+   * @param workers The maximum number of documents to render concurrently.
+   * @return {@code true} if every document was exported.
+   * @throws InterruptedException Rendering was interrupted.
+   */
+  public boolean render( final Collection<Path> paths, final int workers )
+    throws InterruptedException {
+    assert paths != null;
+    assert workers > 0;
+
+    register( this );
+
+    final var executor = newFixedThreadPool( workers );
+    final var tasks = new ArrayList<Callable<Long>>( paths.size() );
+    final var began = nanoTime();
+
+    paths.forEach( path -> tasks.add( () -> render( path ) ) );
+
+    var failures = 0;
+    var elapsed = 0L;
+
+    try {
+      for( final Future<Long> result : executor.invokeAll( tasks ) ) {
+        try {
+          elapsed += result.get();
+        } catch( final ExecutionException ex ) {
+          failures++;
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    out( format(
+      "%d file(s), %d failed, %d worker(s): %d ms total, %d ms elapsed",
+      paths.size(), failures, workers,
+      toMillis( elapsed ), toMillis( nanoTime() - began ) ) );
+
+    return failures == 0;
+  }
+
+  /**
+   * Exports a single file, writing the time taken to standard output.
+   *
+   * @param path The document to export.
+   * @return The number of nanoseconds taken to export the document.
+   * @throws Exception The document could not be read, processed, or written.
+   */
+  private long render( final Path path ) throws Exception {
+    final var began = nanoTime();
+
+    try {
+      final var exportPath = toExportPath( path );
+      final var context = new ProcessorContext(
+        null,
+        mDefinitions,
+        path,
+        exportPath,
+        mFormat,
+        mWorkspace,
+        Caret.builder().build()
+      );
+
+      final var text = readString( path, UTF_8 );
+      final var export = createProcessors( context ).apply( text );
+
+      // Processors can export binary files. In such cases, processors
+      // return null to prevent further processing.
+      if( export != null ) {
+        writeString( exportPath, export, UTF_8 );
+      }
+
+      final var elapsed = nanoTime() - began;
+      out( format(
+        "%8d ms  %s -> %s", toMillis( elapsed ), path, exportPath ) );
+
+      return elapsed;
+    } catch( final Exception ex ) {
+      err( format( "%8d ms  %s failed: %s",
+                   toMillis( nanoTime() - began ), path, ex ) );
+      throw ex;
+    }
+  }
+
+  /**
+   * Writes problems reported by the processors to standard error.
+   *
+   * @param event The problem to report.
+   */
+  @Subscribe
+  public void log( final StatusEvent event ) {
+    final var message = event.toString();
+
+    if( !message.isBlank() && !mOk.equals( event.getMessage() ) ) {
+      err( message );
+    }
+  }
+
+  /**
+   * Mirrors the directory structure of files beneath the current directory
+   * into the output directory so that files having the same name in
+   * different directories do not overwrite each other.
+   */
+  private Path toExportPath( final Path path ) throws IOException {
+    final var cwd = Path.of( "" ).toAbsolutePath();
+    final var file = path.toAbsolutePath().normalize();
+    final var name = mFormat.toExportFilename( path ).getName();
+    final var parent = file.getParent();
+    final var dir = parent != null && parent.startsWith( cwd )
+      ? mOutput.resolve( cwd.relativize( parent ) )
+      : mOutput;
+
+    return createDirectories( dir ).resolve( name );
+  }
+
+  /**
+   * Reads the definitions file, then resolves all variable references in the
+   * same way as the user interface.
+   *
+   * @param definitions The YAML file to read, or {@code null} for none.
+   * @param workspace   Provides the variable delimiters.
+   * @return The fully interpolated definitions.
+   * @throws IOException The definitions file could not be read.
+   */
+  private static Map<String, String> resolve(
+    final Path definitions, final Workspace workspace ) throws IOException {
+    final var map = new HashMap<String, String>();
+
+    if( definitions != null ) {
+      final var yaml = readString( definitions, UTF_8 );
+      final var tree = new YamlTreeTransformer().transform( yaml );
+      final var root = new RootTreeItem<>( tree.getValue() );
+
+      root.getChildren().addAll( tree.getChildren() );
+
+      final var tokens = workspace.toTokens(
+        KEY_DEF_DELIM_BEGAN, KEY_DEF_DELIM_ENDED );
+      final var operator = new YamlSigilOperator( tokens );
+
+      new TreeItemMapper().toMap( root ).forEach(
+        ( k, v ) -> map.put( operator.entoken( k ), v ) );
+
+      interpolate( map, tokens );
+    }
+
+    return map;
+  }
+
+  /**
+   * Expands glob patterns into a sorted set of regular files.
+   *
+   * @param patterns File names or glob patterns, relative to the current
+   *                 directory.
+   * @return The files to render, without duplicates.
+   * @throws IOException The file system could not be traversed.
+   */
+  private static Set<Path> find( final List<String> patterns )
+    throws IOException {
+    final var paths = new TreeSet<Path>();
+    final var cwd = Path.of( "" );
+
+    for( final var pattern : patterns ) {
+      final var file = Path.of( pattern );
+
+      if( isRegularFile( file ) ) {
+        paths.add( file );
+      }
+      else {
+        final var matcher = getDefault().getPathMatcher( "glob:" + pattern );
+
+        try( final var files = walk( cwd ) ) {
+          files.filter( p -> isRegularFile( p ) && matcher.matches( p ) )
+               .forEach( paths::add );
+        }
+      }
+    }
+
+    return paths;
+  }
+
+  private static String value( final String[] args, final int i ) {
+    if( i >= args.length ) {
+      throw new IllegalArgumentException(
+        "Missing value for " + args[ i - 1 ] );
+    }
+
+    return args[ i ];
+  }
+
+  private static ExportFormat toFormat( final String name ) {
+    final var format = ExportFormat.valueOf( name.toUpperCase() );
+
+    if( format == NONE ) {
+      throw new IllegalArgumentException( "Cannot export to " + name );
+    }
+
+    return format;
+  }
+
+  private static int toWorkers( final String count ) {
+    final var workers = Integer.parseInt( count );
+
+    if( workers < 1 ) {
+      throw new IllegalArgumentException( ARG_WORKERS + " must be positive" );
+    }
+
+    return workers;
+  }
+
+  private static long toMillis( final long nanos ) {
+    return NANOSECONDS.toMillis( nanos );
+  }
+
+  private static void usage() {
+    final var formats = new StringJoiner( ", " );
+
+    for( final var format : ExportFormat.values() ) {
+      if( format != NONE ) {
+        formats.add( format.name() );
+      }
+    }
+
+    err( format(
+      "Usage: %s %s <format> [%s <file.yaml>] [%s <n>] [%s <dir>] " +
+        "[%s <file.json>] <glob>...",
+      BatchRenderer.class.getName(), ARG_FORMAT, ARG_DEFINITIONS,
+      ARG_WORKERS, ARG_OUTPUT, ARG_METRICS ) );
+    err( "Formats: " + formats );
+  }
+
+  private static void out( final String s ) {
+    System.out.println( s );
+  }
+
+  private static void err( final String s ) {
+    System.err.println( s );
+  }
+}
@@ -5,9 +5,12 @@ import com.keenwrite.util.GenericBuilder;
 import javafx.beans.value.ObservableValue;
 import org.fxmisc.richtext.StyleClassedTextArea;
 import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.reactfx.EventStream;
 import org.reactfx.collection.LiveList;
 
 import java.util.Collection;
+import java.util.Optional;
 
 import static com.keenwrite.constants.Constants.STATUS_BAR_LINE;
 import static com.keenwrite.Messages.get;
@@ -52,6 +55,11 @@ public class Caret {
      */
     private ObservableValue<Integer> mTextLength;
 
+    /**
+     * Changes to the document's text, excluding style changes.
+     */
+    private EventStream<PlainTextChange> mTextChanges;
+
     /**
      * Configures this caret position using properties from the given editor.
      *
@@ -63,6 +71,7 @@ public class Caret {
       mParaOffset = editor.caretColumnProperty();
       mTextOffset = editor.caretPositionProperty();
       mTextLength = editor.lengthProperty();
+      mTextChanges = editor.plainTextChanges();
     }
   }
 
@@ -86,6 +95,17 @@ public class Caret {
     return mMutator.mTextOffset;
   }
 
+  /**
+   * Allows observers to be notified when the text containing the caret
+   * changes, which is used to parse only the edited parts of a document.
+   *
+   * @return The stream of text changes, or empty if this caret was not
+   * configured with an editor.
+   */
+  public Optional<EventStream<PlainTextChange>> textChanges() {
+    return Optional.ofNullable( mMutator.mTextChanges );
+  }
+
   /**
    * Answers whether the caret's offset into the text is between the given
    * offsets.
@@ -152,10 +172,12 @@ public class Caret {
   /**
    * Returns the absolute position of the caret within the entire document.
    *
-   * @return A zero-based index of the caret position.
+   * @return A zero-based index of the caret position, or -1 if this caret
+   * was not configured with an editor (e.g., when exporting headlessly).
    */
   private int getTextOffset() {
-    return mMutator.mTextOffset.getValue();
+    final var offset = mMutator.mTextOffset;
+    return offset == null ? -1 : offset.getValue();
   }
 
   /**
@@ -172,10 +194,12 @@ public class Caret {
   /**
    * Returns the total number of characters in the document being edited.
    *
-   * @return A zero-based count of the total characters in the document.
+   * @return A zero-based count of the total characters in the document, or
+   * 0 if this caret was not configured with an editor.
    */
   private int getTextLength() {
-    return mMutator.mTextLength.getValue();
+    final var length = mMutator.mTextLength;
+    return length == null ? 0 : length.getValue();
   }
 
   /**
@@ -5,6 +5,7 @@ import com.keenwrite.editors.TextDefinition;
 import com.keenwrite.editors.TextEditor;
 import com.keenwrite.editors.TextResource;
 import com.keenwrite.editors.definition.DefinitionEditor;
+import com.keenwrite.editors.definition.MapInterpolator;
 import com.keenwrite.editors.definition.TreeTransformer;
 import com.keenwrite.editors.definition.yaml.YamlTreeTransformer;
 import com.keenwrite.editors.markdown.MarkdownEditor;
@@ -17,7 +18,10 @@ import com.keenwrite.preview.HtmlPreview;
 import com.keenwrite.processors.Processor;
 import com.keenwrite.processors.ProcessorContext;
 import com.keenwrite.processors.ProcessorFactory;
+import com.keenwrite.processors.RenderScheduler;
 import com.keenwrite.processors.markdown.extensions.CaretExtension;
+import com.keenwrite.processors.text.ResolvedMap;
+import com.keenwrite.search.VariableUsageIndex;
 import com.keenwrite.service.events.Notifier;
 import com.keenwrite.sigils.RSigilOperator;
 import com.keenwrite.sigils.SigilOperator;
@@ -25,13 +29,13 @@ import com.keenwrite.sigils.Tokens;
 import com.keenwrite.sigils.YamlSigilOperator;
 import com.keenwrite.ui.explorer.FilePickerFactory;
 import com.keenwrite.ui.heuristics.DocumentStatistics;
+import com.keenwrite.ui.heuristics.ProcessorStatistics;
 import com.keenwrite.ui.outline.DocumentOutline;
 import com.panemu.tiwulfx.control.dock.DetachableTab;
 import com.panemu.tiwulfx.control.dock.DetachableTabPane;
 import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.ListChangeListener;
-import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
@@ -49,7 +53,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -70,7 +73,6 @@ import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
 import static com.keenwrite.processors.ProcessorFactory.createProcessors;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
-import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.groupingBy;
@@ -90,8 +92,6 @@ import static org.fxmisc.wellbehaved.event.EventPattern.keyPressed;
  * text editors, and preview pane along with any corresponding controllers.
  */
 public final class MainPane extends SplitPane {
-  private static final ExecutorService sExecutor = newFixedThreadPool( 1 );
-
   private final ScheduledExecutorService mSaver = newScheduledThreadPool( 1 );
   private final AtomicReference<ScheduledFuture<?>> mSaveTask =
     new AtomicReference<>();
@@ -114,6 +114,12 @@ public final class MainPane extends SplitPane {
 
   private final Workspace mWorkspace;
 
+  /**
+   * Coalesces requests to update the preview so that only the most recent
+   * request for any given editor is processed.
+   */
+  private final RenderScheduler mScheduler;
+
   /**
    * Groups similar file type tabs together.
    */
@@ -122,8 +128,20 @@ public final class MainPane extends SplitPane {
   /**
    * Stores definition names and values.
    */
-  private final Map<String, String> mResolvedMap =
-    new HashMap<>( MAP_SIZE_DEFAULT );
+  private final ResolvedMap mResolvedMap = new ResolvedMap();
+
+  /**
+   * Retains the dependencies between definitions so that editing a
+   * definition only resolves the definitions that refer to it.
+   */
+  private MapInterpolator mInterpolator;
+
+  /**
+   * Records the definitions referenced by each document, which avoids
+   * re-rendering documents that do not use edited definitions.
+   */
+  private final VariableUsageIndex mUsages =
+    new VariableUsageIndex( this::createDefinitionTokens );
 
   /**
    * Renders the actively selected plain text editor tab.
@@ -164,14 +182,23 @@ public final class MainPane extends SplitPane {
   private final EventHandler<TreeModificationEvent<Event>> mTreeHandler =
     event -> {
       final var editor = mActiveDefinitionEditor.get();
+      final var changes = resolve( editor );
+      final var active = getActiveTextEditor();
+
+      if( isAffected( active, changes ) ) {
+        process( active );
+      }
 
-      resolve( editor );
-      process( getActiveTextEditor() );
-      save( editor );
+      editor.saveLater();
     };
 
   private final DocumentStatistics mStatistics;
 
+  /**
+   * Shows the time taken by each processor, created on demand.
+   */
+  private ProcessorStatistics mMetrics;
+
   /**
    * Adds all content panels to the main user interface. This will load the
    * configuration settings from the workspace to reproduce the settings from
@@ -179,6 +206,8 @@ public final class MainPane extends SplitPane {
    */
   public MainPane( final Workspace workspace ) {
     mWorkspace = workspace;
+    mScheduler = new RenderScheduler(
+      workspace.integerProperty( KEY_EDITOR_DEBOUNCE )::get );
     mPreview = new HtmlPreview( workspace );
     mStatistics = new DocumentStatistics( workspace );
     mActiveTextEditor.set( new MarkdownEditor( workspace ) );
@@ -249,6 +278,34 @@ public final class MainPane extends SplitPane {
     runLater( () -> open( eventFile ) );
   }
 
+  /**
+   * Reports the documents that use a definition, typically requested from
+   * the definition editor.
+   *
+   * @param event Contains the definition key to find.
+   */
+  @Subscribe
+  public void handle( final FindUsagesEvent event ) {
+    final var operator = new YamlSigilOperator( createDefinitionTokens() );
+    final var key = event.getKey();
+    final var usages = mUsages.getUsages( operator.entoken( key ) );
+
+    if( usages.isEmpty() ) {
+      clue( "Main.status.definition.usages.none", key );
+    }
+    else {
+      final var files = usages.stream()
+                              .map( VariableUsageIndex.Usage::getPath )
+                              .distinct()
+                              .count();
+      final var lines = usages.stream()
+                              .map( VariableUsageIndex.Usage::toString )
+                              .collect( Collectors.joining( ", " ) );
+
+      clue( "Main.status.definition.usages", key, usages.size(), files, lines );
+    }
+  }
+
   @Subscribe
   public void handle( final CaretNavigationEvent event ) {
     runLater( () -> {
@@ -483,8 +540,14 @@ public final class MainPane extends SplitPane {
 
         // The definition panes auto-save, so being specific here prevents
         // closing the definitions in the situation where the user wants to
-        // continue editing (i.e., possibly save unsaved work).
+        // continue editing (i.e., possibly save unsaved work). Definitions
+        // still waiting for a background write are written now.
         if( !(resource instanceof TextEditor) ) {
+          if( resource instanceof final TextDefinition definition &&
+            definition.isModified() ) {
+            save( definition );
+          }
+
           continue;
         }
 
@@ -605,6 +668,18 @@ public final class MainPane extends SplitPane {
     viewTab( mStatistics, APP_DOCUMENT_STATISTICS, "Pane.statistics.title" );
   }
 
+  /**
+   * Adds the processor timings tab beside the document statistics. The
+   * processors are only measured after this view is first opened.
+   */
+  public void viewMetrics() {
+    if( mMetrics == null ) {
+      mMetrics = new ProcessorStatistics( mScheduler );
+    }
+
+    viewTab( mMetrics, APP_DOCUMENT_STATISTICS, "Pane.metrics.title" );
+  }
+
   public void viewFiles() {
     try {
       final var factory = new FilePickerFactory( mWorkspace );
@@ -748,11 +823,14 @@ public final class MainPane extends SplitPane {
 
   /**
    * Uses the given {@link TextDefinition} instance to update the
-   * {@link #mResolvedMap}.
+   * {@link #mResolvedMap}. Only the definitions affected by the most recent
+   * edits are resolved and merged into the map.
    *
    * @param editor A non-null, possibly empty definition editor.
+   * @return The resolved definitions that changed, or {@code null} if all
+   * definitions were resolved again.
    */
-  private void resolve( final TextDefinition editor ) {
+  private Map<String, String> resolve( final TextDefinition editor ) {
     assert editor != null;
 
     final var tokens = createDefinitionTokens();
@@ -761,8 +839,51 @@ public final class MainPane extends SplitPane {
 
     editor.toMap().forEach( ( k, v ) -> map.put( operator.entoken( k ), v ) );
 
-    mResolvedMap.clear();
-    mResolvedMap.putAll( editor.interpolate( map, tokens ) );
+    if( mInterpolator == null || !mInterpolator.hasTokens( tokens ) ) {
+      mInterpolator = new MapInterpolator( tokens );
+      mInterpolator.update( map );
+      mResolvedMap.update( mInterpolator.getResolved(), tokens );
+
+      return null;
+    }
+
+    final var changes = mInterpolator.update( map );
+    mResolvedMap.merge( changes, tokens );
+
+    return changes;
+  }
+
+  /**
+   * Answers whether the given editor's preview could change as a result of
+   * the given changes to the definitions. The editor's text is indexed first
+   * because the user may have typed references that have not been parsed.
+   * R Markdown documents are always affected because R statements may read
+   * any definition.
+   *
+   * @param editor  The editor whose preview may need updating.
+   * @param changes The definitions that changed, or {@code null} if unknown.
+   * @return {@code false} if the editor does not refer to any changed
+   * definition.
+   */
+  private boolean isAffected(
+    final TextEditor editor, final Map<String, String> changes ) {
+    if( changes == null ) {
+      return true;
+    }
+
+    if( changes.isEmpty() ) {
+      return false;
+    }
+
+    final var path = editor.getPath();
+
+    if( path == null || editor.getMediaType() == TEXT_R_MARKDOWN ) {
+      return true;
+    }
+
+    mUsages.update( path, editor.getText() );
+
+    return mUsages.references( path, changes.keySet() );
   }
 
   /**
@@ -775,28 +896,14 @@ public final class MainPane extends SplitPane {
   private void process( final TextEditor editor ) {
     // Ensure processing does not run on the JavaFX thread, which frees the
     // text editor immediately for caret movement. The preview will have a
-    // slight delay when catching up to the caret position.
-    final var task = new Task<Void>() {
-      @Override
-      public Void call() {
-        try {
-          final var p = mProcessors.getOrDefault( editor, IDENTITY );
-          p.apply( editor == null ? "" : editor.getText() );
-        } catch( final Exception ex ) {
-          clue( ex );
-        }
+    // slight delay when catching up to the caret position. Requests made
+    // while a previous request is waiting replace the waiting request.
+    mScheduler.schedule( editor, () -> {
+      final var p = mProcessors.getOrDefault( editor, IDENTITY );
+      p.apply( editor == null ? "" : editor.getText() );
 
-        return null;
-      }
-    };
-
-    task.setOnSucceeded(
-      e -> invokeLater( () -> mPreview.scrollTo( CARET_ID ) )
-    );
-
-    // Prevents multiple process requests from executing simultaneously (due
-    // to having a restricted queue size).
-    sExecutor.execute( task );
+      invokeLater( () -> mPreview.scrollTo( CARET_ID ) );
+    } );
   }
 
   /**
@@ -986,6 +1093,8 @@ public final class MainPane extends SplitPane {
     final var caret = editor.getCaret();
     final var context = createProcessorContext( path, caret );
 
+    mUsages.scan( path.toAbsolutePath().getParent() );
+
     mProcessors.computeIfAbsent( editor, p -> createProcessors( context ) );
 
     editor.addDirtyListener( ( c, o, n ) -> {
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.function.Consumer;
 
 import static com.keenwrite.events.StatusEvent.clue;
+import static java.lang.ThreadLocal.withInitial;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.xml.transform.OutputKeys.*;
 import static javax.xml.xpath.XPathConstants.NODESET;
@@ -37,15 +38,26 @@ public class DocumentParser {
     "http://apache.org/xml/features/nonvalidating/load-external-dtd";
 
   /**
-   * Caches {@link XPathExpression}s to avoid re-compiling.
+   * Caches {@link XPathExpression}s to avoid re-compiling. Expressions are not
+   * thread-safe, so each thread has its own cache.
    */
-  private static final Map<String, XPathExpression> sXpaths = new HashMap<>();
+  private static final ThreadLocal<Map<String, XPathExpression>> sXpaths =
+    withInitial( HashMap::new );
 
   private static final DocumentBuilderFactory sDocumentFactory;
-  private static DocumentBuilder sDocumentBuilder;
   public static DOMImplementation sDomImplementation;
-  public static Transformer sTransformer;
-  private static final XPath sXpath = XPathFactory.newInstance().newXPath();
+
+  /*
+   * Parsers, transformers, and XPath instances are not thread-safe; documents
+   * may be exported concurrently (e.g., by the batch renderer), so every
+   * thread creates its own instances.
+   */
+  private static final ThreadLocal<DocumentBuilder> sDocumentBuilder =
+    withInitial( DocumentParser::createDocumentBuilder );
+  private static final ThreadLocal<Transformer> sTransformer =
+    withInitial( DocumentParser::createTransformer );
+  private static final ThreadLocal<XPath> sXpath =
+    withInitial( () -> XPathFactory.newInstance().newXPath() );
 
   static {
     sDocumentFactory = DocumentBuilderFactory.newInstance();
@@ -56,17 +68,10 @@ public class DocumentParser {
     sDocumentFactory.setIgnoringComments( true );
     sDocumentFactory.setIgnoringElementContentWhitespace( true );
 
-    try {
-      sDocumentBuilder = sDocumentFactory.newDocumentBuilder();
-      sDomImplementation = sDocumentBuilder.getDOMImplementation();
-      sTransformer = TransformerFactory.newInstance().newTransformer();
-
-      sTransformer.setOutputProperty( OMIT_XML_DECLARATION, "yes" );
-      sTransformer.setOutputProperty( METHOD, "xml" );
-      sTransformer.setOutputProperty( INDENT, "no" );
-      sTransformer.setOutputProperty( ENCODING, UTF_8.toString() );
-    } catch( final Exception ex ) {
-      clue( ex );
+    final var builder = sDocumentBuilder.get();
+
+    if( builder != null ) {
+      sDomImplementation = builder.getDOMImplementation();
     }
   }
 
@@ -77,7 +82,7 @@ public class DocumentParser {
   private DocumentParser() {}
 
   public static Document newDocument() {
-    return sDocumentBuilder.newDocument();
+    return sDocumentBuilder.get().newDocument();
   }
 
   /**
@@ -95,17 +100,17 @@ public class DocumentParser {
       input.setEncoding( UTF_8.toString() );
       input.setCharacterStream( reader );
 
-      return sDocumentBuilder.parse( input );
+      return sDocumentBuilder.get().parse( input );
     } catch( final Exception ex ) {
       clue( ex );
 
-      return sDocumentBuilder.newDocument();
+      return sDocumentBuilder.get().newDocument();
     }
   }
 
   public static Document parse( final InputStream doc )
     throws IOException, SAXException {
-    return sDocumentBuilder.parse( doc );
+    return sDocumentBuilder.get().parse( doc );
   }
 
   /**
@@ -152,7 +157,7 @@ public class DocumentParser {
       final var domSource = new DOMSource( xhtml );
       final var result = new StreamResult( writer );
 
-      sTransformer.transform( domSource, result );
+      sTransformer.get().transform( domSource, result );
 
       return writer.toString();
     } catch( final Exception ex ) {
@@ -164,7 +169,7 @@ public class DocumentParser {
   public static String transform( final Element root )
     throws IOException, TransformerException {
     try( final var writer = new StringWriter() ) {
-      sTransformer.transform(
+      sTransformer.get().transform(
         new DOMSource( root ), new StreamResult( writer )
       );
 
@@ -183,8 +188,10 @@ public class DocumentParser {
     throws Exception {
     final var file = path.toFile();
 
-    sTransformer.transform(
-      new DOMSource( sDocumentBuilder.parse( file ) ), new StreamResult( file )
+    final var document = sDocumentBuilder.get().parse( file );
+
+    sTransformer.get().transform(
+      new DOMSource( document ), new StreamResult( file )
     );
   }
 
@@ -200,10 +207,35 @@ public class DocumentParser {
       "<html><head><title> </title></head><body>" + html + "</body></html>";
   }
 
+  private static DocumentBuilder createDocumentBuilder() {
+    try {
+      return sDocumentFactory.newDocumentBuilder();
+    } catch( final Exception ex ) {
+      clue( ex );
+      return null;
+    }
+  }
+
+  private static Transformer createTransformer() {
+    try {
+      final var transformer = TransformerFactory.newInstance().newTransformer();
+
+      transformer.setOutputProperty( OMIT_XML_DECLARATION, "yes" );
+      transformer.setOutputProperty( METHOD, "xml" );
+      transformer.setOutputProperty( INDENT, "no" );
+      transformer.setOutputProperty( ENCODING, UTF_8.toString() );
+
+      return transformer;
+    } catch( final Exception ex ) {
+      clue( ex );
+      return null;
+    }
+  }
+
   private static XPathExpression lookupXPathExpression( final String xpath ) {
-    return sXpaths.computeIfAbsent( xpath, k -> {
+    return sXpaths.get().computeIfAbsent( xpath, k -> {
       try {
-        return sXpath.compile( xpath );
+        return sXpath.get().compile( xpath );
       } catch( final XPathExpressionException ex ) {
         clue( ex );
         return null;
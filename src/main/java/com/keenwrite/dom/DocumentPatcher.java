@@ -0,0 +1,149 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.dom;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.w3c.dom.Node.ELEMENT_NODE;
+
+/**
+ * Responsible for updating a live W3C DOM to match a newly rendered DOM by
+ * replacing only the top-level blocks of the body that differ. Editing a
+ * long document typically changes a single paragraph (plus the element
+ * that carries the caret identifier), so patching the live document leaves
+ * most of its elements, and any state the renderer associates with them,
+ * intact.
+ */
+public final class DocumentPatcher {
+  /**
+   * Indicates that the documents differ outside of the body's children.
+   */
+  public static final int PATCH_FAILED = -1;
+
+  private static final String HTML_HEAD = "head";
+  private static final String HTML_BODY = "body";
+
+  private DocumentPatcher() {}
+
+  /**
+   * Makes the children of the live document's body equal to the children of
+   * the given document's body. Nodes are moved from {@code next} into
+   * {@code live}, so {@code next} must not be used afterwards.
+   *
+   * @param live    The document being displayed, updated in place.
+   * @param next    The document to display.
+   * @param removed Called for every element removed from the live document,
+   *                before it is removed, so that callers can release any
+   *                references to it.
+   * @return The number of top-level nodes replaced, inserted, or removed,
+   * zero if the documents are equal, or {@link #PATCH_FAILED} if the heads
+   * or body attributes differ (the caller must replace the document).
+   */
+  public static int patch(
+    final Document live,
+    final Document next,
+    final Consumer<Element> removed ) {
+    assert live != null;
+    assert next != null;
+    assert removed != null;
+
+    final var liveHead = find( live, HTML_HEAD );
+    final var nextHead = find( next, HTML_HEAD );
+    final var liveBody = find( live, HTML_BODY );
+    final var nextBody = find( next, HTML_BODY );
+
+    if( liveBody == null || nextBody == null ||
+      !isEqual( liveHead, nextHead ) ||
+      !isEqual( liveBody.cloneNode( false ), nextBody.cloneNode( false ) ) ) {
+      return PATCH_FAILED;
+    }
+
+    final var a = children( liveBody );
+    final var b = children( nextBody );
+    final var aLen = a.size();
+    final var bLen = b.size();
+    final var min = Math.min( aLen, bLen );
+
+    var prefix = 0;
+    var suffix = 0;
+
+    while( prefix < min && a.get( prefix ).isEqualNode( b.get( prefix ) ) ) {
+      prefix++;
+    }
+
+    while( suffix < min - prefix &&
+      a.get( aLen - 1 - suffix ).isEqualNode( b.get( bLen - 1 - suffix ) ) ) {
+      suffix++;
+    }
+
+    final var aEnd = aLen - suffix;
+    final var bEnd = bLen - suffix;
+    var changed = 0;
+
+    if( aLen == bLen ) {
+      // Same number of blocks (e.g., an edit and a caret move in separate
+      // paragraphs): replace each differing block individually.
+      for( int i = prefix; i < aEnd; i++ ) {
+        final var oldNode = a.get( i );
+        final var newNode = b.get( i );
+
+        if( !oldNode.isEqualNode( newNode ) ) {
+          release( oldNode, removed );
+          liveBody.replaceChild( live.adoptNode( newNode ), oldNode );
+          changed++;
+        }
+      }
+    }
+    else {
+      // Blocks were added or removed: replace the differing range.
+      final var anchor = aEnd < aLen ? a.get( aEnd ) : null;
+
+      for( int i = prefix; i < aEnd; i++ ) {
+        final var oldNode = a.get( i );
+        release( oldNode, removed );
+        liveBody.removeChild( oldNode );
+        changed++;
+      }
+
+      for( int i = prefix; i < bEnd; i++ ) {
+        liveBody.insertBefore( live.adoptNode( b.get( i ) ), anchor );
+        changed++;
+      }
+    }
+
+    return changed;
+  }
+
+  private static void release(
+    final Node node, final Consumer<Element> removed ) {
+    if( node.getNodeType() == ELEMENT_NODE ) {
+      removed.accept( (Element) node );
+    }
+  }
+
+  private static boolean isEqual( final Node a, final Node b ) {
+    return a == null ? b == null : a.isEqualNode( b );
+  }
+
+  private static List<Node> children( final Node parent ) {
+    final var nodes = parent.getChildNodes();
+    final var count = nodes.getLength();
+    final var list = new ArrayList<Node>( count );
+
+    for( int i = 0; i < count; i++ ) {
+      list.add( nodes.item( i ) );
+    }
+
+    return list;
+  }
+
+  private static Element find( final Document document, final String name ) {
+    final var nodes = document.getElementsByTagName( name );
+    return nodes.getLength() > 0 ? (Element) nodes.item( 0 ) : null;
+  }
+}
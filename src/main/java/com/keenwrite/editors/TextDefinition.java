@@ -31,6 +31,14 @@ public interface TextDefinition extends TextResource {
    */
   Map<String, String> interpolate( Map<String, String> map, Tokens tokens );
 
+  /**
+   * Requests that the definitions be saved soon, without waiting for the
+   * write to complete. By default, this saves immediately.
+   */
+  default void saveLater() {
+    save();
+  }
+
   /**
    * Requests that the visual representation be expanded to the given
    * node.
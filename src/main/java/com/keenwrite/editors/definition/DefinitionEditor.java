@@ -16,6 +16,7 @@ import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.Node;
 import javafx.scene.control.*;
+import javafx.scene.control.TreeItem.TreeModificationEvent;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
@@ -23,16 +24,14 @@ import javafx.scene.layout.HBox;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import static com.keenwrite.constants.Constants.*;
 import static com.keenwrite.Messages.get;
+import static com.keenwrite.events.FindUsagesEvent.fireFindUsagesEvent;
 import static com.keenwrite.events.StatusEvent.clue;
 import static com.keenwrite.events.TextDefinitionFocusEvent.fireTextDefinitionFocus;
 import static com.keenwrite.ui.fonts.IconFactory.createGraphic;
-import static java.lang.String.format;
-import static java.util.regex.Pattern.compile;
-import static java.util.regex.Pattern.quote;
+import static javafx.application.Platform.runLater;
 import static javafx.geometry.Pos.CENTER;
 import static javafx.geometry.Pos.TOP_CENTER;
 import static javafx.scene.control.SelectionMode.MULTIPLE;
@@ -47,8 +46,6 @@ import static javafx.scene.input.KeyEvent.KEY_PRESSED;
  */
 public final class DefinitionEditor extends BorderPane
   implements TextDefinition {
-  private static final int GROUP_DELIMITED = 1;
-
   /**
    * Contains the root that is added to the view.
    */
@@ -88,6 +85,37 @@ public final class DefinitionEditor extends BorderPane
    */
   private final BooleanProperty mModified = new SimpleBooleanProperty();
 
+  /**
+   * Handlers registered to receive tree changes, mapped to the wrappers that
+   * suppress the changes made within a batch.
+   */
+  private final Map<EventHandler<TreeModificationEvent<Event>>,
+    EventHandler<TreeModificationEvent<Event>>> mTreeHandlers =
+    new HashMap<>();
+
+  /**
+   * Persists the definitions in the background.
+   */
+  private final DefinitionWriter mWriter;
+
+  /**
+   * Incremented for every save request so that a background write only
+   * clears the modified flag if no edits were made after its snapshot.
+   */
+  private int mSaveRevision;
+
+  /**
+   * Finds definitions by value, created upon the first search after the
+   * definitions change.
+   */
+  private DefinitionSearchIndex mSearchIndex;
+
+  /**
+   * Number of nested batches in progress; tree change handlers are not
+   * called while this is greater than zero.
+   */
+  private int mBatchDepth;
+
   /**
    * This is provided for unit tests that are not backed by files.
    *
@@ -112,6 +140,7 @@ public final class DefinitionEditor extends BorderPane
 
     mFile = file;
     mTreeTransformer = treeTransformer;
+    mWriter = new DefinitionWriter( treeTransformer );
 
     //mTreeView.setCellFactory( new TreeCellFactory() );
     mTreeView.setContextMenu( createContextMenu() );
@@ -136,7 +165,10 @@ public final class DefinitionEditor extends BorderPane
     // After the file is opened, watch for changes, not before. Otherwise,
     // upon saving, users will be prompted to save a file that hasn't had
     // any modifications (from their perspective).
-    addTreeChangeHandler( event -> mModified.set( true ) );
+    addTreeChangeHandler( event -> {
+      mModified.set( true );
+      mSearchIndex = null;
+    } );
   }
 
   @Override
@@ -144,13 +176,39 @@ public final class DefinitionEditor extends BorderPane
     final var foster = mTreeTransformer.transform( document );
     final var biological = getTreeRoot();
 
-    for( final var child : foster.getChildren() ) {
-      biological.getChildren().add( child );
-    }
+    // Move the children in a single list change so that the tree view
+    // updates once, rather than once for each definition.
+    batch( () -> biological.getChildren().addAll(
+      new ArrayList<>( foster.getChildren() ) ) );
 
     getTreeView().refresh();
   }
 
+  /**
+   * Performs structural changes to the tree without notifying the tree change
+   * handlers for each change. After the outermost batch completes, the
+   * handlers are notified once of a change to the root item. This prevents
+   * resolving, rendering, and saving the definitions after every item is
+   * added or removed.
+   *
+   * @param changes Modifies the tree items.
+   */
+  public void batch( final Runnable changes ) {
+    mBatchDepth++;
+
+    try {
+      changes.run();
+    } finally {
+      mBatchDepth--;
+    }
+
+    if( mBatchDepth == 0 ) {
+      final var root = getTreeRoot();
+      Event.fireEvent( root, new TreeModificationEvent<>(
+        childrenModificationEvent(), root ) );
+    }
+  }
+
   @Override
   public String getText() {
     final var result = new StringBuilder( 32768 );
@@ -172,6 +230,68 @@ public final class DefinitionEditor extends BorderPane
     return result.toString();
   }
 
+  /**
+   * Writes the definitions immediately, replacing any pending background
+   * write. The file is not written if the tree is malformed.
+   *
+   * @return {@code true} the file was saved; {@code false} otherwise.
+   */
+  @Override
+  public boolean save() {
+    final var snapshot = createSnapshot();
+
+    if( snapshot.isPresent() &&
+      mWriter.flush( snapshot.get(), getPath(), getEncoding() ) ) {
+      mSaveRevision++;
+      clearModifiedProperty();
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Writes the definitions on a background thread after the user pauses
+   * editing. The modified flag is cleared once the write completes, unless
+   * the definitions changed in the meantime.
+   */
+  @Override
+  public void saveLater() {
+    final var revision = ++mSaveRevision;
+
+    createSnapshot().ifPresent(
+      snapshot -> mWriter.schedule(
+        snapshot, getPath(), getEncoding(), () -> runLater( () -> {
+          if( revision == mSaveRevision ) {
+            clearModifiedProperty();
+          }
+        } ) )
+    );
+  }
+
+  /**
+   * Copies the tree for writing, provided it is well-formed.
+   *
+   * @return The copied tree, or empty if the tree is malformed.
+   */
+  private Optional<TreeSnapshot> createSnapshot() {
+    try {
+      final var problem = isTreeWellFormed();
+
+      if( problem.isPresent() ) {
+        clue( "yaml.error.tree.form", problem.get() );
+        return Optional.empty();
+      }
+
+      return Optional.of( TreeSnapshot.of( getTreeView().getRoot() ) );
+    } catch( final Exception ex ) {
+      // Catch errors while checking for a well-formed tree (e.g., stack smash).
+      clue( ex );
+    }
+
+    return Optional.empty();
+  }
+
   @Override
   public File getFile() {
     return mFile;
@@ -223,63 +343,40 @@ public final class DefinitionEditor extends BorderPane
   @Override
   public Map<String, String> interpolate(
     final Map<String, String> map, final Tokens tokens ) {
-
-    // Non-greedy match of key names delimited by definition tokens.
-    final var pattern = compile(
-      format( "(%s.*?%s)",
-              quote( tokens.getBegan() ),
-              quote( tokens.getEnded() )
-      )
-    );
-
-    map.replaceAll( ( k, v ) -> resolve( map, v, pattern ) );
-    return map;
+    return MapInterpolator.interpolate( map, tokens );
   }
 
-  /**
-   * Given a value with zero or more key references, this will resolve all
-   * the values, recursively. If a key cannot be de-referenced, the value will
-   * contain the key name.
-   *
-   * @param map     Map to search for keys when resolving key references.
-   * @param value   Value containing zero or more key references.
-   * @param pattern The regular expression pattern to match variable key names.
-   * @return The given value with all embedded key references interpolated.
-   */
-  private String resolve(
-    final Map<String, String> map, String value, final Pattern pattern ) {
-    final var matcher = pattern.matcher( value );
-
-    while( matcher.find() ) {
-      final var keyName = matcher.group( GROUP_DELIMITED );
-      final var mapValue = map.get( keyName );
-      final var keyValue = mapValue == null
-        ? keyName
-        : resolve( map, mapValue, pattern );
-
-      value = value.replace( keyName, keyValue );
-    }
-
-    return value;
-  }
-
-
   /**
    * Informs the caller of whenever any {@link TreeItem} in the {@link TreeView}
    * is modified. The modifications include: item value changes, item additions,
    * and item removals.
    * <p>
    * Safe to call multiple times; if a handler is already registered, the
-   * old handler is used.
+   * old handler is used. Changes made within a {@link #batch(Runnable)} are
+   * reported once, after the batch completes.
    * </p>
    *
    * @param handler The handler to call whenever any {@link TreeItem} changes.
    */
   public void addTreeChangeHandler(
-    final EventHandler<TreeItem.TreeModificationEvent<Event>> handler ) {
+    final EventHandler<TreeModificationEvent<Event>> handler ) {
+    if( mTreeHandlers.containsKey( handler ) ) {
+      return;
+    }
+
+    // Loading a branch from the definition index, upon expanding it, adds
+    // items to the tree without changing any definitions.
+    final EventHandler<TreeModificationEvent<Event>> wrapper = event -> {
+      if( mBatchDepth == 0 &&
+        !IndexedTreeItem.isLoading( event.getTreeItem() ) ) {
+        handler.handle( event );
+      }
+    };
+
     final var root = getTreeView().getRoot();
-    root.addEventHandler( valueChangedEvent(), handler );
-    root.addEventHandler( childrenModificationEvent(), handler );
+    root.addEventHandler( valueChangedEvent(), wrapper );
+    root.addEventHandler( childrenModificationEvent(), wrapper );
+    mTreeHandlers.put( handler, wrapper );
   }
 
   /**
@@ -318,6 +415,11 @@ public final class DefinitionEditor extends BorderPane
    * problematic {@link TreeItem}.
    */
   private TreeItem<String> isWellFormed( final TreeItem<String> item ) {
+    // Branches read from a file cannot be malformed until they are loaded.
+    if( IndexedTreeItem.isUnloaded( item ) ) {
+      return null;
+    }
+
     int childLeafs = 0;
     int childBranches = 0;
 
@@ -342,23 +444,97 @@ public final class DefinitionEditor extends BorderPane
 
   @Override
   public DefinitionTreeItem<String> findLeafExact( final String text ) {
-    return getTreeRoot().findLeafExact( text );
+    return find( getSearchIndex().findExact( text ) );
   }
 
   @Override
   public DefinitionTreeItem<String> findLeafContains( final String text ) {
-    return getTreeRoot().findLeafContains( text );
+    return find( getSearchIndex().findContains( text ) );
   }
 
   @Override
   public DefinitionTreeItem<String> findLeafContainsNoCase(
     final String text ) {
-    return getTreeRoot().findLeafContainsNoCase( text );
+    return find( getSearchIndex().findContainsNoCase( text ) );
   }
 
   @Override
   public DefinitionTreeItem<String> findLeafStartsWith( final String text ) {
-    return getTreeRoot().findLeafStartsWith( text );
+    return find( getSearchIndex().findStartsWith( text ) );
+  }
+
+  private DefinitionSearchIndex getSearchIndex() {
+    if( mSearchIndex == null ) {
+      mSearchIndex = new DefinitionSearchIndex( toMap() );
+    }
+
+    return mSearchIndex;
+  }
+
+  /**
+   * Returns the leaf for an entry in the search index, found by descending
+   * the tree along the entry's key. Only branches along the key are loaded.
+   *
+   * @param entry The search index entry, possibly
+   *              {@link DefinitionSearchIndex#NONE}.
+   * @return The leaf, or {@code null} if not found.
+   */
+  private DefinitionTreeItem<String> find( final int entry ) {
+    if( entry == DefinitionSearchIndex.NONE ) {
+      return null;
+    }
+
+    final var index = getSearchIndex();
+
+    return find( getTreeRoot(), index.getKey( entry ), 0,
+                 index.getValue( entry ) );
+  }
+
+  /**
+   * Finds the leaf having the given value beneath the key matching the given
+   * path. Because keys may contain separators, each child whose name
+   * matches the start of the remaining path is tried.
+   *
+   * @param item   The item whose descendants are to be searched.
+   * @param path   The full key, with names joined by separators.
+   * @param offset The start of the remaining path.
+   * @param value  The value of the leaf to find.
+   * @return The leaf, or {@code null} if not found.
+   */
+  private DefinitionTreeItem<String> find(
+    final TreeItem<String> item,
+    final String path,
+    final int offset,
+    final String value ) {
+    final var separator = TreeItemMapper.SEPARATOR;
+
+    for( final var child : item.getChildren() ) {
+      final var name = child.getValue();
+
+      if( child.isLeaf() || !path.startsWith( name, offset ) ) {
+        continue;
+      }
+
+      final var ended = offset + name.length();
+
+      if( ended == path.length() ) {
+        for( final var leaf : child.getChildren() ) {
+          if( leaf.isLeaf() && value.equals( leaf.getValue() ) ) {
+            return (DefinitionTreeItem<String>) leaf;
+          }
+        }
+      }
+      else if( path.startsWith( separator, ended ) ) {
+        final var leaf = find(
+          child, path, ended + separator.length(), value );
+
+        if( leaf != null ) {
+          return leaf;
+        }
+      }
+    }
+
+    return null;
   }
 
   public void select( final TreeItem<String> item ) {
@@ -382,7 +558,11 @@ public final class DefinitionEditor extends BorderPane
   private <T> void collapse( final ObservableList<TreeItem<T>> nodes ) {
     for( final var node : nodes ) {
       node.setExpanded( false );
-      collapse( node.getChildren() );
+
+      // Branches that were never loaded have nothing expanded.
+      if( !IndexedTreeItem.isUnloaded( node ) ) {
+        collapse( node.getChildren() );
+      }
     }
   }
 
@@ -406,13 +586,15 @@ public final class DefinitionEditor extends BorderPane
    */
   @Override
   public void deleteDefinitions() {
-    for( final var item : getSelectedItems() ) {
-      final var parent = item.getParent();
+    batch( () -> {
+      for( final var item : getSelectedItems() ) {
+        final var parent = item.getParent();
 
-      if( parent != null ) {
-        parent.getChildren().remove( item );
+        if( parent != null ) {
+          parent.getChildren().remove( item );
+        }
       }
-    }
+    } );
   }
 
   /**
@@ -447,10 +629,25 @@ public final class DefinitionEditor extends BorderPane
       .setOnAction( e -> renameDefinition() );
     addMenuItem( items, ACTION_PREFIX + "definition.delete.text" )
       .setOnAction( e -> deleteSelectedItem() );
+    addMenuItem( items, ACTION_PREFIX + "definition.usages.text" )
+      .setOnAction( e -> findUsages() );
 
     return menu;
   }
 
+  /**
+   * Requests the usages of the selected definition. When a value is
+   * selected, the usages of its key are requested.
+   */
+  private void findUsages() {
+    final var item = getSelectedItem();
+    final var key = item.isLeaf() ? item.getParent() : item;
+
+    if( key != null && key != getTreeRoot() ) {
+      fireFindUsagesEvent( new TreeItemMapper().toPath( key ) );
+    }
+  }
+
   /**
    * Executes hot-keys for edits to the definition tree.
    *
@@ -0,0 +1,204 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import javafx.scene.control.TreeItem;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Compact, immutable representation of a definition hierarchy. Each node is
+ * an integer offset into parallel arrays that hold the node's text along
+ * with the offsets of its parent, first child, and next sibling. Keys are
+ * pooled, because the same key names tend to repeat throughout a file.
+ * <p>
+ * The index is built once when a definition file is read. The tree shown to
+ * users is created from the index on demand, one branch at a time, as each
+ * branch is expanded (see {@link #createTreeItem()}). Because the index never
+ * changes, it may be read from any thread.
+ * </p>
+ */
+public final class DefinitionIndex {
+  /**
+   * Indicates the absence of a parent, child, or sibling.
+   */
+  public static final int NONE = -1;
+
+  /**
+   * Offset of the node that contains all top-level definitions.
+   */
+  public static final int ROOT = 0;
+
+  private final String[] mValues;
+  private final int[] mParents;
+  private final int[] mFirstChildren;
+  private final int[] mNextSiblings;
+
+  private DefinitionIndex( final Builder builder ) {
+    final var size = builder.mSize;
+
+    mValues = copyOf( builder.mValues, size );
+    mParents = copyOf( builder.mParents, size );
+    mFirstChildren = copyOf( builder.mFirstChildren, size );
+    mNextSiblings = copyOf( builder.mNextSiblings, size );
+  }
+
+  /**
+   * Creates a builder having a root node with the given value.
+   *
+   * @param root The value for the node that contains top-level definitions.
+   * @return A builder to populate using the offsets it returns.
+   */
+  public static Builder builder( final String root ) {
+    return new Builder( root );
+  }
+
+  /**
+   * Creates the root of a tree whose descendants are created from this index
+   * as they are requested.
+   *
+   * @return The tree item for the {@link #ROOT} node.
+   */
+  public DefinitionTreeItem<String> createTreeItem() {
+    return new IndexedTreeItem( this, ROOT );
+  }
+
+  public int size() {
+    return mValues.length;
+  }
+
+  public String getValue( final int node ) {
+    return mValues[ node ];
+  }
+
+  public int getParent( final int node ) {
+    return mParents[ node ];
+  }
+
+  public int getFirstChild( final int node ) {
+    return mFirstChildren[ node ];
+  }
+
+  public int getNextSibling( final int node ) {
+    return mNextSiblings[ node ];
+  }
+
+  /**
+   * Answers whether the given node has no children. As with {@link TreeItem}
+   * hierarchies, a key's value is the only child of the key.
+   *
+   * @param node The node to check.
+   * @return {@code true} if the node has no children.
+   */
+  public boolean isLeaf( final int node ) {
+    return mFirstChildren[ node ] == NONE;
+  }
+
+  /**
+   * Adds every definition beneath the given node to the given map, in the
+   * same form as {@link TreeItemMapper#toMap(TreeItem)}.
+   *
+   * @param node The node whose descendants are to be mapped.
+   * @param path The key for the given node, including the node's value.
+   * @param map  Receives the key for each leaf's parent and the leaf's value.
+   */
+  void toMap(
+    final int node, final String path, final Map<String, String> map ) {
+    for( int c = getFirstChild( node ); c != NONE; c = getNextSibling( c ) ) {
+      if( isLeaf( c ) ) {
+        map.put( path, getValue( c ) );
+      }
+      else {
+        toMap( c, path + TreeItemMapper.SEPARATOR + getValue( c ), map );
+      }
+    }
+  }
+
+  /**
+   * Responsible for appending nodes to a new {@link DefinitionIndex}.
+   */
+  public static final class Builder {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<String, String> mPool = new HashMap<>();
+
+    private String[] mValues = new String[ INITIAL_CAPACITY ];
+    private int[] mParents = new int[ INITIAL_CAPACITY ];
+    private int[] mFirstChildren = new int[ INITIAL_CAPACITY ];
+    private int[] mNextSiblings = new int[ INITIAL_CAPACITY ];
+
+    /**
+     * The last child of each node, used to append siblings in order.
+     */
+    private int[] mLastChildren = new int[ INITIAL_CAPACITY ];
+
+    private int mSize;
+
+    private Builder( final String root ) {
+      append( NONE, root );
+    }
+
+    /**
+     * Appends a key to the given node's children.
+     *
+     * @param parent The offset of the node to receive a new child.
+     * @param key    The child's name, which is pooled.
+     * @return The offset of the new child.
+     */
+    public int addKey( final int parent, final String key ) {
+      return append( parent, mPool.computeIfAbsent( key, k -> k ) );
+    }
+
+    /**
+     * Appends a value to the given key's children.
+     *
+     * @param parent The offset of the key that has the value.
+     * @param value  The value of the definition.
+     * @return The offset of the new child.
+     */
+    public int addValue( final int parent, final String value ) {
+      return append( parent, value );
+    }
+
+    public DefinitionIndex build() {
+      return new DefinitionIndex( this );
+    }
+
+    private int append( final int parent, final String value ) {
+      if( mSize == mValues.length ) {
+        final var capacity = mSize << 1;
+
+        mValues = copyOf( mValues, capacity );
+        mParents = copyOf( mParents, capacity );
+        mFirstChildren = copyOf( mFirstChildren, capacity );
+        mNextSiblings = copyOf( mNextSiblings, capacity );
+        mLastChildren = copyOf( mLastChildren, capacity );
+      }
+
+      final var node = mSize++;
+
+      mValues[ node ] = value;
+      mParents[ node ] = parent;
+      mFirstChildren[ node ] = NONE;
+      mNextSiblings[ node ] = NONE;
+      mLastChildren[ node ] = NONE;
+
+      if( parent != NONE ) {
+        final var last = mLastChildren[ parent ];
+
+        if( last == NONE ) {
+          mFirstChildren[ parent ] = node;
+        }
+        else {
+          mNextSiblings[ last ] = node;
+        }
+
+        mLastChildren[ parent ] = node;
+      }
+
+      return node;
+    }
+  }
+}
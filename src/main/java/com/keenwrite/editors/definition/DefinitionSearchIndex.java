@@ -0,0 +1,299 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.text.Normalizer.Form.NFD;
+import static java.text.Normalizer.normalize;
+
+/**
+ * Answers the same questions as the {@link DefinitionTreeItem} find methods,
+ * without walking the tree or normalizing values for each search. The
+ * definition values are normalized once, when the index is created; the
+ * index is then used until the definitions change.
+ * <ul>
+ *   <li>Exact matches are found using a hash table of raw values.</li>
+ *   <li>Prefix matches are found by binary search of the values, sorted
+ *   without diacritics.</li>
+ *   <li>Substring matches are found by intersecting the lists of values that
+ *   contain each trigram of the search text, then confirming the few
+ *   candidates that remain.</li>
+ * </ul>
+ * <p>
+ * Searches return an entry number, from which the definition's key and
+ * value are retrieved.
+ * </p>
+ */
+final class DefinitionSearchIndex {
+  /**
+   * Returned when no definition matches.
+   */
+  static final int NONE = -1;
+
+  private static final Pattern DIACRITICS = Pattern.compile( "\\p{M}" );
+
+  private static final int[] NO_ENTRIES = new int[ 0 ];
+
+  private final String[] mKeys;
+  private final String[] mValues;
+
+  /**
+   * Values without diacritic marks.
+   */
+  private final String[] mPlain;
+
+  /**
+   * Values without diacritic marks, in lowercase.
+   */
+  private final String[] mLower;
+
+  /**
+   * Maps each raw value to the first entry having that value.
+   */
+  private final Map<String, Integer> mExact;
+
+  /**
+   * Entry numbers, sorted by their values without diacritic marks.
+   */
+  private final int[] mSorted;
+
+  /**
+   * Maps each trigram found in the lowercase values to the entries, in
+   * ascending order, that contain it.
+   */
+  private final Map<Long, int[]> mTrigrams;
+
+  /**
+   * Indexes the given definitions.
+   *
+   * @param definitions Maps keys to raw values (as from
+   *                    {@link TreeItemMapper#toMap}), in the order to
+   *                    prefer when several values match.
+   */
+  DefinitionSearchIndex( final Map<String, String> definitions ) {
+    final var size = definitions.size();
+
+    mKeys = new String[ size ];
+    mValues = new String[ size ];
+    mPlain = new String[ size ];
+    mLower = new String[ size ];
+    mExact = new HashMap<>( size * 2 );
+
+    var i = 0;
+
+    for( final var entry : definitions.entrySet() ) {
+      final var value = entry.getValue();
+      final var plain = DIACRITICS.matcher( normalize( value, NFD ) )
+                                  .replaceAll( "" );
+
+      mKeys[ i ] = entry.getKey();
+      mValues[ i ] = value;
+      mPlain[ i ] = plain;
+      mLower[ i ] = plain.toLowerCase();
+      mExact.putIfAbsent( value, i );
+      i++;
+    }
+
+    mSorted = sort( mPlain );
+    mTrigrams = index( mLower );
+  }
+
+  String getKey( final int entry ) {
+    return mKeys[ entry ];
+  }
+
+  String getValue( final int entry ) {
+    return mValues[ entry ];
+  }
+
+  /**
+   * Finds a value that equals the given text.
+   *
+   * @param text The text to match, case-sensitively.
+   * @return The matching entry, or {@link #NONE}.
+   */
+  int findExact( final String text ) {
+    return mExact.getOrDefault( text, NONE );
+  }
+
+  /**
+   * Finds a value, without diacritics, that starts with the given text. When
+   * several values match, the value that sorts first is returned.
+   *
+   * @param text The text to match, case-sensitively.
+   * @return The matching entry, or {@link #NONE}.
+   */
+  int findStartsWith( final String text ) {
+    var lo = 0;
+    var hi = mSorted.length;
+
+    // Find the first value not less than the text.
+    while( lo < hi ) {
+      final var mid = (lo + hi) >>> 1;
+
+      if( mPlain[ mSorted[ mid ] ].compareTo( text ) < 0 ) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+
+    return lo < mSorted.length && mPlain[ mSorted[ lo ] ].startsWith( text )
+      ? mSorted[ lo ]
+      : NONE;
+  }
+
+  /**
+   * Finds a value, without diacritics, that contains the given text.
+   *
+   * @param text The text to match, case-sensitively.
+   * @return The first matching entry, or {@link #NONE}.
+   */
+  int findContains( final String text ) {
+    return findContains( text, mPlain );
+  }
+
+  /**
+   * Finds a value, without diacritics, that contains the given text,
+   * ignoring case.
+   *
+   * @param text The text to match, case-insensitively.
+   * @return The first matching entry, or {@link #NONE}.
+   */
+  int findContainsNoCase( final String text ) {
+    return findContains( text.toLowerCase(), mLower );
+  }
+
+  private int findContains( final String text, final String[] values ) {
+    final var candidates = candidates( text.toLowerCase() );
+
+    if( candidates == null ) {
+      for( int i = 0; i < values.length; i++ ) {
+        if( values[ i ].contains( text ) ) {
+          return i;
+        }
+      }
+    }
+    else {
+      for( final var i : candidates ) {
+        if( values[ i ].contains( text ) ) {
+          return i;
+        }
+      }
+    }
+
+    return NONE;
+  }
+
+  /**
+   * Returns the entries whose lowercase values contain every trigram of the
+   * given lowercase text.
+   *
+   * @param text The lowercase text to find.
+   * @return The candidate entries in ascending order, or {@code null} if the
+   * text is too short to have trigrams.
+   */
+  private int[] candidates( final String text ) {
+    if( text.length() < 3 ) {
+      return null;
+    }
+
+    int[] result = null;
+
+    for( int i = 0; i + 3 <= text.length(); i++ ) {
+      final var postings = mTrigrams.getOrDefault(
+        trigram( text, i ), NO_ENTRIES );
+
+      result = result == null ? postings : intersect( result, postings );
+
+      if( result.length == 0 ) {
+        break;
+      }
+    }
+
+    return result;
+  }
+
+  private static int[] intersect( final int[] a, final int[] b ) {
+    final var result = new int[ Math.min( a.length, b.length ) ];
+    var i = 0;
+    var j = 0;
+    var k = 0;
+
+    while( i < a.length && j < b.length ) {
+      if( a[ i ] < b[ j ] ) {
+        i++;
+      }
+      else if( a[ i ] > b[ j ] ) {
+        j++;
+      }
+      else {
+        result[ k++ ] = a[ i ];
+        i++;
+        j++;
+      }
+    }
+
+    return Arrays.copyOf( result, k );
+  }
+
+  private static int[] sort( final String[] values ) {
+    final var entries = new Integer[ values.length ];
+
+    for( int i = 0; i < entries.length; i++ ) {
+      entries[ i ] = i;
+    }
+
+    // Stable, so equal values retain their preferred order.
+    Arrays.sort( entries, Comparator.comparing( i -> values[ i ] ) );
+
+    return Arrays.stream( entries ).mapToInt( Integer::intValue ).toArray();
+  }
+
+  private static Map<Long, int[]> index( final String[] values ) {
+    final var postings = new HashMap<Long, int[]>();
+    final var sizes = new HashMap<Long, Integer>();
+
+    for( int entry = 0; entry < values.length; entry++ ) {
+      final var value = values[ entry ];
+
+      for( int i = 0; i + 3 <= value.length(); i++ ) {
+        final var trigram = trigram( value, i );
+        final var size = sizes.getOrDefault( trigram, 0 );
+        var list = postings.get( trigram );
+
+        // Entries are added in ascending order, so a repeated trigram within
+        // the same value is always at the end of the list.
+        if( list != null && list[ size - 1 ] == entry ) {
+          continue;
+        }
+
+        if( list == null ) {
+          list = new int[ 4 ];
+        }
+        else if( size == list.length ) {
+          list = Arrays.copyOf( list, size << 1 );
+        }
+
+        list[ size ] = entry;
+        postings.put( trigram, list );
+        sizes.put( trigram, size + 1 );
+      }
+    }
+
+    postings.replaceAll( ( k, v ) -> Arrays.copyOf( v, sizes.get( k ) ) );
+
+    return postings;
+  }
+
+  private static long trigram( final String s, final int i ) {
+    return ((long) s.charAt( i ) << 32) |
+      ((long) s.charAt( i + 1 ) << 16) |
+      s.charAt( i + 2 );
+  }
+}
@@ -71,7 +71,9 @@ public class DefinitionTreeItem<T> extends TreeItem<T> {
 
   /**
    * Finds a leaf starting at the current node with text that matches the given
-   * value.
+   * value. Branches that have not been loaded are searched using their
+   * {@link DefinitionIndex}, which loads only the branches leading to the
+   * matching leaf.
    *
    * @param text     The text to match against each leaf in the tree.
    * @param findMode What algorithm is used to match the given text.
@@ -98,6 +100,13 @@ public class DefinitionTreeItem<T> extends TreeItem<T> {
             return result;
           }
         }
+        else if( IndexedTreeItem.isUnloaded( result ) ) {
+          final var leaf = findIndexedLeaf( result, text, findMode );
+
+          if( found = leaf != null ) {
+            return leaf;
+          }
+        }
         else {
           stack.push( result );
         }
@@ -107,6 +116,21 @@ public class DefinitionTreeItem<T> extends TreeItem<T> {
     return null;
   }
 
+  /**
+   * Searches an unloaded branch. Items loaded from an index always hold
+   * strings, which makes the conversions safe.
+   */
+  @SuppressWarnings( { "unchecked", "rawtypes" } )
+  private static <T> DefinitionTreeItem<T> findIndexedLeaf(
+    final DefinitionTreeItem<T> item,
+    final String text,
+    final BiFunction<DefinitionTreeItem<T>, String, Boolean> findMode ) {
+    final var indexed = (IndexedTreeItem) (Object) item;
+    final var leaf = indexed.findIndexedLeaf( text, (BiFunction) findMode );
+
+    return (DefinitionTreeItem<T>) (Object) leaf;
+  }
+
   /**
    * Returns the value of the string without diacritic marks.
    *
@@ -0,0 +1,209 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.keenwrite.events.StatusEvent.clue;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.exists;
+import static java.nio.file.Files.getFileAttributeView;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Responsible for persisting definitions without blocking the JavaFX thread.
+ * Requests to write are delayed by a debounce window so that a burst of tree
+ * edits results in a single write; each request supersedes any request that
+ * has not yet started. The {@link TreeTransformer} streams the snapshot into
+ * a temporary file beside the target, which is then renamed over the target
+ * so that the definitions file is never left partially written. The
+ * temporary file takes the target's permissions (and owner, where possible)
+ * so that renaming does not change who may read the definitions.
+ */
+public final class DefinitionWriter {
+  /**
+   * Milliseconds to wait for further edits before writing.
+   */
+  private static final long DEBOUNCE = 500;
+
+  /**
+   * Writes definitions one at a time, in order of submission, for all
+   * definition editors.
+   */
+  private static final ScheduledExecutorService sExecutor =
+    newSingleThreadScheduledExecutor( runnable -> {
+      final var thread = new Thread( runnable, "definition-writer" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+
+  private final TreeTransformer mTransformer;
+
+  /**
+   * The request that has not yet started, if any.
+   */
+  private ScheduledFuture<?> mPending;
+
+  /**
+   * Creates a writer that serializes definitions using the given transformer.
+   *
+   * @param transformer Converts the definitions into their persisted form.
+   */
+  public DefinitionWriter( final TreeTransformer transformer ) {
+    assert transformer != null;
+
+    mTransformer = transformer;
+  }
+
+  /**
+   * Requests that the given definitions be written after the debounce window
+   * elapses, superseding any request that has not yet started.
+   *
+   * @param snapshot The definitions to write.
+   * @param path     The file to replace.
+   * @param encoding The file's character encoding.
+   * @param written  Called by the writer's thread after a successful write.
+   */
+  public synchronized void schedule(
+    final TreeSnapshot snapshot,
+    final Path path,
+    final Charset encoding,
+    final Runnable written ) {
+    cancel();
+
+    mPending = sExecutor.schedule( () -> {
+      if( write( snapshot, path, encoding ) ) {
+        written.run();
+      }
+    }, DEBOUNCE, MILLISECONDS );
+  }
+
+  /**
+   * Writes the given definitions, superseding any request that has not yet
+   * started. This waits for the write to complete, which happens after any
+   * write already in progress.
+   *
+   * @param snapshot The definitions to write.
+   * @param path     The file to replace.
+   * @param encoding The file's character encoding.
+   * @return {@code true} if the definitions were written.
+   */
+  public boolean flush(
+    final TreeSnapshot snapshot, final Path path, final Charset encoding ) {
+    synchronized( this ) {
+      cancel();
+    }
+
+    try {
+      return sExecutor.submit( () -> write( snapshot, path, encoding ) ).get();
+    } catch( final InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    } catch( final ExecutionException ex ) {
+      clue( ex.getCause() );
+    }
+
+    return false;
+  }
+
+  private void cancel() {
+    if( mPending != null ) {
+      mPending.cancel( false );
+      mPending = null;
+    }
+  }
+
+  /**
+   * Streams the given definitions into a temporary file, then renames the
+   * temporary file to the given path.
+   *
+   * @return {@code true} if the definitions were written.
+   */
+  private boolean write(
+    final TreeSnapshot snapshot, final Path path, final Charset encoding ) {
+    final var target = path.toAbsolutePath();
+    Path temp = null;
+
+    try {
+      temp = createTempFile(
+        target.getParent(), "." + target.getFileName(), ".tmp" );
+
+      try( final var writer = new BufferedWriter(
+        new OutputStreamWriter( newOutputStream( temp ), encoding ) ) ) {
+        mTransformer.transform( snapshot, writer );
+      }
+
+      copyAttributes( target, temp );
+
+      try {
+        move( temp, target, ATOMIC_MOVE, REPLACE_EXISTING );
+      } catch( final AtomicMoveNotSupportedException ex ) {
+        move( temp, target, REPLACE_EXISTING );
+      }
+
+      return true;
+    } catch( final Exception ex ) {
+      clue( ex );
+      delete( temp );
+    }
+
+    return false;
+  }
+
+  /**
+   * Copies the POSIX permissions, owner, and group of the given source file
+   * onto the given destination file. Temporary files are created readable
+   * only by the user, which would otherwise replace the permissions of the
+   * file being overwritten. Only a privileged user may change a file's
+   * owner, so failing to change the owner or group is ignored.
+   *
+   * @param source The file having the attributes to copy, which need not
+   *               exist.
+   * @param dest   The file to receive the attributes.
+   * @throws IOException The permissions could not be copied.
+   */
+  private static void copyAttributes( final Path source, final Path dest )
+    throws IOException {
+    final var sourceView =
+      getFileAttributeView( source, PosixFileAttributeView.class );
+    final var destView =
+      getFileAttributeView( dest, PosixFileAttributeView.class );
+
+    if( sourceView == null || destView == null || !exists( source ) ) {
+      return;
+    }
+
+    final var attributes = sourceView.readAttributes();
+    destView.setPermissions( attributes.permissions() );
+
+    try {
+      destView.setGroup( attributes.group() );
+      destView.setOwner( attributes.owner() );
+    } catch( final IOException ignored ) {
+      // Only privileged users may change the owner or group.
+    }
+  }
+
+  private static void delete( final Path temp ) {
+    try {
+      if( temp != null ) {
+        deleteIfExists( temp );
+      }
+    } catch( final IOException ex ) {
+      clue( ex );
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static com.keenwrite.editors.definition.DefinitionIndex.NONE;
+
+/**
+ * A {@link DefinitionTreeItem} whose children are created from a
+ * {@link DefinitionIndex} the first time they are requested (e.g., when the
+ * user expands the item). Until then, questions about the item's
+ * descendants are answered by the index, so mapping, searching, and saving
+ * the definitions do not create items for branches that were never shown.
+ * Once loaded, the item behaves as any other {@link DefinitionTreeItem}.
+ */
+final class IndexedTreeItem extends DefinitionTreeItem<String> {
+  private final DefinitionIndex mIndex;
+  private final int mNode;
+
+  private boolean mLoaded;
+  private boolean mLoading;
+
+  IndexedTreeItem( final DefinitionIndex index, final int node ) {
+    super( index.getValue( node ) );
+
+    mIndex = index;
+    mNode = node;
+  }
+
+  @Override
+  public ObservableList<TreeItem<String>> getChildren() {
+    final var children = super.getChildren();
+
+    if( !mLoaded ) {
+      mLoaded = true;
+
+      final var items = new ArrayList<IndexedTreeItem>();
+
+      for( int c = mIndex.getFirstChild( mNode ); c != NONE;
+           c = mIndex.getNextSibling( c ) ) {
+        items.add( new IndexedTreeItem( mIndex, c ) );
+      }
+
+      mLoading = true;
+
+      try {
+        children.setAll( items );
+      } finally {
+        mLoading = false;
+      }
+    }
+
+    return children;
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return mLoaded ? super.isLeaf() : mIndex.isLeaf( mNode );
+  }
+
+  /**
+   * Answers whether the given item's descendants are held only by a
+   * {@link DefinitionIndex}.
+   *
+   * @param item The item to check.
+   * @return {@code true} if the item's children have not been created.
+   */
+  static boolean isUnloaded( final Object item ) {
+    return item instanceof final IndexedTreeItem indexed && !indexed.mLoaded;
+  }
+
+  /**
+   * Answers whether the given item's children are being created, which
+   * changes the children without changing the definitions.
+   *
+   * @param item The item to check.
+   * @return {@code true} while the item's children are being loaded.
+   */
+  static boolean isLoading( final Object item ) {
+    return item instanceof final IndexedTreeItem indexed && indexed.mLoading;
+  }
+
+  /**
+   * Adds the definitions beneath this unloaded item to the given map.
+   *
+   * @param path The key for this item.
+   * @param map  Receives the definitions.
+   */
+  void toMap( final String path, final Map<String, String> map ) {
+    assert !mLoaded;
+
+    mIndex.toMap( mNode, path, map );
+  }
+
+  /**
+   * Returns an immutable copy of this unloaded item's hierarchy.
+   *
+   * @return A snapshot that reads descendants from the index.
+   */
+  TreeSnapshot toSnapshot() {
+    assert !mLoaded;
+
+    return new TreeSnapshot( mIndex, mNode );
+  }
+
+  /**
+   * Searches the leaves beneath this unloaded item. Each candidate value is
+   * matched using a detached probe item, so that every find mode behaves
+   * as it does for loaded items. Only the branches leading to a match are
+   * loaded.
+   *
+   * @param text     The text to match against each leaf.
+   * @param findMode What algorithm is used to match the given text.
+   * @return The matching leaf, or {@code null} if there is no match.
+   */
+  DefinitionTreeItem<String> findIndexedLeaf(
+    final String text,
+    final BiFunction<DefinitionTreeItem<String>, String, Boolean> findMode ) {
+    assert !mLoaded;
+
+    final var stack = new ArrayList<Integer>();
+    stack.add( mNode );
+
+    while( !stack.isEmpty() ) {
+      final var node = stack.remove( stack.size() - 1 );
+
+      for( int c = mIndex.getFirstChild( node ); c != NONE;
+           c = mIndex.getNextSibling( c ) ) {
+        if( mIndex.isLeaf( c ) ) {
+          final var probe = new DefinitionTreeItem<>( mIndex.getValue( c ) );
+
+          if( findMode.apply( probe, text ) ) {
+            return load( c );
+          }
+        }
+        else {
+          stack.add( c );
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Loads the branches from this item down to the given descendant.
+   *
+   * @param node The offset of a descendant of this item.
+   * @return The item for the descendant.
+   */
+  private DefinitionTreeItem<String> load( final int node ) {
+    final var path = new ArrayList<Integer>();
+
+    for( int n = node; n != mNode; n = mIndex.getParent( n ) ) {
+      path.add( n );
+    }
+
+    DefinitionTreeItem<String> item = this;
+
+    for( int i = path.size() - 1; i >= 0; i-- ) {
+      item = child( item.getChildren(), path.get( i ) );
+    }
+
+    return item;
+  }
+
+  private static DefinitionTreeItem<String> child(
+    final List<TreeItem<String>> children, final int node ) {
+    for( final var child : children ) {
+      if( child instanceof IndexedTreeItem indexed && indexed.mNode == node ) {
+        return indexed;
+      }
+    }
+
+    throw new IllegalStateException( "Missing indexed node: " + node );
+  }
+}
@@ -0,0 +1,445 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import com.keenwrite.sigils.Tokens;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.keenwrite.events.StatusEvent.clue;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Responsible for replacing variable references found in definition values
+ * with the values they reference. This does not depend on the user
+ * interface, so definitions can be resolved without a {@link DefinitionEditor}
+ * (e.g., when exporting from the command-line).
+ * <p>
+ * The references in each value are found once, which forms a dependency
+ * graph of definition keys. Values are then resolved in topological order,
+ * so every value is resolved exactly once, no matter how many other values
+ * refer to it. References that form a cycle are left unresolved and
+ * reported as a status message.
+ * </p>
+ * <p>
+ * An instance retains the graph between calls to {@link #update(Map)},
+ * along with an index from each key to the keys whose values refer to it.
+ * When definitions are edited, only the changed keys and the keys that
+ * depend on them are resolved again.
+ * </p>
+ */
+public final class MapInterpolator {
+  /**
+   * Values that reference no other keys are shared to reduce allocations.
+   */
+  private static final int[] NO_REFERENCES = new int[ 0 ];
+
+  /**
+   * Adding more keys than this at once resolves every definition again,
+   * rather than searching all values for references to each new key.
+   */
+  private static final int MAX_INCREMENTAL_ADDITIONS = 16;
+
+  private final String mBegan;
+  private final String mEnded;
+
+  /**
+   * Length of the longest key, which bounds the search for a closing token.
+   */
+  private int mMaxLength;
+
+  /**
+   * Definitions to resolve, keyed by names including their delimiters.
+   */
+  private final Map<String, String> mDefinitions = new HashMap<>();
+
+  /**
+   * Values having all resolvable references replaced.
+   */
+  private final Map<String, String> mResolved = new HashMap<>();
+
+  /**
+   * Pairs of offsets into each value for every reference to a known key.
+   */
+  private final Map<String, int[]> mReferences = new HashMap<>();
+
+  /**
+   * Maps each key to the keys whose values refer to it.
+   */
+  private final Map<String, Set<String>> mDependents = new HashMap<>();
+
+  /**
+   * Creates an interpolator for variables delimited by the given tokens.
+   *
+   * @param tokens The beginning and ending tokens that delimit variables.
+   */
+  public MapInterpolator( final Tokens tokens ) {
+    mBegan = tokens.getBegan();
+    mEnded = tokens.getEnded();
+  }
+
+  /**
+   * Performs string interpolation on the values in the given map. This will
+   * change any value in the map that contains a variable delimited by the
+   * given tokens whose name is a key in the map.
+   *
+   * @param map    Contains values that represent references to keys.
+   * @param tokens The beginning and ending tokens that delimit variables.
+   * @return The given map, with all its values interpolated.
+   */
+  public static Map<String, String> interpolate(
+    final Map<String, String> map, final Tokens tokens ) {
+    final var interpolator = new MapInterpolator( tokens );
+    interpolator.update( map );
+    map.putAll( interpolator.mResolved );
+    return map;
+  }
+
+  /**
+   * Answers whether this interpolator finds variables delimited by the given
+   * tokens.
+   *
+   * @param tokens The beginning and ending tokens that delimit variables.
+   * @return {@code true} if the tokens match those given at construction.
+   */
+  public boolean hasTokens( final Tokens tokens ) {
+    return mBegan.equals( tokens.getBegan() ) &&
+      mEnded.equals( tokens.getEnded() );
+  }
+
+  /**
+   * Returns the resolved values of all definitions.
+   *
+   * @return An unmodifiable view of the resolved definitions.
+   */
+  public Map<String, String> getResolved() {
+    return unmodifiableMap( mResolved );
+  }
+
+  /**
+   * Replaces the definitions with the given definitions, then resolves the
+   * keys affected by the differences. A key is affected if it was added or
+   * removed, if its value changed, if its value mentions an added key, or if
+   * its value refers to an affected key.
+   *
+   * @param definitions The definitions, which are not modified.
+   * @return The resolved values that changed, with removed keys mapped to
+   * {@code null}; empty if no resolved value changed.
+   */
+  public Map<String, String> update( final Map<String, String> definitions ) {
+    final var changed = new HashSet<String>();
+    final var added = new ArrayList<String>();
+
+    definitions.forEach( ( key, value ) -> {
+      if( !mDefinitions.containsKey( key ) ) {
+        added.add( key );
+        changed.add( key );
+      }
+      else if( !Objects.equals( mDefinitions.get( key ), value ) ) {
+        changed.add( key );
+      }
+    } );
+
+    for( final var key : mDefinitions.keySet() ) {
+      if( !definitions.containsKey( key ) ) {
+        changed.add( key );
+      }
+    }
+
+    if( changed.isEmpty() ) {
+      return Map.of();
+    }
+
+    final var invalid = added.size() > MAX_INCREMENTAL_ADDITIONS
+      ? invalidateAll( changed )
+      : invalidate( changed, added, definitions );
+
+    // Retain the prior values to determine which resolved values changed.
+    final var previous = new HashMap<String, String>( invalid.size() * 2 );
+
+    for( final var key : invalid ) {
+      previous.put( key, mResolved.remove( key ) );
+      unlink( key );
+    }
+
+    for( final var key : changed ) {
+      if( definitions.containsKey( key ) ) {
+        mDefinitions.put( key, definitions.get( key ) );
+        mMaxLength = max( mMaxLength, key.length() );
+      }
+      else {
+        mDefinitions.remove( key );
+      }
+    }
+
+    resolve( invalid );
+
+    final var delta = new HashMap<String, String>();
+
+    previous.forEach( ( key, value ) -> {
+      final var resolved = mResolved.get( key );
+
+      if( !Objects.equals( value, resolved ) ||
+        mResolved.containsKey( key ) != (value != null) ) {
+        delta.put( key, resolved );
+      }
+    } );
+
+    return delta;
+  }
+
+  /**
+   * Determines the keys to resolve again after a few keys have changed.
+   *
+   * @param changed     Keys that were added, removed, or have new values.
+   * @param added       Keys that were added.
+   * @param definitions The new definitions.
+   * @return The changed keys and every key that depends on them.
+   */
+  private Set<String> invalidate(
+    final Set<String> changed,
+    final List<String> added,
+    final Map<String, String> definitions ) {
+    final var invalid = new HashSet<>( changed );
+
+    // Values may have mentioned a key before it was defined.
+    if( !added.isEmpty() ) {
+      definitions.forEach( ( key, value ) -> {
+        if( value != null && containsAny( value, added ) ) {
+          invalid.add( key );
+        }
+      } );
+    }
+
+    final var queue = new ArrayDeque<>( invalid );
+
+    while( !queue.isEmpty() ) {
+      final var key = queue.poll();
+
+      for( final var dependent : mDependents.getOrDefault( key, Set.of() ) ) {
+        if( invalid.add( dependent ) ) {
+          queue.add( dependent );
+        }
+      }
+    }
+
+    return invalid;
+  }
+
+  /**
+   * Determines the keys to resolve again after many keys have changed.
+   *
+   * @param changed Keys that were added, removed, or have new values.
+   * @return Every key, whether present before or after the change.
+   */
+  private Set<String> invalidateAll( final Set<String> changed ) {
+    final var invalid = new HashSet<>( mDefinitions.keySet() );
+    invalid.addAll( changed );
+    return invalid;
+  }
+
+  private static boolean containsAny(
+    final String value, final List<String> keys ) {
+    for( final var key : keys ) {
+      if( value.contains( key ) ) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Resolves the given keys, visiting the keys that a value refers to before
+   * the value itself. Keys that are not given must already be resolved. An
+   * explicit stack is used so that long chains of references cannot overflow
+   * the call stack.
+   *
+   * @param keys The keys to resolve, which may include removed keys.
+   */
+  private void resolve( final Set<String> keys ) {
+    final var visiting = new HashSet<String>();
+    final var stack = new ArrayDeque<String>();
+
+    for( final var root : keys ) {
+      if( mResolved.containsKey( root ) || !mDefinitions.containsKey( root ) ) {
+        continue;
+      }
+
+      stack.push( root );
+
+      while( !stack.isEmpty() ) {
+        final var key = stack.peek();
+
+        if( mResolved.containsKey( key ) ) {
+          stack.pop();
+        }
+        else if( visiting.add( key ) ) {
+          for( final var dependency : getDependencies( key ) ) {
+            if( mResolved.containsKey( dependency ) ) {
+              continue;
+            }
+
+            if( visiting.contains( dependency ) ) {
+              clue( "Main.status.error.def.cycle", dependency, key );
+            }
+            else {
+              stack.push( dependency );
+            }
+          }
+        }
+        else {
+          stack.pop();
+          visiting.remove( key );
+          mResolved.put( key, substitute( key ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the known keys referenced by the value of the given key.
+   *
+   * @param key The key whose value may contain references.
+   * @return The keys referenced by the value, possibly with duplicates.
+   */
+  private List<String> getDependencies( final String key ) {
+    final var value = mDefinitions.get( key );
+    final var references = getReferences( key );
+    final var dependencies = new ArrayList<String>( references.length / 2 );
+
+    for( int i = 0; i < references.length; i += 2 ) {
+      final var began = references[ i ];
+      final var ended = references[ i + 1 ];
+      dependencies.add( value.substring( began, ended ) );
+    }
+
+    return dependencies;
+  }
+
+  /**
+   * Replaces the references in the value of the given key with their
+   * resolved values. References to keys that are not yet resolved, which
+   * only happens for cycles, are retained verbatim.
+   *
+   * @param key The key whose value is to be resolved.
+   * @return The value having all resolvable references replaced.
+   */
+  private String substitute( final String key ) {
+    final var value = mDefinitions.get( key );
+    final var references = getReferences( key );
+
+    if( references.length == 0 ) {
+      return value;
+    }
+
+    final var sb = new StringBuilder( value.length() * 2 );
+    var index = 0;
+
+    for( int i = 0; i < references.length; i += 2 ) {
+      final var began = references[ i ];
+      final var ended = references[ i + 1 ];
+      final var replacement = mResolved.get( value.substring( began, ended ) );
+
+      if( replacement != null ) {
+        sb.append( value, index, began ).append( replacement );
+        index = ended;
+      }
+    }
+
+    return sb.append( value, index, value.length() ).toString();
+  }
+
+  /**
+   * Finds the references to known keys in the value of the given key, then
+   * records the key as a dependent of each key that it references. The
+   * result is retained until the key is invalidated, because each value is
+   * examined twice: once to find its dependencies and once to substitute
+   * their values.
+   *
+   * @param key The key whose value may contain references.
+   * @return Pairs of offsets into the value, one pair per reference.
+   */
+  private int[] getReferences( final String key ) {
+    var references = mReferences.get( key );
+
+    if( references == null ) {
+      final var value = mDefinitions.get( key );
+      references = findReferences( value );
+      mReferences.put( key, references );
+
+      for( int i = 0; i < references.length; i += 2 ) {
+        final var dependency =
+          value.substring( references[ i ], references[ i + 1 ] );
+        mDependents.computeIfAbsent( dependency, k -> new HashSet<>() )
+                   .add( key );
+      }
+    }
+
+    return references;
+  }
+
+  /**
+   * Removes the given key from the dependents of the keys that its value
+   * references. This must be called before the key's value changes.
+   *
+   * @param key The key whose references will be found again.
+   */
+  private void unlink( final String key ) {
+    final var references = mReferences.remove( key );
+
+    if( references == null ) {
+      return;
+    }
+
+    final var value = mDefinitions.get( key );
+
+    for( int i = 0; i < references.length; i += 2 ) {
+      final var dependency =
+        value.substring( references[ i ], references[ i + 1 ] );
+      final var dependents = mDependents.get( dependency );
+
+      if( dependents != null && dependents.remove( key ) &&
+        dependents.isEmpty() ) {
+        mDependents.remove( dependency );
+      }
+    }
+  }
+
+  private int[] findReferences( final String value ) {
+    if( value == null || mBegan.isEmpty() || mEnded.isEmpty() ) {
+      return NO_REFERENCES;
+    }
+
+    final var offsets = new ArrayList<Integer>();
+    var bIndex = value.indexOf( mBegan );
+
+    while( bIndex >= 0 ) {
+      final var limit = min( value.length(), bIndex + mMaxLength );
+      final var eIndex = value.indexOf( mEnded, bIndex + mBegan.length() );
+      final var ended = eIndex + mEnded.length();
+
+      if( eIndex >= 0 && ended <= limit &&
+        mDefinitions.containsKey( value.substring( bIndex, ended ) ) ) {
+        offsets.add( bIndex );
+        offsets.add( ended );
+        bIndex = value.indexOf( mBegan, ended );
+      }
+      else {
+        bIndex = value.indexOf( mBegan, bIndex + mBegan.length() );
+      }
+    }
+
+    return offsets.isEmpty()
+      ? NO_REFERENCES
+      : offsets.stream().mapToInt( Integer::intValue ).toArray();
+  }
+}
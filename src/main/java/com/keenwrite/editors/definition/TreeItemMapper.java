@@ -6,8 +6,8 @@ import com.keenwrite.preview.HtmlPreview;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Stack;
 
@@ -46,7 +46,8 @@ public final class TreeItemMapper {
 
   /**
    * In-order traversal of a {@link TreeItem} hierarchy, exposing each item
-   * as a consecutive list.
+   * as a consecutive list. The descendants of items that have not been
+   * loaded from a {@link DefinitionIndex} are not visited.
    */
   private static final class TreeIterator
     implements Iterator<TreeItem<String>> {
@@ -66,7 +67,10 @@ public final class TreeItemMapper {
     @Override
     public TreeItem<String> next() {
       final TreeItem<String> next = mStack.pop();
-      next.getChildren().forEach( mStack::push );
+
+      if( !IndexedTreeItem.isUnloaded( next ) ) {
+        next.getChildren().forEach( mStack::push );
+      }
 
       return next;
     }
@@ -77,16 +81,20 @@ public final class TreeItemMapper {
 
   /**
    * Iterate over a given root node (at any level of the tree) and process each
-   * leaf node into a flat map. Values must be interpolated separately.
+   * leaf node into a flat map. Values must be interpolated separately. The
+   * map iterates in the order that the leaves were visited.
    */
   public Map<String, String> toMap( final TreeItem<String> root ) {
-    final var map = new HashMap<String, String>( MAP_SIZE_DEFAULT );
+    final var map = new LinkedHashMap<String, String>( MAP_SIZE_DEFAULT );
     final var iterator = new TreeIterator( root );
 
     iterator.forEachRemaining( item -> {
       if( item.isLeaf() ) {
         map.put( toPath( item.getParent() ), item.getValue() );
       }
+      else if( IndexedTreeItem.isUnloaded( item ) ) {
+        ((IndexedTreeItem) item).toMap( toPath( item ), map );
+      }
     } );
 
     return map;
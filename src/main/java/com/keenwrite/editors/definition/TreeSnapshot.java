@@ -0,0 +1,106 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import javafx.scene.control.TreeItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.keenwrite.editors.definition.DefinitionIndex.NONE;
+
+/**
+ * Immutable copy of a {@link TreeItem} hierarchy. Copying the tree on the
+ * JavaFX thread is cheap compared to serializing it, which allows the
+ * definitions to be serialized and written by a background thread while the
+ * user continues editing the tree. Branches that were never loaded from a
+ * {@link DefinitionIndex} are not copied; their children are read from the
+ * (immutable) index when requested.
+ */
+public final class TreeSnapshot {
+  private final String mValue;
+  private final List<TreeSnapshot> mChildren;
+  private final DefinitionIndex mIndex;
+  private final int mNode;
+
+  private TreeSnapshot(
+    final String value, final List<TreeSnapshot> children ) {
+    mValue = value;
+    mChildren = children;
+    mIndex = null;
+    mNode = NONE;
+  }
+
+  /**
+   * Creates a snapshot of a node in the given index.
+   *
+   * @param index The index containing the node's descendants.
+   * @param node  The offset of the node in the index.
+   */
+  TreeSnapshot( final DefinitionIndex index, final int node ) {
+    mValue = index.getValue( node );
+    mChildren = null;
+    mIndex = index;
+    mNode = node;
+  }
+
+  /**
+   * Copies the given item and all its descendants. This must be called on
+   * the thread that modifies the tree (usually the JavaFX thread).
+   *
+   * @param item The item to copy.
+   * @return An immutable copy of the item's hierarchy.
+   */
+  public static TreeSnapshot of( final TreeItem<String> item ) {
+    if( IndexedTreeItem.isUnloaded( item ) ) {
+      final var indexed = (IndexedTreeItem) item;
+
+      // The value may have been renamed, so take it from the item.
+      return new TreeSnapshot(
+        item.getValue(), indexed.toSnapshot().getChildren() );
+    }
+
+    final var items = item.getChildren();
+    final var children = new ArrayList<TreeSnapshot>( items.size() );
+
+    for( final var child : items ) {
+      children.add( of( child ) );
+    }
+
+    return new TreeSnapshot( item.getValue(), List.copyOf( children ) );
+  }
+
+  public String getValue() {
+    return mValue;
+  }
+
+  /**
+   * Returns the children of this node. For nodes read from an index, the
+   * list is created upon each call.
+   *
+   * @return The immutable list of children, possibly empty.
+   */
+  public List<TreeSnapshot> getChildren() {
+    if( mIndex == null ) {
+      return mChildren;
+    }
+
+    final var children = new ArrayList<TreeSnapshot>();
+
+    for( int c = mIndex.getFirstChild( mNode ); c != NONE;
+         c = mIndex.getNextSibling( c ) ) {
+      children.add( new TreeSnapshot( mIndex, c ) );
+    }
+
+    return List.copyOf( children );
+  }
+
+  /**
+   * Answers whether this node has no children, which mirrors
+   * {@link TreeItem#isLeaf()}.
+   *
+   * @return {@code true} when this node has no children.
+   */
+  public boolean isLeaf() {
+    return mIndex == null ? mChildren.isEmpty() : mIndex.isLeaf( mNode );
+  }
+}
@@ -3,6 +3,9 @@ package com.keenwrite.editors.definition;
 
 import javafx.scene.control.TreeItem;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * Responsible for converting an object hierarchy into a {@link TreeItem}
  * hierarchy.
@@ -23,4 +26,14 @@ public interface TreeTransformer {
    * @param root The root node to export.
    */
   String transform( TreeItem<String> root );
+
+  /**
+   * Streams the given snapshot to the given writer, without first building
+   * the entire document in memory. This may be called from any thread.
+   *
+   * @param root   The root node to export, which is not itself exported.
+   * @param writer Receives the exported document.
+   * @throws IOException Could not write the document.
+   */
+  void transform( TreeSnapshot root, Writer writer ) throws IOException;
 }
@@ -1,35 +1,40 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.editors.definition.yaml;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
-import com.keenwrite.editors.definition.DefinitionTreeItem;
+import com.keenwrite.editors.definition.DefinitionIndex;
+import com.keenwrite.editors.definition.TreeSnapshot;
 import com.keenwrite.editors.definition.TreeTransformer;
 import javafx.scene.control.TreeItem;
-import javafx.scene.control.TreeView;
 
-import java.util.Map.Entry;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
 
+import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
 import static com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature.MINIMIZE_QUOTES;
 import static com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature.SPLIT_LINES;
+import static com.keenwrite.editors.definition.DefinitionIndex.ROOT;
 import static com.keenwrite.events.StatusEvent.clue;
 
 /**
- * Transforms a JsonNode hierarchy into a tree that can be displayed in a user
+ * Transforms a YAML document into a tree that can be displayed in a user
  * interface and vice-versa.
  */
 public final class YamlTreeTransformer implements TreeTransformer {
   private static final YAMLFactory sFactory;
-  private static final YAMLMapper sMapper;
 
   static {
     sFactory = new YAMLFactory();
     sFactory.configure( MINIMIZE_QUOTES, true );
     sFactory.configure( SPLIT_LINES, false );
-    sMapper = new YAMLMapper( sFactory );
   }
 
   /**
@@ -42,119 +47,132 @@ public final class YamlTreeTransformer implements TreeTransformer {
   @Override
   public String transform( final TreeItem<String> treeItem ) {
     try {
-      final var root = sMapper.createObjectNode();
+      final var writer = new StringWriter( 32768 );
+      transform( TreeSnapshot.of( treeItem ), writer );
+      return writer.toString();
+    } catch( final Exception ex ) {
+      clue( ex );
+      throw new RuntimeException( ex );
+    }
+  }
+
+  @Override
+  public void transform( final TreeSnapshot root, final Writer writer )
+    throws IOException {
+    try( final var generator = sFactory.createGenerator( writer ) ) {
+      generator.writeStartObject();
 
       // Iterate over the root item's children. The root item is used by the
       // application to ensure definitions can always be added to a tree, as
       // such it is not meant to be exported, only its children.
-      for( final var child : treeItem.getChildren() ) {
-        transform( child, root );
+      for( final var child : root.getChildren() ) {
+        transform( child, generator );
       }
 
-      return sMapper.writeValueAsString( root );
-    } catch( final Exception ex ) {
-      clue( ex );
-      throw new RuntimeException( ex );
+      generator.writeEndObject();
     }
   }
 
   /**
    * Converts a YAML document to a {@link TreeItem} based on the document
-   * keys.
+   * keys. The document is streamed into a {@link DefinitionIndex}; tree items
+   * are created from the index as branches are expanded.
    *
    * @param document The YAML document to convert to a hierarchy of
    *                 {@link TreeItem} instances.
-   * @throws StackOverflowError If infinite recursion is encountered.
    */
   @Override
   public TreeItem<String> transform( final String document ) {
-    final var jsonNode = toJson( document );
-    final var rootItem = createTreeItem( "root" );
+    return toIndex( document ).createTreeItem();
+  }
 
-    transform( jsonNode, rootItem );
+  private DefinitionIndex toIndex( final String yaml ) {
+    try( final var parser = sFactory.createParser( yaml ) ) {
+      final var builder = DefinitionIndex.builder( "root" );
 
-    return rootItem;
-  }
+      if( parser.nextToken() == START_OBJECT ) {
+        transform( parser, builder );
+      }
 
-  private JsonNode toJson( final String yaml ) {
-    try {
-      return new ObjectMapper( sFactory ).readTree( yaml );
+      return builder.build();
     } catch( final Exception ex ) {
       // Ensure that a document root node exists.
-      return new ObjectMapper().createObjectNode();
+      return DefinitionIndex.builder( "root" ).build();
     }
   }
 
   /**
-   * Recursive method to generate an object hierarchy that represents the
-   * given {@link TreeItem} hierarchy.
+   * Adds the fields of the object at the parser's current position to the
+   * index. A field having a scalar value becomes a key whose only child is
+   * the value; a field having an object value becomes a key whose children
+   * are the object's fields. Arrays are not supported and become empty keys.
+   * Nested objects are tracked using an explicit stack so that deeply nested
+   * documents cannot overflow the call stack.
    *
-   * @param item The {@link TreeItem} to reproduce as an object hierarchy.
-   * @param node The {@link ObjectNode} to update to reflect the
-   *             {@link TreeItem} hierarchy.
+   * @param parser  Positioned at the start of the root object.
+   * @param builder Receives a node for every key and value.
+   * @throws IOException Could not parse the document.
    */
-  private void transform( final TreeItem<String> item, ObjectNode node ) {
-    final var children = item.getChildren();
-
-    // If the current item has more than one non-leaf child, it's an
-    // object node and must become a new nested object.
-    if( !(children.size() == 1 && children.get( 0 ).isLeaf()) ) {
-      node = node.putObject( item.getValue() );
-    }
-
-    for( final var child : children ) {
-      if( child.isLeaf() ) {
-        node.put( item.getValue(), child.getValue() );
+  private void transform(
+    final JsonParser parser, final DefinitionIndex.Builder builder )
+    throws IOException {
+    final var parents = new ArrayDeque<Integer>();
+    parents.push( ROOT );
+
+    JsonToken token;
+
+    while( !parents.isEmpty() && (token = parser.nextToken()) != null ) {
+      if( token == FIELD_NAME ) {
+        final var key = builder.addKey( parents.peek(), parser.getText() );
+        final var value = parser.nextToken();
+
+        if( value == START_OBJECT ) {
+          parents.push( key );
+        }
+        else if( value == START_ARRAY ) {
+          parser.skipChildren();
+        }
+        else {
+          builder.addValue( key, parser.getText() );
+        }
       }
-      else {
-        transform( child, node );
+      else if( token == END_OBJECT ) {
+        parents.pop();
       }
     }
   }
 
   /**
-   * Iterate over a given root node (at any level of the tree) and adapt each
-   * leaf node.
+   * Recursive method to write an object hierarchy that represents the
+   * given snapshot of a {@link TreeItem} hierarchy.
    *
-   * @param node A JSON node (YAML node) to adapt.
-   * @param item The tree item to use as the root when processing the node.
-   * @throws StackOverflowError If infinite recursion is encountered.
-   */
-  private void transform( final JsonNode node, final TreeItem<String> item ) {
-    node.fields().forEachRemaining( leaf -> transform( leaf, item ) );
-  }
-
-  /**
-   * Recursively adapt each rootNode to a corresponding rootItem.
-   *
-   * @param node The node to adapt.
-   * @param item The item to adapt using the node's key.
-   * @throws StackOverflowError If infinite recursion is encountered.
+   * @param item      The snapshot to reproduce as an object hierarchy.
+   * @param generator Writes the object hierarchy.
    */
   private void transform(
-    final Entry<String, JsonNode> node, final TreeItem<String> item ) {
-    final var leafNode = node.getValue();
-    final var key = node.getKey();
-    final var leaf = createTreeItem( key );
+    final TreeSnapshot item, final JsonGenerator generator )
+    throws IOException {
+    final var children = item.getChildren();
+    final var key = item.getValue();
 
-    if( leafNode.isValueNode() ) {
-      leaf.getChildren().add( createTreeItem( node.getValue().asText() ) );
+    // If the current item has exactly one child that is a leaf, it is a
+    // key-value pair; otherwise, it must become a new nested object.
+    if( children.size() == 1 && children.get( 0 ).isLeaf() ) {
+      generator.writeStringField( key, children.get( 0 ).getValue() );
+      return;
     }
 
-    item.getChildren().add( leaf );
+    generator.writeObjectFieldStart( key );
 
-    if( leafNode.isObject() ) {
-      transform( leafNode, leaf );
+    for( final var child : children ) {
+      if( child.isLeaf() ) {
+        generator.writeStringField( key, child.getValue() );
+      }
+      else {
+        transform( child, generator );
+      }
     }
-  }
 
-  /**
-   * Creates a new {@link TreeItem} that can be added to the {@link TreeView}.
-   *
-   * @param value The node's value.
-   * @return A new {@link TreeItem}, never {@code null}.
-   */
-  private TreeItem<String> createTreeItem( final String value ) {
-    return new DefinitionTreeItem<>( value );
+    generator.writeEndObject();
   }
 }
@@ -182,9 +182,8 @@ public final class MarkdownEditor extends BorderPane implements TextEditor {
   }
 
   private void initSpellchecker( final StyleClassedTextArea textarea ) {
-    final var speller = new TextEditorSpeller();
-    speller.checkDocument( textarea );
-    speller.checkParagraphs( textarea );
+    // The text area's listeners retain the speller.
+    new TextEditorSpeller( textarea, this::getPath );
   }
 
   private void initHotKeys() {
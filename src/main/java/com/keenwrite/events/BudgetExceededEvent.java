@@ -0,0 +1,58 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.events;
+
+/**
+ * Collates information about an expression whose evaluation was abandoned
+ * because it took too long, such as an inline R statement having an
+ * infinite loop.
+ */
+public class BudgetExceededEvent implements AppEvent {
+  private final String mExpression;
+  private final int mOffset;
+  private final long mElapsed;
+  private final long mCpuTime;
+
+  private BudgetExceededEvent(
+    final String expression,
+    final int offset,
+    final long elapsed,
+    final long cpuTime ) {
+    mExpression = expression;
+    mOffset = offset;
+    mElapsed = elapsed;
+    mCpuTime = cpuTime;
+  }
+
+  /**
+   * Publishes an event that describes an abandoned evaluation.
+   *
+   * @param expression The expression that was abandoned.
+   * @param offset     Offset of the expression in the document's source
+   *                   text, or -1 if unknown.
+   * @param elapsed    Wall-clock time spent, in nanoseconds.
+   * @param cpuTime    CPU time spent, in nanoseconds.
+   */
+  public static void fireBudgetExceededEvent(
+    final String expression,
+    final int offset,
+    final long elapsed,
+    final long cpuTime ) {
+    new BudgetExceededEvent( expression, offset, elapsed, cpuTime ).fire();
+  }
+
+  public String getExpression() {
+    return mExpression;
+  }
+
+  public int getOffset() {
+    return mOffset;
+  }
+
+  public long getElapsed() {
+    return mElapsed;
+  }
+
+  public long getCpuTime() {
+    return mCpuTime;
+  }
+}
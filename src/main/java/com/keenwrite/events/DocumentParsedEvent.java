@@ -0,0 +1,33 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.events;
+
+import com.keenwrite.processors.DocumentSnapshot;
+
+/**
+ * Collates information about a document that has been parsed for the
+ * preview. Subscribers should use an asynchronous thread mode so that
+ * analysing the snapshot does not delay rendering the preview.
+ */
+public class DocumentParsedEvent implements AppEvent {
+  private final DocumentSnapshot mSnapshot;
+
+  private DocumentParsedEvent( final DocumentSnapshot snapshot ) {
+    mSnapshot = snapshot;
+  }
+
+  /**
+   * Publishes an event that shares a parsed document with all views that
+   * derive information from it.
+   *
+   * @param snapshot The immutable result of parsing the document.
+   */
+  public static void fireDocumentParsedEvent(
+    final DocumentSnapshot snapshot ) {
+    assert snapshot != null;
+    new DocumentParsedEvent( snapshot ).fire();
+  }
+
+  public DocumentSnapshot getSnapshot() {
+    return mSnapshot;
+  }
+}
@@ -0,0 +1,30 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.events;
+
+/**
+ * Collates information about a request to find every document that uses a
+ * definition, which is typically triggered from the definition editor.
+ */
+public class FindUsagesEvent implements AppEvent {
+  /**
+   * Definition key name, without sigils (e.g., {@code a.b.c}).
+   */
+  private final String mKey;
+
+  private FindUsagesEvent( final String key ) {
+    mKey = key;
+  }
+
+  /**
+   * Publishes an event that requests the usages of the given definition.
+   *
+   * @param key The definition's key name, without sigils.
+   */
+  public static void fireFindUsagesEvent( final String key ) {
+    new FindUsagesEvent( key ).fire();
+  }
+
+  public String getKey() {
+    return mKey;
+  }
+}
@@ -187,6 +187,12 @@ public final class PreferencesController {
           Setting.of( label( KEY_EDITOR_AUTOSAVE ) ),
           Setting.of( title( KEY_EDITOR_AUTOSAVE ),
                       integerProperty( KEY_EDITOR_AUTOSAVE ) )
+        ),
+        Group.of(
+          get( KEY_EDITOR_DEBOUNCE ),
+          Setting.of( label( KEY_EDITOR_DEBOUNCE ) ),
+          Setting.of( title( KEY_EDITOR_DEBOUNCE ),
+                      integerProperty( KEY_EDITOR_DEBOUNCE ) )
         )
       ),
       Category.of(
@@ -215,6 +221,24 @@ public final class PreferencesController {
           Setting.of( label( KEY_R_DELIM_ENDED ) ),
           Setting.of( title( KEY_R_DELIM_ENDED ),
                       stringProperty( KEY_R_DELIM_ENDED ) )
+        ),
+        Group.of(
+          get( KEY_R_SESSIONS ),
+          Setting.of( label( KEY_R_SESSIONS ) ),
+          Setting.of( title( KEY_R_SESSIONS ),
+                      integerProperty( KEY_R_SESSIONS ) )
+        ),
+        Group.of(
+          get( KEY_R_BUDGET_ELAPSED ),
+          Setting.of( label( KEY_R_BUDGET_ELAPSED ) ),
+          Setting.of( title( KEY_R_BUDGET_ELAPSED ),
+                      integerProperty( KEY_R_BUDGET_ELAPSED ) )
+        ),
+        Group.of(
+          get( KEY_R_BUDGET_CPU ),
+          Setting.of( label( KEY_R_BUDGET_CPU ) ),
+          Setting.of( title( KEY_R_BUDGET_CPU ),
+                      integerProperty( KEY_R_BUDGET_CPU ) )
         )
       ),
       Category.of(
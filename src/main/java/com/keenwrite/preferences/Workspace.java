@@ -80,11 +80,15 @@ public final class Workspace {
     entry( KEY_DOC_DATE, asStringProperty( getDate() ) ),
 
     entry( KEY_EDITOR_AUTOSAVE, asIntegerProperty( 30 ) ),
+    entry( KEY_EDITOR_DEBOUNCE, asIntegerProperty( 50 ) ),
 
     entry( KEY_R_SCRIPT, asStringProperty( "" ) ),
     entry( KEY_R_DIR, asFileProperty( USER_DIRECTORY ) ),
     entry( KEY_R_DELIM_BEGAN, asStringProperty( R_DELIM_BEGAN_DEFAULT ) ),
     entry( KEY_R_DELIM_ENDED, asStringProperty( R_DELIM_ENDED_DEFAULT ) ),
+    entry( KEY_R_SESSIONS, asIntegerProperty( 2 ) ),
+    entry( KEY_R_BUDGET_ELAPSED, asIntegerProperty( 5000 ) ),
+    entry( KEY_R_BUDGET_CPU, asIntegerProperty( 3000 ) ),
 
     entry( KEY_IMAGES_DIR, asFileProperty( USER_DIRECTORY ) ),
     entry( KEY_IMAGES_ORDER, asStringProperty( PERSIST_IMAGES_DEFAULT ) ),
@@ -132,7 +136,6 @@ public final class Workspace {
     return new SimpleStringProperty( defaultValue );
   }
 
-  @SuppressWarnings( "SameParameterValue" )
   private IntegerProperty asIntegerProperty( final int defaultValue ) {
     return new SimpleIntegerProperty( defaultValue );
   }
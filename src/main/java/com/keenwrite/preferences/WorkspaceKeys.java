@@ -28,6 +28,7 @@ public final class WorkspaceKeys {
 
   public static final Key KEY_EDITOR = key( KEY_ROOT, "editor" );
   public static final Key KEY_EDITOR_AUTOSAVE = key( KEY_EDITOR, "autosave" );
+  public static final Key KEY_EDITOR_DEBOUNCE = key( KEY_EDITOR, "debounce" );
 
   public static final Key KEY_R = key( KEY_ROOT, "r" );
   public static final Key KEY_R_SCRIPT = key( KEY_R, "script" );
@@ -35,6 +36,10 @@ public final class WorkspaceKeys {
   public static final Key KEY_R_DELIM = key( KEY_R, "delimiter" );
   public static final Key KEY_R_DELIM_BEGAN = key( KEY_R_DELIM, "began" );
   public static final Key KEY_R_DELIM_ENDED = key( KEY_R_DELIM, "ended" );
+  public static final Key KEY_R_SESSIONS = key( KEY_R, "sessions" );
+  public static final Key KEY_R_BUDGET = key( KEY_R, "budget" );
+  public static final Key KEY_R_BUDGET_ELAPSED = key( KEY_R_BUDGET, "elapsed" );
+  public static final Key KEY_R_BUDGET_CPU = key( KEY_R_BUDGET, "cpu" );
 
   public static final Key KEY_IMAGES = key( KEY_ROOT, "images" );
   public static final Key KEY_IMAGES_DIR = key( KEY_IMAGES, "dir" );
@@ -5,6 +5,7 @@ import com.keenwrite.dom.DocumentConverter;
 import com.keenwrite.ui.adapters.DocumentAdapter;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import org.w3c.dom.Document;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.simple.XHTMLPanel;
@@ -17,7 +18,10 @@ import org.xhtmlrenderer.swing.LinkListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.net.URI;
+import java.util.Objects;
 
+import static com.keenwrite.dom.DocumentPatcher.PATCH_FAILED;
+import static com.keenwrite.dom.DocumentPatcher.patch;
 import static com.keenwrite.events.DocumentChangedEvent.fireDocumentChangedEvent;
 import static com.keenwrite.events.FileOpenEvent.fireFileOpenEvent;
 import static com.keenwrite.events.HyperlinkOpenEvent.fireHyperlinkOpenEvent;
@@ -87,6 +91,11 @@ public final class HtmlPanel extends XHTMLPanel {
   private static final DocumentConverter CONVERTER = new DocumentConverter();
   private static final XhtmlNamespaceHandler XNH = new XhtmlNamespaceHandler();
 
+  /**
+   * Forces the next render to replace the document instead of patching it.
+   */
+  private volatile boolean mReload;
+
   public HtmlPanel() {
     addDocumentListener( new DocumentEventHandler() );
     removeMouseTrackingListeners();
@@ -96,7 +105,10 @@ public final class HtmlPanel extends XHTMLPanel {
 
   /**
    * Updates the document model displayed by the renderer. Effectively, this
-   * updates the HTML document to provide new content.
+   * updates the HTML document to provide new content. When only the body's
+   * blocks differ from the displayed document, the displayed document is
+   * patched in place and laid out again, which reuses the styles matched to
+   * unchanged elements; otherwise, the document is replaced.
    *
    * @param html    A complete HTML5 document, including doctype.
    * @param baseUri URI to use for finding relative files, such as images.
@@ -104,7 +116,7 @@ public final class HtmlPanel extends XHTMLPanel {
   public void render( final String html, final String baseUri ) {
     final var soup = parse( html );
     final var doc = CONVERTER.fromJsoup( soup );
-    final Runnable renderDocument = () -> setDocument( doc, baseUri, XNH );
+    final Runnable renderDocument = () -> update( doc, baseUri );
     doc.setDocumentURI( baseUri );
 
     // Access to a Swing component must occur from the Event Dispatch
@@ -122,6 +134,39 @@ public final class HtmlPanel extends XHTMLPanel {
     fireDocumentChangedEvent( soup );
   }
 
+  /**
+   * Patches the displayed document to match the given document, falling
+   * back to replacing the displayed document. This must be called on the
+   * EDT.
+   *
+   * @param doc     The document to display.
+   * @param baseUri URI to use for finding relative files, such as images.
+   */
+  private void update( final Document doc, final String baseUri ) {
+    final var live = getDocument();
+    final var context = getSharedContext();
+    final var patched = live != null && !mReload &&
+      Objects.equals( live.getDocumentURI(), baseUri )
+      ? patch( live, doc, context::removeElementReferences )
+      : PATCH_FAILED;
+
+    if( patched == PATCH_FAILED ) {
+      mReload = false;
+      setDocument( doc, baseUri, XNH );
+    }
+    else if( patched > 0 ) {
+      relayout();
+    }
+  }
+
+  /**
+   * Requests that the next call to {@link #render(String, String)} replaces
+   * the document, so that every element (e.g., images) is loaded again.
+   */
+  public void reload() {
+    mReload = true;
+  }
+
   /**
    * Delegates to the {@link SharedContext}.
    *
@@ -175,6 +175,7 @@ public final class HtmlPreview extends SwingNode implements ComponentListener {
    */
   public void refresh() {
     mFactory.clearCache();
+    mView.reload();
     rerender();
   }
 
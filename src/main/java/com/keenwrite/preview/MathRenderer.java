@@ -33,12 +33,13 @@ public final class MathRenderer {
   }
 
   /**
-   * This method only takes a few seconds to generate
+   * This method only takes a few seconds to generate. Calls are serialized
+   * because every formula is drawn using the same graphics context.
    *
    * @param equation A mathematical expression to render.
    * @return The given string with all formulas transformed into SVG format.
    */
-  public Document render( final String equation ) {
+  public synchronized Document render( final String equation ) {
     final var formula = new TeXFormula( equation );
     final var box = formula.createBox( mEnvironment );
     final var l = new TeXLayout( box, FONT_SIZE );
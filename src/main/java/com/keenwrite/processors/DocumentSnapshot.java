@@ -0,0 +1,206 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Responsible for retaining the information that views derive from a parsed
+ * document, such as its headings and the runs of prose to spell check. A
+ * snapshot is created once per revision while processing the document, then
+ * shared with every view. Snapshots are immutable, so views may read them
+ * from any thread.
+ */
+public final class DocumentSnapshot {
+  private static final AtomicLong sRevision = new AtomicLong();
+
+  private final long mRevision = sRevision.incrementAndGet();
+  private final Path mPath;
+  private final String mText;
+  private final String mPlainText;
+  private final List<Heading> mHeadings;
+  private final List<Segment> mSegments;
+
+  /**
+   * Creates a snapshot of a parsed document.
+   *
+   * @param path      The document's location on disk.
+   * @param text      The source text that was parsed.
+   * @param plainText The prose having all markup removed and all variables
+   *                  substituted.
+   * @param headings  The document's headings, in document order.
+   * @param segments  Runs of prose within the source text, in document order.
+   */
+  public DocumentSnapshot(
+    final Path path,
+    final String text,
+    final String plainText,
+    final List<Heading> headings,
+    final List<Segment> segments ) {
+    assert text != null;
+    assert plainText != null;
+
+    mPath = path;
+    mText = text;
+    mPlainText = plainText;
+    mHeadings = List.copyOf( headings );
+    mSegments = List.copyOf( segments );
+  }
+
+  /**
+   * Creates a snapshot of a document that has no markup, so the entire text
+   * is prose and there are no headings.
+   *
+   * @param path The document's location on disk.
+   * @param text The document's text.
+   * @return A snapshot of the given text.
+   */
+  public static DocumentSnapshot of( final Path path, final String text ) {
+    return new DocumentSnapshot(
+      path, text, text, List.of(),
+      text.isEmpty()
+        ? List.of()
+        : List.of( new Segment( text, 0, text.length() ) ) );
+  }
+
+  /**
+   * Returns a number that increases with each snapshot, so that views
+   * updated from different threads can ignore older snapshots.
+   *
+   * @return A value greater than all previously created snapshots.
+   */
+  public long getRevision() {
+    return mRevision;
+  }
+
+  public Path getPath() {
+    return mPath;
+  }
+
+  /**
+   * Returns the source text that was parsed, which may be compared against
+   * the editor's text to determine whether the snapshot is out of date.
+   *
+   * @return The source text, never {@code null}.
+   */
+  public String getText() {
+    return mText;
+  }
+
+  /**
+   * Returns the document's prose without markup, having variables
+   * substituted, which is suitable for counting words.
+   *
+   * @return The plain text, never {@code null}.
+   */
+  public String getPlainText() {
+    return mPlainText;
+  }
+
+  public List<Heading> getHeadings() {
+    return mHeadings;
+  }
+
+  public List<Segment> getSegments() {
+    return mSegments;
+  }
+
+  /**
+   * Represents a document heading, having variables substituted.
+   */
+  public static final class Heading {
+    private final int mLevel;
+    private final String mText;
+    private final int mOffset;
+
+    /**
+     * Creates a heading for the document outline.
+     *
+     * @param level  A value between 1 and 6.
+     * @param text   The heading text (parsed and processed).
+     * @param offset Absolute offset into document where heading is found.
+     */
+    public Heading( final int level, final String text, final int offset ) {
+      assert text != null;
+      assert 1 <= level && level <= 6;
+      assert 0 <= offset;
+
+      mLevel = level;
+      mText = text;
+      mOffset = offset;
+    }
+
+    public int getLevel() {
+      return mLevel;
+    }
+
+    public String getText() {
+      return mText;
+    }
+
+    /**
+     * Returns an offset into the document where the heading is found.
+     *
+     * @return A zero-based document offset.
+     */
+    public int getOffset() {
+      return mOffset;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      return o instanceof Heading h &&
+        mLevel == h.mLevel && mOffset == h.mOffset && mText.equals( h.mText );
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash( mLevel, mText, mOffset );
+    }
+
+    @Override
+    public String toString() {
+      return getText();
+    }
+  }
+
+  /**
+   * Represents a run of prose within the source text, such as the text
+   * between emphasis markers in a paragraph.
+   */
+  public static final class Segment {
+    private final String mText;
+    private final int mBegan;
+    private final int mEnded;
+
+    /**
+     * Creates a run of prose found in the source text.
+     *
+     * @param text  The prose, as found in the source text.
+     * @param began Offset into the source text where the prose starts.
+     * @param ended Offset into the source text where the prose stops.
+     */
+    public Segment( final String text, final int began, final int ended ) {
+      assert text != null;
+      assert 0 <= began && began <= ended;
+
+      mText = text;
+      mBegan = began;
+      mEnded = ended;
+    }
+
+    public String getText() {
+      return mText;
+    }
+
+    public int getBegan() {
+      return mBegan;
+    }
+
+    public int getEnded() {
+      return mEnded;
+    }
+  }
+}
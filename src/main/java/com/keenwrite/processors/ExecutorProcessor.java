@@ -1,9 +1,14 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.processors;
 
+import com.keenwrite.processors.metrics.ProcessorMetrics;
+
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.keenwrite.processors.RenderScheduler.checkSuperseded;
+import static com.keenwrite.processors.metrics.ProcessorMetrics.METRICS;
+
 /**
  * Responsible for transforming data through a variety of chained handlers.
  *
@@ -30,7 +35,9 @@ public class ExecutorProcessor<T> implements Processor<T> {
   }
 
   /**
-   * Calls every link in the chain to process the given data.
+   * Calls every link in the chain to process the given data. Each link is
+   * measured when {@link ProcessorMetrics} are enabled. Processing stops
+   * before the next link when a newer render has been requested.
    *
    * @param data The data to transform.
    * @return The data after processing by every link in the chain.
@@ -43,7 +50,10 @@ public class ExecutorProcessor<T> implements Processor<T> {
 
     while( handler.isPresent() ) {
       handler = handler.flatMap( p -> {
-        result.set( p.apply( result.get() ) );
+        checkSuperseded();
+        result.set( METRICS.isEnabled()
+                      ? METRICS.apply( p, result.get() )
+                      : p.apply( result.get() ) );
         return p.next();
       } );
     }
@@ -3,6 +3,8 @@ package com.keenwrite.processors;
 
 import com.keenwrite.preview.HtmlPreview;
 
+import static com.keenwrite.processors.RenderScheduler.isSuperseded;
+
 /**
  * Responsible for notifying the {@link HtmlPreview} when the succession
  * chain has updated. This decouples knowledge of changes to the editor panel
@@ -26,7 +28,9 @@ public final class HtmlPreviewProcessor extends ExecutorProcessor<String> {
   }
 
   /**
-   * Update the preview panel using HTML from the succession chain.
+   * Update the preview panel using HTML from the succession chain. If a
+   * newer request to render the document has been made while this
+   * document was being processed, the preview panel is left untouched.
    *
    * @param html The document content to render in the preview pane. The HTML
    *             should not contain a doctype, head, or body tag.
@@ -36,7 +40,10 @@ public final class HtmlPreviewProcessor extends ExecutorProcessor<String> {
   public String apply( final String html ) {
     assert html != null;
 
-    getHtmlPreviewPane().render( html );
+    if( !isSuperseded() ) {
+      getHtmlPreviewPane().render( html );
+    }
+
     return html;
   }
 
@@ -1,6 +1,10 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.processors;
 
+import java.nio.file.Path;
+
+import static com.keenwrite.events.DocumentParsedEvent.fireDocumentParsedEvent;
+
 /**
  * This is the default processor used when an unknown file name extension is
  * encountered. It processes the text by enclosing it in an HTML {@code <pre>}
@@ -8,6 +12,11 @@ package com.keenwrite.processors;
  */
 public final class PreformattedProcessor extends ExecutorProcessor<String> {
 
+  /**
+   * The document's location, {@code null} when snapshots are not published.
+   */
+  private final Path mPath;
+
   /**
    * Passes the link to the super constructor.
    *
@@ -15,7 +24,22 @@ public final class PreformattedProcessor extends ExecutorProcessor<String> {
    *                  processing.
    */
   public PreformattedProcessor( final Processor<String> successor ) {
+    this( successor, null );
+  }
+
+  /**
+   * Creates a processor that publishes the text as a snapshot, so that views
+   * such as the document statistics reflect the text being previewed.
+   *
+   * @param successor The next processor in the chain to use for text
+   *                  processing.
+   * @param path      The document's location, or {@code null} to suppress
+   *                  publishing snapshots (e.g., when exporting).
+   */
+  public PreformattedProcessor(
+    final Processor<String> successor, final Path path ) {
     super( successor );
+    mPath = path;
   }
 
   /**
@@ -26,6 +50,10 @@ public final class PreformattedProcessor extends ExecutorProcessor<String> {
    */
   @Override
   public String apply( final String t ) {
+    if( mPath != null ) {
+      fireDocumentParsedEvent( DocumentSnapshot.of( mPath, t ) );
+    }
+
     return "<pre>" + t + "</pre>";
   }
 }
@@ -7,6 +7,7 @@ import com.keenwrite.constants.Constants;
 import com.keenwrite.io.FileType;
 import com.keenwrite.preferences.Workspace;
 import com.keenwrite.preview.HtmlPreview;
+import com.keenwrite.processors.text.ResolvedMap;
 
 import java.nio.file.Path;
 import java.util.Map;
@@ -32,7 +33,9 @@ public final class ProcessorContext {
    * parameters are required, not all {@link Processor} instances will use
    * all parameters.
    *
-   * @param htmlPreview  Where to display the final (HTML) output.
+   * @param htmlPreview  Where to display the final (HTML) output, may be
+   *                     {@code null} when there is no user interface (e.g.,
+   *                     batch exports and benchmarks).
    * @param resolvedMap  Fully expanded interpolated strings.
    * @param documentPath Path to the document to process.
    * @param exportPath   Fully qualified filename to use when exporting.
@@ -49,7 +52,6 @@ public final class ProcessorContext {
     final ExportFormat exportFormat,
     final Workspace workspace,
     final Caret caret ) {
-    assert htmlPreview != null;
     assert resolvedMap != null;
     assert documentPath != null;
     assert exportFormat != null;
@@ -82,6 +84,34 @@ public final class ProcessorContext {
     return mResolvedMap;
   }
 
+  /**
+   * Returns a value that changes whenever the resolved definitions change,
+   * which allows results that depend on the definitions to be cached.
+   *
+   * @return The version of a {@link ResolvedMap}, otherwise a value derived
+   * from the contents of the resolved map.
+   */
+  public int getDefinitionsVersion() {
+    return mResolvedMap instanceof ResolvedMap resolved
+      ? resolved.getVersion()
+      : mResolvedMap.hashCode();
+  }
+
+  /**
+   * Returns the definitions that changed since the given version of the
+   * resolved definitions.
+   *
+   * @param version A value previously returned by
+   *                {@link #getDefinitionsVersion()}.
+   * @return The changed definitions, with removed definitions mapped to
+   * {@code null}, or {@code null} if the changes are not known.
+   */
+  public Map<String, String> getDefinitionChanges( final int version ) {
+    return mResolvedMap instanceof ResolvedMap resolved
+      ? resolved.snapshot().getChanges( version )
+      : null;
+  }
+
   /**
    * Fully qualified file name to use when exporting (e.g., document.pdf).
    *
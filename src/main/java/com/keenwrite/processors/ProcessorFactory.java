@@ -82,13 +82,16 @@ public final class ProcessorFactory extends AbstractFileFactory {
   /**
    * Instantiates a new {@link Processor} that passes an incoming HTML
    * string to a user interface widget that can render HTML as a web page.
+   * Without a preview pane (e.g., when benchmarking), the HTML is returned
+   * unchanged.
    *
    * @return An instance of {@link Processor} that forwards HTML for display.
    */
   @SuppressWarnings( "unused" )
   private Processor<String> createHtmlPreviewProcessor(
     final ProcessorContext ignored ) {
-    return new HtmlPreviewProcessor( getPreviewPane() );
+    final var preview = getPreviewPane();
+    return preview == null ? IDENTITY : new HtmlPreviewProcessor( preview );
   }
 
   /**
@@ -135,7 +138,12 @@ public final class ProcessorFactory extends AbstractFileFactory {
 
   private Processor<String> createPreformattedProcessor(
     final Processor<String> successor ) {
-    return new PreformattedProcessor( successor );
+    final var context = getProcessorContext();
+    final var path = context.isExportFormat( NONE )
+      ? context.getDocumentPath()
+      : null;
+
+    return new PreformattedProcessor( successor, path );
   }
 
   private ProcessorContext getProcessorContext() {
@@ -0,0 +1,270 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import static com.keenwrite.events.StatusEvent.clue;
+import static java.lang.Math.max;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Responsible for coalescing requests to render documents in the preview
+ * pane. Each request is associated with a key (typically the text editor
+ * whose contents are to be rendered). A request for a given key supersedes
+ * any request for the same key that has not yet started running, so that
+ * the preview never falls more than one render behind the text editor.
+ * <p>
+ * Requests are delayed by a debounce window, which allows bursts of
+ * keystrokes to collapse into a single render. Every request is tagged with
+ * a per-key generation number; a render that is still running when a newer
+ * request arrives is considered stale, which the final link in the
+ * processing chain can detect by calling {@link #isSuperseded()}.
+ * </p>
+ * <p>
+ * Long-running processors call {@link #checkSuperseded()} to abandon a
+ * stale render part way through, so that the newer request can start
+ * without waiting for work whose results would be discarded.
+ * </p>
+ */
+public final class RenderScheduler {
+  /**
+   * Tracks the request that the scheduler's thread is running, if any.
+   */
+  private static final ThreadLocal<Request> sActive = new ThreadLocal<>();
+
+  /**
+   * Renders documents one at a time, in order of submission.
+   */
+  private final ScheduledExecutorService mExecutor =
+    newSingleThreadScheduledExecutor( runnable -> {
+      final var thread = new Thread( runnable, "render-scheduler" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+
+  /**
+   * Maps keys to their generation and pending (not yet started) request.
+   */
+  private final Map<Object, Slot> mSlots = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the number of milliseconds to wait before running a request.
+   */
+  private final IntSupplier mDebounce;
+
+  private final AtomicLong mSubmitted = new AtomicLong();
+  private final AtomicLong mRendered = new AtomicLong();
+  private final AtomicLong mDropped = new AtomicLong();
+  private final AtomicInteger mQueueDepth = new AtomicInteger();
+  private final AtomicInteger mQueueDepthPeak = new AtomicInteger();
+
+  /**
+   * Creates a new scheduler that waits the given number of milliseconds
+   * before running the most recent request for any given key.
+   *
+   * @param debounce Provides the debounce window, in milliseconds; values
+   *                 less than one mean no delay.
+   */
+  public RenderScheduler( final IntSupplier debounce ) {
+    assert debounce != null;
+
+    mDebounce = debounce;
+  }
+
+  /**
+   * Requests that the given task be run after the debounce window elapses.
+   * Any request for the same key that has not yet started is discarded.
+   *
+   * @param key  Identifies the source of the request (e.g., a text editor),
+   *             may be {@code null}.
+   * @param task The rendering work to perform.
+   */
+  public void schedule( final Object key, final Runnable task ) {
+    assert task != null;
+
+    final var slot = mSlots.computeIfAbsent( toKey( key ), k -> new Slot() );
+
+    mSubmitted.incrementAndGet();
+
+    synchronized( slot ) {
+      final var pending = slot.mPending;
+      final var request = new Request( slot, task );
+
+      if( pending != null && pending.mFuture.cancel( false ) ) {
+        mDropped.incrementAndGet();
+        mQueueDepth.decrementAndGet();
+      }
+
+      slot.mPending = request;
+      mQueueDepthPeak.accumulateAndGet(
+        mQueueDepth.incrementAndGet(), Math::max );
+      request.mFuture = mExecutor.schedule(
+        request, max( 0, mDebounce.getAsInt() ), MILLISECONDS );
+    }
+  }
+
+  /**
+   * Answers whether the request being run by the calling thread has been
+   * replaced by a newer request for the same key. Processors call this
+   * immediately before publishing results so that stale output is dropped.
+   * Calling this from a thread not managed by a {@link RenderScheduler}
+   * always returns {@code false}.
+   *
+   * @return {@code true} when the results from the current request must
+   * be discarded.
+   */
+  public static boolean isSuperseded() {
+    final var request = sActive.get();
+
+    if( request != null && request.isStale() ) {
+      request.mDiscarded = true;
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Stops the request being run by the calling thread if it has been
+   * replaced by a newer request for the same key. Processors call this
+   * between units of work (e.g., before evaluating each R statement). The
+   * scheduler discards the abandoned request without reporting an error.
+   * Calling this from a thread not managed by a {@link RenderScheduler}
+   * has no effect, so exports always run to completion.
+   *
+   * @throws CancellationException The current request is stale.
+   */
+  public static void checkSuperseded() {
+    if( isSuperseded() ) {
+      throw new CancellationException();
+    }
+  }
+
+  /**
+   * Returns the number of requests waiting to run.
+   *
+   * @return The number of pending requests, across all keys.
+   */
+  public int getQueueDepth() {
+    return mQueueDepth.get();
+  }
+
+  /**
+   * Returns the largest number of requests that were waiting to run at once.
+   *
+   * @return The high-water mark for pending requests.
+   */
+  public int getQueueDepthPeak() {
+    return mQueueDepthPeak.get();
+  }
+
+  /**
+   * Returns the number of requests that were either superseded while
+   * waiting or whose results were discarded for being stale.
+   *
+   * @return The number of renders that did not reach the preview.
+   */
+  public long getDroppedCount() {
+    return mDropped.get();
+  }
+
+  /**
+   * Returns the number of requests whose results were published.
+   *
+   * @return The number of renders that reached the preview.
+   */
+  public long getRenderedCount() {
+    return mRendered.get();
+  }
+
+  /**
+   * Returns the total number of requests made.
+   *
+   * @return The number of times {@link #schedule(Object, Runnable)} was
+   * called.
+   */
+  public long getSubmittedCount() {
+    return mSubmitted.get();
+  }
+
+  /**
+   * Stops accepting requests and discards any pending requests.
+   */
+  public void shutdown() {
+    mExecutor.shutdownNow();
+  }
+
+  private Object toKey( final Object key ) {
+    return key == null ? this : key;
+  }
+
+  /**
+   * Holds the generation counter and pending request for a single key.
+   */
+  private static final class Slot {
+    private final AtomicLong mGeneration = new AtomicLong();
+    private Request mPending;
+  }
+
+  /**
+   * Associates a unit of rendering work with the generation at which it
+   * was requested.
+   */
+  private final class Request implements Runnable {
+    private final Slot mSlot;
+    private final Runnable mTask;
+    private final long mGeneration;
+    private ScheduledFuture<?> mFuture;
+    private volatile boolean mDiscarded;
+
+    private Request( final Slot slot, final Runnable task ) {
+      mSlot = slot;
+      mTask = task;
+      mGeneration = slot.mGeneration.incrementAndGet();
+    }
+
+    @Override
+    public void run() {
+      synchronized( mSlot ) {
+        if( mSlot.mPending != this ) {
+          return;
+        }
+
+        mSlot.mPending = null;
+        mQueueDepth.decrementAndGet();
+      }
+
+      sActive.set( this );
+
+      try {
+        mTask.run();
+      } catch( final CancellationException ex ) {
+        // A newer request will render the document.
+        mDiscarded = true;
+      } catch( final Exception ex ) {
+        clue( ex );
+      } finally {
+        sActive.remove();
+      }
+
+      if( mDiscarded ) {
+        mDropped.incrementAndGet();
+      }
+      else {
+        mRendered.incrementAndGet();
+      }
+    }
+
+    private boolean isStale() {
+      return mGeneration != mSlot.mGeneration.get();
+    }
+  }
+}
@@ -10,8 +10,8 @@ import com.vladsch.flexmark.ext.definition.DefinitionExtension;
 import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughSubscriptExtension;
 import com.vladsch.flexmark.ext.superscript.SuperscriptExtension;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
-import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
 import com.vladsch.flexmark.util.ast.IParse;
 import com.vladsch.flexmark.util.ast.IRender;
 import com.vladsch.flexmark.util.ast.Node;
@@ -20,6 +20,9 @@ import com.vladsch.flexmark.util.misc.Extension;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.acquire;
+
 /**
  * Responsible for parsing and rendering Markdown into HTML. This is required
  * to break a circular dependency between the {@link MarkdownProcessor} and
@@ -27,17 +30,44 @@ import java.util.List;
  */
 public class BaseMarkdownProcessor extends ExecutorProcessor<String> {
 
-  private final IParse mParser;
-  private final IRender mRenderer;
+  private final ProcessorContext mContext;
+  private final Processor<String> mProcessor;
+  private final MarkdownConfiguration mConfiguration;
 
   public BaseMarkdownProcessor(
     final Processor<String> successor, final ProcessorContext context ) {
+    this( successor, context, IDENTITY );
+  }
+
+  /**
+   * Creates a processor that uses the parser and renderer shared by all
+   * documents having the same extensions.
+   *
+   * @param successor The next processor in the chain.
+   * @param context   The document's context, made available to extensions.
+   * @param processor Substitutes variables in text passed to extensions.
+   */
+  BaseMarkdownProcessor(
+    final Processor<String> successor,
+    final ProcessorContext context,
+    final Processor<String> processor ) {
     super( successor );
 
-    final var builder = Parser.builder();
-    final var extensions = createExtensions( context );
-    mParser = builder.extensions( extensions ).build();
-    mRenderer = HtmlRenderer.builder().extensions( extensions ).build();
+    mContext = context;
+    mProcessor = processor;
+    mConfiguration = configure( context );
+  }
+
+  /**
+   * Returns the parser and renderer for the extensions used by this
+   * processor. Subclasses whose extensions hold state for a single document
+   * must return a configuration that is not shared.
+   *
+   * @param context The document's context.
+   * @return The configuration used to parse and render Markdown.
+   */
+  MarkdownConfiguration configure( final ProcessorContext context ) {
+    return acquire( context, createExtensions( context ) );
   }
 
   /**
@@ -101,7 +131,18 @@ public class BaseMarkdownProcessor extends ExecutorProcessor<String> {
    * @return The root node of the Markdown tree.
    */
   private Node parse( final String markdown ) {
-    return getParser().parse( markdown );
+    return bind( (Document) getParser().parse( markdown ) );
+  }
+
+  /**
+   * Makes this processor's context available to the extensions that render
+   * the given document.
+   *
+   * @param document The document to render.
+   * @return The given document.
+   */
+  Document bind( final Document document ) {
+    return MarkdownConfiguration.bind( document, mContext, mProcessor );
   }
 
   /**
@@ -109,11 +150,31 @@ public class BaseMarkdownProcessor extends ExecutorProcessor<String> {
    *
    * @return An instance of {@link IParse} for building abstract syntax trees.
    */
-  private IParse getParser() {
-    return mParser;
+  IParse getParser() {
+    return mConfiguration.getParser();
   }
 
-  private IRender getRenderer() {
-    return mRenderer;
+  /**
+   * Returns the extensions used to build the parser and renderer.
+   *
+   * @return The {@link List} of {@link Extension}s from
+   * {@link #createExtensions(ProcessorContext)}.
+   */
+  List<Extension> getExtensions() {
+    return mConfiguration.getExtensions();
+  }
+
+  IRender getRenderer() {
+    return mConfiguration.getRenderer();
+  }
+
+  /**
+   * Returns the processor that substitutes variables in text passed to
+   * extensions (e.g., TeX expressions and diagrams).
+   *
+   * @return The variable processor, never {@code null}.
+   */
+  Processor<String> getVariableProcessor() {
+    return mProcessor;
   }
 }
@@ -0,0 +1,205 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.Caret;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.IRender;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static com.keenwrite.processors.markdown.IncrementalParser.getEndOffset;
+import static com.keenwrite.processors.markdown.IncrementalParser.getStartOffset;
+import static com.keenwrite.processors.markdown.extensions.CaretExtension.CARET_ADDED;
+import static com.vladsch.flexmark.parser.Parser.REFERENCES;
+
+/**
+ * Responsible for rendering a {@link Document} into HTML one top-level block
+ * at a time, reusing the HTML from the previous render for every block
+ * whose Markdown source text has not changed. Most keystrokes change a
+ * single paragraph, so only that paragraph is passed through the
+ * {@link IRender} instance.
+ * <p>
+ * Cached fragments are only valid for a given version: a value computed
+ * from the resolved definitions and the export format. When the version
+ * changes, the cache is emptied, unless the caller can identify the blocks
+ * that are affected by the change, in which case only those blocks are
+ * evicted. Fragments for blocks that no longer exist
+ * in the document are evicted after each render, which bounds the cache to
+ * the size of the document. Documents that contain link reference
+ * definitions are rendered in full because reference links can only be
+ * resolved when rendering the entire document.
+ * </p>
+ * <p>
+ * The block that receives the caret identifier is never taken from the
+ * cache and its HTML is never stored in the cache, because the caret moves
+ * independently of the text.
+ * </p>
+ */
+public final class HtmlBlockCache {
+  private final IRender mRenderer;
+  private final Caret mCaret;
+
+  /**
+   * Maps the Markdown source text of a block to its HTML.
+   */
+  private Map<String, String> mFragments = new HashMap<>();
+
+  /**
+   * Identifies the definitions and export format that were used to render
+   * all the cached fragments.
+   */
+  private Object mVersion;
+
+  private final AtomicLong mHits = new AtomicLong();
+  private final AtomicLong mMisses = new AtomicLong();
+
+  /**
+   * Creates a cache that renders blocks using the given renderer.
+   *
+   * @param renderer Converts blocks that are not cached into HTML.
+   * @param caret    Indicates which block must be rendered with the caret
+   *                 identifier.
+   */
+  public HtmlBlockCache( final IRender renderer, final Caret caret ) {
+    assert renderer != null;
+    assert caret != null;
+
+    mRenderer = renderer;
+    mCaret = caret;
+  }
+
+  /**
+   * Converts the given document into HTML, rendering only the blocks that
+   * are not already cached.
+   *
+   * @param document The abstract syntax tree to convert to HTML.
+   * @param version  Changes whenever blocks having the same source text
+   *                 could produce different HTML (e.g., the definitions
+   *                 were edited).
+   * @return The given document as an HTML string.
+   */
+  public String render( final Document document, final Object version ) {
+    return render( document, version, null );
+  }
+
+  /**
+   * Converts the given document into HTML, rendering only the blocks that
+   * are not already cached. When the version changes, only the fragments
+   * for blocks accepted by the given filter are discarded.
+   *
+   * @param document The abstract syntax tree to convert to HTML.
+   * @param version  Changes whenever blocks having the same source text
+   *                 could produce different HTML (e.g., the definitions
+   *                 were edited).
+   * @param stale    Accepts the Markdown source text of blocks whose HTML
+   *                 could differ from the previous version; {@code null}
+   *                 if all blocks could differ.
+   * @return The given document as an HTML string.
+   */
+  public String render(
+    final Document document,
+    final Object version,
+    final Predicate<String> stale ) {
+    assert document != null;
+    assert version != null;
+
+    if( !REFERENCES.get( document ).isEmpty() ) {
+      mFragments.clear();
+      document.remove( CARET_ADDED );
+      return mRenderer.render( document );
+    }
+
+    if( !version.equals( mVersion ) ) {
+      if( stale == null || mVersion == null ) {
+        mFragments.clear();
+      }
+      else {
+        mFragments.keySet().removeIf( stale );
+      }
+
+      mVersion = version;
+    }
+
+    final var fragments = new HashMap<String, String>( mFragments.size() );
+    final var html = new StringBuilder( document.getTextLength() * 2 );
+
+    document.set( CARET_ADDED, false );
+
+    try {
+      for( final var block : document.getChildren() ) {
+        final var source = block.getChars().toString();
+        final var candidate =
+          !CARET_ADDED.get( document ) && isCaretCandidate( block );
+        var fragment = candidate ? null : mFragments.get( source );
+
+        if( fragment == null ) {
+          fragment = mRenderer.render( block );
+          mMisses.incrementAndGet();
+
+          // Keep the caret identifier out of the cache.
+          if( !candidate || !CARET_ADDED.get( document ) ) {
+            fragments.put( source, fragment );
+          }
+        }
+        else {
+          mHits.incrementAndGet();
+          fragments.put( source, fragment );
+        }
+
+        html.append( fragment );
+      }
+    } finally {
+      document.remove( CARET_ADDED );
+    }
+
+    mFragments = fragments;
+
+    return html.toString();
+  }
+
+  /**
+   * Returns the number of blocks whose HTML was taken from the cache.
+   *
+   * @return The number of cache hits since this instance was created.
+   */
+  public long getHitCount() {
+    return mHits.get();
+  }
+
+  /**
+   * Returns the number of blocks that had to be rendered.
+   *
+   * @return The number of cache misses since this instance was created.
+   */
+  public long getMissCount() {
+    return mMisses.get();
+  }
+
+  /**
+   * Answers whether the caret could be placed within the given top-level
+   * block, mirroring the bounds checked by the caret extension. This is a
+   * superset of the blocks that will receive the caret identifier.
+   *
+   * @param block The block to check against the caret's position.
+   * @return {@code true} if the block must be rendered to place the caret.
+   */
+  private boolean isCaretCandidate( final Node block ) {
+    final var property = mCaret.textOffsetProperty();
+
+    if( property == null ) {
+      return false;
+    }
+
+    final int offset = property.getValue();
+    final var began = getStartOffset( block );
+    final var ended = getEndOffset( block ) + 1;
+    final var prev = block.getPrevious();
+
+    return began <= offset && offset <= ended ||
+      prev != null && getEndOffset( prev ) <= offset && offset <= began;
+  }
+}
@@ -0,0 +1,501 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.vladsch.flexmark.ast.*;
+import com.vladsch.flexmark.ext.definition.DefinitionList;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.IParse;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.data.NullableDataKey;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.vladsch.flexmark.parser.Parser.REFERENCES;
+import static java.lang.Character.isWhitespace;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Responsible for retaining a Markdown abstract syntax tree between edits so
+ * that only the top-level blocks affected by an edit are parsed again. Edits
+ * are reported by calling {@link #edited(int, int, int)}, typically from a
+ * text area's stream of plain text changes. The next call to
+ * {@link #parse(String)} maps the accumulated edits to the affected blocks,
+ * widens the range by one block on either side (to account for blocks that
+ * are merged or split by the edit), parses only that range, and splices the
+ * resulting blocks into the retained {@link Document}.
+ * <p>
+ * Blocks after an edit are not parsed again, which means their offsets are
+ * relative to the text that they were parsed from. Use
+ * {@link #getStartOffset(Node)} and {@link #getEndOffset(Node)} to obtain
+ * offsets into the current text.
+ * </p>
+ * <p>
+ * A full parse is performed whenever the edits cannot be reconciled with the
+ * text (e.g., the text was read while the editor was being changed, so it
+ * does not contain exactly the edits reported so far), or when the
+ * structure of the document could change beyond the re-parsed range (e.g.,
+ * an unterminated fenced code block or link reference definitions, which
+ * affect links throughout the document).
+ * </p>
+ */
+public final class IncrementalParser {
+  /**
+   * Associates a {@link Document} with the {@link IncrementalParser} that
+   * maintains it, so that node offsets can be corrected.
+   */
+  private static final NullableDataKey<IncrementalParser> KEY_PARSER =
+    new NullableDataKey<>( "INCREMENTAL_PARSER" );
+
+  /**
+   * Number of times to widen the range of blocks to parse before falling
+   * back to parsing the entire document.
+   */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /**
+   * Used to parse the entire document or a range of blocks within it.
+   */
+  private final IParse mParser;
+
+  /**
+   * Edits made to the text since the last parse, in order of occurrence.
+   */
+  private final Queue<int[]> mEdits = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Top-level blocks of the retained {@link Document}, in document order.
+   */
+  private final List<Block> mBlocks = new ArrayList<>();
+
+  /**
+   * Maps top-level nodes to their corresponding {@link Block}.
+   */
+  private final Map<Node, Block> mNodes = new IdentityHashMap<>();
+
+  private Document mDocument;
+
+  /**
+   * Text that corresponds to the retained {@link Document}.
+   */
+  private String mText = "";
+
+  private long mFullParses;
+  private long mBlockParses;
+
+  /**
+   * Creates a parser that retains the document between edits.
+   *
+   * @param parser Parses the entire document or a range of top-level
+   *               blocks; it must not have document-wide side effects.
+   */
+  public IncrementalParser( final IParse parser ) {
+    assert parser != null;
+
+    mParser = parser;
+  }
+
+  /**
+   * Records that the text was changed. This may be called from any thread,
+   * including while {@link #parse(String)} runs, in which case the edit may
+   * or may not be applied to the text being parsed.
+   *
+   * @param position Offset into the text where the change happened.
+   * @param removed  Number of characters removed at the offset.
+   * @param inserted Number of characters inserted at the offset.
+   */
+  public void edited(
+    final int position, final int removed, final int inserted ) {
+    mEdits.add( new int[]{position, removed, inserted} );
+  }
+
+  /**
+   * Returns the abstract syntax tree for the given text, parsing only the
+   * blocks affected by edits made since the previous call, where possible.
+   * The returned {@link Document} is reused between calls.
+   *
+   * @param text The complete text, including all edits reported so far.
+   * @return The abstract syntax tree for the text.
+   */
+  public Document parse( final String text ) {
+    assert text != null;
+
+    if( mDocument == null || !splice( text ) ) {
+      reparse( text );
+    }
+
+    return mDocument;
+  }
+
+  /**
+   * Returns the number of times the entire document was parsed.
+   *
+   * @return The number of full parses.
+   */
+  public long getFullParseCount() {
+    return mFullParses;
+  }
+
+  /**
+   * Returns the number of times a range of blocks was parsed and spliced
+   * into the retained document.
+   *
+   * @return The number of incremental parses.
+   */
+  public long getBlockParseCount() {
+    return mBlockParses;
+  }
+
+  /**
+   * Returns the offset into the current text where the given node starts.
+   * Nodes that are not part of a document maintained by an
+   * {@link IncrementalParser} have their offsets returned unchanged.
+   *
+   * @param node The node having an offset that may be out of date.
+   * @return The node's starting offset into the most recently parsed text.
+   */
+  public static int getStartOffset( final Node node ) {
+    return node.getStartOffset() + getShift( node );
+  }
+
+  /**
+   * Returns the offset into the current text where the given node ends.
+   *
+   * @param node The node having an offset that may be out of date.
+   * @return The node's ending offset into the most recently parsed text.
+   * @see #getStartOffset(Node)
+   */
+  public static int getEndOffset( final Node node ) {
+    return node.getEndOffset() + getShift( node );
+  }
+
+  private static int getShift( final Node node ) {
+    final var document = node.getDocument();
+    final var parser = document == null ? null : KEY_PARSER.get( document );
+
+    if( parser != null ) {
+      var top = node;
+
+      while( top.getParent() != null && top.getParent() != document ) {
+        top = top.getParent();
+      }
+
+      final var block = parser.mNodes.get( top );
+
+      if( block != null ) {
+        return block.mShift;
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Parses the entire text, replacing the retained {@link Document}.
+   *
+   * @param text The document to parse.
+   */
+  private void reparse( final String text ) {
+    mEdits.clear();
+    mBlocks.clear();
+    mNodes.clear();
+
+    mDocument = (Document) mParser.parse( text );
+    mDocument.set( KEY_PARSER, this );
+    mText = text;
+    mFullParses++;
+
+    for( final var node : mDocument.getChildren() ) {
+      mBlocks.add( createBlock( node ) );
+    }
+  }
+
+  /**
+   * Parses the blocks affected by edits, then splices them into the retained
+   * {@link Document}.
+   *
+   * @param text The document containing all edits made so far.
+   * @return {@code false} if a full parse is required.
+   */
+  private boolean splice( final String text ) {
+    // Merge all edits into a single window of changed text, in terms of
+    // offsets into the edited text.
+    var lo = Integer.MAX_VALUE;
+    var hi = -1;
+    var delta = 0;
+    int[] edit;
+
+    while( (edit = mEdits.poll()) != null ) {
+      final var position = edit[ 0 ];
+      final var removed = edit[ 1 ];
+      final var inserted = edit[ 2 ];
+
+      lo = min( lo, position );
+      hi = max( hi, position + removed ) + inserted - removed;
+      delta += inserted - removed;
+    }
+
+    if( mText.length() + delta != text.length() ||
+      !isUnchanged( text, lo, hi, delta ) ) {
+      return false;
+    }
+
+    if( hi < 0 ) {
+      // No edits means no changes to the document.
+      return true;
+    }
+
+    // Link reference definitions apply to the entire document.
+    if( !REFERENCES.get( mDocument ).isEmpty() ) {
+      return false;
+    }
+
+    final var size = mBlocks.size();
+    final var oldHi = hi - delta;
+    var i = 0;
+    var j = size - 1;
+
+    while( i < size && mBlocks.get( i ).mEnd < lo ) {
+      i++;
+    }
+
+    while( j >= 0 && mBlocks.get( j ).mStart > oldHi ) {
+      j--;
+    }
+
+    // Include the neighbouring blocks, which can be merged or split.
+    i = max( 0, i - 1 );
+    j = min( size - 1, j + 1 );
+
+    for( int attempt = 0; attempt < MAX_ATTEMPTS; attempt++ ) {
+      // Grow the range until it is bounded by blocks that cannot interact
+      // with the blocks inside the range.
+      while( i > 0 && !isBoundary( text, i - 1, i, delta, lo ) ) {
+        i--;
+      }
+
+      while( j + 1 < size && !isBoundary( text, j, j + 1, delta, lo ) ) {
+        j++;
+      }
+
+      final var began = i == 0
+        ? 0
+        : lineStart( text, min( lo, mBlocks.get( i ).mStart ) );
+      final var ended = j + 1 >= size
+        ? text.length()
+        : lineStart( text, mBlocks.get( j + 1 ).mStart + delta );
+
+      final var region = mParser.parse(
+        BasedSequence.of( text ).subSequence( began, ended ) );
+      final var nodes = new ArrayList<Node>();
+
+      for( final var node : region.getChildren() ) {
+        nodes.add( node );
+      }
+
+      if( isStable( nodes, j + 1 < size ) ) {
+        splice( nodes, i, j, delta );
+        mText = text;
+        mBlockParses++;
+
+        return true;
+      }
+
+      i = max( 0, i - 1 );
+      j = min( size - 1, j + 1 );
+    }
+
+    return false;
+  }
+
+  /**
+   * Answers whether the given text differs from the previously parsed text
+   * only within the window of edits. Edits are reported on the UI thread
+   * while the text may be read elsewhere, so the text can lack an edit
+   * that was reported, or contain an edit that was not yet reported. An
+   * edit that replaces text of the same length would then be drained
+   * without being parsed, leaving its block out of date. Comparing the text
+   * outside the window detects this, at far less cost than parsing.
+   *
+   * @param text  The edited text.
+   * @param lo    Offset where the edits began, in both texts.
+   * @param hi    Offset where the edits ended, in the edited text, or -1 if
+   *              there were no edits.
+   * @param delta Change in length of the text.
+   * @return {@code false} if the edits do not account for every change.
+   */
+  private boolean isUnchanged(
+    final String text, final int lo, final int hi, final int delta ) {
+    if( hi < 0 ) {
+      return text.equals( mText );
+    }
+
+    return text.regionMatches( 0, mText, 0, lo ) &&
+      text.regionMatches( hi, mText, hi - delta, text.length() - hi );
+  }
+
+  /**
+   * Replaces the given range of blocks with new blocks.
+   *
+   * @param nodes New top-level nodes to insert into the document.
+   * @param i     Index of the first block to replace.
+   * @param j     Index of the last block to replace.
+   * @param delta Change in length of the text.
+   */
+  private void splice(
+    final List<Node> nodes, final int i, final int j, final int delta ) {
+    final var next = j + 1 < mBlocks.size() ? mBlocks.get( j + 1 ).mNode : null;
+    final var replaced = mBlocks.subList( i, j + 1 );
+
+    for( final var block : replaced ) {
+      block.mNode.unlink();
+      mNodes.remove( block.mNode );
+    }
+
+    replaced.clear();
+
+    for( final var node : nodes ) {
+      if( next == null ) {
+        mDocument.appendChild( node );
+      }
+      else {
+        next.insertBefore( node );
+      }
+
+      replaced.add( createBlock( node ) );
+    }
+
+    // Blocks after the edit were parsed from older text.
+    for( int k = i + nodes.size(); k < mBlocks.size(); k++ ) {
+      final var block = mBlocks.get( k );
+      block.mStart += delta;
+      block.mEnd += delta;
+      block.mShift += delta;
+    }
+  }
+
+  /**
+   * Answers whether parsing can start or stop between two adjacent blocks
+   * without changing how either block would be parsed. This requires that
+   * a blank line separates the blocks, that the block above cannot continue
+   * past a blank line, and that the block below cannot be a continuation
+   * of (or change) the block above.
+   *
+   * @param text  The edited text.
+   * @param above Index of the upper block.
+   * @param below Index of the lower block.
+   * @param delta Change in length of the text, applied to blocks that are
+   *              after the edits.
+   * @param lo    Offset where the edits began.
+   * @return {@code true} if the blocks are independent.
+   */
+  private boolean isBoundary(
+    final String text,
+    final int above, final int below, final int delta, final int lo ) {
+    final var upper = mBlocks.get( above );
+    final var lower = mBlocks.get( below );
+
+    if( isOpen( upper.mNode ) ) {
+      return false;
+    }
+
+    final var end = upper.mEnd < lo ? upper.mEnd : upper.mEnd + delta;
+    final var start = lower.mStart < lo ? lower.mStart : lower.mStart + delta;
+    final var line = lineStart( text, min( start, text.length() ) );
+
+    if( line == 0 || line >= text.length() ) {
+      return false;
+    }
+
+    final var blank = lineStart( text, line - 1 );
+    final var c = text.charAt( line );
+
+    return blank >= end &&
+      text.substring( blank, line ).isBlank() &&
+      !isWhitespace( c ) && c != ':';
+  }
+
+  /**
+   * Answers whether the newly parsed blocks would be parsed identically as
+   * part of the entire document.
+   *
+   * @param nodes     The newly parsed top-level blocks.
+   * @param truncated {@code true} when blocks follow the new blocks.
+   * @return {@code false} when more of the document must be parsed.
+   */
+  private boolean isStable( final List<Node> nodes, final boolean truncated ) {
+    for( final var node : nodes ) {
+      // Link reference definitions apply to the entire document.
+      if( node instanceof Reference || hasReference( node ) ) {
+        return false;
+      }
+    }
+
+    return !truncated ||
+      nodes.isEmpty() ||
+      !isOpen( nodes.get( nodes.size() - 1 ) );
+  }
+
+  private static boolean hasReference( final Node node ) {
+    for( final var child : node.getDescendants() ) {
+      if( child instanceof Reference ) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Answers whether the given block could continue after a blank line.
+   */
+  private static boolean isOpen( final Node node ) {
+    return node instanceof ListBlock ||
+      node instanceof IndentedCodeBlock ||
+      node instanceof DefinitionList ||
+      node instanceof HtmlBlockBase ||
+      node instanceof FencedCodeBlock fence &&
+        fence.getClosingMarker().isEmpty();
+  }
+
+  private Block createBlock( final Node node ) {
+    final var block = new Block( node );
+    mNodes.put( node, block );
+    return block;
+  }
+
+  private static int lineStart( final String text, int offset ) {
+    while( offset > 0 && text.charAt( offset - 1 ) != '\n' ) {
+      offset--;
+    }
+
+    return offset;
+  }
+
+  /**
+   * Tracks a top-level node and its extent within the current text.
+   */
+  private static final class Block {
+    private final Node mNode;
+    private int mStart;
+    private int mEnd;
+
+    /**
+     * Difference between the offsets into the current text and the offsets
+     * into the text that the node was parsed from.
+     */
+    private int mShift;
+
+    private Block( final Node node ) {
+      mNode = node;
+      mStart = node.getStartOffset();
+      mEnd = node.getEndOffset();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.ExportFormat;
+import com.keenwrite.io.MediaType;
+import com.keenwrite.processors.Processor;
+import com.keenwrite.processors.ProcessorContext;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.IParse;
+import com.vladsch.flexmark.util.ast.IRender;
+import com.vladsch.flexmark.util.data.DataKey;
+import com.vladsch.flexmark.util.data.NullableDataKey;
+import com.vladsch.flexmark.util.misc.Extension;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+
+/**
+ * Responsible for sharing a {@link Parser} and {@link HtmlRenderer} between
+ * all documents that use the same extensions. Building a parser and renderer
+ * wires every extension into a new set of options, which is wasteful when
+ * opening many documents or exporting the same document repeatedly. Parsers
+ * and renderers are immutable once built and may be used concurrently.
+ * <p>
+ * Configurations are pooled by {@link MediaType}, {@link ExportFormat}, and
+ * the set of extension types. Extensions in a pooled configuration must not
+ * capture information about a single document; instead, they read the
+ * document's {@link ProcessorContext} and variable {@link Processor} from
+ * the {@link Document} being rendered using {@link #KEY_CONTEXT} and
+ * {@link #KEY_PROCESSOR}.
+ * </p>
+ */
+public final class MarkdownConfiguration {
+  /**
+   * Provides the context of the document being rendered to extensions.
+   */
+  public static final NullableDataKey<ProcessorContext> KEY_CONTEXT =
+    new NullableDataKey<>( "PROCESSOR_CONTEXT" );
+
+  /**
+   * Provides extensions with the processor that substitutes variables
+   * (or evaluates R statements) in text such as TeX and diagrams.
+   */
+  public static final DataKey<Processor<String>> KEY_PROCESSOR =
+    new DataKey<>( "VARIABLE_PROCESSOR", IDENTITY );
+
+  private static final Map<List<Object>, MarkdownConfiguration> sPool =
+    new ConcurrentHashMap<>();
+
+  private final List<Extension> mExtensions;
+  private final IParse mParser;
+  private final IRender mRenderer;
+
+  /**
+   * Builds a parser and renderer that are not shared with other documents,
+   * which is necessary when the extensions hold state for one document.
+   *
+   * @param extensions The extensions to apply when parsing and rendering.
+   */
+  MarkdownConfiguration( final List<Extension> extensions ) {
+    assert extensions != null;
+
+    mExtensions = List.copyOf( extensions );
+    mParser = Parser.builder().extensions( mExtensions ).build();
+    mRenderer = HtmlRenderer.builder().extensions( mExtensions ).build();
+  }
+
+  /**
+   * Returns the configuration that was built for the same media type, export
+   * format, and extension types, building it if necessary. The given
+   * extensions are only used when no such configuration exists.
+   *
+   * @param context    Provides the media type and export format.
+   * @param extensions The extensions to apply when parsing and rendering.
+   * @return A parser and renderer that may be shared with other documents.
+   */
+  static MarkdownConfiguration acquire(
+    final ProcessorContext context, final List<Extension> extensions ) {
+    final var types = new HashSet<Class<?>>();
+    extensions.forEach( extension -> types.add( extension.getClass() ) );
+
+    final var key = List.<Object>of(
+      MediaType.valueFrom( context.getDocumentPath() ),
+      context.getExportFormat(),
+      types );
+
+    return sPool.computeIfAbsent(
+      key, k -> new MarkdownConfiguration( extensions ) );
+  }
+
+  /**
+   * Associates a document with the context needed to render it.
+   *
+   * @param document  The document parsed using this configuration.
+   * @param context   The context for the document being processed.
+   * @param processor Substitutes variables in text passed to extensions.
+   * @return The given document.
+   */
+  static Document bind(
+    final Document document,
+    final ProcessorContext context,
+    final Processor<String> processor ) {
+    document.set( KEY_CONTEXT, context );
+    document.set( KEY_PROCESSOR, processor );
+
+    return document;
+  }
+
+  List<Extension> getExtensions() {
+    return mExtensions;
+  }
+
+  IParse getParser() {
+    return mParser;
+  }
+
+  IRender getRenderer() {
+    return mRenderer;
+  }
+}
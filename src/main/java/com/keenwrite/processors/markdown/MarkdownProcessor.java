@@ -10,22 +10,61 @@ import com.keenwrite.processors.markdown.extensions.fences.FencedBlockExtension;
 import com.keenwrite.processors.markdown.extensions.r.RExtension;
 import com.keenwrite.processors.markdown.extensions.tex.TeXExtension;
 import com.keenwrite.processors.r.RProcessor;
+import com.vladsch.flexmark.util.ast.Document;
 import com.vladsch.flexmark.util.misc.Extension;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.keenwrite.ExportFormat.NONE;
+import static com.keenwrite.events.DocumentParsedEvent.fireDocumentParsedEvent;
 import static com.keenwrite.io.MediaType.TEXT_R_MARKDOWN;
 import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+import static com.keenwrite.search.VariableUsageIndex.createBlockFilter;
 
 /**
  * Responsible for parsing a Markdown document and rendering it as HTML.
  */
 public final class MarkdownProcessor extends BaseMarkdownProcessor {
 
+  /**
+   * Retains the document between edits, {@code null} when the full document
+   * must be parsed every time.
+   */
+  private final IncrementalParser mIncrementalParser;
+
+  /**
+   * Reuses the HTML of unchanged blocks between renders, {@code null} when
+   * every block must be rendered every time.
+   */
+  private final HtmlBlockCache mBlockCache;
+
+  /**
+   * Shares each parse with the views that derive information from the
+   * document, {@code null} when exporting.
+   */
+  private final SnapshotFactory mSnapshots;
+
+  private final ProcessorContext mContext;
+
+  /**
+   * Version of the definitions used to render the cached blocks, which
+   * determines the blocks to evict when the definitions change.
+   */
+  private int mRenderedVersion;
+
   private MarkdownProcessor(
-    final Processor<String> successor, final ProcessorContext context ) {
-    super( successor, context );
+    final Processor<String> successor,
+    final ProcessorContext context,
+    final Processor<String> processor ) {
+    super( successor, context, processor );
+
+    mContext = context;
+    mSnapshots = context.isExportFormat( NONE )
+      ? new SnapshotFactory( context.getDocumentPath(), processor )
+      : null;
+    mIncrementalParser = createIncrementalParser( context );
+    mBlockCache = createBlockCache( context );
   }
 
   public static MarkdownProcessor create( final ProcessorContext context ) {
@@ -34,7 +73,152 @@ public final class MarkdownProcessor extends BaseMarkdownProcessor {
 
   public static MarkdownProcessor create(
     final Processor<String> successor, final ProcessorContext context ) {
-    return new MarkdownProcessor( successor, context );
+    return new MarkdownProcessor(
+      successor, context, createVariableProcessor( context ) );
+  }
+
+  /**
+   * Converts the given Markdown string into HTML. When previewing, only the
+   * blocks changed since the previous call are parsed. Blocks having the
+   * same source text as in the previous call are not rendered again. The
+   * parsed document is published to the outline, statistics, and spell
+   * checker before it is rendered.
+   *
+   * @param markdown The string to convert from Markdown to HTML.
+   * @return The HTML representation of the Markdown document.
+   */
+  @Override
+  public String apply( final String markdown ) {
+    // Evaluate every R statement in the document using the same R session.
+    return getVariableProcessor() instanceof RProcessor r
+      ? r.withSession( () -> convert( r, markdown ) )
+      : convert( markdown );
+  }
+
+  private String convert( final RProcessor r, final String markdown ) {
+    // When exporting, evaluate independent R statements concurrently, before
+    // parsing; otherwise, only classify them.
+    r.prepare( markdown, !mContext.isExportFormat( NONE ) );
+    return convert( markdown );
+  }
+
+  private String convert( final String markdown ) {
+    final var document = mIncrementalParser == null
+      ? (Document) toNode( markdown )
+      : bind( mIncrementalParser.parse( markdown ) );
+
+    if( mSnapshots != null ) {
+      fireDocumentParsedEvent( mSnapshots.create( markdown, document ) );
+    }
+
+    return mBlockCache == null ? toHtml( document ) : render( document );
+  }
+
+  /**
+   * Renders the given document using the block cache. When the definitions
+   * have changed since the last render and the changes are known, only the
+   * blocks that could refer to the changed definitions are rendered again.
+   *
+   * @param document The abstract syntax tree to convert to HTML.
+   * @return The given document as an HTML string.
+   */
+  private String render( final Document document ) {
+    final var version = mContext.getDefinitionsVersion();
+    final var changes = mContext.getDefinitionChanges( mRenderedVersion );
+    final var stale = changes == null
+      ? null
+      : createBlockFilter( changes.keySet() );
+
+    mRenderedVersion = version;
+
+    return mBlockCache.render(
+      document, List.of( version, mContext.getExportFormat() ), stale );
+  }
+
+  /**
+   * Returns the number of blocks whose HTML was reused from a previous call
+   * to {@link #apply(String)}.
+   *
+   * @return The number of block cache hits.
+   */
+  public long getBlockCacheHits() {
+    return mBlockCache == null ? 0 : mBlockCache.getHitCount();
+  }
+
+  /**
+   * Returns the number of blocks that were rendered by calls to
+   * {@link #apply(String)} while the block cache was enabled.
+   *
+   * @return The number of block cache misses.
+   */
+  public long getBlockCacheMisses() {
+    return mBlockCache == null ? 0 : mBlockCache.getMissCount();
+  }
+
+  /**
+   * Creates a parser that only parses the blocks affected by edits to the
+   * text. The incremental parser is only used for the preview, where the
+   * text editor reports its changes. R Markdown documents are always fully
+   * parsed because inline R statements are evaluated in document order
+   * while parsing, and their results depend on the definitions.
+   *
+   * @param context Provides the caret and its stream of text changes.
+   * @return The incremental parser, or {@code null} if the full document
+   * must be parsed.
+   */
+  private IncrementalParser createIncrementalParser(
+    final ProcessorContext context ) {
+    final var mediaType = MediaType.valueFrom( context.getDocumentPath() );
+    final var changes = context.getCaret().textChanges();
+
+    if( !context.isExportFormat( NONE ) ||
+      mediaType == TEXT_R_MARKDOWN ||
+      changes.isEmpty() ) {
+      return null;
+    }
+
+    final var parser = new IncrementalParser( getParser() );
+
+    changes.get()
+           .filter( change -> !change.isIdentity() )
+           .subscribe( change -> parser.edited(
+             change.getPosition(),
+             change.getRemoved().length(),
+             change.getInserted().length() ) );
+
+    return parser;
+  }
+
+  /**
+   * Creates a cache of rendered blocks. R Markdown documents are not cached
+   * because the output from inline R statements may depend on statements
+   * made in other blocks.
+   *
+   * @param context Provides the caret and document type.
+   * @return The block cache, or {@code null} if blocks must always be
+   * rendered.
+   */
+  private HtmlBlockCache createBlockCache( final ProcessorContext context ) {
+    final var mediaType = MediaType.valueFrom( context.getDocumentPath() );
+
+    return mediaType == TEXT_R_MARKDOWN
+      ? null
+      : new HtmlBlockCache( getRenderer(), context.getCaret() );
+  }
+
+  /**
+   * Returns a configuration that is not shared for R Markdown documents,
+   * because the {@link RExtension} evaluates R statements using the
+   * document's {@link RProcessor} while parsing.
+   *
+   * @param context The document's context.
+   * @return The configuration used to parse and render Markdown.
+   */
+  @Override
+  MarkdownConfiguration configure( final ProcessorContext context ) {
+    return getVariableProcessor() instanceof RProcessor
+      ? new MarkdownConfiguration( createExtensions( context ) )
+      : super.configure( context );
   }
 
   /**
@@ -45,6 +229,11 @@ public final class MarkdownProcessor extends BaseMarkdownProcessor {
    * the main document. Scrolling is developed this way to decouple the
    * document being edited from the preview pane so that multiple document
    * formats can be edited.
+   * <p>
+   * Apart from the {@link RExtension}, extensions obtain the document's
+   * context while rendering, so that the parser and renderer can be shared
+   * by all documents having the same media type and export format.
+   * </p>
    *
    * @param context Contains necessary information needed to create
    *                extensions used by the Markdown parser.
@@ -52,28 +241,36 @@ public final class MarkdownProcessor extends BaseMarkdownProcessor {
    */
   @Override
   List<Extension> createExtensions( final ProcessorContext context ) {
-    final var editorFile = context.getDocumentPath();
-    final var mediaType = MediaType.valueFrom( editorFile );
-    final Processor<String> processor;
     final List<Extension> extensions = new ArrayList<>();
 
-    if( mediaType == TEXT_R_MARKDOWN ) {
-      final var rProcessor = new RProcessor( context );
-      extensions.add( RExtension.create( rProcessor, context ) );
-      processor = rProcessor;
-    }
-    else {
-      processor = new DefinitionProcessor( IDENTITY, context );
+    if( getVariableProcessor() instanceof RProcessor r ) {
+      extensions.add( RExtension.create( r, context ) );
     }
 
     // Add typographic, table, strikethrough, and similar extensions.
     extensions.addAll( super.createExtensions( context ) );
 
-    extensions.add( ImageLinkExtension.create( context ) );
-    extensions.add( TeXExtension.create( processor, context ) );
-    extensions.add( FencedBlockExtension.create( processor, context ) );
-    extensions.add( CaretExtension.create( context ) );
-    extensions.add( DocumentOutlineExtension.create( processor ) );
+    extensions.add( ImageLinkExtension.create() );
+    extensions.add( TeXExtension.create( context ) );
+    extensions.add( FencedBlockExtension.create() );
+    extensions.add( CaretExtension.create() );
     return extensions;
   }
+
+  /**
+   * Creates the processor that substitutes variables in text that the
+   * extensions pass through, such as TeX expressions and diagrams.
+   *
+   * @param context Provides the document type and definitions.
+   * @return An {@link RProcessor} for R Markdown documents, otherwise a
+   * {@link DefinitionProcessor}.
+   */
+  private static Processor<String> createVariableProcessor(
+    final ProcessorContext context ) {
+    final var mediaType = MediaType.valueFrom( context.getDocumentPath() );
+
+    return mediaType == TEXT_R_MARKDOWN
+      ? new RProcessor( context )
+      : new DefinitionProcessor( IDENTITY, context );
+  }
 }
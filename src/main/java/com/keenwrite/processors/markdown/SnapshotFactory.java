@@ -0,0 +1,103 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.processors.DocumentSnapshot;
+import com.keenwrite.processors.DocumentSnapshot.Heading;
+import com.keenwrite.processors.DocumentSnapshot.Segment;
+import com.keenwrite.processors.Processor;
+import com.vladsch.flexmark.ast.HardLineBreak;
+import com.vladsch.flexmark.ast.SoftLineBreak;
+import com.vladsch.flexmark.ast.Text;
+import com.vladsch.flexmark.util.ast.Block;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.keenwrite.processors.markdown.IncrementalParser.getStartOffset;
+
+/**
+ * Responsible for creating a {@link DocumentSnapshot} from a parsed Markdown
+ * document. The headings, runs of prose, and plain text are all gathered
+ * while walking the abstract syntax tree once, so that the views deriving
+ * information from the document need not parse the text again.
+ */
+public final class SnapshotFactory {
+  private final Path mPath;
+  private final Processor<String> mProcessor;
+
+  /**
+   * Creates a factory that substitutes variables in heading text and in the
+   * plain text used for counting words.
+   *
+   * @param path      The document's location on disk.
+   * @param processor Processes heading text before it is shown.
+   */
+  public SnapshotFactory( final Path path, final Processor<String> processor ) {
+    mPath = path;
+    mProcessor = processor;
+  }
+
+  /**
+   * Creates a snapshot of the given document. The offsets of headings and
+   * segments are relative to the given text, even for blocks that were not
+   * parsed again.
+   *
+   * @param text     The text that was parsed into the document.
+   * @param document The abstract syntax tree for the text.
+   * @return An immutable snapshot of the document.
+   */
+  public DocumentSnapshot create( final String text, final Document document ) {
+    final var headings = new ArrayList<Heading>();
+    final var segments = new ArrayList<Segment>();
+    final var plain = new StringBuilder( text.length() );
+
+    for( final var node : document.getChildren() ) {
+      // Blocks that were not parsed again are shifted by the same amount.
+      final var shift = getStartOffset( node ) - node.getStartOffset();
+      visit( node, shift, headings, segments, plain );
+    }
+
+    return new DocumentSnapshot(
+      mPath, text, mProcessor.apply( plain.toString() ), headings, segments );
+  }
+
+  private void visit(
+    final Node node,
+    final int shift,
+    final List<Heading> headings,
+    final List<Segment> segments,
+    final StringBuilder plain ) {
+    if( node instanceof com.vladsch.flexmark.ast.Heading heading ) {
+      final var level = heading.getLevel();
+
+      if( 1 <= level && level <= 6 ) {
+        final var text = mProcessor.apply( heading.getText().toString() );
+        final var offset = node.getStartOffset() + shift;
+        headings.add( new Heading( level, text, offset ) );
+      }
+    }
+
+    if( node instanceof Text ) {
+      final var chars = node.getChars().toString();
+
+      segments.add( new Segment(
+        chars, node.getStartOffset() + shift, node.getEndOffset() + shift ) );
+      plain.append( chars );
+    }
+    else if( node instanceof SoftLineBreak || node instanceof HardLineBreak ) {
+      plain.append( '\n' );
+    }
+    else {
+      for( final var child : node.getChildren() ) {
+        visit( child, shift, headings, segments, plain );
+      }
+
+      if( node instanceof Block ) {
+        plain.append( '\n' );
+      }
+    }
+  }
+}
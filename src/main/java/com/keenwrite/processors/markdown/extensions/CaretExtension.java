@@ -10,12 +10,17 @@ import com.vladsch.flexmark.html.AttributeProviderFactory;
 import com.vladsch.flexmark.html.IndependentAttributeProviderFactory;
 import com.vladsch.flexmark.html.renderer.AttributablePart;
 import com.vladsch.flexmark.html.renderer.LinkResolverContext;
+import com.vladsch.flexmark.util.ast.Document;
 import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.data.DataKey;
 import com.vladsch.flexmark.util.html.AttributeImpl;
 import com.vladsch.flexmark.util.html.MutableAttributes;
 import org.jetbrains.annotations.NotNull;
 
 import static com.keenwrite.constants.Constants.CARET_ID;
+import static com.keenwrite.processors.markdown.IncrementalParser.getEndOffset;
+import static com.keenwrite.processors.markdown.IncrementalParser.getStartOffset;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_CONTEXT;
 import static com.keenwrite.processors.markdown.extensions.EmptyNode.EMPTY_NODE;
 import static com.vladsch.flexmark.html.HtmlRenderer.Builder;
 
@@ -25,21 +30,31 @@ import static com.vladsch.flexmark.html.HtmlRenderer.Builder;
  */
 public class CaretExtension extends HtmlRendererAdapter {
 
-  private final Caret mCaret;
+  /**
+   * Set on a {@link Document} after an element has been given the caret
+   * identifier. This allows the document's blocks to be rendered one at a
+   * time while ensuring that only a single element receives the identifier.
+   */
+  public static final DataKey<Boolean> CARET_ADDED =
+    new DataKey<>( "CARET_ADDED", false );
 
-  private CaretExtension( final ProcessorContext context ) {
-    mCaret = context.getCaret();
+  private CaretExtension() {
   }
 
-  public static CaretExtension create( final ProcessorContext context ) {
-    return new CaretExtension( context );
+  /**
+   * Creates an extension that marks the element containing the caret of
+   * the {@link ProcessorContext} for the document being rendered.
+   *
+   * @return The new {@link CaretExtension}, never {@code null}.
+   */
+  public static CaretExtension create() {
+    return new CaretExtension();
   }
 
   @Override
   public void extend( @NotNull final Builder builder,
                       @NotNull final String rendererType ) {
-    builder.attributeProviderFactory(
-      IdAttributeProvider.createFactory( mCaret ) );
+    builder.attributeProviderFactory( IdAttributeProvider.createFactory() );
   }
 
   /**
@@ -48,18 +63,27 @@ public class CaretExtension extends HtmlRendererAdapter {
    */
   public static class IdAttributeProvider implements AttributeProvider {
     private final Caret mCaret;
+    private final Document mDocument;
     private boolean mAdded;
 
-    public IdAttributeProvider( final Caret caret ) {
+    public IdAttributeProvider(
+      final Caret caret, final Document document ) {
       mCaret = caret;
+      mDocument = document;
     }
 
-    private static AttributeProviderFactory createFactory( final Caret caret ) {
+    private static AttributeProviderFactory createFactory() {
       return new IndependentAttributeProviderFactory() {
         @Override
         public @NotNull AttributeProvider apply(
           @NotNull final LinkResolverContext context ) {
-          return new IdAttributeProvider( caret );
+          final var document = context.getDocument();
+          final var processorContext = KEY_CONTEXT.get( document );
+          final var caret = processorContext == null
+            ? Caret.builder().build()
+            : processorContext.getCaret();
+
+          return new IdAttributeProvider( caret, document );
         }
       };
     }
@@ -69,7 +93,7 @@ public class CaretExtension extends HtmlRendererAdapter {
                                @NotNull AttributablePart part,
                                @NotNull MutableAttributes attributes ) {
       // Optimization: if a caret is inserted, don't try to find another.
-      if( mAdded ) {
+      if( mAdded || CARET_ADDED.get( mDocument ) ) {
         return;
       }
 
@@ -92,8 +116,8 @@ public class CaretExtension extends HtmlRendererAdapter {
       }
 
       final var outside = mCaret.isAfterText() ? 1 : 0;
-      final var began = curr.getStartOffset();
-      final var ended = curr.getEndOffset() + outside;
+      final var began = getStartOffset( curr );
+      final var ended = getEndOffset( curr ) + outside;
       final var prev = curr.getPrevious();
 
       // If the caret is within the bounds of the current node or the
@@ -101,12 +125,13 @@ public class CaretExtension extends HtmlRendererAdapter {
       // the start of the current node, then mark the current node with
       // a caret indicator.
       if( mCaret.isBetweenText( began, ended ) ||
-        prev != null && mCaret.isBetweenText( prev.getEndOffset(), began ) ) {
+        prev != null && mCaret.isBetweenText( getEndOffset( prev ), began ) ) {
         // This line empowers synchronizing the text editor with the preview.
         attributes.addValue( AttributeImpl.of( "id", CARET_ID ) );
 
         // We're done until the user moves the caret (micro-optimization)
         mAdded = true;
+        mDocument.set( CARET_ADDED, true );
       }
     }
   }
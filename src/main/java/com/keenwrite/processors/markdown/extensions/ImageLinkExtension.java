@@ -19,6 +19,7 @@ import static com.keenwrite.ExportFormat.NONE;
 import static com.keenwrite.events.StatusEvent.clue;
 import static com.keenwrite.preferences.WorkspaceKeys.KEY_IMAGES_DIR;
 import static com.keenwrite.preferences.WorkspaceKeys.KEY_IMAGES_ORDER;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_CONTEXT;
 import static com.keenwrite.util.ProtocolScheme.getProtocol;
 import static com.vladsch.flexmark.html.HtmlRenderer.Builder;
 import static com.vladsch.flexmark.html.renderer.LinkStatus.VALID;
@@ -30,26 +31,18 @@ import static org.renjin.repackaged.guava.base.Splitter.on;
  */
 public class ImageLinkExtension extends HtmlRendererAdapter {
 
-  private final Path mBaseDir;
-  private final Workspace mWorkspace;
-  private final ExportFormat mExportFormat;
-
-  private ImageLinkExtension(
-    @NotNull final ProcessorContext context ) {
-    mBaseDir = context.getBaseDir();
-    mWorkspace = context.getWorkspace();
-    mExportFormat = context.getExportFormat();
+  private ImageLinkExtension() {
   }
 
   /**
    * Creates an extension capable of using a relative path to embed images.
+   * The base directory to search in for images is taken from the
+   * {@link ProcessorContext} of the document being rendered.
    *
-   * @param context Contains the base directory to search in for images.
    * @return The new {@link ImageLinkExtension}, not {@code null}.
    */
-  public static ImageLinkExtension create(
-    @NotNull final ProcessorContext context ) {
-    return new ImageLinkExtension( context );
+  public static ImageLinkExtension create() {
+    return new ImageLinkExtension();
   }
 
   @Override
@@ -62,12 +55,19 @@ public class ImageLinkExtension extends HtmlRendererAdapter {
     @Override
     public @NotNull LinkResolver apply(
       @NotNull final LinkResolverBasicContext context ) {
-      return new ImageLinkResolver();
+      return new ImageLinkResolver( KEY_CONTEXT.get( context.getDocument() ) );
     }
   }
 
-  private class ImageLinkResolver implements LinkResolver {
-    public ImageLinkResolver() {
+  private static class ImageLinkResolver implements LinkResolver {
+    private final Path mBaseDir;
+    private final Workspace mWorkspace;
+    private final ExportFormat mExportFormat;
+
+    public ImageLinkResolver( @NotNull final ProcessorContext context ) {
+      mBaseDir = context.getBaseDir();
+      mWorkspace = context.getWorkspace();
+      mExportFormat = context.getExportFormat();
     }
 
     @NotNull
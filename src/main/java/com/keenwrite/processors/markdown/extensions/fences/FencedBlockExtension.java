@@ -22,6 +22,8 @@ import java.util.zip.Deflater;
 
 import static com.keenwrite.events.StatusEvent.clue;
 import static com.keenwrite.preferences.WorkspaceKeys.KEY_IMAGES_SERVER;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_CONTEXT;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_PROCESSOR;
 import static com.vladsch.flexmark.html.HtmlRenderer.Builder;
 import static com.vladsch.flexmark.html.renderer.LinkType.LINK;
 import static java.lang.String.format;
@@ -37,22 +39,14 @@ public class FencedBlockExtension extends HtmlRendererAdapter {
   private final static String DIAGRAM_STYLE = "diagram-";
   private final static int DIAGRAM_STYLE_LEN = DIAGRAM_STYLE.length();
 
-  private final Processor<String> mProcessor;
-  private final ProcessorContext mContext;
-
-  public FencedBlockExtension(
-    final Processor<String> processor, final ProcessorContext context ) {
-    assert processor != null;
-    assert context != null;
-    mProcessor = processor;
-    mContext = context;
+  public FencedBlockExtension() {
   }
 
   /**
    * Creates a new parser for fenced blocks. This calls out to a web service
    * to generate SVG files of text diagrams.
    * <p>
-   * Internally, this creates a {@link DefinitionProcessor} to substitute
+   * Internally, this uses a {@link DefinitionProcessor} to substitute
    * variable definitions. This is necessary because the order of processors
    * matters. If the {@link DefinitionProcessor} comes before an instance of
    * {@link MarkdownProcessor}, for example, then the caret position in the
@@ -61,14 +55,16 @@ public class FencedBlockExtension extends HtmlRendererAdapter {
    * when parsing fenced blocks, the variables within the block must be
    * interpolated before being sent to the diagram web service.
    * </p>
+   * <p>
+   * The processor and diagram server are taken from the document being
+   * rendered, so that the extension may be shared between documents.
+   * </p>
    *
-   * @param processor Used to pre-process the text.
    * @return A new {@link FencedBlockExtension} capable of shunting ASCII
    * diagrams to a service for conversion to SVG.
    */
-  public static FencedBlockExtension create(
-    final Processor<String> processor, final ProcessorContext context ) {
-    return new FencedBlockExtension( processor, context );
+  public static FencedBlockExtension create() {
+    return new FencedBlockExtension();
   }
 
   @Override
@@ -92,7 +88,14 @@ public class FencedBlockExtension extends HtmlRendererAdapter {
    * Responsible for generating images from a fenced block that contains a
    * diagram reference.
    */
-  private class CustomRenderer implements NodeRenderer {
+  private static class CustomRenderer implements NodeRenderer {
+    private final Processor<String> mProcessor;
+    private final ProcessorContext mContext;
+
+    private CustomRenderer( final DataHolder options ) {
+      mProcessor = KEY_PROCESSOR.get( options );
+      mContext = KEY_CONTEXT.get( options );
+    }
 
     @Override
     public Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
@@ -159,13 +162,13 @@ public class FencedBlockExtension extends HtmlRendererAdapter {
     }
   }
 
-  private class Factory implements DelegatingNodeRendererFactory {
+  private static class Factory implements DelegatingNodeRendererFactory {
     public Factory() {}
 
     @NotNull
     @Override
     public NodeRenderer apply( @NotNull final DataHolder options ) {
-      return new CustomRenderer();
+      return new CustomRenderer( options );
     }
 
     /**
@@ -25,30 +25,25 @@ import static com.vladsch.flexmark.parser.Parser.ParserExtension;
 public class TeXExtension extends HtmlRendererAdapter
   implements ParserExtension {
 
-  /**
-   * Responsible for pre-parsing the input.
-   */
-  private final Processor<String> mProcessor;
-
   /**
    * Controls how the node renderer produces TeX code within HTML output.
    */
   private final ExportFormat mExportFormat;
 
-  private TeXExtension(
-    final Processor<String> processor, final ProcessorContext context  ) {
-    mProcessor = processor;
+  private TeXExtension( final ProcessorContext context ) {
     mExportFormat = context.getExportFormat();
   }
 
   /**
    * Creates an extension capable of handling delimited TeX code in Markdown.
+   * The TeX code is pre-processed using the {@link Processor} associated
+   * with the document being rendered.
    *
+   * @param context Provides the export format.
    * @return The new {@link TeXExtension}, never {@code null}.
    */
-  public static TeXExtension create(
-    final Processor<String> processor, final ProcessorContext context  ) {
-    return new TeXExtension( processor, context );
+  public static TeXExtension create( final ProcessorContext context ) {
+    return new TeXExtension( context );
   }
 
   /**
@@ -61,7 +56,7 @@ public class TeXExtension extends HtmlRendererAdapter
   public void extend( @NotNull final HtmlRenderer.Builder builder,
                       @NotNull final String rendererType ) {
     if( "HTML".equalsIgnoreCase( rendererType ) ) {
-      builder.nodeRendererFactory( new Factory( mExportFormat, mProcessor ) );
+      builder.nodeRendererFactory( new Factory( mExportFormat ) );
     }
   }
 
@@ -16,38 +16,51 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static com.keenwrite.ExportFormat.*;
 import static com.keenwrite.preview.MathRenderer.MATH_RENDERER;
+import static com.keenwrite.processors.RenderScheduler.checkSuperseded;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_PROCESSOR;
 import static com.keenwrite.processors.markdown.extensions.tex.TexNode.*;
 
 public class TexNodeRenderer {
-  private static final RendererFacade RENDERER =
-    new TexElementNodeRenderer( false );
-
-  private static final Map<ExportFormat, RendererFacade> EXPORT_RENDERERS =
-    Map.of(
-      APPLICATION_PDF, new TexElementNodeRenderer( true ),
-      HTML_TEX_SVG, new TexSvgNodeRenderer(),
-      HTML_TEX_DELIMITED, new TexDelimNodeRenderer(),
-      XHTML_TEX, new TexElementNodeRenderer( true ),
-      MARKDOWN_PLAIN, new TexDelimNodeRenderer(),
-      NONE, RENDERER
-    );
+  /**
+   * Creates a new renderer for each rendering because renderers hold the
+   * {@link Processor} of a single document, and documents may be rendered
+   * concurrently (e.g., during batch exports).
+   */
+  private static final Map<ExportFormat, Supplier<RendererFacade>>
+    EXPORT_RENDERERS = Map.of(
+    APPLICATION_PDF, () -> new TexElementNodeRenderer( true ),
+    HTML_TEX_SVG, TexSvgNodeRenderer::new,
+    HTML_TEX_DELIMITED, TexDelimNodeRenderer::new,
+    XHTML_TEX, () -> new TexElementNodeRenderer( true ),
+    MARKDOWN_PLAIN, TexDelimNodeRenderer::new,
+    NONE, () -> new TexElementNodeRenderer( false )
+  );
 
   public static class Factory implements NodeRendererFactory {
-    private final RendererFacade mNodeRenderer;
+    private final Supplier<RendererFacade> mNodeRenderer;
 
-    public Factory(
-      final ExportFormat exportFormat, final Processor<String> processor ) {
-      mNodeRenderer = EXPORT_RENDERERS.getOrDefault( exportFormat, RENDERER );
-      mNodeRenderer.setProcessor( processor );
+    public Factory( final ExportFormat exportFormat ) {
+      mNodeRenderer = EXPORT_RENDERERS
+        .getOrDefault( exportFormat, EXPORT_RENDERERS.get( NONE ) );
     }
 
+    /**
+     * Creates a renderer that pre-processes TeX code using the processor
+     * of the document being rendered.
+     *
+     * @param options The document's options.
+     * @return A new renderer for the {@link ExportFormat}.
+     */
     @NotNull
     @Override
     public NodeRenderer apply( @NotNull final DataHolder options ) {
-      return mNodeRenderer;
+      final var renderer = mNodeRenderer.get();
+      renderer.setProcessor( KEY_PROCESSOR.get( options ) );
+      return renderer;
     }
   }
 
@@ -58,10 +71,21 @@ public class TexNodeRenderer {
     @Override
     public @Nullable Set<NodeRenderingHandler<?>> getNodeRenderingHandlers() {
       return Set.of(
-        new NodeRenderingHandler<>( TexNode.class, this::render )
+        new NodeRenderingHandler<>( TexNode.class, this::renderCurrent )
       );
     }
 
+    /**
+     * Renders the given node unless a newer request to render the document
+     * has been made, because typesetting formulas can be slow.
+     */
+    private void renderCurrent( final TexNode node,
+                                final NodeRendererContext context,
+                                final HtmlWriter html ) {
+      checkSuperseded();
+      render( node, context, html );
+    }
+
     /**
      * Subclasses implement this method to render the content of {@link TexNode}
      * instances as per their associated {@link ExportFormat}.
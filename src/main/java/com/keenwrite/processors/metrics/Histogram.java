@@ -0,0 +1,159 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Responsible for counting non-negative values into buckets whose width grows
+ * with the magnitude of the values, in the style of an HDR histogram. Each
+ * power of two is split into {@link #SUB_BUCKETS} equal-width buckets, so
+ * that percentiles are accurate to within about three percent regardless of
+ * whether the values are nanoseconds or megabytes. Memory use is constant
+ * and recording a value never allocates, which keeps the instrumentation
+ * from skewing the measurements it takes.
+ * <p>
+ * Values may be recorded from multiple threads concurrently.
+ * </p>
+ */
+public final class Histogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Every non-negative {@code long} fits: bucket zero holds the values below
+   * {@link #SUB_BUCKETS}, each subsequent bucket holds one power of two.
+   */
+  private static final int BUCKETS = Long.SIZE - SUB_BUCKET_BITS;
+
+  private final AtomicLongArray mCounts =
+    new AtomicLongArray( BUCKETS * SUB_BUCKETS );
+  private final AtomicLong mCount = new AtomicLong();
+  private final AtomicLong mTotal = new AtomicLong();
+  private final AtomicLong mMax = new AtomicLong();
+
+  public Histogram() {
+  }
+
+  /**
+   * Adds the given value to the histogram. Negative values are ignored.
+   *
+   * @param value The value to count.
+   */
+  public void record( final long value ) {
+    if( value >= 0 ) {
+      mCounts.incrementAndGet( toIndex( value ) );
+      mCount.incrementAndGet();
+      mTotal.addAndGet( value );
+      mMax.accumulateAndGet( value, Math::max );
+    }
+  }
+
+  /**
+   * Returns the value that the given percentage of recorded values are less
+   * than or equal to, within the precision of the histogram.
+   *
+   * @param percentile A value between 0 and 100, inclusive.
+   * @return The value at the given percentile, or 0 if no values were
+   * recorded.
+   */
+  public long getValueAtPercentile( final double percentile ) {
+    assert 0 <= percentile && percentile <= 100;
+
+    final var length = mCounts.length();
+    final var counts = new long[ length ];
+    var count = 0L;
+
+    // Snapshot the counts so that concurrent updates cannot skew the result.
+    for( int i = 0; i < length; i++ ) {
+      counts[ i ] = mCounts.get( i );
+      count += counts[ i ];
+    }
+
+    final var target = max( 1, (long) ceil( percentile / 100 * count ) );
+    var cumulative = 0L;
+
+    for( int i = 0; i < length && count > 0; i++ ) {
+      cumulative += counts[ i ];
+
+      if( cumulative >= target ) {
+        return min( toHighestValue( i ), getMax() );
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return The total number of calls to {@link #record(long)} with a
+   * non-negative value.
+   */
+  public long getCount() {
+    return mCount.get();
+  }
+
+  /**
+   * Returns the largest value recorded.
+   *
+   * @return The maximum value, or 0 if no values were recorded.
+   */
+  public long getMax() {
+    return mMax.get();
+  }
+
+  /**
+   * Returns the arithmetic mean of all values recorded.
+   *
+   * @return The average value, or 0 if no values were recorded.
+   */
+  public double getMean() {
+    final var count = getCount();
+    return count == 0 ? 0 : (double) mTotal.get() / count;
+  }
+
+  /**
+   * Maps a value to the index of the bucket that counts it.
+   *
+   * @param value A non-negative value.
+   * @return An index into {@link #mCounts}.
+   */
+  static int toIndex( final long value ) {
+    if( value < SUB_BUCKETS ) {
+      return (int) value;
+    }
+
+    final var magnitude = Long.SIZE - 1 - numberOfLeadingZeros( value );
+    final var shift = magnitude - SUB_BUCKET_BITS;
+    final var bucket = shift + 1;
+    final var sub = (int) (value >>> shift) - SUB_BUCKETS;
+
+    return bucket * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * Maps the index of a bucket to the largest value that the bucket counts.
+   *
+   * @param index An index into {@link #mCounts}.
+   * @return The largest value that {@link #toIndex(long)} maps to the index.
+   */
+  static long toHighestValue( final int index ) {
+    final var bucket = index / SUB_BUCKETS;
+    final var sub = index % SUB_BUCKETS;
+
+    if( bucket == 0 ) {
+      return sub;
+    }
+
+    final var shift = bucket - 1;
+    final var lowest = (long) (sub + SUB_BUCKETS) << shift;
+
+    return lowest + (1L << shift) - 1;
+  }
+}
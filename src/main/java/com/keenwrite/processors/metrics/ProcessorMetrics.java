@@ -0,0 +1,192 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.metrics;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keenwrite.processors.ExecutorProcessor;
+import com.keenwrite.processors.Processor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.nanoTime;
+import static java.util.Comparator.comparing;
+
+/**
+ * Responsible for measuring each {@link Processor} that an
+ * {@link ExecutorProcessor} calls, when enabled. Measurements include the
+ * wall-clock time, bytes allocated by the calling thread, and the input and
+ * output sizes. Stages are identified by their class name, so the same
+ * stage used by multiple chains (e.g., previews of different documents)
+ * shares a single set of histograms.
+ * <p>
+ * Chains may call other chains (e.g., inline R statements are evaluated
+ * while parsing Markdown), so the measurements for an outer stage include
+ * the measurements for any stages that it calls.
+ * </p>
+ */
+public final class ProcessorMetrics {
+  /**
+   * Collects measurements for every processor chain.
+   */
+  public static final ProcessorMetrics METRICS = new ProcessorMetrics();
+
+  private static final double[] PERCENTILES = {50, 95, 99};
+
+  private final Map<String, StageMetrics> mStages = new ConcurrentHashMap<>();
+  private final com.sun.management.ThreadMXBean mThreads = createThreadBean();
+
+  private volatile boolean mEnabled;
+
+  private ProcessorMetrics() {
+  }
+
+  /**
+   * Answers whether processors are being measured.
+   *
+   * @return {@code true} when calls to processors are measured.
+   */
+  public boolean isEnabled() {
+    return mEnabled;
+  }
+
+  /**
+   * Starts or stops measuring processors. Measuring is disabled by default
+   * because reading the allocation counters is not free.
+   *
+   * @param enabled {@code true} to start measuring processors.
+   */
+  public void setEnabled( final boolean enabled ) {
+    mEnabled = enabled;
+  }
+
+  /**
+   * Calls the given processor and records how long it took, how much it
+   * allocated, and how much data it consumed and produced.
+   *
+   * @param processor The processor to call.
+   * @param data      The data to pass into the processor.
+   * @param <T>       The type of data to process.
+   * @return The result from calling the processor.
+   */
+  public <T> T apply( final Processor<T> processor, final T data ) {
+    final var allocated = getAllocatedBytes();
+    final var began = nanoTime();
+    final var result = processor.apply( data );
+    final var nanos = nanoTime() - began;
+    final var bytes = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+
+    getStage( processor ).record(
+      nanos, bytes, sizeOf( data ), sizeOf( result ) );
+
+    return result;
+  }
+
+  /**
+   * Records how long a stage that is not a {@link Processor} took, such as
+   * evaluating a script that prepares a processor, when enabled.
+   *
+   * @param name  The stage's name.
+   * @param nanos The wall-clock time taken by the stage, in nanoseconds.
+   * @param input The number of characters consumed by the stage.
+   */
+  public void record( final String name, final long nanos, final long input ) {
+    if( mEnabled ) {
+      mStages.computeIfAbsent( name, StageMetrics::new )
+             .record( nanos, -1, input, -1 );
+    }
+  }
+
+  /**
+   * Returns the measurements for every stage that has been called, sorted
+   * by stage name.
+   *
+   * @return A new list of stages.
+   */
+  public Collection<StageMetrics> getStages() {
+    final var stages = new ArrayList<>( mStages.values() );
+    stages.sort( comparing( StageMetrics::getName ) );
+    return stages;
+  }
+
+  /**
+   * Discards all measurements.
+   */
+  public void reset() {
+    mStages.clear();
+  }
+
+  /**
+   * Converts the percentiles for every stage into a JSON document.
+   *
+   * @return The measurements in a human-readable JSON format.
+   * @throws JsonProcessingException Could not serialize the measurements.
+   */
+  public String toJson() throws JsonProcessingException {
+    final var mapper = new ObjectMapper();
+    final var root = mapper.createObjectNode();
+    final var stages = root.putArray( "stages" );
+
+    for( final var stage : getStages() ) {
+      final var node = stages.addObject();
+
+      node.put( "name", stage.getName() );
+      node.put( "count", stage.getWallTime().getCount() );
+      put( node.putObject( "wall_nanos" ), stage.getWallTime() );
+      put( node.putObject( "allocated_bytes" ), stage.getAllocated() );
+      put( node.putObject( "input_chars" ), stage.getInputSize() );
+      put( node.putObject( "output_chars" ), stage.getOutputSize() );
+    }
+
+    return mapper.writerWithDefaultPrettyPrinter().writeValueAsString( root );
+  }
+
+  private static void put( final ObjectNode node, final Histogram histogram ) {
+    for( final var percentile : PERCENTILES ) {
+      node.put( "p" + (int) percentile,
+                histogram.getValueAtPercentile( percentile ) );
+    }
+
+    node.put( "max", histogram.getMax() );
+    node.put( "mean", histogram.getMean() );
+  }
+
+  private StageMetrics getStage( final Processor<?> processor ) {
+    final var clazz = processor.getClass();
+    final var name = clazz.isAnonymousClass()
+      ? clazz.getName()
+      : clazz.getSimpleName();
+
+    return mStages.computeIfAbsent( name, StageMetrics::new );
+  }
+
+  private long getAllocatedBytes() {
+    return mThreads == null ? -1 : mThreads.getCurrentThreadAllocatedBytes();
+  }
+
+  private static long sizeOf( final Object data ) {
+    return data instanceof CharSequence s ? s.length() : -1;
+  }
+
+  /**
+   * Returns the HotSpot extension for measuring thread allocations, if
+   * the JVM supports it.
+   *
+   * @return {@code null} if allocations cannot be measured.
+   */
+  private static com.sun.management.ThreadMXBean createThreadBean() {
+    final var bean = ManagementFactory.getThreadMXBean();
+
+    if( bean instanceof com.sun.management.ThreadMXBean threads &&
+      threads.isThreadAllocatedMemorySupported() ) {
+      threads.setThreadAllocatedMemoryEnabled( true );
+      return threads;
+    }
+
+    return null;
+  }
+}
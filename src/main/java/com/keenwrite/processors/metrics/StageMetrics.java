@@ -0,0 +1,85 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.metrics;
+
+/**
+ * Responsible for collecting measurements taken each time a single stage of
+ * a processor chain transforms its input.
+ */
+public final class StageMetrics {
+  private final String mName;
+  private final Histogram mWallTime = new Histogram();
+  private final Histogram mAllocated = new Histogram();
+  private final Histogram mInputSize = new Histogram();
+  private final Histogram mOutputSize = new Histogram();
+
+  /**
+   * Creates an empty set of measurements for the named stage.
+   *
+   * @param name Identifies the stage, typically its class name.
+   */
+  public StageMetrics( final String name ) {
+    assert name != null;
+    mName = name;
+  }
+
+  /**
+   * Adds one measurement for each histogram. Negative values indicate that
+   * a measurement could not be taken and are not recorded.
+   *
+   * @param nanos      Elapsed wall-clock time.
+   * @param allocated  Bytes allocated by the thread that ran the stage.
+   * @param inputSize  Length of the data given to the stage.
+   * @param outputSize Length of the data returned from the stage.
+   */
+  public void record(
+    final long nanos,
+    final long allocated,
+    final long inputSize,
+    final long outputSize ) {
+    mWallTime.record( nanos );
+    mAllocated.record( allocated );
+    mInputSize.record( inputSize );
+    mOutputSize.record( outputSize );
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * Returns the wall-clock time taken by the stage.
+   *
+   * @return Nanoseconds elapsed per call.
+   */
+  public Histogram getWallTime() {
+    return mWallTime;
+  }
+
+  /**
+   * Returns the memory allocated by the stage, which is only available on
+   * JVMs that support measuring thread allocations.
+   *
+   * @return Bytes allocated per call.
+   */
+  public Histogram getAllocated() {
+    return mAllocated;
+  }
+
+  /**
+   * Returns the size of the data passed into the stage.
+   *
+   * @return Characters received per call.
+   */
+  public Histogram getInputSize() {
+    return mInputSize;
+  }
+
+  /**
+   * Returns the size of the data produced by the stage.
+   *
+   * @return Characters returned per call.
+   */
+  public Histogram getOutputSize() {
+    return mOutputSize;
+  }
+}
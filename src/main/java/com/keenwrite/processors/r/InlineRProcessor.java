@@ -9,23 +9,44 @@ import com.keenwrite.processors.markdown.extensions.r.ROutputProcessor;
 import com.keenwrite.util.BoundedCache;
 import javafx.beans.property.Property;
 
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
+import static com.keenwrite.ExportFormat.NONE;
 import static com.keenwrite.constants.Constants.STATUS_PARSE_ERROR;
 import static com.keenwrite.Messages.get;
+import static com.keenwrite.events.BudgetExceededEvent.fireBudgetExceededEvent;
 import static com.keenwrite.events.StatusEvent.clue;
 import static com.keenwrite.preferences.WorkspaceKeys.*;
+import static com.keenwrite.processors.RenderScheduler.checkSuperseded;
+import static com.keenwrite.processors.metrics.ProcessorMetrics.METRICS;
 import static com.keenwrite.processors.text.TextReplacementFactory.replace;
 import static com.keenwrite.sigils.RSigilOperator.PREFIX;
 import static com.keenwrite.sigils.RSigilOperator.SUFFIX;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.Collections.newSetFromMap;
+import static java.util.Map.entry;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 
 /**
  * Transforms a document containing R statements into Markdown.
@@ -34,20 +55,99 @@ public final class InlineRProcessor extends DefinitionProcessor {
   private final Processor<String> mPostProcessor = new ROutputProcessor();
 
   /**
-   * Where to put document inline evaluated R expressions, constrained to
-   * avoid running out of memory.
+   * Where to put document inline evaluated R expressions that change the
+   * R environment, constrained to avoid running out of memory.
    */
   private final Map<String, String> mEvalCache =
     new BoundedCache<>( 512 );
 
-  private static final ScriptEngine ENGINE =
-    (new ScriptEngineManager()).getEngineByName( "Renjin" );
+  /**
+   * Identifies the session whose R state produced the results in
+   * {@link #mEvalCache}, zero if none.
+   */
+  private long mEvalSessionId;
+
+  /**
+   * The session's lease count when this processor last leased it, which
+   * reveals whether another lessee could have changed its R state since.
+   */
+  private long mEvalLeases;
+
+  /**
+   * Where to put the results of pure R expressions, shared by all documents
+   * and retained between application runs.
+   */
+  private static final REvalCache CACHE = REvalCache.create();
+
+  /**
+   * Shares Renjin engines among all documents.
+   */
+  private static final RSessionPool POOL = new RSessionPool();
+
+  /**
+   * Evaluates independent R expressions on additional sessions.
+   */
+  private static final ExecutorService EVALUATOR = newCachedThreadPool( r -> {
+    final var thread = new Thread( r, "r-evaluator" );
+    thread.setDaemon( true );
+    return thread;
+  } );
 
   private static final int PREFIX_LENGTH = PREFIX.length();
 
   private final AtomicBoolean mDirty = new AtomicBoolean( false );
 
   private final Workspace mWorkspace;
+  private final ProcessorContext mContext;
+
+  /**
+   * The session leased by {@link #withSession(Supplier)}, used only by the
+   * thread that leased it.
+   */
+  private RSession mSession;
+
+  /**
+   * Set while a job runs, whether or not a session could be leased.
+   */
+  private boolean mLeased;
+
+  /**
+   * Determines the expressions whose results may be shared among documents,
+   * set by {@link #prepare(Map, boolean)}.
+   */
+  private RDependencies mDependencies = RDependencies.UNKNOWN;
+
+  /**
+   * Results evaluated before the document was parsed, keyed in the same way
+   * as the caches, for use by the current job only.
+   */
+  private Map<String, String> mPrefetched = Map.of();
+
+  /**
+   * Maps the document's expressions to their offsets in the source text,
+   * set by {@link #prepare(Map, boolean)}.
+   */
+  private Map<String, Integer> mOffsets = Map.of();
+
+  /**
+   * Set when the last expression evaluated exceeded its budget.
+   */
+  private boolean mExceeded;
+
+  /**
+   * Keys of document expressions that exceeded their budget, which are not
+   * evaluated again until the expression, bootstrap script, or definitions
+   * change (or the cache is cleared).
+   */
+  private final Set<String> mExceededKeys =
+    newSetFromMap( new BoundedCache<>( 64 ) );
+
+  /**
+   * Hash of the definitions having the version {@link #mHashedVersion}.
+   */
+  private int mDefinitionsHash;
+  private int mHashedVersion;
+  private boolean mHashed;
 
   /**
    * Constructs a processor capable of evaluating R statements.
@@ -61,11 +161,12 @@ public final class InlineRProcessor extends DefinitionProcessor {
     super( successor, context );
 
     mWorkspace = context.getWorkspace();
+    mContext = context;
 
     bootstrapScriptProperty().addListener(
-      ( __, oldScript, newScript ) -> setDirty( true ) );
+      ( __, oldScript, newScript ) -> recycle() );
     workingDirectoryProperty().addListener(
-      ( __, oldScript, newScript ) -> setDirty( true ) );
+      ( __, oldScript, newScript ) -> recycle() );
 
     // TODO: Watch the "R" property keys in the workspace, directly.
 
@@ -78,24 +179,50 @@ public final class InlineRProcessor extends DefinitionProcessor {
 //      }
 //    } );
 
-    init();
+    POOL.warm( getSessions() );
   }
 
   /**
    * Initialises the R code so that R can find imported libraries. Note that
    * any existing R functionality will not be overwritten if this method is
    * called multiple times.
+   * <p>
+   * The bootstrap script is evaluated only when the leased session has not
+   * already evaluated it for the same script, working directory, and
+   * definitions. When the definitions change, the script is evaluated only
+   * if the change alters the script once its variables are replaced.
+   * </p>
    *
    * @return {@code true} if initialization completed and all variables were
    * replaced; {@code false} if any variables remain.
    */
   public boolean init() {
+    return mLeased ? init( mSession ) : withSession( this::init );
+  }
+
+  /**
+   * Evaluates the bootstrap script using the given session, unless the
+   * session has already evaluated it.
+   *
+   * @param session The session to initialize, may be {@code null}.
+   * @return {@code true} if initialization completed and all variables were
+   * replaced; {@code false} if any variables remain.
+   * @see #init()
+   */
+  private boolean init( final RSession session ) {
     final var bootstrap = getBootstrapScript();
 
     if( !bootstrap.isBlank() ) {
       final var wd = getWorkingDirectory();
       final var dir = wd.toString().replace( '\\', '/' );
-      final var map = getDefinitions();
+      final var key = List.of(
+        bootstrap, dir, mContext.getDefinitionsVersion() );
+
+      if( session != null && session.isBootstrapped( key ) ) {
+        return true;
+      }
+
+      final var map = new HashMap<>( getDefinitions() );
       final var defBegan = mWorkspace.toString( KEY_DEF_DELIM_BEGAN );
       final var defEnded = mWorkspace.toString( KEY_DEF_DELIM_ENDED );
 
@@ -117,19 +244,217 @@ public final class InlineRProcessor extends DefinitionProcessor {
 
         return false;
       }
-      else {
-        eval( replaced );
+
+      if( session == null || !session.isBootstrapped( replaced ) ) {
+        final var began = nanoTime();
+
+        eval( session, replaced );
+
+        METRICS.record(
+          "RBootstrap", nanoTime() - began, replaced.length() );
+      }
+
+      if( session != null ) {
+        session.setBootstrapped( key, replaced );
       }
     }
 
     return true;
   }
 
+  /**
+   * Runs the given job (e.g., parsing a document) with an R session leased
+   * for this processor's exclusive use, so that every R statement that the
+   * job evaluates runs in the same R environment.
+   *
+   * @param job The work that evaluates R statements.
+   * @param <T> The type of result from the job.
+   * @return The result from the job.
+   */
+  public <T> T withSession( final Supplier<T> job ) {
+    if( mLeased ) {
+      return job.get();
+    }
+
+    final var session = lease();
+    setSession( session );
+    mLeased = true;
+
+    try {
+      return job.get();
+    } finally {
+      // The session differs from the one leased if it was abandoned.
+      final var leased = mSession;
+
+      mSession = null;
+      mLeased = false;
+      mPrefetched = Map.of();
+
+      if( leased != null ) {
+        POOL.release( leased );
+      }
+    }
+  }
+
+  /**
+   * Prepares to evaluate the given expressions, which are all the inline R
+   * expressions in the document, in document order. This determines which
+   * expressions are independent of the R environment (see
+   * {@link RDependencies}).
+   * <p>
+   * When evaluating (e.g., exporting), the expressions are evaluated
+   * before the document is parsed. Dependent expressions are evaluated in
+   * document order on the leased session. Meanwhile, independent
+   * expressions are evaluated concurrently on any additional sessions that
+   * are available, and on the leased session once its dependent expressions
+   * are evaluated. Parsing then substitutes the results in a single pass.
+   * </p>
+   *
+   * @param expressions The inline R expressions, without delimiters, in
+   *                    document order, mapped to their offsets in the
+   *                    document's source text.
+   * @param evaluate    Set to evaluate the expressions before parsing.
+   */
+  void prepare(
+    final Map<String, Integer> expressions, final boolean evaluate ) {
+    mDependencies = RDependencies.of( expressions.keySet() );
+    mOffsets = expressions;
+
+    if( evaluate && mLeased && mSession != null && init() ) {
+      prefetch( expressions.keySet() );
+    }
+  }
+
+  /**
+   * Evaluates the given expressions whose results are not cached, which
+   * must be called while a session is leased.
+   *
+   * @param expressions The inline R expressions, without delimiters.
+   */
+  private void prefetch( final Collection<String> expressions ) {
+    final var bootstrap = getBootstrap();
+    final var hash = getDefinitionsHash();
+    final var dir = getWorkingDirectory();
+    final var keys = new HashSet<String>();
+    final var dependent = new ArrayList<Map.Entry<String, String>>();
+    final var independent =
+      new ConcurrentLinkedQueue<Map.Entry<String, String>>();
+
+    for( final var r : expressions ) {
+      final var key = REvalCache.key( r, bootstrap, hash, dir );
+
+      if( keys.add( key ) ) {
+        if( mDependencies.isIndependent( r ) ) {
+          if( CACHE.get( key ) == null ) {
+            independent.add( entry( key, r ) );
+          }
+        }
+        else if( !mEvalCache.containsKey( key ) ) {
+          dependent.add( entry( key, r ) );
+        }
+      }
+    }
+
+    final var results = new ConcurrentHashMap<String, String>();
+    final var helpers = new ArrayList<Future<?>>();
+    final var pending = independent.size();
+    final var size = getSessions();
+
+    // Each additional session evaluates at least one expression.
+    for( int i = 1; i < size && i < pending; i++ ) {
+      final var session = POOL.tryLease( new Object(), size );
+
+      if( session == null ) {
+        break;
+      }
+
+      helpers.add( EVALUATOR.submit( () -> {
+        try {
+          if( init( session ) ) {
+            drain( session, new ROutputProcessor(), independent, results );
+          }
+        } finally {
+          POOL.release( session );
+        }
+      } ) );
+    }
+
+    try {
+      for( final var item : dependent ) {
+        checkSuperseded();
+
+        final var html = evalHtml( item.getValue() );
+
+        if( html != null && !RExpression.isVolatile( item.getValue() ) ) {
+          mEvalCache.put( item.getKey(), html );
+        }
+
+        results.put( item.getKey(), html == null ? "" : html );
+      }
+
+      drain( mSession, mPostProcessor, independent, results );
+
+      for( final var helper : helpers ) {
+        try {
+          helper.get();
+        } catch( final ExecutionException ex ) {
+          clue( ex );
+        }
+      }
+    } catch( final InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    } finally {
+      // Stops the additional sessions if evaluation was abandoned.
+      independent.clear();
+    }
+
+    mPrefetched = results;
+  }
+
+  /**
+   * Evaluates independent expressions until none remain, caching their
+   * results unless the session holds another document's R state.
+   * Expressions that fail are recorded as having no result, so that parsing
+   * does not evaluate them again.
+   *
+   * @param session   The session to evaluate upon.
+   * @param processor Converts results to HTML, used only by this thread.
+   * @param queue     The keys and expressions to evaluate.
+   * @param results   Receives the HTML for each key.
+   */
+  private void drain(
+    final RSession session,
+    final Processor<String> processor,
+    final Queue<Map.Entry<String, String>> queue,
+    final Map<String, String> results ) {
+    Map.Entry<String, String> item;
+
+    while( !Thread.currentThread().isInterrupted() &&
+      (item = queue.poll()) != null ) {
+      final var result = eval( session, item.getValue() );
+
+      if( result == null ) {
+        results.put( item.getKey(), "" );
+      }
+      else {
+        final var html = processor.apply( result );
+
+        if( !session.hasForeignState() ) {
+          CACHE.put( item.getKey(), html );
+        }
+
+        results.put( item.getKey(), html );
+      }
+    }
+  }
+
   /**
    * Empties the cache.
    */
   public void clear() {
     mEvalCache.clear();
+    mExceededKeys.clear();
   }
 
   /**
@@ -143,6 +468,16 @@ public final class InlineRProcessor extends DefinitionProcessor {
     mDirty.set( dirty );
   }
 
+  /**
+   * Discards all R sessions, because the bootstrap script or working
+   * directory changed. Statements evaluated after this call run in a fresh
+   * R environment.
+   */
+  private void recycle() {
+    setDirty( true );
+    POOL.recycle();
+  }
+
   /**
    * Answers whether R-related settings have been modified.
    *
@@ -187,10 +522,17 @@ public final class InlineRProcessor extends DefinitionProcessor {
         // Extract the inline R statement to be evaluated.
         final var r = text.substring( prevIndex, currIndex );
 
+        // Abandon evaluation if the document has changed since rendering
+        // began; this must not be caught along with R evaluation errors.
+        checkSuperseded();
+
         // Pass the R statement into the R engine for evaluation.
         try {
           // Append the string representation of the result into the text.
           sb.append( evalCached( r ) );
+        } catch( final CancellationException ex ) {
+          // A newer render was requested while evaluating.
+          throw ex;
         } catch( final Exception ex ) {
           // Inform the user that there was a problem.
           clue( STATUS_PARSE_ERROR, ex.getMessage(), currIndex );
@@ -214,13 +556,88 @@ public final class InlineRProcessor extends DefinitionProcessor {
 
   /**
    * Look up an R expression from the cache then return the resulting object.
-   * If the R expression hasn't been cached, it'll first be evaluated.
+   * If the R expression hasn't been cached, it'll first be evaluated. The
+   * results of independent expressions (see {@link RDependencies}) are cached
+   * on disk; the results of other expressions are cached for this document.
+   * Either way, results are keyed by the bootstrap script and definitions
+   * that were used to compute them. Failed evaluations, and expressions
+   * whose results change between evaluations (e.g., the date), are not
+   * cached. Nor are independent results from a session that another
+   * document changed, because they might depend on that document's state.
    *
    * @param r The expression to evaluate.
    * @return The object resulting from the evaluation.
    */
   private String evalCached( final String r ) {
-    return mEvalCache.computeIfAbsent( r, __ -> evalHtml( r ) );
+    final var key = REvalCache.key(
+      r, getBootstrap(), getDefinitionsHash(), getWorkingDirectory() );
+    final var prefetched = mPrefetched.get( key );
+
+    if( prefetched != null ) {
+      return prefetched;
+    }
+
+    if( mExceededKeys.contains( key ) ) {
+      return get( "Main.status.r.budget.placeholder" );
+    }
+
+    final var cacheable = !RExpression.isVolatile( r );
+    final var shared = mDependencies.isIndependent( r );
+    var result = !cacheable
+      ? null
+      : shared ? CACHE.get( key ) : mEvalCache.get( key );
+
+    if( result == null ) {
+      result = evalHtml( r );
+
+      if( result == null ) {
+        if( mExceeded ) {
+          mExceededKeys.add( key );
+          return get( "Main.status.r.budget.placeholder" );
+        }
+
+        return "";
+      }
+
+      if( cacheable ) {
+        if( !shared ) {
+          mEvalCache.put( key, result );
+        }
+        else if( !hasForeignState() ) {
+          CACHE.put( key, result );
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the bootstrap script that the leased session evaluated.
+   *
+   * @return The bootstrap script with its variables replaced, possibly empty.
+   */
+  private String getBootstrap() {
+    final var session = mSession;
+    return session == null ? "" : session.getBootstrap();
+  }
+
+  /**
+   * Returns a hash of the definitions' contents, which (unlike the version)
+   * is the same between application runs.
+   *
+   * @return The hash code of the definitions.
+   */
+  private int getDefinitionsHash() {
+    final var version = mContext.getDefinitionsVersion();
+
+    if( !mHashed || version != mHashedVersion ) {
+      mDefinitionsHash = getDefinitions().hashCode();
+      mHashedVersion = version;
+      mHashed = true;
+    }
+
+    return mDefinitionsHash;
   }
 
   /**
@@ -230,28 +647,191 @@ public final class InlineRProcessor extends DefinitionProcessor {
    * equivalent.
    *
    * @param r The R expression to evaluate then convert to HTML.
-   * @return The result from the R expression as an HTML element.
+   * @return The result from the R expression as an HTML element, or
+   * {@code null} if the expression could not be evaluated.
    */
   private String evalHtml( final String r ) {
-    return mPostProcessor.apply( eval( r ) );
+    final var session = mSession;
+    mExceeded = false;
+
+    if( session != null && !RExpression.isPure( r ) ) {
+      session.setStateful();
+    }
+
+    final var result = mContext.isExportFormat( NONE )
+      ? evalBudgeted( r )
+      : eval( r );
+    return result == null ? null : mPostProcessor.apply( result );
+  }
+
+  /**
+   * Evaluate an R expression within the budget set in the preferences,
+   * which prevents a runaway expression from stalling the preview. An
+   * expression that exceeds its budget is logged, along with its cost and
+   * source offset, and its session is abandoned.
+   *
+   * @param r The expression to evaluate.
+   * @return The object resulting from the evaluation, or {@code null} if
+   * the expression could not be evaluated or exceeded its budget (which
+   * sets {@link #mExceeded}).
+   * @throws CancellationException Interrupted while evaluating, or a newer
+   *                               render was requested.
+   */
+  private String evalBudgeted( final String r ) {
+    final var session = mSession;
+
+    if( session == null ) {
+      return eval( r );
+    }
+
+    final var budget = new REvalBudget(
+      getWorkspace().integerProperty( KEY_R_BUDGET_ELAPSED ).get(),
+      getWorkspace().integerProperty( KEY_R_BUDGET_CPU ).get() );
+
+    try {
+      return budget.eval( session, r );
+    } catch( final REvalBudget.BudgetExceededException ex ) {
+      abandon( session );
+      mExceeded = true;
+
+      METRICS.record( "RBudget", ex.getElapsed(), r.length() );
+      fireBudgetExceededEvent(
+        r, mOffsets.getOrDefault( r, -1 ), ex.getElapsed(), ex.getCpuTime() );
+      clue( "Main.status.r.budget" );
+
+      return null;
+    } catch( final CancellationException ex ) {
+      // The job is ending, so the session need not be replaced.
+      POOL.discard( session );
+      mSession = null;
+      throw ex;
+    } catch( final InterruptedException ex ) {
+      abandon( session );
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    } catch( final Exception ex ) {
+      fail( r, ex );
+      return null;
+    }
+  }
+
+  /**
+   * Discards the leased session, which may still be evaluating, then leases
+   * another session (without waiting) for the remainder of the job.
+   *
+   * @param session The session to discard.
+   */
+  private void abandon( final RSession session ) {
+    POOL.discard( session );
+
+    final var replacement = POOL.tryLease( this, getSessions() );
+    setSession( replacement );
+
+    if( replacement != null ) {
+      init( replacement );
+    }
   }
 
   /**
    * Evaluate an R expression and return the resulting object.
    *
    * @param r The expression to evaluate.
-   * @return The object resulting from the evaluation.
+   * @return The object resulting from the evaluation, or {@code null} if
+   * the expression could not be evaluated.
    */
   private String eval( final String r ) {
+    return mLeased
+      ? eval( mSession, r )
+      : withSession( () -> eval( mSession, r ) );
+  }
+
+  /**
+   * Evaluate an R expression using the given session.
+   *
+   * @param session The session leased for this processor.
+   * @param r       The expression to evaluate.
+   * @return The object resulting from the evaluation, or {@code null} if
+   * the expression could not be evaluated.
+   */
+  private String eval( final RSession session, final String r ) {
     try {
-      return ENGINE.eval( r ).toString();
+      if( session == null ) {
+        throw new ScriptException( "Renjin not found" );
+      }
+
+      return session.eval( r );
     } catch( final Exception ex ) {
-      final var expr = r.substring( 0, min( r.length(), 50 ) );
-      clue( get( "Main.status.error.r", expr, ex.getMessage() ), ex );
-      return "";
+      fail( r, ex );
+      return null;
+    }
+  }
+
+  /**
+   * Informs the user that an R expression could not be evaluated.
+   *
+   * @param r  The expression that failed.
+   * @param ex The reason for the failure.
+   */
+  private void fail( final String r, final Exception ex ) {
+    final var expr = r.substring( 0, min( r.length(), 50 ) );
+    clue( get( "Main.status.error.r", expr, ex.getMessage() ), ex );
+  }
+
+  /**
+   * Sets the session for the current job, which must have just been leased.
+   * The pool does not guarantee that a document receives the session it
+   * used last, and a session may be abandoned part way through a job. A
+   * different session lacks the R state (e.g., variables) created by the
+   * document's stateful expressions, while the same session may have been
+   * leased to another document that changed the R state. Either way, the
+   * cached results of stateful expressions are discarded, which causes them
+   * to be evaluated again on the session.
+   *
+   * @param session The session to use, may be {@code null}.
+   */
+  private void setSession( final RSession session ) {
+    final var id = session == null ? 0 : session.getId();
+    final var leases = session == null ? 0 : session.getLeases();
+
+    if( id != mEvalSessionId || leases != mEvalLeases + 1 ) {
+      mEvalCache.clear();
+    }
+
+    mEvalSessionId = id;
+    mEvalLeases = leases;
+    mSession = session;
+  }
+
+  /**
+   * Answers whether the leased session may hold R state from another
+   * document, in which case independent results must not be shared.
+   *
+   * @return {@code true} if the results from the session are not shared.
+   */
+  private boolean hasForeignState() {
+    final var session = mSession;
+    return session == null || session.hasForeignState();
+  }
+
+  /**
+   * Leases a session from the pool.
+   *
+   * @return The leased session, or {@code null} if R is unavailable.
+   * @throws CancellationException Interrupted while waiting for a session.
+   */
+  private RSession lease() {
+    try {
+      return POOL.lease( this, getSessions() );
+    } catch( final InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
     }
   }
 
+  private int getSessions() {
+    return getWorkspace().integerProperty( KEY_R_SESSIONS ).get();
+  }
+
   /**
    * Return the given path if not {@code null}, otherwise return the path to
    * the user's directory.
@@ -0,0 +1,134 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import com.keenwrite.processors.text.ResolvedMap;
+import com.keenwrite.sigils.SigilOperator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the resolved definitions in R form: keys in R syntax (e.g.,
+ * {@code v$tree$leaf}) mapped to quoted, escaped values. One instance is
+ * shared by every {@link RVariableProcessor} that reads the same
+ * {@link ResolvedMap}, so the definitions are converted once per version
+ * rather than once per inline R statement. Only the definitions that
+ * changed since the previous version are converted, unless the user changed
+ * the delimiters, in which case every definition is converted again.
+ * <p>
+ * The R form is itself held in a {@link ResolvedMap}, which compiles the
+ * automaton used to replace R keys once per version.
+ * </p>
+ */
+final class RDefinitions {
+  private final ResolvedMap mDefinitions;
+  private final ResolvedMap mRMap = new ResolvedMap();
+
+  /**
+   * Delimiters of the {@link SigilOperator} that converted the keys in
+   * {@link #mRMap}, or an empty list if never derived.
+   */
+  private List<String> mDelimiters = List.of();
+
+  /**
+   * Version of {@link #mDefinitions} from which {@link #mRMap} was derived,
+   * or -1 if never derived.
+   */
+  private int mVersion = -1;
+
+  private RDefinitions( final ResolvedMap definitions ) {
+    mDefinitions = definitions;
+  }
+
+  /**
+   * Returns the R form of the given definitions, shared by all callers.
+   *
+   * @param definitions The resolved definitions in default form.
+   * @return The instance that derives R definitions from the given map.
+   */
+  static RDefinitions of( final ResolvedMap definitions ) {
+    return definitions.getDerived( RDefinitions.class, RDefinitions::new );
+  }
+
+  /**
+   * Returns the definitions in R form, updated to the current version of
+   * the resolved definitions and the operator's current delimiters.
+   *
+   * @param operator Converts keys from default form to R form.
+   * @return Variable names transmogrified from the default syntax to R syntax.
+   */
+  synchronized Map<String, String> get( final SigilOperator operator ) {
+    final var snapshot = mDefinitions.snapshot();
+    final var delimiters = operator.getDelimiters();
+    final var changes = mVersion < 0 || !delimiters.equals( mDelimiters )
+      ? null
+      : snapshot.getChanges( mVersion );
+
+    if( changes == null ) {
+      mRMap.update( entoken( snapshot.getMap(), operator ) );
+    }
+    else if( !changes.isEmpty() ) {
+      mRMap.merge( entoken( changes, operator ) );
+    }
+
+    mVersion = snapshot.getVersion();
+    mDelimiters = delimiters;
+
+    return mRMap;
+  }
+
+  /**
+   * Converts the given map from regular variables to R variables. Keys
+   * mapped to {@code null} remain mapped to {@code null}.
+   *
+   * @param map      Map of variable names to values.
+   * @param operator Converts keys from default form to R form.
+   * @return Map of R variables.
+   */
+  static Map<String, String> entoken(
+    final Map<String, String> map, final SigilOperator operator ) {
+    final var rMap = new HashMap<String, String>( map.size() * 2 );
+
+    map.forEach( ( key, value ) -> rMap.put(
+      operator.entoken( key ), value == null ? null : escape( value ) ) );
+
+    return rMap;
+  }
+
+  private static String escape( final String value ) {
+    return '\'' + escape( value, '\'', "\\'" ) + '\'';
+  }
+
+  /**
+   * TODO: Make generic method for replacing text.
+   *
+   * @param haystack Search this string for the needle, must not be null.
+   * @param needle   The character to find in the haystack.
+   * @param thread   Replace the needle with this text, if the needle is found.
+   * @return The haystack with the all instances of needle replaced with thread.
+   */
+  @SuppressWarnings( "SameParameterValue" )
+  private static String escape(
+    final String haystack, final char needle, final String thread ) {
+    int end = haystack.indexOf( needle );
+
+    if( end < 0 ) {
+      return haystack;
+    }
+
+    final int length = haystack.length();
+    int start = 0;
+
+    // Replace up to 32 occurrences before the string reallocates its buffer.
+    final var sb = new StringBuilder( length + 32 );
+
+    while( end >= 0 ) {
+      sb.append( haystack, start, end ).append( thread );
+      start = end + 1;
+      end = haystack.indexOf( needle, start );
+    }
+
+    return sb.append( haystack.substring( start ) ).toString();
+  }
+}
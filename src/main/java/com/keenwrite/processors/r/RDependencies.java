@@ -0,0 +1,102 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.keenwrite.processors.r.RExpression.callsOnlyBase;
+import static com.keenwrite.processors.r.RExpression.getNames;
+import static com.keenwrite.processors.r.RExpression.isOpaque;
+import static com.keenwrite.processors.r.RExpression.isPure;
+import static java.util.Collections.disjoint;
+
+/**
+ * Responsible for determining which of a document's inline R expressions
+ * are independent of the document's stateful expressions. An independent
+ * expression is pure and uses no name that a stateful expression in the
+ * same document uses, so its result is the same regardless of which R
+ * session evaluates it, or when. Independent expressions may therefore be
+ * evaluated concurrently on separate sessions and cached across documents.
+ * <p>
+ * Names are compared without regard to their position in the document,
+ * which is conservative: an expression that precedes an assignment is
+ * treated as though it depends on the assignment.
+ * </p>
+ * <p>
+ * A function that the bootstrap script defines may read a global variable
+ * that a stateful expression assigns, without the expression that calls
+ * the function naming the variable. So when the document has any stateful
+ * expression, an expression that calls a function outside R's base and
+ * stats packages is dependent (see {@link RExpression#callsOnlyBase}).
+ * </p>
+ */
+final class RDependencies {
+  /**
+   * Treats every expression as dependent, for use before a document's
+   * expressions are known.
+   */
+  static final RDependencies UNKNOWN =
+    new RDependencies( Set.of(), true, true );
+
+  /**
+   * Names used by the document's stateful expressions.
+   */
+  private final Set<String> mNames;
+
+  /**
+   * Set when a stateful expression changes the environment in ways that
+   * its names do not reveal.
+   */
+  private final boolean mOpaque;
+
+  /**
+   * Set when the document has any stateful expression.
+   */
+  private final boolean mStateful;
+
+  private RDependencies(
+    final Set<String> names, final boolean opaque, final boolean stateful ) {
+    mNames = names;
+    mOpaque = opaque;
+    mStateful = stateful;
+  }
+
+  /**
+   * Collects the names used by the stateful expressions among the given
+   * expressions.
+   *
+   * @param expressions A document's inline R expressions, without
+   *                    delimiters.
+   * @return The dependencies for the document's expressions.
+   */
+  static RDependencies of( final Collection<String> expressions ) {
+    final var names = new HashSet<String>();
+    var opaque = false;
+    var stateful = false;
+
+    for( final var r : expressions ) {
+      if( !isPure( r ) ) {
+        opaque |= isOpaque( r );
+        stateful = true;
+        names.addAll( getNames( r ) );
+      }
+    }
+
+    return new RDependencies( names, opaque, stateful );
+  }
+
+  /**
+   * Answers whether the given expression's result cannot be affected by
+   * the document's stateful expressions.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return {@code true} if the expression may be evaluated on any session.
+   */
+  boolean isIndependent( final String r ) {
+    return isPure( r ) &&
+      !mOpaque &&
+      disjoint( mNames, getNames( r ) ) &&
+      (!mStateful || callsOnlyBase( r ));
+  }
+}
@@ -0,0 +1,191 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import javax.script.ScriptException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.keenwrite.processors.RenderScheduler.isSuperseded;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Responsible for evaluating an R expression within a CPU-time and
+ * wall-clock budget. The expression is evaluated on a worker thread while
+ * the calling thread measures its cost; an expression that exceeds either
+ * budget is interrupted and abandoned, so that an infinite loop (or a huge
+ * file read) cannot stop the preview from updating.
+ * <p>
+ * Renjin might not stop evaluating when interrupted, so the session that
+ * evaluated an abandoned expression must not be used again.
+ * </p>
+ */
+final class REvalBudget {
+  /**
+   * How often to measure the cost of the evaluation.
+   */
+  private static final long POLL_NANOS = MILLISECONDS.toNanos( 20 );
+
+  private static final ThreadMXBean THREADS = createThreadBean();
+
+  private static final ExecutorService WORKERS = newCachedThreadPool( r -> {
+    final var thread = new Thread( r, "r-budget-worker" );
+    thread.setDaemon( true );
+    return thread;
+  } );
+
+  private final long mElapsedLimit;
+  private final long mCpuLimit;
+
+  /**
+   * Creates a budget for evaluating expressions.
+   *
+   * @param elapsed Maximum wall-clock time, in milliseconds, or zero for no
+   *                limit.
+   * @param cpu     Maximum CPU time, in milliseconds, or zero for no limit.
+   */
+  REvalBudget( final long elapsed, final long cpu ) {
+    mElapsedLimit = toLimit( elapsed );
+    mCpuLimit = toLimit( cpu );
+  }
+
+  /**
+   * Evaluates the given expression using the given session, waiting until
+   * the evaluation completes or exceeds the budget.
+   *
+   * @param session The session to evaluate upon.
+   * @param r       The expression to evaluate.
+   * @return The string representation of the evaluated result.
+   * @throws ScriptException         The expression could not be evaluated.
+   * @throws BudgetExceededException The evaluation was abandoned; the
+   *                                 session may still be evaluating.
+   * @throws InterruptedException    Interrupted while waiting; the session
+   *                                 may still be evaluating.
+   * @throws CancellationException   A newer render was requested; the
+   *                                 session may still be evaluating.
+   */
+  String eval( final RSession session, final String r )
+    throws ScriptException, BudgetExceededException, InterruptedException {
+    final var worker = new AtomicReference<Thread>();
+    final var baseline = new AtomicLong();
+    final var task = WORKERS.submit( () -> {
+      // Workers are reused, so measure only the time used by this task.
+      final var thread = Thread.currentThread();
+      baseline.set( getCpuTime( thread ) );
+      worker.set( thread );
+      return session.eval( r );
+    } );
+    final var began = nanoTime();
+
+    try {
+      while( true ) {
+        try {
+          return task.get( POLL_NANOS, NANOSECONDS );
+        } catch( final TimeoutException ex ) {
+          final var elapsed = nanoTime() - began;
+          final var thread = worker.get();
+          final var cpu = thread == null
+            ? 0
+            : Math.max( 0, getCpuTime( thread ) - baseline.get() );
+
+          // When cancelling fails, the result is ready for the next get.
+          if( isSuperseded() && task.cancel( true ) ) {
+            throw new CancellationException();
+          }
+
+          if( (elapsed > mElapsedLimit || cpu > mCpuLimit) &&
+            task.cancel( true ) ) {
+            throw new BudgetExceededException( elapsed, cpu );
+          }
+        }
+      }
+    } catch( final ExecutionException ex ) {
+      final var cause = ex.getCause();
+
+      if( cause instanceof final ScriptException se ) {
+        throw se;
+      }
+
+      if( cause instanceof final RuntimeException re ) {
+        throw re;
+      }
+
+      throw new ScriptException( cause.toString() );
+    } catch( final InterruptedException ex ) {
+      task.cancel( true );
+      throw ex;
+    }
+  }
+
+  /**
+   * Returns the CPU time that the given thread has used since it started,
+   * which is zero if the JVM cannot measure it.
+   */
+  private static long getCpuTime( final Thread thread ) {
+    if( THREADS == null ) {
+      return 0;
+    }
+
+    return Math.max( 0, THREADS.getThreadCpuTime( thread.getId() ) );
+  }
+
+  private static long toLimit( final long millis ) {
+    return millis > 0 ? MILLISECONDS.toNanos( millis ) : Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the bean for measuring thread CPU time, if the JVM supports it.
+   *
+   * @return {@code null} if CPU time cannot be measured.
+   */
+  private static ThreadMXBean createThreadBean() {
+    final var bean = ManagementFactory.getThreadMXBean();
+
+    if( bean.isThreadCpuTimeSupported() ) {
+      bean.setThreadCpuTimeEnabled( true );
+      return bean;
+    }
+
+    return null;
+  }
+
+  /**
+   * Indicates that an evaluation was abandoned for exceeding its budget.
+   */
+  static final class BudgetExceededException extends TimeoutException {
+    private final long mElapsed;
+    private final long mCpuTime;
+
+    private BudgetExceededException( final long elapsed, final long cpu ) {
+      super( "R evaluation budget exceeded" );
+      mElapsed = elapsed;
+      mCpuTime = cpu;
+    }
+
+    /**
+     * Returns the wall-clock time spent before abandoning the evaluation.
+     *
+     * @return The elapsed time, in nanoseconds.
+     */
+    long getElapsed() {
+      return mElapsed;
+    }
+
+    /**
+     * Returns the CPU time spent before abandoning the evaluation.
+     *
+     * @return The CPU time, in nanoseconds.
+     */
+    long getCpuTime() {
+      return mCpuTime;
+    }
+  }
+}
@@ -0,0 +1,428 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+import static com.keenwrite.Bootstrap.APP_TITLE_LOWERCASE;
+import static com.keenwrite.events.StatusEvent.clue;
+import static java.lang.System.getProperty;
+import static java.lang.System.getenv;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.createDirectories;
+import static java.nio.file.Files.createTempFile;
+import static java.nio.file.Files.deleteIfExists;
+import static java.nio.file.Files.move;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Persists the results of evaluating pure inline R expressions (see
+ * {@link RExpression#isPure(String)}), so that reopening a document renders
+ * its R results without evaluating them again. Results are addressed by a
+ * digest of everything that could change them: the expression, the
+ * bootstrap script, the definitions, and the files the expression reads.
+ * Stale results are therefore never returned; they are simply no longer
+ * requested.
+ * <p>
+ * Results are appended to a single file, with later records superseding
+ * earlier records having the same key. When the file exceeds its size
+ * bound, it is rewritten to contain only the most recently used results.
+ * Writes happen on a background thread; the file is read once, upon first
+ * use.
+ * </p>
+ */
+final class REvalCache {
+  /**
+   * Identifies the file format.
+   */
+  private static final int MAGIC = 0x4B575231;
+
+  /**
+   * Number of digest bytes that form a key.
+   */
+  private static final int KEY_BYTES = 16;
+
+  /**
+   * Default bound on the size of the cache file.
+   */
+  private static final long MAX_BYTES = 8L << 20;
+
+  /**
+   * Finds quoted strings in an expression, which may name data files.
+   */
+  private static final Pattern LITERAL =
+    Pattern.compile( "'([^'\\\\\\n]+)'|\"([^\"\\\\\\n]+)\"" );
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final ExecutorService mWriter = newSingleThreadExecutor( r -> {
+    final var thread = new Thread( r, "r-cache-writer" );
+    thread.setDaemon( true );
+    return thread;
+  } );
+
+  private final Path mPath;
+  private final long mMaxBytes;
+
+  /**
+   * Maps keys to results, least recently used first.
+   */
+  private final Map<String, String> mResults =
+    new LinkedHashMap<>( 256, 0.75f, true );
+
+  /**
+   * Approximate size of the cache file, in bytes.
+   */
+  private long mBytes;
+
+  private boolean mLoaded;
+
+  /**
+   * Creates a cache stored in the given file.
+   *
+   * @param path     The file to read and append results.
+   * @param maxBytes The size that, when exceeded, causes the file to be
+   *                 rewritten with about half as many bytes.
+   */
+  REvalCache( final Path path, final long maxBytes ) {
+    assert path != null;
+    assert maxBytes > 0;
+
+    mPath = path;
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * Creates a cache stored in the user's cache directory.
+   *
+   * @return A new cache, which should be shared by all processors.
+   */
+  static REvalCache create() {
+    return new REvalCache(
+      getCacheDirectory().resolve( "r-eval.cache" ), MAX_BYTES );
+  }
+
+  /**
+   * Returns the result that was stored using the given key.
+   *
+   * @param key A value returned from {@link #key}.
+   * @return The cached result, or {@code null} if not cached.
+   */
+  synchronized String get( final String key ) {
+    load();
+    return mResults.get( key );
+  }
+
+  /**
+   * Stores a result, which is written to the cache file in the background.
+   *
+   * @param key    A value returned from {@link #key}.
+   * @param result The result of evaluating the expression.
+   */
+  synchronized void put( final String key, final String result ) {
+    load();
+
+    if( !result.equals( mResults.put( key, result ) ) ) {
+      final var record = toRecord( key, result );
+      mBytes += record.length;
+
+      if( mBytes > mMaxBytes ) {
+        compact();
+      }
+      else {
+        mWriter.execute( () -> append( record ) );
+      }
+    }
+  }
+
+  /**
+   * Waits for all pending writes to finish.
+   */
+  void flush() {
+    try {
+      mWriter.submit( () -> {} ).get();
+    } catch( final InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    } catch( final ExecutionException ex ) {
+      clue( ex );
+    }
+  }
+
+  /**
+   * Computes the key for a result. Quoted strings in the expression that
+   * name files in the working directory contribute the file's size and
+   * modification time, so that editing a data file invalidates results
+   * computed from it.
+   *
+   * @param r           The R expression.
+   * @param bootstrap   The bootstrap script evaluated before the expression.
+   * @param definitions A hash of the definitions.
+   * @param directory   The working directory for resolving file names.
+   * @return The key for the result of evaluating the expression.
+   */
+  static String key(
+    final String r,
+    final String bootstrap,
+    final int definitions,
+    final Path directory ) {
+    final var digest = createDigest();
+
+    update( digest, r );
+    update( digest, bootstrap );
+    update( digest, Integer.toString( definitions ) );
+
+    final var matcher = LITERAL.matcher( r );
+
+    while( matcher.find() ) {
+      final var name = matcher.group( 1 ) == null
+        ? matcher.group( 2 )
+        : matcher.group( 1 );
+
+      try {
+        final var file = directory.resolve( name );
+
+        if( Files.isRegularFile( file ) ) {
+          update( digest, file.toAbsolutePath().toString() );
+          update( digest, Long.toString( Files.size( file ) ) );
+          update( digest, Files.getLastModifiedTime( file ).toString() );
+        }
+      } catch( final Exception ignored ) {
+        // Not a file name (or not readable), so cannot invalidate results.
+      }
+    }
+
+    final var bytes = digest.digest();
+    final var hex = new char[ KEY_BYTES * 2 ];
+
+    for( int i = 0; i < KEY_BYTES; i++ ) {
+      hex[ i * 2 ] = HEX[ (bytes[ i ] >> 4) & 0xF ];
+      hex[ i * 2 + 1 ] = HEX[ bytes[ i ] & 0xF ];
+    }
+
+    return new String( hex );
+  }
+
+  /**
+   * Reads the cache file, if not already read. A truncated or corrupt
+   * record ends the read; the file is then rewritten so that subsequent
+   * records can be read.
+   */
+  private void load() {
+    if( mLoaded ) {
+      return;
+    }
+
+    mLoaded = true;
+
+    if( !Files.exists( mPath ) ) {
+      return;
+    }
+
+    var intact = false;
+
+    try( final var in = new DataInputStream(
+      new BufferedInputStream( newInputStream( mPath ) ) ) ) {
+      if( in.readInt() == MAGIC ) {
+        final var key = new byte[ KEY_BYTES * 2 ];
+
+        while( true ) {
+          try {
+            in.readFully( key );
+          } catch( final EOFException ex ) {
+            intact = true;
+            break;
+          }
+
+          final var length = in.readInt();
+
+          if( length < 0 || length > mMaxBytes ) {
+            break;
+          }
+
+          final var value = new byte[ length ];
+          in.readFully( value );
+          mResults.put(
+            new String( key, UTF_8 ), new String( value, UTF_8 ) );
+        }
+      }
+
+      mBytes = Files.size( mPath );
+    } catch( final IOException ex ) {
+      clue( ex );
+    }
+
+    if( !intact ) {
+      compact();
+    }
+  }
+
+  /**
+   * Evicts the least recently used results until the remaining results
+   * fill about half the maximum size, then rewrites the cache file in the
+   * background.
+   */
+  private void compact() {
+    final var records = new ArrayList<byte[]>( mResults.size() );
+    var bytes = (long) Integer.BYTES;
+
+    // Walk from most to least recently used, keeping what fits.
+    final var entries = new ArrayList<>( mResults.entrySet() );
+
+    for( int i = entries.size() - 1; i >= 0; i-- ) {
+      final var entry = entries.get( i );
+      final var record = toRecord( entry.getKey(), entry.getValue() );
+
+      if( bytes + record.length > mMaxBytes / 2 ) {
+        mResults.remove( entry.getKey() );
+      }
+      else {
+        records.add( record );
+        bytes += record.length;
+      }
+    }
+
+    mBytes = bytes;
+    mWriter.execute( () -> rewrite( records ) );
+  }
+
+  private void append( final byte[] record ) {
+    try {
+      final var exists = Files.exists( mPath );
+
+      if( !exists ) {
+        createDirectories( mPath.toAbsolutePath().getParent() );
+      }
+
+      try( final var out = new DataOutputStream(
+        newOutputStream( mPath, CREATE, APPEND ) ) ) {
+        if( !exists ) {
+          out.writeInt( MAGIC );
+        }
+
+        out.write( record );
+      }
+    } catch( final IOException ex ) {
+      clue( ex );
+    }
+  }
+
+  /**
+   * Replaces the cache file with the given records, least recently used
+   * last (so that, when read, they are ordered least recently used first).
+   *
+   * @param records The records to write, most recently used first.
+   */
+  private void rewrite( final ArrayList<byte[]> records ) {
+    Path temp = null;
+
+    try {
+      final var dir = mPath.toAbsolutePath().getParent();
+      createDirectories( dir );
+      temp = createTempFile( dir, ".r-eval", ".tmp" );
+
+      try( final var out = new DataOutputStream(
+        new BufferedOutputStream( newOutputStream( temp ) ) ) ) {
+        out.writeInt( MAGIC );
+
+        for( int i = records.size() - 1; i >= 0; i-- ) {
+          out.write( records.get( i ) );
+        }
+      }
+
+      try {
+        move( temp, mPath, ATOMIC_MOVE, REPLACE_EXISTING );
+      } catch( final AtomicMoveNotSupportedException ex ) {
+        move( temp, mPath, REPLACE_EXISTING );
+      }
+    } catch( final IOException ex ) {
+      clue( ex );
+
+      try {
+        if( temp != null ) {
+          deleteIfExists( temp );
+        }
+      } catch( final IOException ignored ) {
+        // The temporary file will be left behind.
+      }
+    }
+  }
+
+  private static byte[] toRecord( final String key, final String value ) {
+    final var k = key.getBytes( UTF_8 );
+    final var v = value.getBytes( UTF_8 );
+    final var record = new byte[ k.length + Integer.BYTES + v.length ];
+    final var length = v.length;
+
+    System.arraycopy( k, 0, record, 0, k.length );
+    record[ k.length ] = (byte) (length >>> 24);
+    record[ k.length + 1 ] = (byte) (length >>> 16);
+    record[ k.length + 2 ] = (byte) (length >>> 8);
+    record[ k.length + 3 ] = (byte) length;
+    System.arraycopy( v, 0, record, k.length + Integer.BYTES, v.length );
+
+    return record;
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance( "SHA-256" );
+    } catch( final NoSuchAlgorithmException ex ) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException( ex );
+    }
+  }
+
+  /**
+   * Adds a length-prefixed string to the digest, so that the boundaries
+   * between components are unambiguous.
+   */
+  private static void update( final MessageDigest digest, final String s ) {
+    final var bytes = s.getBytes( UTF_8 );
+    final var length = bytes.length;
+
+    digest.update( new byte[]{
+      (byte) (length >>> 24),
+      (byte) (length >>> 16),
+      (byte) (length >>> 8),
+      (byte) length} );
+    digest.update( bytes );
+  }
+
+  /**
+   * Returns the platform's directory for cached application data.
+   *
+   * @return The directory for this application's cached data.
+   */
+  private static Path getCacheDirectory() {
+    final var xdg = getenv( "XDG_CACHE_HOME" );
+    final var local = getenv( "LOCALAPPDATA" );
+    final var base = xdg != null && !xdg.isBlank()
+      ? Path.of( xdg )
+      : local != null && !local.isBlank()
+      ? Path.of( local )
+      : Path.of( getProperty( "user.home" ), ".cache" );
+
+    return base.resolve( APP_TITLE_LOWERCASE );
+  }
+}
@@ -0,0 +1,248 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static java.lang.Character.isDigit;
+import static java.lang.Character.isLetter;
+
+/**
+ * Responsible for classifying inline R expressions. An expression is pure
+ * when evaluating it cannot change the R environment, so its result depends
+ * only on the expression, the bootstrap script, and the files it reads. Pure
+ * expressions may be cached across sessions and evaluated in any order;
+ * stateful expressions (e.g., assignments) must be evaluated in document
+ * order on the session that evaluates the expressions that follow them.
+ * <p>
+ * The classification is syntactic and errs towards stateful: an assignment
+ * operator inside a string literal, for example, makes the expression
+ * stateful.
+ * </p>
+ */
+final class RExpression {
+  /**
+   * Assignment operators, which change the variables they name.
+   */
+  private static final Pattern ASSIGNMENT = Pattern.compile( "<<?-|->>?" );
+
+  /**
+   * Functions that change the environment in ways that cannot be determined
+   * from the expression's names (e.g., loading a library).
+   */
+  private static final Pattern OPAQUE = Pattern.compile(
+    "\\b(?:assign|attach|detach|library|options|require|rm" +
+      "|set\\.seed|setwd|source|Sys\\.setenv)\\s*\\(" );
+
+  /**
+   * Functions whose results differ between evaluations: the clock, random
+   * number generators (which also change {@code .Random.seed}), and file
+   * metadata. Reading a file is volatile unless its path is a string
+   * literal, which allows the file's size and modification time to be part
+   * of the cache key.
+   */
+  private static final Pattern VOLATILE = Pattern.compile(
+    "\\b(?:Sys\\.(?:time|Date|timezone)|date|proc\\.time" +
+      "|file\\.(?:info|mtime|size|exists)|sample(?:\\.int)?" +
+      "|r(?:unif|norm|binom|pois|exp|gamma|beta|t|f|chisq|lnorm|geom" +
+      "|hyper|nbinom|weibull|logis|cauchy|multinom|signrank|wilcox))" +
+      "\\s*\\(" +
+      "|\\b(?:readLines|readRDS|scan|read\\.(?:csv2?|table|delim2?))" +
+      "\\s*\\(\\s*+(?!['\"]|file\\s*=\\s*['\"])" );
+
+  /**
+   * Finds function calls, capturing the function's name.
+   */
+  private static final Pattern CALL =
+    Pattern.compile( "([A-Za-z.][A-Za-z0-9._]*)\\s*\\(" );
+
+  /**
+   * Functions (and keywords written as calls) from R's base and stats
+   * packages that neither read nor change global variables, excluding any
+   * that are volatile. Functions defined by the bootstrap script might read
+   * global variables, so are not included.
+   */
+  private static final Set<String> BASE = Set.of(
+    "abs", "all", "any", "apply", "as.character", "as.Date", "as.integer",
+    "as.numeric", "c", "ceiling", "choose", "colMeans", "colnames",
+    "colSums", "cor", "cumsum", "data.frame", "diff", "dnorm", "exp",
+    "factorial", "floor", "for", "format", "formatC", "function", "gsub",
+    "head", "if", "ifelse", "is.na", "lapply", "length", "list", "log",
+    "log10", "log2", "mapply", "matrix", "max", "mean", "median", "min",
+    "names", "nchar", "ncol", "nrow", "paste", "paste0", "pnorm",
+    "prettyNum", "prod", "qnorm", "quantile", "range", "read.csv",
+    "read.csv2", "read.delim", "read.table", "readLines", "readRDS", "rep",
+    "return", "rev", "round", "rowMeans", "rownames", "rowSums", "sapply",
+    "sd", "seq", "seq_along", "seq_len", "signif", "sort", "sprintf",
+    "sqrt", "strsplit", "sub", "subset", "substr", "substring", "sum",
+    "summary", "t", "table", "tail", "tolower", "toupper", "trimws",
+    "trunc", "unique", "unlist", "vapply", "var", "which", "which.max",
+    "which.min", "while" );
+
+  private RExpression() {
+  }
+
+  /**
+   * Answers whether the given expression can be evaluated without changing
+   * the R environment.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return {@code true} if the expression has no side effects.
+   */
+  static boolean isPure( final String r ) {
+    return !ASSIGNMENT.matcher( r ).find() &&
+      !isOpaque( r ) &&
+      !isVolatile( r ) &&
+      !hasAssignment( r );
+  }
+
+  /**
+   * Answers whether the given expression's result may differ each time it
+   * is evaluated (e.g., it reads the clock), such that its result must not
+   * be cached. Volatile expressions are not pure, so they are evaluated in
+   * document order.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return {@code true} if the expression's result must not be cached.
+   */
+  static boolean isVolatile( final String r ) {
+    return VOLATILE.matcher( r ).find();
+  }
+
+  /**
+   * Answers whether the given expression may change the R environment in
+   * ways that {@link #getNames(String)} cannot reveal, such that any
+   * subsequent expression might depend on it.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return {@code true} if the expression calls a function that changes
+   * the environment.
+   */
+  static boolean isOpaque( final String r ) {
+    return OPAQUE.matcher( r ).find();
+  }
+
+  /**
+   * Returns the names (e.g., variables and functions) that the given
+   * expression uses, excluding string literals; names quoted using backticks
+   * are included without their backticks. A pure expression that uses none
+   * of the names used by the stateful expressions preceding it is
+   * independent of them.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return The names in the expression, possibly empty.
+   */
+  static Set<String> getNames( final String r ) {
+    final var names = new HashSet<String>();
+    final var length = r.length();
+    var quote = '\0';
+    var quoted = -1;
+    var began = -1;
+
+    for( int i = 0; i <= length; i++ ) {
+      final var ch = i < length ? r.charAt( i ) : '\0';
+
+      if( quote != '\0' ) {
+        if( ch == '\\' ) {
+          i++;
+        }
+        else if( ch == quote ) {
+          if( quote == '`' ) {
+            names.add( r.substring( quoted, i ) );
+          }
+
+          quote = '\0';
+        }
+      }
+      else if( isLetter( ch ) || ch == '.' ||
+        (began >= 0 && (isDigit( ch ) || ch == '_')) ) {
+        if( began < 0 ) {
+          began = i;
+        }
+      }
+      else {
+        if( began >= 0 ) {
+          names.add( r.substring( began, i ) );
+          began = -1;
+        }
+
+        if( ch == '\'' || ch == '"' || ch == '`' ) {
+          quote = ch;
+          quoted = i + 1;
+        }
+      }
+    }
+
+    return names;
+  }
+
+  /**
+   * Answers whether every function that the given expression calls is from
+   * R's base or stats packages, such that calling them cannot read global
+   * variables. Calls are found syntactically, so a function name inside a
+   * string literal makes the answer {@code false}.
+   *
+   * @param r The inline R expression, without delimiters.
+   * @return {@code false} if the expression calls any other function
+   * (e.g., one defined by the bootstrap script).
+   */
+  static boolean callsOnlyBase( final String r ) {
+    final var matcher = CALL.matcher( r );
+
+    while( matcher.find() ) {
+      if( !BASE.contains( matcher.group( 1 ) ) ) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Answers whether the given expression contains an {@code =} that is not
+   * within parentheses or brackets (i.e., not a named argument) and is not
+   * part of a comparison operator.
+   *
+   * @param r The expression to scan.
+   * @return {@code true} if the expression assigns using {@code =}.
+   */
+  private static boolean hasAssignment( final String r ) {
+    final var length = r.length();
+    var depth = 0;
+    var quote = '\0';
+
+    for( int i = 0; i < length; i++ ) {
+      final var ch = r.charAt( i );
+
+      if( quote != '\0' ) {
+        if( ch == '\\' ) {
+          i++;
+        }
+        else if( ch == quote ) {
+          quote = '\0';
+        }
+      }
+      else {
+        switch( ch ) {
+          case '\'', '"', '`' -> quote = ch;
+          case '(', '[' -> depth++;
+          case ')', ']' -> depth--;
+          case '=' -> {
+            final var prev = i > 0 ? r.charAt( i - 1 ) : '\0';
+            final var next = i + 1 < length ? r.charAt( i + 1 ) : '\0';
+
+            if( next == '=' ) {
+              i++;
+            }
+            else if( depth <= 0 && "<>!=".indexOf( prev ) < 0 ) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+}
@@ -5,9 +5,13 @@ import com.keenwrite.processors.ExecutorProcessor;
 import com.keenwrite.processors.Processor;
 import com.keenwrite.processors.ProcessorContext;
 
+import java.util.LinkedHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+import static com.keenwrite.sigils.RSigilOperator.PREFIX;
+import static com.keenwrite.sigils.RSigilOperator.SUFFIX;
 
 /**
  * Responsible for processing R statements within a text block.
@@ -15,6 +19,7 @@ import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
 public final class RProcessor
   extends ExecutorProcessor<String> implements Function<String, String> {
   private final Processor<String> mProcessor;
+  private final Processor<String> mVariableProcessor;
   private final InlineRProcessor mInlineRProcessor;
 
   private boolean mReady;
@@ -23,6 +28,7 @@ public final class RProcessor
     final var irp = new InlineRProcessor( IDENTITY, context );
     final var rvp = new RVariableProcessor( irp, context );
     mProcessor = new ExecutorProcessor<>( rvp );
+    mVariableProcessor = rvp;
     mInlineRProcessor = irp;
   }
 
@@ -34,6 +40,58 @@ public final class RProcessor
     return mProcessor.apply( text );
   }
 
+  /**
+   * Runs the given job with an R session leased for this document.
+   *
+   * @param job The work that evaluates R statements (e.g., parsing).
+   * @param <T> The type of result from the job.
+   * @return The result from the job.
+   * @see InlineRProcessor#withSession(Supplier)
+   */
+  public <T> T withSession( final Supplier<T> job ) {
+    return mInlineRProcessor.withSession( job );
+  }
+
+  /**
+   * Finds every inline R statement in the given document, replacing their
+   * variables as {@link #apply(String)} would, so that the statements can
+   * be classified (and optionally evaluated) before the document is parsed.
+   * This must be called while a session is leased.
+   *
+   * @param markdown The document containing inline R statements.
+   * @param evaluate Set to evaluate the statements before parsing, which
+   *                 allows independent statements to be evaluated
+   *                 concurrently (e.g., when exporting).
+   * @see InlineRProcessor#prepare
+   */
+  public void prepare( final String markdown, final boolean evaluate ) {
+    final var expressions = new LinkedHashMap<String, Integer>();
+    final var minimum = PREFIX.length() + SUFFIX.length();
+    var began = markdown.indexOf( PREFIX );
+
+    while( began >= 0 ) {
+      final var ended = markdown.indexOf( SUFFIX, began + PREFIX.length() );
+
+      if( ended < 0 ) {
+        break;
+      }
+
+      final var code = mVariableProcessor.apply(
+        markdown.substring( began, ended + SUFFIX.length() ) );
+
+      if( code.length() >= minimum &&
+        code.startsWith( PREFIX ) && code.endsWith( SUFFIX ) ) {
+        expressions.putIfAbsent(
+          code.substring( PREFIX.length(), code.length() - SUFFIX.length() ),
+          began );
+      }
+
+      began = markdown.indexOf( PREFIX, ended + SUFFIX.length() );
+    }
+
+    mInlineRProcessor.prepare( expressions, evaluate );
+  }
+
   public boolean isReady() {
     return mReady;
   }
@@ -0,0 +1,207 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a Renjin {@link ScriptEngine} that is leased from an
+ * {@link RSessionPool}. The engine retains R state (e.g., variables and
+ * libraries loaded by the bootstrap script) between leases, so the pool
+ * tries to give each document the session it used last.
+ * <p>
+ * The pool may nevertheless lease a session to another document in the
+ * meantime. Each lease is counted, so that a lessee can tell whether
+ * anyone else leased the session since it last did, and the lessees that
+ * changed the R state are tracked, so that results which could depend on
+ * another document's state are not shared.
+ * </p>
+ */
+final class RSession {
+  /**
+   * Source of unique session identifiers.
+   */
+  private static final AtomicLong sIds = new AtomicLong();
+
+  private final ScriptEngine mEngine;
+
+  /**
+   * Distinguishes this session from every other session, including those
+   * that have been discarded.
+   */
+  private final long mId = sIds.incrementAndGet();
+
+  /**
+   * The pool's generation when this session was created; sessions from a
+   * previous generation are discarded when returned to the pool.
+   */
+  private final int mGeneration;
+
+  /**
+   * The last lessee, which is not kept from being garbage collected.
+   */
+  private WeakReference<Object> mOwner = new WeakReference<>( null );
+
+  /**
+   * Number of times this session was leased.
+   */
+  private long mLeases;
+
+  /**
+   * The first lessee to change the R state, or {@code null} if no lessee
+   * has changed it.
+   */
+  private WeakReference<Object> mStateOwner;
+
+  /**
+   * Set when more than one lessee has changed the R state.
+   */
+  private boolean mStateShared;
+
+  /**
+   * Identifies the configuration (script, working directory, and
+   * definitions) of the bootstrap script last evaluated by this session.
+   */
+  private Object mBootstrapKey;
+
+  /**
+   * The bootstrap script last evaluated by this session, after its
+   * variables were replaced.
+   */
+  private String mBootstrap;
+
+  RSession( final ScriptEngine engine, final int generation ) {
+    assert engine != null;
+
+    mEngine = engine;
+    mGeneration = generation;
+  }
+
+  /**
+   * Evaluates an R expression.
+   *
+   * @param r The expression to evaluate.
+   * @return The string representation of the evaluated result.
+   * @throws ScriptException The expression could not be evaluated.
+   */
+  String eval( final String r ) throws ScriptException {
+    return mEngine.eval( r ).toString();
+  }
+
+  /**
+   * Answers whether the bootstrap script was evaluated for the given
+   * configuration.
+   *
+   * @param key Identifies the bootstrap configuration.
+   * @return {@code true} if the bootstrap script need not be evaluated.
+   */
+  boolean isBootstrapped( final Object key ) {
+    return key.equals( mBootstrapKey );
+  }
+
+  /**
+   * Answers whether the given bootstrap script, with its variables
+   * replaced, was the last script evaluated by this session.
+   *
+   * @param bootstrap The bootstrap script to evaluate.
+   * @return {@code true} if the bootstrap script need not be evaluated.
+   */
+  boolean isBootstrapped( final String bootstrap ) {
+    return bootstrap.equals( mBootstrap );
+  }
+
+  /**
+   * Records that the bootstrap script was evaluated.
+   *
+   * @param key       Identifies the bootstrap configuration.
+   * @param bootstrap The evaluated script, with its variables replaced.
+   */
+  void setBootstrapped( final Object key, final String bootstrap ) {
+    mBootstrapKey = key;
+    mBootstrap = bootstrap;
+  }
+
+  /**
+   * Returns the bootstrap script last evaluated by this session.
+   *
+   * @return The script with its variables replaced, or the empty string.
+   */
+  String getBootstrap() {
+    return mBootstrap == null ? "" : mBootstrap;
+  }
+
+  int getGeneration() {
+    return mGeneration;
+  }
+
+  /**
+   * Returns a value that no other session has, which allows results that
+   * depend on this session's R state to be discarded when a different
+   * session is used.
+   *
+   * @return A positive number unique to this session.
+   */
+  long getId() {
+    return mId;
+  }
+
+  /**
+   * Returns the number of times this session was leased, including the
+   * current lease. A lessee that records this number can determine whether
+   * the session was leased by anyone else before its next lease: the
+   * number will then have increased by more than one.
+   *
+   * @return The number of leases so far.
+   */
+  long getLeases() {
+    return mLeases;
+  }
+
+  /**
+   * Records that the current lessee has changed the R state (e.g., assigned
+   * a variable), which persists after the session is released.
+   */
+  void setStateful() {
+    final var owner = mOwner.get();
+
+    if( mStateOwner == null ) {
+      mStateOwner = new WeakReference<>( owner );
+    }
+    else if( mStateOwner.get() != owner ) {
+      mStateShared = true;
+    }
+  }
+
+  /**
+   * Answers whether a lessee other than the current lessee has changed the
+   * R state. Results computed by this session might then depend on another
+   * document's state, even when they appear independent of the current
+   * lessee's document.
+   *
+   * @return {@code true} if another lessee's R state may be present.
+   */
+  boolean hasForeignState() {
+    return mStateShared ||
+      mStateOwner != null && mStateOwner.get() != mOwner.get();
+  }
+
+  boolean isOwner( final Object owner ) {
+    return mOwner.get() == owner;
+  }
+
+  boolean isOwned() {
+    return mOwner.get() != null;
+  }
+
+  /**
+   * Leases this session to the given owner.
+   *
+   * @param owner Identifies the lessee.
+   */
+  void setOwner( final Object owner ) {
+    mOwner = new WeakReference<>( owner );
+    mLeases++;
+  }
+}
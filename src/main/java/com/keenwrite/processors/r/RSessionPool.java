@@ -0,0 +1,307 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static com.keenwrite.events.StatusEvent.clue;
+import static java.lang.Math.max;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Responsible for sharing a bounded number of Renjin script engines among
+ * documents. Each render or export leases a session for its duration, so
+ * documents evaluate R in parallel, each on its own engine, rather than
+ * serially on a single engine. Renjin engines are slow to create, so
+ * engines are created (warmed) on a background thread before they are
+ * first needed.
+ * <p>
+ * A returned session is leased again by the same document, when possible,
+ * which retains the R state that the document's statements created. When
+ * settings that affect every engine change (e.g., the bootstrap script),
+ * {@link #recycle()} discards the existing sessions.
+ * </p>
+ */
+final class RSessionPool {
+  /**
+   * Creates the engine for each new session.
+   */
+  private final Supplier<ScriptEngine> mEngines;
+
+  private final ExecutorService mWarmer = newSingleThreadExecutor( r -> {
+    final var thread = new Thread( r, "r-session-warmer" );
+    thread.setDaemon( true );
+    return thread;
+  } );
+
+  /**
+   * Sessions that are not leased, most recently returned first.
+   */
+  private final Deque<RSession> mIdle = new ArrayDeque<>();
+
+  /**
+   * Number of sessions that are idle, leased, or being created.
+   */
+  private int mCount;
+
+  /**
+   * Maximum number of sessions.
+   */
+  private int mSize = 1;
+
+  /**
+   * Incremented when all sessions must be discarded.
+   */
+  private int mGeneration;
+
+  /**
+   * Creates a pool of sessions having Renjin engines.
+   */
+  RSessionPool() {
+    this( createRenjin() );
+  }
+
+  /**
+   * Creates a pool of sessions having engines from the given supplier.
+   *
+   * @param engines Creates an engine, or returns {@code null} if none is
+   *                available.
+   */
+  RSessionPool( final Supplier<ScriptEngine> engines ) {
+    assert engines != null;
+
+    mEngines = engines;
+  }
+
+  /**
+   * Creates sessions in the background until the pool has the given number
+   * of sessions.
+   *
+   * @param size The maximum number of sessions.
+   */
+  void warm( final int size ) {
+    synchronized( this ) {
+      resize( size );
+    }
+
+    mWarmer.execute( () -> {
+      while( reserve() ) {
+        final var session = create( generation() );
+
+        if( session == null ) {
+          break;
+        }
+
+        release( session );
+      }
+    } );
+  }
+
+  /**
+   * Returns a session for the given owner's exclusive use until it is
+   * released, waiting if all sessions are leased. The session that the
+   * owner released last is preferred, followed by sessions that no other
+   * owner has used.
+   *
+   * @param owner Identifies the lessee, usually one per document.
+   * @param size  The maximum number of sessions.
+   * @return A session to {@link #release(RSession)} when finished, or
+   * {@code null} if no engine could be created.
+   * @throws InterruptedException Interrupted while waiting for a session.
+   */
+  RSession lease( final Object owner, final int size )
+    throws InterruptedException {
+    int generation;
+
+    synchronized( this ) {
+      resize( size );
+
+      while( true ) {
+        final var session = take( owner );
+
+        if( session != null ) {
+          session.setOwner( owner );
+          return session;
+        }
+
+        if( mCount < mSize ) {
+          mCount++;
+          generation = mGeneration;
+          break;
+        }
+
+        wait();
+      }
+    }
+
+    // Create the engine without blocking other lessees.
+    final var session = create( generation );
+
+    if( session != null ) {
+      session.setOwner( owner );
+    }
+
+    return session;
+  }
+
+  /**
+   * Returns a session for the given owner's exclusive use, without waiting,
+   * if a session that no owner has used is idle or another session may be
+   * created. This allows a lessee to evaluate on additional sessions
+   * without taking sessions from other documents or waiting on lessees
+   * that might be waiting on it.
+   *
+   * @param owner Identifies the lessee.
+   * @param size  The maximum number of sessions.
+   * @return A session to {@link #release(RSession)} when finished, or
+   * {@code null} if no session is available.
+   */
+  RSession tryLease( final Object owner, final int size ) {
+    int generation;
+
+    synchronized( this ) {
+      resize( size );
+
+      for( final var session : mIdle ) {
+        if( !session.isOwned() ) {
+          mIdle.remove( session );
+          session.setOwner( owner );
+          return session;
+        }
+      }
+
+      if( mCount >= mSize ) {
+        return null;
+      }
+
+      mCount++;
+      generation = mGeneration;
+    }
+
+    final var session = create( generation );
+
+    if( session != null ) {
+      session.setOwner( owner );
+    }
+
+    return session;
+  }
+
+  /**
+   * Returns a leased session to the pool. Sessions created before the
+   * pool was recycled, or exceeding the pool's size, are discarded.
+   *
+   * @param session The session to return.
+   */
+  synchronized void release( final RSession session ) {
+    if( session.getGeneration() == mGeneration && mCount <= mSize ) {
+      mIdle.addFirst( session );
+    }
+    else {
+      mCount--;
+    }
+
+    notifyAll();
+  }
+
+  /**
+   * Removes a leased session from the pool without returning it, such as
+   * when the session's engine is still evaluating an abandoned expression.
+   * Another session may then be created in its place.
+   *
+   * @param session The leased session to discard.
+   */
+  synchronized void discard( final RSession session ) {
+    assert session != null;
+
+    mCount--;
+    notifyAll();
+  }
+
+  /**
+   * Discards all sessions, including leased sessions once they are
+   * released, so that subsequent leases start with a fresh R environment.
+   */
+  synchronized void recycle() {
+    mGeneration++;
+    mCount -= mIdle.size();
+    mIdle.clear();
+    notifyAll();
+  }
+
+  private static Supplier<ScriptEngine> createRenjin() {
+    final var manager = new ScriptEngineManager();
+    return () -> manager.getEngineByName( "Renjin" );
+  }
+
+  private RSession take( final Object owner ) {
+    for( final var session : mIdle ) {
+      if( session.isOwner( owner ) ) {
+        mIdle.remove( session );
+        return session;
+      }
+    }
+
+    for( final var session : mIdle ) {
+      if( !session.isOwned() ) {
+        mIdle.remove( session );
+        return session;
+      }
+    }
+
+    // Take the session that has been idle the longest.
+    return mIdle.pollLast();
+  }
+
+  private void resize( final int size ) {
+    mSize = max( 1, size );
+
+    while( mCount > mSize && !mIdle.isEmpty() ) {
+      mIdle.pollLast();
+      mCount--;
+    }
+  }
+
+  private synchronized boolean reserve() {
+    if( mCount < mSize ) {
+      mCount++;
+      return true;
+    }
+
+    return false;
+  }
+
+  private synchronized int generation() {
+    return mGeneration;
+  }
+
+  /**
+   * Creates a session having a new engine. If the engine cannot be created,
+   * the reservation made for the session is cancelled.
+   *
+   * @param generation The pool's generation when the session was reserved.
+   * @return The new session, or {@code null} if Renjin is unavailable.
+   */
+  private RSession create( final int generation ) {
+    try {
+      final var engine = mEngines.get();
+
+      if( engine != null ) {
+        return new RSession( engine, generation );
+      }
+    } catch( final Exception ex ) {
+      clue( ex );
+    }
+
+    synchronized( this ) {
+      mCount--;
+      notifyAll();
+    }
+
+    return null;
+  }
+}
@@ -4,11 +4,11 @@ package com.keenwrite.processors.r;
 import com.keenwrite.preferences.Workspace;
 import com.keenwrite.processors.DefinitionProcessor;
 import com.keenwrite.processors.ProcessorContext;
+import com.keenwrite.processors.text.ResolvedMap;
 import com.keenwrite.sigils.RSigilOperator;
 import com.keenwrite.sigils.SigilOperator;
 import com.keenwrite.sigils.YamlSigilOperator;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import static com.keenwrite.preferences.WorkspaceKeys.*;
@@ -30,65 +30,18 @@ public final class RVariableProcessor extends DefinitionProcessor {
 
   /**
    * Returns the R-based version of the interpolated variable definitions.
+   * When the definitions are held in a {@link ResolvedMap}, the R form is
+   * shared by every processor and converted once per version.
    *
    * @return Variable names transmogrified from the default syntax to R syntax.
    */
   @Override
   protected Map<String, String> getDefinitions() {
-    return entoken( super.getDefinitions() );
-  }
-
-  /**
-   * Converts the given map from regular variables to R variables.
-   *
-   * @param map Map of variable names to values.
-   * @return Map of R variables.
-   */
-  private Map<String, String> entoken( final Map<String, String> map ) {
-    final var rMap = new HashMap<String, String>( map.size() );
-
-    for( final var entry : map.entrySet() ) {
-      final var key = entry.getKey();
-      rMap.put( mSigilOperator.entoken( key ), escape( map.get( key ) ) );
-    }
-
-    return rMap;
-  }
-
-  private String escape( final String value ) {
-    return '\'' + escape( value, '\'', "\\'" ) + '\'';
-  }
-
-  /**
-   * TODO: Make generic method for replacing text.
-   *
-   * @param haystack Search this string for the needle, must not be null.
-   * @param needle   The character to find in the haystack.
-   * @param thread   Replace the needle with this text, if the needle is found.
-   * @return The haystack with the all instances of needle replaced with thread.
-   */
-  @SuppressWarnings( "SameParameterValue" )
-  private String escape(
-    final String haystack, final char needle, final String thread ) {
-    int end = haystack.indexOf( needle );
-
-    if( end < 0 ) {
-      return haystack;
-    }
-
-    final int length = haystack.length();
-    int start = 0;
-
-    // Replace up to 32 occurrences before the string reallocates its buffer.
-    final var sb = new StringBuilder( length + 32 );
-
-    while( end >= 0 ) {
-      sb.append( haystack, start, end ).append( thread );
-      start = end + 1;
-      end = haystack.indexOf( needle, start );
-    }
+    final var definitions = super.getDefinitions();
 
-    return sb.append( haystack.substring( start ) ).toString();
+    return definitions instanceof ResolvedMap resolved
+      ? RDefinitions.of( resolved ).get( mSigilOperator )
+      : RDefinitions.entoken( definitions, mSigilOperator );
   }
 
   private SigilOperator createSigilOperator( final Workspace workspace ) {
@@ -1,12 +1,16 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.processors.text;
 
+import org.ahocorasick.trie.Trie;
+
 import java.util.Map;
 
-import static org.ahocorasick.trie.Trie.builder;
+import static com.keenwrite.processors.text.ResolvedMap.createTrie;
 
 /**
- * Replaces text using an Aho-Corasick algorithm.
+ * Replaces text using an Aho-Corasick algorithm. When given a
+ * {@link ResolvedMap}, the automaton compiled for the current definitions is
+ * reused; otherwise, an automaton is built for every call.
  */
 public class AhoCorasickReplacer extends AbstractTextReplacer {
 
@@ -18,17 +22,23 @@ public class AhoCorasickReplacer extends AbstractTextReplacer {
 
   @Override
   public String replace( final String text, final Map<String, String> map ) {
+    if( map instanceof ResolvedMap resolved ) {
+      final var snapshot = resolved.snapshot();
+      return replace( text, snapshot.getMap(), snapshot.getTrie() );
+    }
+
+    return replace( text, map, createTrie( map ) );
+  }
+
+  private String replace(
+    final String text, final Map<String, String> map, final Trie trie ) {
     // Create a buffer sufficiently large that re-allocations are minimized.
     final var sb = new StringBuilder( (int)(text.length() * 1.25) );
 
-    // Definition names cannot overlap.
-    final var builder = builder().ignoreOverlaps();
-    builder.addKeywords( keys( map ) );
-
     int index = 0;
 
     // Replace all instances with dereferenced variables.
-    for( final var emit : builder.build().parseText( text ) ) {
+    for( final var emit : trie.parseText( text ) ) {
       sb.append( text, index, emit.getStart() );
       sb.append( map.get( emit.getKeyword() ) );
       index = emit.getEnd() + 1;
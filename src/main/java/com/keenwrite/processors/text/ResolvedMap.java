@@ -0,0 +1,349 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.text;
+
+import com.keenwrite.sigils.Tokens;
+import org.ahocorasick.trie.Trie;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.util.Collections.unmodifiableMap;
+import static org.ahocorasick.trie.Trie.builder;
+
+/**
+ * Responsible for holding the fully interpolated definitions that are
+ * substituted into documents. The definitions are held as an immutable
+ * {@link Snapshot} that is replaced whenever the definitions change, so that
+ * concurrent renders and exports can read the definitions without locking.
+ * Each snapshot lazily compiles the automaton used by
+ * {@link AhoCorasickReplacer}, which is then shared by every replacement
+ * made until the definitions change again. When the sigils that bracket the
+ * keys are known, each snapshot instead provides a {@link SigilReplacer},
+ * whose cost does not depend on the number of definitions.
+ * <p>
+ * This map is read-only; call {@link #update(Map)} to replace its contents
+ * or {@link #merge(Map, Tokens)} to change only some definitions. Each
+ * snapshot made by merging retains the changes, so that consumers holding
+ * data derived from the previous snapshot can update it incrementally.
+ * </p>
+ */
+public final class ResolvedMap extends AbstractMap<String, String> {
+  private volatile Snapshot mSnapshot =
+    new Snapshot( Map.of(), null, null, 0, null, null );
+
+  /**
+   * Objects derived from these definitions, keyed by their type.
+   */
+  private final Map<Class<?>, Object> mDerived = new ConcurrentHashMap<>();
+
+  /**
+   * Creates an empty map of definitions.
+   */
+  public ResolvedMap() {
+  }
+
+  /**
+   * Creates a map having the given definitions.
+   *
+   * @param map The fully interpolated definitions.
+   */
+  public ResolvedMap( final Map<String, String> map ) {
+    update( map );
+  }
+
+  /**
+   * Creates a map having the given definitions.
+   *
+   * @param map    The fully interpolated definitions.
+   * @param tokens The sigils that bracket every key in the map.
+   */
+  public ResolvedMap( final Map<String, String> map, final Tokens tokens ) {
+    update( map, tokens );
+  }
+
+  /**
+   * Replaces the definitions with the given definitions. The version is
+   * unchanged if the given definitions equal the current definitions, which
+   * retains the compiled automaton.
+   *
+   * @param map The fully interpolated definitions.
+   */
+  public synchronized void update( final Map<String, String> map ) {
+    final var snapshot = mSnapshot;
+    update( map, snapshot.mBegan, snapshot.mEnded );
+  }
+
+  /**
+   * Replaces the definitions with the given definitions, whose keys are all
+   * bracketed by the given sigils.
+   *
+   * @param map    The fully interpolated definitions.
+   * @param tokens The sigils that bracket every key in the map.
+   * @see #update(Map)
+   */
+  public void update( final Map<String, String> map, final Tokens tokens ) {
+    update( map, tokens.getBegan(), tokens.getEnded() );
+  }
+
+  private synchronized void update(
+    final Map<String, String> map, final String began, final String ended ) {
+    final var snapshot = mSnapshot;
+
+    if( !snapshot.getMap().equals( map ) ||
+      !Objects.equals( snapshot.mBegan, began ) ||
+      !Objects.equals( snapshot.mEnded, ended ) ) {
+      final var version = snapshot.getVersion() + 1;
+      mSnapshot = new Snapshot(
+        Map.copyOf( map ), began, ended, version, null, null );
+    }
+  }
+
+  /**
+   * Changes the definitions having keys in the given map, leaving all other
+   * definitions as they are. Definitions mapped to {@code null} are removed.
+   * The sigil replacer of the current snapshot, if built, is reused when
+   * only existing values have changed.
+   *
+   * @param changes The fully interpolated definitions that have changed.
+   * @param tokens  The sigils that bracket every key in the map.
+   */
+  public void merge(
+    final Map<String, String> changes, final Tokens tokens ) {
+    merge( changes, tokens.getBegan(), tokens.getEnded() );
+  }
+
+  /**
+   * Changes the definitions having keys in the given map, keeping the
+   * current sigils.
+   *
+   * @param changes The fully interpolated definitions that have changed.
+   * @see #merge(Map, Tokens)
+   */
+  public synchronized void merge( final Map<String, String> changes ) {
+    final var snapshot = mSnapshot;
+    merge( changes, snapshot.mBegan, snapshot.mEnded );
+  }
+
+  private synchronized void merge(
+    final Map<String, String> changes,
+    final String began,
+    final String ended ) {
+    final var snapshot = mSnapshot;
+
+    if( !Objects.equals( snapshot.mBegan, began ) ||
+      !Objects.equals( snapshot.mEnded, ended ) ) {
+      final var map = new HashMap<>( snapshot.getMap() );
+      apply( map, changes );
+      update( map, began, ended );
+    }
+    else if( !changes.isEmpty() ) {
+      final var map = new HashMap<>( snapshot.getMap() );
+      apply( map, changes );
+
+      mSnapshot = new Snapshot(
+        unmodifiableMap( map ), began, ended, snapshot.getVersion() + 1,
+        unmodifiableMap( new HashMap<>( changes ) ), snapshot.mReplacer );
+    }
+  }
+
+  private static void apply(
+    final Map<String, String> map, final Map<String, String> changes ) {
+    changes.forEach( ( key, value ) -> {
+      if( value == null ) {
+        map.remove( key );
+      }
+      else {
+        map.put( key, value );
+      }
+    } );
+  }
+
+  /**
+   * Returns an object derived from these definitions (e.g., the definitions
+   * with keys in another syntax), creating it upon first request. This
+   * allows every consumer of this map to share one derivation, which can
+   * then be kept up to date using {@link Snapshot#getChanges(int)}.
+   *
+   * @param type    The type of derived object, which identifies it.
+   * @param factory Creates the derived object from this map.
+   * @param <T>     The type of derived object.
+   * @return The object derived from this map, never {@code null}.
+   */
+  public <T> T getDerived(
+    final Class<T> type, final Function<ResolvedMap, T> factory ) {
+    return type.cast(
+      mDerived.computeIfAbsent( type, k -> factory.apply( this ) ) );
+  }
+
+  /**
+   * Returns the definitions as they are at the time of calling. Callers that
+   * make several lookups should use the same snapshot throughout.
+   *
+   * @return The current, immutable definitions.
+   */
+  public Snapshot snapshot() {
+    return mSnapshot;
+  }
+
+  /**
+   * Returns a value that changes whenever the definitions change.
+   *
+   * @return The version of the current {@link Snapshot}.
+   */
+  public int getVersion() {
+    return mSnapshot.getVersion();
+  }
+
+  @Override
+  public String get( final Object key ) {
+    return mSnapshot.getMap().get( key );
+  }
+
+  @Override
+  public boolean containsKey( final Object key ) {
+    return mSnapshot.getMap().containsKey( key );
+  }
+
+  @Override
+  public int size() {
+    return mSnapshot.getMap().size();
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return mSnapshot.getMap().entrySet();
+  }
+
+  /**
+   * Represents the definitions at a point in time.
+   */
+  public static final class Snapshot {
+    private final Map<String, String> mMap;
+    private final String mBegan;
+    private final String mEnded;
+    private final int mVersion;
+    private final Map<String, String> mChanges;
+    private volatile Trie mTrie;
+    private volatile SigilReplacer mReplacer;
+
+    /**
+     * The previous snapshot's replacer, from which this snapshot's replacer
+     * may be derived; cleared once used so that snapshots are not chained.
+     */
+    private SigilReplacer mPrevious;
+
+    private Snapshot(
+      final Map<String, String> map,
+      final String began,
+      final String ended,
+      final int version,
+      final Map<String, String> changes,
+      final SigilReplacer previous ) {
+      mMap = map;
+      mBegan = began;
+      mEnded = ended;
+      mVersion = version;
+      mChanges = changes;
+      mPrevious = previous;
+    }
+
+    public Map<String, String> getMap() {
+      return mMap;
+    }
+
+    public int getVersion() {
+      return mVersion;
+    }
+
+    /**
+     * Returns the definitions that changed since the snapshot having the
+     * given version. Removed definitions are mapped to {@code null}.
+     *
+     * @param version The version of a previous snapshot.
+     * @return The changed definitions, or {@code null} if they are not known,
+     * in which case all definitions must be considered changed.
+     */
+    public Map<String, String> getChanges( final int version ) {
+      return version == mVersion
+        ? Map.of()
+        : version == mVersion - 1 ? mChanges : null;
+    }
+
+    /**
+     * Returns the automaton that finds every definition key in a text,
+     * building it upon first use.
+     *
+     * @return The automaton for this snapshot's keys.
+     */
+    Trie getTrie() {
+      var trie = mTrie;
+
+      if( trie == null ) {
+        synchronized( this ) {
+          trie = mTrie;
+
+          if( trie == null ) {
+            mTrie = trie = createTrie( mMap );
+          }
+        }
+      }
+
+      return trie;
+    }
+
+    /**
+     * Returns the replacer that finds keys by their sigils, building it upon
+     * first use.
+     *
+     * @return The replacer for this snapshot's keys, or {@code null} if the
+     * sigils are unknown or cannot delimit keys.
+     */
+    SigilReplacer getSigilReplacer() {
+      if( mBegan == null || mBegan.isEmpty() ||
+        mEnded == null || mEnded.isEmpty() ) {
+        return null;
+      }
+
+      var replacer = mReplacer;
+
+      if( replacer == null ) {
+        synchronized( this ) {
+          replacer = mReplacer;
+
+          if( replacer == null ) {
+            replacer = mPrevious == null
+              ? null
+              : mPrevious.withValues( mChanges );
+
+            if( replacer == null ) {
+              replacer = new SigilReplacer( mMap, mBegan, mEnded );
+            }
+
+            mReplacer = replacer;
+            mPrevious = null;
+          }
+        }
+      }
+
+      return replacer;
+    }
+  }
+
+  /**
+   * Builds an automaton that finds the given map's keys.
+   *
+   * @param map The map having keys to find.
+   * @return The automaton for the keys.
+   */
+  static Trie createTrie( final Map<String, String> map ) {
+    // Definition names cannot overlap.
+    final var builder = builder().ignoreOverlaps();
+    builder.addKeywords( map.keySet() );
+    return builder.build();
+  }
+}
@@ -0,0 +1,238 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.text;
+
+import java.util.Map;
+
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Replaces variables that are bracketed by sigils (e.g., {@code $name$}) in a
+ * single pass over the text. Each pair of sigils is looked up in a hash
+ * table by comparing the text in place, so the cost is linear in the length
+ * of the text regardless of the number of definitions. Instances are
+ * immutable and may be shared between threads.
+ */
+public final class SigilReplacer {
+  /**
+   * Reuses a buffer for each thread that replaces text, which avoids
+   * growing a new buffer for every document.
+   */
+  private static final ThreadLocal<StringBuilder> sBuffer =
+    ThreadLocal.withInitial( StringBuilder::new );
+
+  /**
+   * Buffers larger than this are not retained between calls.
+   */
+  private static final int MAX_RETAINED = 1 << 22;
+
+  private final String mBegan;
+  private final String mEnded;
+
+  /**
+   * Open-addressed hash table of keys, their values, and their hash codes.
+   */
+  private final String[] mKeys;
+  private final String[] mValues;
+  private final int[] mHashes;
+  private final int mMask;
+
+  /**
+   * Length of the longest key, which bounds the search for a closing sigil.
+   */
+  private final int mMaxLength;
+
+  /**
+   * Creates a replacer for the given definitions.
+   *
+   * @param map   Keys, including their sigils, mapped to their values.
+   * @param began The sigil that starts a key, must not be empty.
+   * @param ended The sigil that ends a key, must not be empty.
+   */
+  public SigilReplacer(
+    final Map<String, String> map, final String began, final String ended ) {
+    assert map != null;
+    assert began != null && !began.isEmpty();
+    assert ended != null && !ended.isEmpty();
+
+    final var capacity = highestOneBit( max( 2, map.size() ) * 2 - 1 ) << 1;
+
+    mBegan = began;
+    mEnded = ended;
+    mKeys = new String[ capacity ];
+    mValues = new String[ capacity ];
+    mHashes = new int[ capacity ];
+    mMask = capacity - 1;
+
+    var maxLength = 0;
+
+    for( final var entry : map.entrySet() ) {
+      final var key = entry.getKey();
+      final var hash = key.hashCode();
+      var i = hash & mMask;
+
+      while( mKeys[ i ] != null ) {
+        i = (i + 1) & mMask;
+      }
+
+      mKeys[ i ] = key;
+      mValues[ i ] = entry.getValue();
+      mHashes[ i ] = hash;
+      maxLength = max( maxLength, key.length() );
+    }
+
+    mMaxLength = maxLength;
+  }
+
+  private SigilReplacer( final SigilReplacer base, final String[] values ) {
+    mBegan = base.mBegan;
+    mEnded = base.mEnded;
+    mKeys = base.mKeys;
+    mValues = values;
+    mHashes = base.mHashes;
+    mMask = base.mMask;
+    mMaxLength = base.mMaxLength;
+  }
+
+  /**
+   * Returns a replacer having the same keys as this replacer, with the
+   * values of the given keys changed. The hash table of keys is shared.
+   *
+   * @param changes Keys that this replacer has, mapped to their new values.
+   * @return A new replacer, or {@code null} if a key is missing from this
+   * replacer or a value is {@code null}.
+   */
+  public SigilReplacer withValues( final Map<String, String> changes ) {
+    final var values = mValues.clone();
+
+    for( final var entry : changes.entrySet() ) {
+      final var key = entry.getKey();
+      final var value = entry.getValue();
+      final var i = indexOf( key );
+
+      if( i < 0 || value == null ) {
+        return null;
+      }
+
+      values[ i ] = value;
+    }
+
+    return new SigilReplacer( this, values );
+  }
+
+  /**
+   * Replaces every key in the given text with its value. Text between sigils
+   * that is not a key is left as-is.
+   *
+   * @param text The text containing zero or more keys.
+   * @return The text with all keys replaced, or the given text if it has no
+   * keys.
+   */
+  public String replace( final String text ) {
+    var bIndex = text.indexOf( mBegan );
+
+    if( bIndex < 0 ) {
+      return text;
+    }
+
+    final var sb = sBuffer.get();
+    final var length = text.length();
+    var index = 0;
+
+    sb.setLength( 0 );
+    sb.ensureCapacity( length + (length >> 2) );
+
+    while( bIndex >= 0 ) {
+      final var eIndex = findEnded( text, bIndex );
+      final var value = eIndex < 0 ? null : lookup( text, bIndex, eIndex );
+
+      if( value == null ) {
+        bIndex = text.indexOf( mBegan, bIndex + mBegan.length() );
+      }
+      else {
+        sb.append( text, index, bIndex ).append( value );
+        index = eIndex;
+        bIndex = text.indexOf( mBegan, index );
+      }
+    }
+
+    if( index == 0 ) {
+      return text;
+    }
+
+    sb.append( text, index, length );
+
+    final var result = sb.toString();
+
+    if( sb.capacity() > MAX_RETAINED ) {
+      sBuffer.remove();
+    }
+
+    return result;
+  }
+
+  /**
+   * Finds the end of the closing sigil that follows an opening sigil,
+   * searching no further than the longest key.
+   *
+   * @param text   The text to search.
+   * @param bIndex Offset of the opening sigil.
+   * @return Offset just past the closing sigil, or -1 if not found.
+   */
+  private int findEnded( final String text, final int bIndex ) {
+    final var eLength = mEnded.length();
+    final var limit = min( text.length(), bIndex + mMaxLength ) - eLength;
+
+    for( int i = bIndex + mBegan.length(); i <= limit; i++ ) {
+      if( text.startsWith( mEnded, i ) ) {
+        return i + eLength;
+      }
+    }
+
+    return -1;
+  }
+
+  private int indexOf( final String key ) {
+    final var hash = key.hashCode();
+
+    for( int i = hash & mMask; mKeys[ i ] != null; i = (i + 1) & mMask ) {
+      if( mHashes[ i ] == hash && mKeys[ i ].equals( key ) ) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the value for the key found in the given range of text.
+   *
+   * @param text  The text containing a possible key.
+   * @param began Offset of the first character of the key.
+   * @param ended Offset just past the last character of the key.
+   * @return The key's value, or {@code null} if the text is not a key.
+   */
+  private String lookup( final String text, final int began, final int ended ) {
+    var hash = 0;
+
+    // Same hash as String.hashCode(), computed without creating a String.
+    for( int i = began; i < ended; i++ ) {
+      hash = 31 * hash + text.charAt( i );
+    }
+
+    final var length = ended - began;
+
+    for( int i = hash & mMask; mKeys[ i ] != null; i = (i + 1) & mMask ) {
+      final var key = mKeys[ i ];
+
+      if( mHashes[ i ] == hash &&
+        key.length() == length &&
+        text.regionMatches( began, key, 0, length ) ) {
+        return mValues[ i ];
+      }
+    }
+
+    return null;
+  }
+}
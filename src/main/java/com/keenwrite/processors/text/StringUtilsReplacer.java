@@ -18,6 +18,11 @@ public class StringUtilsReplacer extends AbstractTextReplacer {
 
   @Override
   public String replace( final String text, final Map<String, String> map ) {
-    return replaceEach( text, keys( map ), values( map ) );
+    // Keys and values must be taken from the same definitions.
+    final var definitions = map instanceof ResolvedMap resolved
+      ? resolved.snapshot().getMap()
+      : map;
+
+    return replaceEach( text, keys( definitions ), values( definitions ) );
   }
 }
@@ -30,6 +30,10 @@ public final class TextReplacementFactory {
    * perform a replacement using the given map. At this point, the values should
    * be already dereferenced and ready to be substituted verbatim; any
    * recursively defined values must have been interpolated previously.
+   * Definitions held in a {@link ResolvedMap} having known sigils are
+   * replaced in a single pass over the text; otherwise, the automaton that
+   * the {@link ResolvedMap} compiles once per version is used, regardless
+   * of the text's length.
    *
    * @param text The text containing zero or more variables to replace.
    * @param map  The map of variables to their dereferenced values.
@@ -37,6 +41,14 @@ public final class TextReplacementFactory {
    */
   public static String replace(
       final String text, final Map<String, String> map ) {
+    if( map instanceof ResolvedMap resolved ) {
+      final var replacer = resolved.snapshot().getSigilReplacer();
+
+      return replacer == null
+        ? AHO_CORASICK.replace( text, map )
+        : replacer.replace( text );
+    }
+
     return getTextReplacer( text.length() ).replace( text, map );
   }
 }
@@ -0,0 +1,406 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.search;
+
+import com.keenwrite.events.DocumentParsedEvent;
+import com.keenwrite.io.MediaType;
+import com.keenwrite.sigils.Tokens;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.keenwrite.events.Bus.register;
+import static com.keenwrite.events.StatusEvent.clue;
+import static com.keenwrite.io.MediaType.TEXT_MARKDOWN;
+import static com.keenwrite.io.MediaType.TEXT_R_MARKDOWN;
+import static java.lang.Character.isLetterOrDigit;
+import static java.lang.Character.isWhitespace;
+import static java.lang.Math.min;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.greenrobot.eventbus.ThreadMode.ASYNC;
+
+/**
+ * Records which documents reference which definitions, and on which lines.
+ * Documents in the directories of opened files are scanned once in the
+ * background; thereafter, each document is scanned again whenever it is
+ * parsed for the preview. This allows a change to a definition to re-render
+ * only the documents that use it, and allows users to find every usage of a
+ * definition without searching the files.
+ * <p>
+ * References are found syntactically: any run of text without whitespace
+ * between the definition sigils is recorded, whether or not a definition of
+ * that name exists, so that adding a definition does not require scanning
+ * the documents again.
+ * </p>
+ */
+public final class VariableUsageIndex {
+  /**
+   * Longest reference to record, which bounds the search for a closing sigil.
+   */
+  private static final int MAX_KEY_LENGTH = 256;
+
+  /**
+   * Scans the directories of opened files.
+   */
+  private final ExecutorService mExecutor =
+    newSingleThreadExecutor( runnable -> {
+      final var thread = new Thread( runnable, "usage-indexer" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+
+  private final Supplier<Tokens> mTokens;
+
+  /**
+   * Maps each document to its references, each with the line numbers where
+   * the reference is found.
+   */
+  private final Map<Path, Map<String, int[]>> mFiles = new HashMap<>();
+
+  /**
+   * Maps each reference to the documents that contain it.
+   */
+  private final Map<String, Set<Path>> mReferences = new HashMap<>();
+
+  /**
+   * Directories that have been (or are being) scanned.
+   */
+  private final Set<Path> mDirectories = ConcurrentHashMap.newKeySet();
+
+  private String mBegan = "";
+  private String mEnded = "";
+
+  /**
+   * Creates an index of references delimited by the given sigils.
+   *
+   * @param tokens Provides the current definition sigils.
+   */
+  public VariableUsageIndex( final Supplier<Tokens> tokens ) {
+    assert tokens != null;
+
+    mTokens = tokens;
+    register( this );
+  }
+
+  /**
+   * Indexes the document that was parsed for the preview.
+   *
+   * @param event Contains the document's path and text.
+   */
+  @Subscribe( threadMode = ASYNC )
+  public void handle( final DocumentParsedEvent event ) {
+    final var snapshot = event.getSnapshot();
+    final var path = snapshot.getPath();
+
+    if( path != null ) {
+      update( path, snapshot.getText() );
+    }
+  }
+
+  /**
+   * Scans, in the background, the documents in the given directory that
+   * have not already been indexed. Each directory is scanned once.
+   *
+   * @param directory The directory containing documents to index.
+   */
+  public void scan( final Path directory ) {
+    if( directory == null || !mDirectories.add( directory ) ) {
+      return;
+    }
+
+    mExecutor.execute( () -> {
+      try( final var files = Files.list( directory ) ) {
+        files.filter( VariableUsageIndex::isDocument )
+             .filter( path -> !isIndexed( path ) )
+             .forEach( this::read );
+      } catch( final IOException ex ) {
+        clue( ex );
+      }
+    } );
+  }
+
+  /**
+   * Replaces the references recorded for the given document with the
+   * references found in the given text.
+   *
+   * @param path The document's location on disk.
+   * @param text The document's text.
+   */
+  public void update( final Path path, final String text ) {
+    final var tokens = mTokens.get();
+    final var began = tokens.getBegan();
+    final var ended = tokens.getEnded();
+    final var references = find( text, began, ended );
+    final List<Path> rescan;
+
+    synchronized( this ) {
+      if( mBegan.equals( began ) && mEnded.equals( ended ) ) {
+        rescan = List.of();
+      }
+      else {
+        // All recorded references use the old sigils.
+        mBegan = began;
+        mEnded = ended;
+        mFiles.clear();
+        mReferences.clear();
+        rescan = new ArrayList<>( mDirectories );
+        mDirectories.clear();
+      }
+
+      final var previous = mFiles.put( path.toAbsolutePath(), references );
+
+      if( previous != null ) {
+        for( final var key : previous.keySet() ) {
+          final var paths = mReferences.get( key );
+
+          if( paths != null && paths.remove( path.toAbsolutePath() ) &&
+            paths.isEmpty() ) {
+            mReferences.remove( key );
+          }
+        }
+      }
+
+      for( final var key : references.keySet() ) {
+        mReferences.computeIfAbsent( key, k -> new HashSet<>() )
+                   .add( path.toAbsolutePath() );
+      }
+    }
+
+    rescan.forEach( this::scan );
+  }
+
+  /**
+   * Answers whether the given document might reference any of the given
+   * definitions. Documents that have not been indexed might reference
+   * anything.
+   *
+   * @param path The document's location on disk.
+   * @param keys The definition keys, including sigils.
+   * @return {@code false} if the document is known to reference none of
+   * the given keys.
+   */
+  public synchronized boolean references(
+    final Path path, final Collection<String> keys ) {
+    final var references = mFiles.get( path.toAbsolutePath() );
+
+    if( references == null ) {
+      return true;
+    }
+
+    for( final var key : keys ) {
+      if( references.containsKey( key ) ) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns every usage of the given definition in the indexed documents.
+   *
+   * @param key The definition key, including sigils.
+   * @return The usages, possibly empty, grouped by document.
+   */
+  public synchronized List<Usage> getUsages( final String key ) {
+    final var usages = new ArrayList<Usage>();
+
+    for( final var path : mReferences.getOrDefault( key, Set.of() ) ) {
+      for( final var line : mFiles.get( path ).get( key ) ) {
+        usages.add( new Usage( path, line ) );
+      }
+    }
+
+    return usages;
+  }
+
+  /**
+   * Creates a filter that accepts the blocks of a document that might use
+   * any of the given definitions, whatever form the reference takes (e.g.,
+   * {@code $a.b$} or {@code v$a$b}). A block is accepted if it contains the
+   * last segment of any key's name, which may accept blocks that do not use
+   * the definitions, but never rejects a block that does.
+   *
+   * @param keys The definition keys that have changed.
+   * @return A filter that accepts the source text of blocks that might use
+   * the definitions.
+   */
+  public static Predicate<String> createBlockFilter(
+    final Collection<String> keys ) {
+    final var names = new HashSet<String>();
+
+    for( final var key : keys ) {
+      final var name = toName( key );
+
+      if( name.isEmpty() ) {
+        return block -> true;
+      }
+
+      names.add( name );
+    }
+
+    return block -> {
+      for( final var name : names ) {
+        if( block.contains( name ) ) {
+          return true;
+        }
+      }
+
+      return false;
+    };
+  }
+
+  /**
+   * Returns the last segment of a key, without separators or sigils.
+   */
+  private static String toName( final String key ) {
+    var ended = key.length();
+
+    while( ended > 0 && !isNameChar( key.charAt( ended - 1 ) ) ) {
+      ended--;
+    }
+
+    var began = ended;
+
+    while( began > 0 && isNameChar( key.charAt( began - 1 ) ) ) {
+      began--;
+    }
+
+    return key.substring( began, ended );
+  }
+
+  private static boolean isNameChar( final char ch ) {
+    return isLetterOrDigit( ch ) || ch == '_' || ch == '-';
+  }
+
+  private synchronized boolean isIndexed( final Path path ) {
+    return mFiles.containsKey( path.toAbsolutePath() );
+  }
+
+  private void read( final Path path ) {
+    try {
+      update( path, Files.readString( path, UTF_8 ) );
+    } catch( final Exception ex ) {
+      // Skip documents that cannot be read as text.
+      clue( ex );
+    }
+  }
+
+  private static boolean isDocument( final Path path ) {
+    final MediaType mediaType = MediaType.valueFrom( path );
+    return Files.isRegularFile( path ) &&
+      (mediaType == TEXT_MARKDOWN || mediaType == TEXT_R_MARKDOWN);
+  }
+
+  /**
+   * Finds the references in the given text.
+   *
+   * @return Each reference, mapped to the line numbers where it is found.
+   */
+  private static Map<String, int[]> find(
+    final String text, final String began, final String ended ) {
+    final var lines = new HashMap<String, List<Integer>>();
+
+    if( began.isEmpty() || ended.isEmpty() ) {
+      return Map.of();
+    }
+
+    var line = 1;
+    var counted = 0;
+    var bIndex = text.indexOf( began );
+
+    while( bIndex >= 0 ) {
+      final var eIndex = findEnded( text, bIndex, began, ended );
+
+      if( eIndex < 0 ) {
+        bIndex = text.indexOf( began, bIndex + began.length() );
+        continue;
+      }
+
+      for( ; counted < bIndex; counted++ ) {
+        if( text.charAt( counted ) == '\n' ) {
+          line++;
+        }
+      }
+
+      lines.computeIfAbsent( text.substring( bIndex, eIndex ),
+                             k -> new ArrayList<>() ).add( line );
+
+      // The closing sigil may also open the next reference (e.g., $a$b$).
+      bIndex = text.indexOf( began, eIndex - ended.length() );
+    }
+
+    final var references = new HashMap<String, int[]>( lines.size() * 2 );
+
+    lines.forEach( ( key, found ) -> references.put(
+      key, found.stream().mapToInt( Integer::intValue ).toArray() ) );
+
+    return references;
+  }
+
+  /**
+   * Finds the end of the closing sigil that follows an opening sigil, where
+   * the text between the sigils is not empty and has no whitespace.
+   *
+   * @return Offset just past the closing sigil, or -1 if not found.
+   */
+  private static int findEnded(
+    final String text,
+    final int bIndex,
+    final String began,
+    final String ended ) {
+    final var start = bIndex + began.length();
+    final var limit = min( text.length(), bIndex + MAX_KEY_LENGTH );
+
+    for( int i = start; i < limit; i++ ) {
+      if( text.startsWith( ended, i ) ) {
+        return i > start ? i + ended.length() : -1;
+      }
+
+      if( isWhitespace( text.charAt( i ) ) ) {
+        return -1;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Identifies a line in a document that references a definition.
+   */
+  public static final class Usage {
+    private final Path mPath;
+    private final int mLine;
+
+    private Usage( final Path path, final int line ) {
+      mPath = path;
+      mLine = line;
+    }
+
+    public Path getPath() {
+      return mPath;
+    }
+
+    public int getLine() {
+      return mLine;
+    }
+
+    @Override
+    public String toString() {
+      return mPath.getFileName() + ":" + mLine;
+    }
+  }
+}
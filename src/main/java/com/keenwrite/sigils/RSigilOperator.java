@@ -1,6 +1,9 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.sigils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.keenwrite.sigils.YamlSigilOperator.KEY_SEPARATOR_DEF;
 
 /**
@@ -31,6 +34,20 @@ public final class RSigilOperator extends SigilOperator {
     mAntecedent = antecedent;
   }
 
+  /**
+   * Returns the delimiters for R variables followed by the delimiters of the
+   * antecedent operator, which determine how definition keys are converted
+   * to R variable names.
+   *
+   * @return The began and ended tokens of both operators.
+   */
+  @Override
+  public List<String> getDelimiters() {
+    final var delimiters = new ArrayList<>( super.getDelimiters() );
+    delimiters.addAll( mAntecedent.getDelimiters() );
+    return delimiters;
+  }
+
   /**
    * Returns the given string with backticks prepended and appended. The
    *
@@ -1,6 +1,7 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.sigils;
 
+import java.util.List;
 import java.util.function.UnaryOperator;
 
 /**
@@ -36,6 +37,18 @@ public abstract class SigilOperator implements UnaryOperator<String> {
     return mTokens.getEnded();
   }
 
+  /**
+   * Returns the delimiters that affect how this operator transforms keys,
+   * as they are at the time of calling. The delimiters change when the
+   * user edits them, so callers that cache transformed keys can compare
+   * delimiters to determine whether the keys must be transformed again.
+   *
+   * @return The began and ended tokens.
+   */
+  public List<String> getDelimiters() {
+    return List.of( getBegan(), getEnded() );
+  }
+
   /**
    * Wraps the given key in the began and ended tokens. This may perform any
    * preprocessing necessary to ensure the transformation happens.
@@ -1,24 +1,40 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.spelling.impl;
 
-import com.keenwrite.spelling.api.SpellCheckListener;
+import com.keenwrite.events.DocumentParsedEvent;
+import com.keenwrite.processors.DocumentSnapshot;
 import com.keenwrite.spelling.api.SpellChecker;
-import com.vladsch.flexmark.parser.Parser;
-import com.vladsch.flexmark.util.ast.NodeVisitor;
-import com.vladsch.flexmark.util.ast.VisitHandler;
 import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.model.PlainTextChange;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.greenrobot.eventbus.Subscribe;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import static com.keenwrite.events.Bus.register;
+import static com.keenwrite.events.Bus.unregister;
 import static com.keenwrite.spelling.impl.SymSpellSpeller.forLexicon;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
+import static javafx.application.Platform.runLater;
 import static org.fxmisc.richtext.model.TwoDimensional.Bias.Forward;
+import static org.greenrobot.eventbus.ThreadMode.ASYNC;
 
 /**
- * Responsible for checking the spelling of a document being edited.
+ * Responsible for checking the spelling of a document being edited. Rather
+ * than parsing the text itself, the speller proofreads the runs of prose
+ * found in each {@link DocumentSnapshot} of its document. Words are looked
+ * up on a thread of the event bus; only the paragraphs edited since the
+ * previous check are restyled.
  */
 public final class TextEditorSpeller {
   /**
@@ -26,124 +42,212 @@ public final class TextEditorSpeller {
    */
   private static final SpellChecker sSpellChecker = forLexicon( "en.txt" );
 
-  private final Parser mParser;
+  private final StyleClassedTextArea mEditor;
+  private final Supplier<Path> mPath;
 
-  public TextEditorSpeller() {
-     mParser = Parser.builder().build();
-  }
+  /**
+   * Maps runs of prose to the offsets of their misspelled words, so that
+   * runs that have not changed between snapshots are not proofread again.
+   */
+  private Map<String, int[]> mProofread = new HashMap<>();
 
   /**
-   * Delegates to {@link #spellcheck(StyleClassedTextArea, String, int)}.
-   * call to spell check the entire document.
+   * Set until the entire document has been checked.
    */
-  public void checkDocument( final StyleClassedTextArea editor ) {
-    spellcheck( editor, editor.getText(), -1 );
-  }
+  private boolean mUnchecked = true;
 
   /**
-   * Listen for changes to the any particular paragraph and perform a quick
-   * spell check upon it. The style classes in the editor will be changed to
-   * mark any spelling mistakes in the paragraph. The user may then interact
-   * with any misspelled word (i.e., any piece of text that is marked) to
-   * revise the spelling.
+   * Range of text edited since the previous check, which is empty when the
+   * beginning offset exceeds the ending offset.
+   */
+  private int mDirtyBegan = 1;
+  private int mDirtyEnded;
+
+  /**
+   * Revision of the most recently applied snapshot.
+   */
+  private long mRevision;
+
+  /**
+   * Creates a speller that marks misspelled words in the given text area.
+   * The speller receives snapshots while the text area is part of a scene.
    *
    * @param editor The text area containing paragraphs to spellcheck.
+   * @param path   Provides the location of the document being edited, which
+   *               identifies the snapshots to check.
    */
-  public void checkParagraphs( final StyleClassedTextArea editor ) {
+  public TextEditorSpeller(
+    final StyleClassedTextArea editor, final Supplier<Path> path ) {
+    mEditor = editor;
+    mPath = path;
+
     // Use the plain text changes so that notifications of style changes
     // are suppressed. Checking against the identity ensures that only
     // new text additions or deletions trigger proofreading.
     editor.plainTextChanges()
-          .filter( p -> !p.isIdentity() ).subscribe( change -> {
-
-      // Check current paragraph; the whole document was checked upon opening.
-      final var offset = change.getPosition();
-      final var position = editor.offsetToPosition( offset, Forward );
-      final var paraId = position.getMajor();
-      final var paragraph = editor.getParagraph( paraId );
-      final var text = paragraph.getText();
-
-      // Prevent doubling-up styles.
-      editor.clearStyle( paraId );
-
-      spellcheck( editor, text, paraId );
+          .filter( p -> !p.isIdentity() )
+          .subscribe( this::edited );
+
+    // Closing the document removes the text area from the scene, which
+    // releases the speller from the event bus.
+    editor.sceneProperty().addListener( ( c, o, n ) -> {
+      if( o == null && n != null ) {
+        register( this );
+      }
+      else if( o != null && n == null ) {
+        unregister( this );
+      }
     } );
   }
 
   /**
-   * Spellchecks a subset of the entire document.
+   * Proofreads the runs of prose in a parsed document. The misspelled words
+   * are marked in the text area only if its text has not changed since the
+   * snapshot was created; a newer snapshot will follow any further edits.
    *
-   * @param text   Look up words for this text in the lexicon.
-   * @param paraId Set to -1 to apply resulting style spans to the entire
-   *               text.
+   * @param event Contains the snapshot of the parsed document.
    */
-  private void spellcheck(
-    final StyleClassedTextArea editor, final String text, final int paraId ) {
-    final var builder = new StyleSpansBuilder<Collection<String>>();
-    final var runningIndex = new AtomicInteger( 0 );
+  @Subscribe( threadMode = ASYNC )
+  public synchronized void handle( final DocumentParsedEvent event ) {
+    final var snapshot = event.getSnapshot();
 
-    // The text nodes must be relayed through a contextual "visitor" that
-    // can return text in chunks with correlative offsets into the string.
-    // This allows Markdown, R Markdown, XML, and R XML documents to return
-    // sets of words to check.
+    if( !Objects.equals( snapshot.getPath(), mPath.get() ) ) {
+      return;
+    }
 
-    final var node = mParser.parse( text );
-    final var visitor = new TextVisitor( ( visited, bIndex, eIndex ) -> {
-      // Treat hyphenated compound words as individual words.
-      final var check = visited.replace( '-', ' ' );
+    final var proofread = new HashMap<String, int[]>();
+    final var misspellings = new ArrayList<int[]>();
+
+    for( final var segment : snapshot.getSegments() ) {
+      final var text = segment.getText();
+      final var offsets = proofread.computeIfAbsent(
+        text, k -> mProofread.containsKey( k )
+          ? mProofread.get( k )
+          : proofread( k )
+      );
+
+      for( int i = 0; i < offsets.length; i += 2 ) {
+        final var began = segment.getBegan();
+        misspellings.add(
+          new int[]{began + offsets[ i ], began + offsets[ i + 1 ]} );
+      }
+    }
 
-      sSpellChecker.proofread( check, ( misspelled, prevIndex, currIndex ) -> {
-        prevIndex += bIndex;
-        currIndex += bIndex;
+    mProofread = proofread;
 
-        // Clear styling between lexiconically absent words.
-        builder.add( emptyList(), prevIndex - runningIndex.get() );
-        builder.add( singleton( "spelling" ), currIndex - prevIndex );
-        runningIndex.set( currIndex );
-      } );
-    } );
+    runLater( () -> mark( snapshot, misspellings ) );
+  }
 
-    visitor.visit( node );
+  /**
+   * Looks up the words for the given text in the lexicon.
+   *
+   * @param text The text to proofread.
+   * @return Pairs of offsets into the text for each misspelled word.
+   */
+  private static int[] proofread( final String text ) {
+    final var offsets = new ArrayList<Integer>();
 
-    // If the running index was set, at least one word triggered the listener.
-    if( runningIndex.get() > 0 ) {
-      // Clear styling after the last lexiconically absent word.
-      builder.add( emptyList(), text.length() - runningIndex.get() );
+    // Treat hyphenated compound words as individual words.
+    final var check = text.replace( '-', ' ' );
 
-      final var spans = builder.create();
+    sSpellChecker.proofread( check, ( misspelled, prevIndex, currIndex ) -> {
+      offsets.add( prevIndex );
+      offsets.add( currIndex );
+    } );
 
-      if( paraId >= 0 ) {
-        editor.setStyleSpans( paraId, 0, spans );
-      }
-      else {
-        editor.setStyleSpans( 0, spans );
+    return offsets.stream().mapToInt( Integer::intValue ).toArray();
+  }
+
+  /**
+   * Widens the range of edited text to include the given change. This must
+   * be called on the JavaFX thread.
+   *
+   * @param change The text that was inserted or removed.
+   */
+  private void edited( final PlainTextChange change ) {
+    final var position = change.getPosition();
+    final var removed = change.getRemoved().length();
+    final var inserted = change.getInserted().length();
+
+    if( mDirtyBegan > mDirtyEnded ) {
+      mDirtyBegan = position;
+      mDirtyEnded = position + inserted;
+    }
+    else {
+      if( mDirtyEnded > position ) {
+        mDirtyEnded = max( mDirtyEnded + inserted - removed, position );
       }
+
+      mDirtyBegan = min( mDirtyBegan, position );
+      mDirtyEnded = max( mDirtyEnded, position + inserted );
     }
   }
 
   /**
-   * TODO: #59 -- Replace with generic interface; provide Markdown/XML
-   * implementations.
+   * Marks the misspelled words in the paragraphs edited since the previous
+   * check, or in the entire document if it has not yet been checked. This
+   * must be called on the JavaFX thread.
+   *
+   * @param snapshot     The snapshot that was proofread.
+   * @param misspellings Offsets of the misspelled words, in document order.
    */
-  private static final class TextVisitor {
-    private final NodeVisitor mVisitor = new NodeVisitor( new VisitHandler<>(
-      com.vladsch.flexmark.ast.Text.class, this::visit )
-    );
+  private void mark(
+    final DocumentSnapshot snapshot, final List<int[]> misspellings ) {
+    if( snapshot.getRevision() < mRevision ||
+      !snapshot.getText().equals( mEditor.getText() ) ) {
+      return;
+    }
+
+    mRevision = snapshot.getRevision();
 
-    private final SpellCheckListener mConsumer;
+    final var length = mEditor.getLength();
+    final int from;
+    final int to;
 
-    public TextVisitor( final SpellCheckListener consumer ) {
-      mConsumer = consumer;
+    if( mUnchecked ) {
+      from = 0;
+      to = length;
+    }
+    else if( mDirtyBegan <= mDirtyEnded ) {
+      final var began = mEditor.offsetToPosition(
+        min( mDirtyBegan, length ), Forward ).getMajor();
+      final var ended = mEditor.offsetToPosition(
+        min( mDirtyEnded, length ), Forward ).getMajor();
+
+      from = mEditor.getAbsolutePosition( began, 0 );
+      to = mEditor.getAbsolutePosition(
+        ended, mEditor.getParagraphLength( ended ) );
+    }
+    else {
+      return;
     }
 
-    private void visit( final com.vladsch.flexmark.util.ast.Node node ) {
-      if( node instanceof com.vladsch.flexmark.ast.Text ) {
-        mConsumer.accept( node.getChars().toString(),
-                          node.getStartOffset(),
-                          node.getEndOffset() );
-      }
+    mUnchecked = false;
+    mDirtyBegan = 1;
+    mDirtyEnded = 0;
+
+    if( from >= to ) {
+      return;
+    }
+
+    final var builder = new StyleSpansBuilder<Collection<String>>();
+    var index = from;
+
+    for( final var misspelling : misspellings ) {
+      final var began = misspelling[ 0 ];
+      final var ended = misspelling[ 1 ];
 
-      mVisitor.visitChildren( node );
+      if( began >= index && ended <= to ) {
+        // Clear styling between lexiconically absent words.
+        builder.add( emptyList(), began - index );
+        builder.add( singleton( "spelling" ), ended - began );
+        index = ended;
+      }
     }
+
+    // Clear styling after the last lexiconically absent word.
+    builder.add( emptyList(), to - index );
+
+    mEditor.setStyleSpans( from, builder.create() );
   }
 }
@@ -492,6 +492,10 @@ public final class ApplicationActions {
     getMainPane().viewStatistics();
   }
 
+  public void view_metrics() {
+    getMainPane().viewMetrics();
+  }
+
   public void view_menubar() {
     getMainScene().toggleMenuBar();
   }
@@ -124,6 +124,7 @@ public final class ApplicationBars {
       addAction( "view.preview", e -> actions.view_preview() ),
       addAction( "view.outline", e -> actions.view_outline() ),
       addAction( "view.statistics", e-> actions.view_statistics() ),
+      addAction( "view.metrics", e-> actions.view_metrics() ),
       addAction( "view.files", e-> actions.view_files() ),
       SEPARATOR_ACTION,
       addAction( "view.menubar", e -> actions.view_menubar() ),
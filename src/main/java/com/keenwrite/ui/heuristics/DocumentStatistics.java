@@ -1,9 +1,8 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.ui.heuristics;
 
-import com.keenwrite.events.DocumentChangedEvent;
+import com.keenwrite.events.DocumentParsedEvent;
 import com.keenwrite.preferences.Workspace;
-import com.keenwrite.preview.HtmlPanel;
 import com.whitemagicsoftware.wordcount.TokenizerException;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -15,6 +14,8 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import org.greenrobot.eventbus.Subscribe;
 
+import java.util.ArrayList;
+
 import static com.keenwrite.events.Bus.register;
 import static com.keenwrite.events.StatusEvent.clue;
 import static com.keenwrite.events.WordCountEvent.fireWordCountEvent;
@@ -24,6 +25,7 @@ import static com.keenwrite.ui.heuristics.DocumentStatistics.StatEntry;
 import static java.lang.String.format;
 import static javafx.application.Platform.runLater;
 import static javafx.collections.FXCollections.observableArrayList;
+import static org.greenrobot.eventbus.ThreadMode.ASYNC;
 
 /**
  * Responsible for displaying document statistics, such as word count and
@@ -31,9 +33,21 @@ import static javafx.collections.FXCollections.observableArrayList;
  */
 public final class DocumentStatistics extends TableView<StatEntry> {
 
-  private WordCounter mWordCounter;
+  private volatile WordCounter mWordCounter;
   private final ObservableList<StatEntry> mItems = observableArrayList();
 
+  /**
+   * Plain text from the most recently counted snapshot, which prevents
+   * counting words again when only the markup has changed.
+   */
+  private String mPlainText = "";
+
+  /**
+   * Revision of the most recently counted snapshot, which prevents an older
+   * snapshot from replacing the statistics of a newer one.
+   */
+  private long mRevision;
+
   /**
    * Creates a new observer of document change events that will gather and
    * display document statistics (e.g., word counts).
@@ -65,31 +79,38 @@ public final class DocumentStatistics extends TableView<StatEntry> {
   }
 
   /**
-   * Called when the hash code for the current document changes. This happens
-   * when non-collapsable-whitespace is added to the document. When the
-   * document is sent to {@link HtmlPanel} for rendering, the parsed document
-   * is converted to text. If that text differs in its hash code, then this
-   * method is called. The implication is that all variables and executable
-   * statements have been replaced. An event bus subscriber is used so that
-   * text processing occurs outside of the UI processing threads.
+   * Called after a document has been parsed. The snapshot's plain text has
+   * all markup removed and all variables substituted. Words are counted on
+   * a thread of the event bus, so that text analysis happens outside of the
+   * UI and rendering threads.
    *
-   * @param event Container for the document text that has changed.
+   * @param event Container for the snapshot of the parsed document.
    */
-  @Subscribe
-  public void handle( final DocumentChangedEvent event ) {
+  @Subscribe( threadMode = ASYNC )
+  public synchronized void handle( final DocumentParsedEvent event ) {
+    final var snapshot = event.getSnapshot();
+    final var text = snapshot.getPlainText();
+
+    if( snapshot.getRevision() < mRevision || text.equals( mPlainText ) ) {
+      return;
+    }
+
+    mRevision = snapshot.getRevision();
+    mPlainText = text;
+
     try {
-      runLater( () -> {
-        mItems.clear();
-        final var document = event.getDocument();
-        final var wordCount = mWordCounter.count(
-          document, ( k, count ) -> {
-            // Generate statistics for words that occur thrice or more.
-            if( count > 2 ) {
-              mItems.add( new StatEntry( k, count ) );
-            }
+      final var entries = new ArrayList<StatEntry>();
+      final var wordCount = mWordCounter.count(
+        text, ( k, count ) -> {
+          // Generate statistics for words that occur thrice or more.
+          if( count > 2 ) {
+            entries.add( new StatEntry( k, count ) );
           }
-        );
+        }
+      );
 
+      runLater( () -> {
+        mItems.setAll( entries );
         fireWordCountEvent( wordCount );
       } );
     } catch( final TokenizerException ex ) {
@@ -0,0 +1,230 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.ui.heuristics;
+
+import com.keenwrite.events.DocumentChangedEvent;
+import com.keenwrite.processors.RenderScheduler;
+import com.keenwrite.processors.metrics.Histogram;
+import com.keenwrite.processors.metrics.StageMetrics;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.input.ClipboardContent;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.util.function.Function;
+
+import static com.keenwrite.events.Bus.register;
+import static com.keenwrite.events.StatusEvent.clue;
+import static com.keenwrite.processors.metrics.ProcessorMetrics.METRICS;
+import static com.keenwrite.ui.heuristics.ProcessorStatistics.StageEntry;
+import static java.lang.String.format;
+import static javafx.application.Platform.runLater;
+import static javafx.collections.FXCollections.observableArrayList;
+import static javafx.scene.input.Clipboard.getSystemClipboard;
+
+/**
+ * Responsible for displaying how long each stage of the processor chain
+ * takes to transform a document, which helps determine whether a slow
+ * preview is caused by variable substitution, Markdown parsing, R
+ * evaluation, or rendering. Measuring starts when this view is created.
+ * <p>
+ * The preview's render requests are listed after the stages, which shows
+ * how many renders were coalesced or discarded before reaching the preview.
+ * </p>
+ */
+public final class ProcessorStatistics extends TableView<StageEntry> {
+  private final ObservableList<StageEntry> mItems = observableArrayList();
+  private final RenderScheduler mScheduler;
+
+  /**
+   * Creates a view that updates each time the document is rendered.
+   *
+   * @param scheduler Coalesces the preview's render requests.
+   */
+  public ProcessorStatistics( final RenderScheduler scheduler ) {
+    assert scheduler != null;
+
+    mScheduler = scheduler;
+
+    setItems( mItems );
+    initView();
+    initMenu();
+    register( this );
+
+    METRICS.setEnabled( true );
+    update();
+  }
+
+  /**
+   * Updates the percentiles after the document has been rendered.
+   *
+   * @param event Indicates that the preview has changed (unused).
+   */
+  @Subscribe
+  public void handle( final DocumentChangedEvent event ) {
+    runLater( this::update );
+  }
+
+  private void update() {
+    mItems.clear();
+    METRICS.getStages().forEach( s -> mItems.add( new StageEntry( s ) ) );
+
+    mItems.add( new StageEntry(
+      "Renders requested", mScheduler.getSubmittedCount() ) );
+    mItems.add( new StageEntry(
+      "Renders published", mScheduler.getRenderedCount() ) );
+    mItems.add( new StageEntry(
+      "Renders dropped", mScheduler.getDroppedCount() ) );
+    mItems.add( new StageEntry(
+      "Renders waiting", mScheduler.getQueueDepth() ) );
+    mItems.add( new StageEntry(
+      "Renders waiting (peak)", mScheduler.getQueueDepthPeak() ) );
+  }
+
+  private void initView() {
+    final var columns = getColumns();
+
+    columns.add( createColumn( "Stage", StageEntry::nameProperty ) );
+    columns.add( createColumn( "Calls", StageEntry::callsProperty ) );
+    columns.add( createColumn( "p50 ms", StageEntry::p50Property ) );
+    columns.add( createColumn( "p95 ms", StageEntry::p95Property ) );
+    columns.add( createColumn( "p99 ms", StageEntry::p99Property ) );
+    columns.add( createColumn( "p95 KiB", StageEntry::allocatedProperty ) );
+    columns.add( createColumn( "p95 in", StageEntry::inputProperty ) );
+    columns.add( createColumn( "p95 out", StageEntry::outputProperty ) );
+
+    setMaxWidth( Double.MAX_VALUE );
+    setPrefWidth( 128 );
+    setColumnResizePolicy( CONSTRAINED_RESIZE_POLICY );
+  }
+
+  /**
+   * Allows copying the measurements as JSON and discarding them.
+   */
+  private void initMenu() {
+    final var copy = new MenuItem( "Copy as JSON" );
+    final var reset = new MenuItem( "Reset" );
+
+    copy.setOnAction( e -> {
+      try {
+        final var content = new ClipboardContent();
+        content.putString( METRICS.toJson() );
+        getSystemClipboard().setContent( content );
+      } catch( final Exception ex ) {
+        clue( ex );
+      }
+    } );
+
+    reset.setOnAction( e -> {
+      METRICS.reset();
+      update();
+    } );
+
+    setContextMenu( new ContextMenu( copy, reset ) );
+  }
+
+  private TableColumn<StageEntry, String> createColumn(
+    final String name,
+    final Function<StageEntry, ObservableValue<String>> property ) {
+    final var column = new TableColumn<StageEntry, String>( name );
+    column.setCellValueFactory( stage -> property.apply( stage.getValue() ) );
+    return column;
+  }
+
+  /**
+   * Represents the percentiles measured for a single processor stage, or a
+   * count of render requests.
+   */
+  protected static final class StageEntry {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final int BYTES_PER_KIB = 1024;
+
+    private final StringProperty mName;
+    private final StringProperty mCalls;
+    private final StringProperty mP50;
+    private final StringProperty mP95;
+    private final StringProperty mP99;
+    private final StringProperty mAllocated;
+    private final StringProperty mInput;
+    private final StringProperty mOutput;
+
+    public StageEntry( final StageMetrics stage ) {
+      final var wall = stage.getWallTime();
+
+      mName = new SimpleStringProperty( stage.getName() );
+      mCalls = new SimpleStringProperty( Long.toString( wall.getCount() ) );
+      mP50 = new SimpleStringProperty( toMillis( wall, 50 ) );
+      mP95 = new SimpleStringProperty( toMillis( wall, 95 ) );
+      mP99 = new SimpleStringProperty( toMillis( wall, 99 ) );
+      mAllocated = new SimpleStringProperty(
+        Long.toString( p95( stage.getAllocated() ) / BYTES_PER_KIB ) );
+      mInput = new SimpleStringProperty(
+        Long.toString( p95( stage.getInputSize() ) ) );
+      mOutput = new SimpleStringProperty(
+        Long.toString( p95( stage.getOutputSize() ) ) );
+    }
+
+    /**
+     * Creates an entry that has a count but no percentiles.
+     *
+     * @param name  Describes what was counted.
+     * @param count The number of times the event happened.
+     */
+    public StageEntry( final String name, final long count ) {
+      mName = new SimpleStringProperty( name );
+      mCalls = new SimpleStringProperty( Long.toString( count ) );
+      mP50 = new SimpleStringProperty( "" );
+      mP95 = new SimpleStringProperty( "" );
+      mP99 = new SimpleStringProperty( "" );
+      mAllocated = new SimpleStringProperty( "" );
+      mInput = new SimpleStringProperty( "" );
+      mOutput = new SimpleStringProperty( "" );
+    }
+
+    private StringProperty nameProperty() {
+      return mName;
+    }
+
+    private StringProperty callsProperty() {
+      return mCalls;
+    }
+
+    private StringProperty p50Property() {
+      return mP50;
+    }
+
+    private StringProperty p95Property() {
+      return mP95;
+    }
+
+    private StringProperty p99Property() {
+      return mP99;
+    }
+
+    private StringProperty allocatedProperty() {
+      return mAllocated;
+    }
+
+    private StringProperty inputProperty() {
+      return mInput;
+    }
+
+    private StringProperty outputProperty() {
+      return mOutput;
+    }
+
+    private static String toMillis( final Histogram h, final int percentile ) {
+      return format(
+        "%.2f", h.getValueAtPercentile( percentile ) / NANOS_PER_MILLI );
+    }
+
+    private static long p95( final Histogram histogram ) {
+      return histogram.getValueAtPercentile( 95 );
+    }
+  }
+}
@@ -1,6 +1,7 @@
 /* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
 package com.keenwrite.ui.logging;
 
+import com.keenwrite.events.BudgetExceededEvent;
 import com.keenwrite.events.StatusEvent;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -12,6 +13,8 @@ import javafx.stage.Stage;
 import org.greenrobot.eventbus.Subscribe;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.TreeSet;
 
@@ -22,6 +25,7 @@ import static com.keenwrite.events.Bus.register;
 import static com.keenwrite.events.StatusEvent.clue;
 import static java.time.LocalDateTime.now;
 import static java.time.format.DateTimeFormatter.ofPattern;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static javafx.application.Platform.runLater;
 import static javafx.collections.FXCollections.observableArrayList;
 import static javafx.event.ActionEvent.ACTION;
@@ -44,9 +48,20 @@ public final class LogView extends Alert {
    */
   private static final int CACHE_SIZE = 150;
 
+  /**
+   * Number of abandoned evaluations to retain in the {@link TableView}, which
+   * keeps the slowest evaluations.
+   */
+  private static final int BUDGET_SIZE = 10;
+
   private final ObservableList<LogEntry> mItems = observableArrayList();
   private final TableView<LogEntry> mTable = new TableView<>( mItems );
 
+  /**
+   * Entries for abandoned evaluations, slowest first.
+   */
+  private final List<LogEntry> mBudgets = new ArrayList<>();
+
   public LogView() {
     super( INFORMATION );
     setTitle( get( ACTION_PREFIX + "view.log.text" ) );
@@ -61,21 +76,61 @@ public final class LogView extends Alert {
 
   @Subscribe
   public void log( final StatusEvent event ) {
+    runLater( () -> add( new LogEntry( event ) ) );
+  }
+
+  /**
+   * Logs an evaluation that was abandoned for exceeding its budget. Only
+   * the slowest evaluations are retained, so that the log lists the
+   * expressions most in need of attention.
+   *
+   * @param event Describes the abandoned evaluation.
+   */
+  @Subscribe
+  public void log( final BudgetExceededEvent event ) {
     runLater( () -> {
-      final var logEntry = new LogEntry( event );
+      final var elapsed = event.getElapsed();
+      final var logEntry = new LogEntry( get(
+        "Main.status.r.budget.log",
+        NANOSECONDS.toMillis( elapsed ),
+        NANOSECONDS.toMillis( event.getCpuTime() ),
+        event.getOffset(),
+        event.getExpression() ), elapsed );
+
+      if( mItems.contains( logEntry ) ) {
+        return;
+      }
+
+      var i = 0;
+
+      while( i < mBudgets.size() && mBudgets.get( i ).mCost >= elapsed ) {
+        i++;
+      }
 
-      if( !mItems.contains( logEntry ) ) {
-        mItems.add( logEntry );
+      if( i < BUDGET_SIZE ) {
+        mBudgets.add( i, logEntry );
 
-        while( mItems.size() > CACHE_SIZE ) {
-          mItems.remove( 0 );
+        while( mBudgets.size() > BUDGET_SIZE ) {
+          mItems.remove( mBudgets.remove( mBudgets.size() - 1 ) );
         }
 
-        mTable.scrollTo( logEntry );
+        add( logEntry );
       }
     } );
   }
 
+  private void add( final LogEntry logEntry ) {
+    if( !mItems.contains( logEntry ) ) {
+      mItems.add( logEntry );
+
+      while( mItems.size() > CACHE_SIZE ) {
+        mBudgets.remove( mItems.remove( 0 ) );
+      }
+
+      mTable.scrollTo( logEntry );
+    }
+  }
+
   /**
    * Brings the dialog to the foreground, showing it if needed.
    */
@@ -89,6 +144,7 @@ public final class LogView extends Alert {
    */
   public void clear() {
     mItems.clear();
+    mBudgets.clear();
     clue();
   }
 
@@ -161,6 +217,11 @@ public final class LogView extends Alert {
     private final StringProperty mMessage;
     private final StringProperty mTrace;
 
+    /**
+     * Nanoseconds spent on an abandoned evaluation, otherwise zero.
+     */
+    private final long mCost;
+
     /**
      * Constructs a new {@link LogEntry} for the current time.
      */
@@ -168,6 +229,17 @@ public final class LogView extends Alert {
       mDate = new SimpleStringProperty( toString( now() ) );
       mMessage = new SimpleStringProperty( event.getMessage() );
       mTrace = new SimpleStringProperty( event.getProblem() );
+      mCost = 0;
+    }
+
+    /**
+     * Constructs a new {@link LogEntry} for an abandoned evaluation.
+     */
+    public LogEntry( final String message, final long cost ) {
+      mDate = new SimpleStringProperty( toString( now() ) );
+      mMessage = new SimpleStringProperty( message );
+      mTrace = new SimpleStringProperty( "" );
+      mCost = cost;
     }
 
     private StringProperty messageProperty() {
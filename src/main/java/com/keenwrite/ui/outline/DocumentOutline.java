@@ -1,7 +1,8 @@
 package com.keenwrite.ui.outline;
 
 import com.keenwrite.events.Bus;
-import com.keenwrite.events.ParseHeadingEvent;
+import com.keenwrite.events.DocumentParsedEvent;
+import com.keenwrite.processors.DocumentSnapshot.Heading;
 import javafx.scene.Node;
 import javafx.scene.control.TreeCell;
 import javafx.scene.control.TreeItem;
@@ -9,6 +10,8 @@ import javafx.scene.control.TreeView;
 import javafx.util.Callback;
 import org.greenrobot.eventbus.Subscribe;
 
+import java.util.List;
+
 import static com.keenwrite.events.Bus.register;
 import static com.keenwrite.events.CaretNavigationEvent.fireCaretNavigationEvent;
 import static com.keenwrite.ui.fonts.IconFactory.createGraphic;
@@ -16,8 +19,19 @@ import static javafx.application.Platform.runLater;
 import static javafx.scene.input.MouseButton.PRIMARY;
 import static javafx.scene.input.MouseEvent.MOUSE_PRESSED;
 
-public class DocumentOutline extends TreeView<ParseHeadingEvent> {
-  private TreeItem<ParseHeadingEvent> mCurrent;
+public class DocumentOutline extends TreeView<Heading> {
+  private TreeItem<Heading> mCurrent;
+
+  /**
+   * Headings shown in the tree, which avoids rebuilding the tree when the
+   * headings have not changed.
+   */
+  private List<Heading> mHeadings;
+
+  /**
+   * Revision of the most recently shown snapshot.
+   */
+  private long mRevision;
 
   /**
    * Registers with the {@link Bus}.
@@ -26,11 +40,10 @@ public class DocumentOutline extends TreeView<ParseHeadingEvent> {
     // Override double-click to issue a caret navigation event.
     setCellFactory( new Callback<>() {
       @Override
-      public TreeCell<ParseHeadingEvent> call(
-        TreeView<ParseHeadingEvent> treeView ) {
-        TreeCell<ParseHeadingEvent> cell = new TreeCell<>() {
+      public TreeCell<Heading> call( TreeView<Heading> treeView ) {
+        TreeCell<Heading> cell = new TreeCell<>() {
           @Override
-          protected void updateItem( ParseHeadingEvent item, boolean empty ) {
+          protected void updateItem( Heading item, boolean empty ) {
             super.updateItem( item, empty );
             if( empty || item == null ) {
               setText( null );
@@ -58,39 +71,51 @@ public class DocumentOutline extends TreeView<ParseHeadingEvent> {
   }
 
   /**
-   * Updates the {@link TreeView} with the given event data. This method will
-   * track the most recently added {@link TreeItem} so that the nesting
-   * hierarchy reflects the document hierarchy.
+   * Updates the {@link TreeView} with the headings from a parsed document.
+   * This method will track the most recently added {@link TreeItem} so that
+   * the nesting hierarchy reflects the document hierarchy.
    *
-   * @param event Represents a document heading to add to the tree.
+   * @param event Contains the document headings to show in the tree.
    */
   @Subscribe
-  public void handle( final ParseHeadingEvent event ) {
-    runLater(
-      () -> mCurrent = event.isNewOutline() ? clear( event ) : addItem( event )
-    );
+  public void handle( final DocumentParsedEvent event ) {
+    final var snapshot = event.getSnapshot();
+
+    runLater( () -> {
+      final var headings = snapshot.getHeadings();
+
+      // Snapshots may arrive out of order from different threads.
+      if( snapshot.getRevision() > mRevision ) {
+        mRevision = snapshot.getRevision();
+
+        if( !headings.equals( mHeadings ) ) {
+          mHeadings = headings;
+          mCurrent = clear();
+          headings.forEach( heading -> mCurrent = addItem( heading ) );
+        }
+      }
+    } );
   }
 
-  private TreeItem<ParseHeadingEvent> clear( final ParseHeadingEvent event ) {
-    final var root = createTreeItem( event );
+  private TreeItem<Heading> clear() {
+    final var root = createTreeItem( null );
     setRoot( root );
     setShowRoot( false );
     return root;
   }
 
   /**
-   * This method is called once for every heading in the document. The event
-   * data directly corresponds to the sequence of headings in the document.
-   * The given event data contains a level that is relative to the last
-   * item in the tree.
+   * This method is called once for every heading in the document, in the
+   * sequence that the headings appear in the document. The given heading
+   * contains a level that is relative to the last item in the tree.
    *
    * @param next Contains a level value to indicate heading depth.
    */
-  private TreeItem<ParseHeadingEvent> addItem( final ParseHeadingEvent next ) {
+  private TreeItem<Heading> addItem( final Heading next ) {
     var parent = mCurrent;
     final var item = createTreeItem( next );
     final var curr = parent.getValue();
-    final var currLevel = curr.getLevel();
+    final var currLevel = curr == null ? 0 : curr.getLevel();
     final var nextLevel = next.getLevel();
     var deltaLevel = currLevel - nextLevel + 1;
 
@@ -108,9 +133,8 @@ public class DocumentOutline extends TreeView<ParseHeadingEvent> {
     return item;
   }
 
-  private TreeItem<ParseHeadingEvent> createTreeItem(
-    final ParseHeadingEvent event ) {
-    final var item = new TreeItem<>( event, createIcon() );
+  private TreeItem<Heading> createTreeItem( final Heading heading ) {
+    final var item = new TreeItem<>( heading, createIcon() );
     item.setExpanded( true );
     return item;
   }
@@ -0,0 +1,83 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.dom;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+
+import static com.keenwrite.dom.DocumentPatcher.PATCH_FAILED;
+import static com.keenwrite.dom.DocumentPatcher.patch;
+import static org.jsoup.Jsoup.parse;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link DocumentPatcher} replaces only the blocks that
+ * differ between two documents.
+ */
+public class DocumentPatcherTest {
+  private static final DocumentConverter CONVERTER = new DocumentConverter();
+
+  private static final String HEAD =
+    "<html><head><title>t</title></head><body>";
+  private static final String TAIL = "</body></html>";
+
+  /**
+   * Test that changing one paragraph and moving the caret identifier to
+   * another paragraph replaces only those two paragraphs.
+   */
+  @Test
+  public void test_Patch_TwoChangedBlocks_TwoReplaced() {
+    final var live = toDocument( "<p id='caret'>a</p><p>b</p><p>c</p>" );
+    final var next = toDocument( "<p>a</p><p>b</p><p id='caret'>d</p>" );
+    final var expected = toDocument( "<p>a</p><p>b</p><p id='caret'>d</p>" );
+    final var kept = body( live ).getChildNodes().item( 1 );
+    final var removed = new ArrayList<Element>();
+
+    assertEquals( 2, patch( live, next, removed::add ) );
+    assertEquals( 2, removed.size() );
+    assertSame( kept, body( live ).getChildNodes().item( 1 ) );
+    assertTrue( body( expected ).isEqualNode( body( live ) ) );
+  }
+
+  /**
+   * Test that inserting and deleting blocks keeps the unchanged blocks.
+   */
+  @Test
+  public void test_Patch_InsertedBlocks_RangeReplaced() {
+    final var live = toDocument( "<h1>x</h1><p>a</p><ul><li>i</li></ul>" );
+    final var html = "<h1>x</h1><p>a</p><p>b</p><ul><li>i</li></ul>";
+    final var next = toDocument( html );
+    final var expected = toDocument( html );
+
+    assertEquals( 1, patch( live, next, e -> fail() ) );
+    assertTrue( body( expected ).isEqualNode( body( live ) ) );
+
+    final var shorter = toDocument( "<h1>x</h1><ul><li>i</li></ul>" );
+
+    assertEquals( 2, patch( live, shorter, e -> {} ) );
+    assertTrue( body( toDocument( "<h1>x</h1><ul><li>i</li></ul>" ) )
+                  .isEqualNode( body( live ) ) );
+  }
+
+  /**
+   * Test that documents with different heads cannot be patched.
+   */
+  @Test
+  public void test_Patch_DifferentHead_Failed() {
+    final var live = toDocument( "<p>a</p>" );
+    final var next = CONVERTER.fromJsoup( parse(
+      "<html><head><title>u</title></head><body><p>a</p></body></html>" ) );
+
+    assertEquals( PATCH_FAILED, patch( live, next, e -> {} ) );
+  }
+
+  private static Document toDocument( final String body ) {
+    return CONVERTER.fromJsoup( parse( HEAD + body + TAIL ) );
+  }
+
+  private static Element body( final Document document ) {
+    return (Element) document.getElementsByTagName( "body" ).item( 0 );
+  }
+}
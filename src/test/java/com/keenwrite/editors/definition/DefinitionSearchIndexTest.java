@@ -0,0 +1,58 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+
+import static com.keenwrite.editors.definition.DefinitionSearchIndex.NONE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that the {@link DefinitionSearchIndex} finds the same values as the
+ * {@link DefinitionTreeItem} find methods.
+ */
+class DefinitionSearchIndexTest {
+  private static final DefinitionSearchIndex INDEX = createIndex();
+
+  @Test
+  void test_FindExact_RawValue_Found() {
+    assertEquals( "novel.city", key( INDEX.findExact( "Zürich" ) ) );
+    assertEquals( NONE, INDEX.findExact( "Zurich" ) );
+  }
+
+  @Test
+  void test_FindStartsWith_Diacriticless_Found() {
+    assertEquals( "novel.city", key( INDEX.findStartsWith( "Zur" ) ) );
+    assertEquals( "novel.author", key( INDEX.findStartsWith( "Ali" ) ) );
+    assertEquals( NONE, INDEX.findStartsWith( "Zz" ) );
+  }
+
+  @Test
+  void test_FindContains_Trigrams_Found() {
+    assertEquals( "novel.title", key( INDEX.findContains( "Hollow" ) ) );
+    assertEquals( "novel.city", key( INDEX.findContains( "ri" ) ) );
+    assertEquals( NONE, INDEX.findContains( "hollow" ) );
+  }
+
+  @Test
+  void test_FindContainsNoCase_Trigrams_Found() {
+    assertEquals( "novel.title", key( INDEX.findContainsNoCase( "HOLLOW" ) ) );
+    assertEquals( "novel.city", key( INDEX.findContainsNoCase( "ZURICH" ) ) );
+    assertEquals( NONE, INDEX.findContainsNoCase( "Hollowed" ) );
+  }
+
+  private static String key( final int entry ) {
+    return entry == NONE ? null : INDEX.getKey( entry );
+  }
+
+  private static DefinitionSearchIndex createIndex() {
+    final var map = new LinkedHashMap<String, String>();
+    map.put( "novel.title", "The Hollow Crown" );
+    map.put( "novel.author", "Alice Ward" );
+    map.put( "novel.city", "Zürich" );
+    map.put( "novel.editor", "Alison Ward" );
+
+    return new DefinitionSearchIndex( map );
+  }
+}
@@ -0,0 +1,126 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition;
+
+import com.keenwrite.sigils.Tokens;
+import javafx.beans.property.SimpleStringProperty;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static com.keenwrite.editors.definition.MapInterpolator.interpolate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that definitions are resolved without a user interface.
+ */
+class MapInterpolatorTest {
+  private static final Tokens TOKENS = new Tokens(
+    new SimpleStringProperty( "{{" ), new SimpleStringProperty( "}}" ) );
+
+  /**
+   * Test that nested references are resolved and that unknown references
+   * are left as-is.
+   */
+  @Test
+  void test_Interpolate_NestedReferences_Resolved() {
+    final var map = new HashMap<String, String>();
+    map.put( "{{name}}", "{{first}} {{last}}" );
+    map.put( "{{first}}", "Alex" );
+    map.put( "{{last}}", "{{family}}" );
+    map.put( "{{family}}", "Doe" );
+    map.put( "{{title}}", "{{missing}}, {{name}}" );
+
+    interpolate( map, TOKENS );
+
+    assertEquals( "Alex Doe", map.get( "{{name}}" ) );
+    assertEquals( "{{missing}}, Alex Doe", map.get( "{{title}}" ) );
+  }
+
+  /**
+   * Test that a reference cycle is left unresolved instead of overflowing
+   * the stack.
+   */
+  @Test
+  void test_Interpolate_Cycle_Unresolved() {
+    final var map = new HashMap<String, String>();
+    map.put( "{{a}}", "A {{b}}" );
+    map.put( "{{b}}", "B {{a}}" );
+    map.put( "{{self}}", "{{self}}!" );
+
+    interpolate( map, TOKENS );
+
+    assertTrue( map.get( "{{a}}" ).startsWith( "A B" ) );
+    assertEquals( "{{self}}!", map.get( "{{self}}" ) );
+  }
+
+  /**
+   * Test that long chains of shared references are resolved once each.
+   */
+  @Test
+  void test_Interpolate_LongChain_Resolved() {
+    final var map = new HashMap<String, String>();
+    final var size = 20_000;
+
+    map.put( "{{k0}}", "x" );
+
+    for( int i = 1; i < size; i++ ) {
+      map.put( "{{k" + i + "}}", "{{k" + (i - 1) + "}}" );
+    }
+
+    interpolate( map, TOKENS );
+
+    assertEquals( "x", map.get( "{{k" + (size - 1) + "}}" ) );
+  }
+
+  /**
+   * Test that changing a value re-resolves only the keys that depend on it
+   * and reports only the values that changed.
+   */
+  @Test
+  void test_Update_ChangedValue_DependentsOnly() {
+    final var map = new HashMap<String, String>();
+    map.put( "{{name}}", "{{first}} {{last}}" );
+    map.put( "{{first}}", "Alex" );
+    map.put( "{{last}}", "Doe" );
+    map.put( "{{city}}", "Tokyo" );
+
+    final var interpolator = new MapInterpolator( TOKENS );
+    interpolator.update( map );
+
+    map.put( "{{first}}", "Sam" );
+
+    final var delta = interpolator.update( map );
+
+    assertEquals( 2, delta.size() );
+    assertEquals( "Sam", delta.get( "{{first}}" ) );
+    assertEquals( "Sam Doe", delta.get( "{{name}}" ) );
+    assertTrue( interpolator.update( map ).isEmpty() );
+  }
+
+  /**
+   * Test that adding a key resolves values that already mentioned it, and
+   * that removing a key restores the verbatim reference.
+   */
+  @Test
+  void test_Update_AddedAndRemovedKeys_Resolved() {
+    final var map = new HashMap<String, String>();
+    map.put( "{{title}}", "Dr. {{name}}" );
+
+    final var interpolator = new MapInterpolator( TOKENS );
+    interpolator.update( map );
+
+    map.put( "{{name}}", "Alex" );
+    assertEquals( "Dr. Alex", interpolator.update( map ).get( "{{title}}" ) );
+
+    map.remove( "{{name}}" );
+    final var delta = interpolator.update( map );
+
+    assertTrue( delta.containsKey( "{{name}}" ) );
+    assertNull( delta.get( "{{name}}" ) );
+    assertEquals( "Dr. {{name}}", delta.get( "{{title}}" ) );
+    assertEquals(
+      "Dr. {{name}}", interpolator.getResolved().get( "{{title}}" ) );
+  }
+}
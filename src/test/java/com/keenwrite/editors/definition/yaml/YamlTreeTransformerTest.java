@@ -0,0 +1,87 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.editors.definition.yaml;
+
+import com.keenwrite.editors.definition.RootTreeItem;
+import com.keenwrite.editors.definition.TreeItemMapper;
+import com.keenwrite.editors.definition.TreeSnapshot;
+import javafx.scene.control.TreeItem;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that definitions read into a lazily loaded tree can be mapped,
+ * searched, and streamed back into the same tree.
+ */
+class YamlTreeTransformerTest {
+  private static final String DOCUMENT = """
+    ---
+    novel:
+      title: "The Hobbit: or, There and Back Again"
+      author:
+        first: J.R.R.
+        last: Tolkien
+    year: 1937
+    """;
+
+  @Test
+  void test_Transform_Snapshot_RoundTrips() throws Exception {
+    final var transformer = new YamlTreeTransformer();
+    final var tree = transformer.transform( DOCUMENT );
+    final var writer = new StringWriter();
+
+    transformer.transform( TreeSnapshot.of( tree ), writer );
+
+    final var expected = TreeSnapshot.of( tree );
+    final var actual = TreeSnapshot.of(
+      transformer.transform( writer.toString() ) );
+
+    assertEquals( toString( expected ), toString( actual ) );
+    assertEquals( writer.toString(), transformer.transform( tree ) );
+  }
+
+  @Test
+  void test_ToMap_UnloadedBranches_MatchLoadedBranches() {
+    final var unloaded = createRoot();
+    final var loaded = createRoot();
+    final var mapper = new TreeItemMapper();
+
+    load( loaded );
+
+    assertEquals( mapper.toMap( loaded ), mapper.toMap( unloaded ) );
+    assertEquals(
+      "Tolkien", mapper.toMap( unloaded ).get( "novel.author.last" ) );
+  }
+
+  @Test
+  void test_FindLeaf_UnloadedBranch_LoadsPathToLeaf() {
+    final var root = createRoot();
+    final var leaf = root.findLeafExact( "Tolkien" );
+
+    assertNotNull( leaf );
+    assertEquals( "novel.author.last", leaf.toPath() );
+    assertNull( root.findLeafExact( "Missing" ) );
+  }
+
+  private static RootTreeItem<String> createRoot() {
+    final var tree = new YamlTreeTransformer().transform( DOCUMENT );
+    final var root = new RootTreeItem<>( "root" );
+
+    root.getChildren().addAll( new ArrayList<>( tree.getChildren() ) );
+
+    return root;
+  }
+
+  private static void load( final TreeItem<String> item ) {
+    item.getChildren().forEach( YamlTreeTransformerTest::load );
+  }
+
+  private static String toString( final TreeSnapshot node ) {
+    final var sb = new StringBuilder( node.getValue() ).append( '(' );
+    node.getChildren().forEach( child -> sb.append( toString( child ) ) );
+    return sb.append( ')' ).toString();
+  }
+}
@@ -0,0 +1,152 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.keenwrite.processors.RenderScheduler.checkSuperseded;
+import static com.keenwrite.processors.RenderScheduler.isSuperseded;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link RenderScheduler} class.
+ */
+public class RenderSchedulerTest {
+  private static final Object EDITOR = new Object();
+
+  /**
+   * Test that a burst of requests for the same key collapses into a single
+   * run of the most recent request.
+   */
+  @Test
+  public void test_Schedule_BurstOfRequests_LatestWins() throws Exception {
+    final var scheduler = new RenderScheduler( () -> 250 );
+    final var latch = new CountDownLatch( 1 );
+    final var runs = new AtomicInteger();
+    final var last = new AtomicInteger();
+    final var requests = 10;
+
+    for( int i = 1; i <= requests; i++ ) {
+      final var request = i;
+
+      scheduler.schedule( EDITOR, () -> {
+        runs.incrementAndGet();
+        last.set( request );
+        latch.countDown();
+      } );
+    }
+
+    assertTrue( latch.await( 5, SECONDS ) );
+    scheduler.shutdown();
+
+    assertEquals( 1, runs.get() );
+    assertEquals( requests, last.get() );
+    assertEquals( requests - 1, scheduler.getDroppedCount() );
+    assertEquals( requests, scheduler.getSubmittedCount() );
+    assertEquals( 0, scheduler.getQueueDepth() );
+    assertTrue( scheduler.getQueueDepthPeak() >= 1 );
+  }
+
+  /**
+   * Test that a request made while another request for the same key is
+   * running marks the running request as superseded.
+   */
+  @Test
+  public void test_Schedule_RequestWhileRunning_Superseded() throws Exception {
+    final var scheduler = new RenderScheduler( () -> 0 );
+    final var started = new CountDownLatch( 1 );
+    final var proceed = new CountDownLatch( 1 );
+    final var finished = new CountDownLatch( 2 );
+    final var stale = new AtomicBoolean();
+    final var fresh = new AtomicBoolean( true );
+
+    scheduler.schedule( EDITOR, () -> {
+      started.countDown();
+      await( proceed );
+      stale.set( isSuperseded() );
+      finished.countDown();
+    } );
+
+    assertTrue( started.await( 5, SECONDS ) );
+    scheduler.schedule( EDITOR, () -> {
+      fresh.set( !isSuperseded() );
+      finished.countDown();
+    } );
+    proceed.countDown();
+
+    assertTrue( finished.await( 5, SECONDS ) );
+    scheduler.shutdown();
+
+    assertTrue( stale.get() );
+    assertTrue( fresh.get() );
+    assertEquals( 1, scheduler.getDroppedCount() );
+  }
+
+  /**
+   * Test that a running request stops at the next check once a newer
+   * request is made, and that the abandoned request is not an error.
+   */
+  @Test
+  public void test_Schedule_RequestWhileRunning_Cancelled() throws Exception {
+    final var scheduler = new RenderScheduler( () -> 0 );
+    final var started = new CountDownLatch( 1 );
+    final var proceed = new CountDownLatch( 1 );
+    final var finished = new CountDownLatch( 1 );
+    final var completed = new AtomicBoolean();
+
+    scheduler.schedule( EDITOR, () -> {
+      started.countDown();
+      await( proceed );
+      checkSuperseded();
+      completed.set( true );
+    } );
+
+    assertTrue( started.await( 5, SECONDS ) );
+    scheduler.schedule( EDITOR, finished::countDown );
+    proceed.countDown();
+
+    assertTrue( finished.await( 5, SECONDS ) );
+    scheduler.shutdown();
+
+    assertFalse( completed.get() );
+    assertEquals( 1, scheduler.getDroppedCount() );
+  }
+
+  /**
+   * Test that requests for different keys do not supersede each other.
+   */
+  @Test
+  public void test_Schedule_DistinctKeys_AllRun() throws Exception {
+    final var scheduler = new RenderScheduler( () -> 100 );
+    final var latch = new CountDownLatch( 2 );
+
+    scheduler.schedule( new Object(), latch::countDown );
+    scheduler.schedule( new Object(), latch::countDown );
+
+    assertTrue( latch.await( 5, SECONDS ) );
+    scheduler.shutdown();
+
+    assertEquals( 0, scheduler.getDroppedCount() );
+  }
+
+  /**
+   * Test that checking for staleness outside of a scheduler thread is safe.
+   */
+  @Test
+  public void test_Superseded_UnmanagedThread_False() {
+    assertFalse( isSuperseded() );
+    assertDoesNotThrow( RenderScheduler::checkSuperseded );
+  }
+
+  private static void await( final CountDownLatch latch ) {
+    try {
+      latch.await( 5, SECONDS );
+    } catch( final InterruptedException ex ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
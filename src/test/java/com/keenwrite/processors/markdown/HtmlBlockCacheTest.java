@@ -0,0 +1,102 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.Caret;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.misc.Extension;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that the {@link HtmlBlockCache} renders the same HTML as rendering
+ * the entire document, while only rendering the blocks that changed.
+ */
+public class HtmlBlockCacheTest {
+  private static final List<Extension> EXTENSIONS =
+    List.of( TablesExtension.create() );
+
+  private static final Parser PARSER =
+    Parser.builder().extensions( EXTENSIONS ).build();
+  private static final HtmlRenderer RENDERER =
+    HtmlRenderer.builder().extensions( EXTENSIONS ).build();
+
+  private static final String DOCUMENT = """
+    # Heading
+
+    Paragraph with a [link][ref].
+
+    - item one
+    - item two
+
+    | a | b |
+    |---|---|
+    | 1 | 2 |
+    """;
+
+  private static final String REFERENCE = "\n[ref]: https://keenwrite.com\n";
+
+  /**
+   * Test that rendering an unchanged document takes every block from the
+   * cache.
+   */
+  @Test
+  public void test_Render_SameDocument_AllHits() {
+    final var cache = createCache();
+    final var document = parse( DOCUMENT );
+    final var expected = RENDERER.render( document );
+
+    assertEquals( expected, cache.render( document, 1 ) );
+    assertEquals( expected, cache.render( parse( DOCUMENT ), 1 ) );
+    assertEquals( 4, cache.getMissCount() );
+    assertEquals( 4, cache.getHitCount() );
+  }
+
+  /**
+   * Test that editing one block only renders that block.
+   */
+  @Test
+  public void test_Render_EditedBlock_SingleMiss() {
+    final var cache = createCache();
+    final var edited = DOCUMENT.replace( "item two", "item three" );
+
+    cache.render( parse( DOCUMENT ), 1 );
+    final var actual = cache.render( parse( edited ), 1 );
+
+    assertEquals( RENDERER.render( parse( edited ) ), actual );
+    assertEquals( 5, cache.getMissCount() );
+    assertEquals( 3, cache.getHitCount() );
+  }
+
+  /**
+   * Test that changing the version renders every block again, and that
+   * documents with link reference definitions are rendered in full.
+   */
+  @Test
+  public void test_Render_VersionChanged_AllMisses() {
+    final var cache = createCache();
+    final var referenced = DOCUMENT + REFERENCE;
+
+    cache.render( parse( DOCUMENT ), 1 );
+    cache.render( parse( DOCUMENT ), 2 );
+    assertEquals( 8, cache.getMissCount() );
+
+    final var actual = cache.render( parse( referenced ), 2 );
+
+    assertEquals( RENDERER.render( parse( referenced ) ), actual );
+    assertEquals( 0, cache.getHitCount() );
+  }
+
+  private static HtmlBlockCache createCache() {
+    return new HtmlBlockCache( RENDERER, Caret.builder().build() );
+  }
+
+  private static Document parse( final String text ) {
+    return PARSER.parse( text );
+  }
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 
 import static com.keenwrite.constants.Constants.DOCUMENT_DEFAULT;
 import static com.keenwrite.ExportFormat.NONE;
+import static com.keenwrite.processors.markdown.MarkdownConfiguration.KEY_CONTEXT;
 import static java.lang.String.format;
 import static javafx.application.Platform.runLater;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -116,7 +117,7 @@ public class ImageLinkExtensionTest {
       resource.getRoot().resolve( subpath ).toString(),
       DOCUMENT_DEFAULT.getName() );
     final var context = createProcessorContext( documentPath );
-    final var extension = ImageLinkExtension.create( context );
+    final var extension = ImageLinkExtension.create();
     final var extensions = List.of( extension );
     final var pBuilder = Parser.builder();
     final var hBuilder = HtmlRenderer.builder();
@@ -129,6 +130,7 @@ public class ImageLinkExtensionTest {
     for( final var entry : IMAGES.entrySet() ) {
       final var key = entry.getKey();
       final var node = parser.parse( key );
+      node.set( KEY_CONTEXT, context );
       final var expectedHtml = entry.getValue();
       final var actualHtml = new StringBuilder( 128 );
 
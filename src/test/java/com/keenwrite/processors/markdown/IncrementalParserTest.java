@@ -0,0 +1,171 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.vladsch.flexmark.ext.definition.DefinitionExtension;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.misc.Extension;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.keenwrite.processors.markdown.IncrementalParser.getEndOffset;
+import static com.keenwrite.processors.markdown.IncrementalParser.getStartOffset;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link IncrementalParser} produces the same document as
+ * parsing the entire text.
+ */
+public class IncrementalParserTest {
+  private static final List<Extension> EXTENSIONS = List.of(
+    DefinitionExtension.create(), TablesExtension.create()
+  );
+
+  private static final Parser PARSER =
+    Parser.builder().extensions( EXTENSIONS ).build();
+  private static final HtmlRenderer RENDERER =
+    HtmlRenderer.builder().extensions( EXTENSIONS ).build();
+
+  private static final String DOCUMENT = """
+    # Heading
+
+    First paragraph with *emphasis* and `code`.
+    Second line of the first paragraph.
+
+    ## Subheading
+
+    - item one
+    - item two
+
+    > Quoted text.
+
+    | a | b |
+    |---|---|
+    | 1 | 2 |
+
+    Last paragraph.
+    """;
+
+  /**
+   * Fragments inserted at random offsets, chosen to split, merge, and
+   * change the types of blocks.
+   */
+  private static final String[] FRAGMENTS = {
+    "x", " ", "\n", "\n\n", "# ", "- ", "> ", "```\n", "    ", "---\n",
+    "1. ", "*", "|", "\n: definition\n", "text\n"
+  };
+
+  /**
+   * Test that editing a single paragraph only parses the affected blocks.
+   */
+  @Test
+  public void test_Parse_SingleEdit_BlocksParsed() {
+    final var parser = createParser();
+    final var offset = DOCUMENT.indexOf( "emphasis" );
+    final var edited =
+      DOCUMENT.substring( 0, offset ) + "strong " + DOCUMENT.substring( offset );
+
+    parser.parse( DOCUMENT );
+    parser.edited( offset, 0, "strong ".length() );
+    final var document = parser.parse( edited );
+
+    assertEquals( 1, parser.getFullParseCount() );
+    assertEquals( 1, parser.getBlockParseCount() );
+    assertEquals( render( PARSER.parse( edited ) ), render( document ) );
+  }
+
+  /**
+   * Test that a long sequence of random edits yields the same HTML and
+   * block offsets as parsing the entire document after every edit.
+   */
+  @Test
+  public void test_Parse_RandomEdits_MatchesFullParse() {
+    final var random = new Random( 42 );
+    final var parser = createParser();
+    var text = DOCUMENT;
+
+    parser.parse( text );
+
+    for( int i = 0; i < 500; i++ ) {
+      final var position = random.nextInt( text.length() + 1 );
+      final var removed = random.nextInt( 4 ) == 0
+        ? random.nextInt( Math.min( 8, text.length() - position ) + 1 )
+        : 0;
+      final var inserted = removed > 0 && random.nextBoolean()
+        ? ""
+        : FRAGMENTS[ random.nextInt( FRAGMENTS.length ) ];
+
+      text = text.substring( 0, position ) + inserted +
+        text.substring( position + removed );
+      parser.edited( position, removed, inserted.length() );
+
+      final var expected = PARSER.parse( text );
+      final var actual = parser.parse( text );
+
+      assertEquals( render( expected ), render( actual ), text );
+      assertEquals( offsets( expected ), offsets( actual ), text );
+    }
+
+    assertTrue( parser.getBlockParseCount() > parser.getFullParseCount() );
+  }
+
+  /**
+   * Test that an edit that was not reported causes a full parse.
+   */
+  @Test
+  public void test_Parse_UnreportedEdit_FullParse() {
+    final var parser = createParser();
+    final var edited = DOCUMENT + "Appended paragraph.\n";
+
+    parser.parse( DOCUMENT );
+    final var document = parser.parse( edited );
+
+    assertEquals( 2, parser.getFullParseCount() );
+    assertEquals( render( PARSER.parse( edited ) ), render( document ) );
+  }
+
+  /**
+   * Test that an edit reported after the text was read, which does not
+   * change the text's length, is not lost.
+   */
+  @Test
+  public void test_Parse_EditReportedEarly_MatchesFullParse() {
+    final var parser = createParser();
+    final var offset = DOCUMENT.indexOf( "Last" );
+    final var edited =
+      DOCUMENT.substring( 0, offset ) + "Best" +
+        DOCUMENT.substring( offset + 4 );
+
+    parser.parse( DOCUMENT );
+    parser.edited( offset, 4, 4 );
+
+    // The text was read before the edit was made.
+    assertEquals(
+      render( PARSER.parse( DOCUMENT ) ), render( parser.parse( DOCUMENT ) ) );
+    assertEquals(
+      render( PARSER.parse( edited ) ), render( parser.parse( edited ) ) );
+  }
+
+  private static IncrementalParser createParser() {
+    return new IncrementalParser( PARSER );
+  }
+
+  private static String render( final Node document ) {
+    return RENDERER.render( document );
+  }
+
+  private static List<String> offsets( final Node document ) {
+    final var offsets = new ArrayList<String>();
+
+    for( final var node : document.getChildren() ) {
+      offsets.add( getStartOffset( node ) + "-" + getEndOffset( node ) );
+    }
+
+    return offsets;
+  }
+}
@@ -0,0 +1,82 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.Caret;
+import com.keenwrite.ExportFormat;
+import com.keenwrite.preferences.Workspace;
+import com.keenwrite.processors.ProcessorContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.keenwrite.ExportFormat.NONE;
+import static com.keenwrite.ExportFormat.XHTML_TEX;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that documents share parsers and renderers without sharing the
+ * information that belongs to a single document.
+ */
+public class MarkdownConfigurationTest {
+  private static final Workspace sWorkspace = new Workspace(
+    Path.of( "does-not-exist", "workspace.xml" ).toString() );
+
+  /**
+   * Test that processors for different documents having the same export
+   * format reuse the same parser and renderer.
+   */
+  @Test
+  public void test_Acquire_SameFormat_Shared() {
+    final var a = create( "a.md", NONE, Map.of() );
+    final var b = create( "b.md", NONE, Map.of() );
+
+    assertSame( a.getParser(), b.getParser() );
+    assertSame( a.getRenderer(), b.getRenderer() );
+  }
+
+  /**
+   * Test that processors for different export formats do not share a
+   * renderer, because the TeX renderer depends on the format.
+   */
+  @Test
+  public void test_Acquire_DifferentFormat_NotShared() {
+    final var a = create( "a.md", NONE, Map.of() );
+    final var b = create( "a.md", XHTML_TEX, Map.of() );
+
+    assertNotSame( a.getRenderer(), b.getRenderer() );
+  }
+
+  /**
+   * Test that a shared renderer substitutes the variables belonging to the
+   * document being rendered.
+   */
+  @Test
+  public void test_Render_SharedRenderer_UsesDocumentDefinitions() {
+    final var a = create( "a.md", NONE, Map.of( "{{v}}", "alpha" ) );
+    final var b = create( "b.md", NONE, Map.of( "{{v}}", "omega" ) );
+    final var markdown = "Math: $x_{{v}}$";
+
+    assertTrue( a.apply( markdown ).contains( "x_alpha" ) );
+    assertTrue( b.apply( markdown ).contains( "x_omega" ) );
+    assertTrue( a.apply( markdown ).contains( "x_alpha" ) );
+  }
+
+  private static MarkdownProcessor create(
+    final String filename,
+    final ExportFormat format,
+    final Map<String, String> definitions ) {
+    final var document = Path.of( filename );
+
+    return MarkdownProcessor.create( new ProcessorContext(
+      null,
+      new HashMap<>( definitions ),
+      document,
+      format == NONE ? null : format.toExportFilename( document ).toPath(),
+      format,
+      sWorkspace,
+      Caret.builder().build()
+    ) );
+  }
+}
@@ -0,0 +1,85 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.markdown;
+
+import com.keenwrite.processors.DocumentSnapshot;
+import com.vladsch.flexmark.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static com.keenwrite.processors.IdentityProcessor.IDENTITY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link SnapshotFactory} gathers headings, runs of prose,
+ * and plain text from a parsed document.
+ */
+public class SnapshotFactoryTest {
+  private static final Parser PARSER = Parser.builder().build();
+
+  private static final String DOCUMENT = """
+    # Heading
+
+    First *emphasis*
+    second line.
+
+    Title
+    -----
+    """;
+
+  @Test
+  public void test_Create_Document_HeadingsFound() {
+    final var snapshot = createSnapshot( DOCUMENT );
+    final var headings = snapshot.getHeadings();
+
+    assertEquals( 2, headings.size() );
+    assertEquals( 1, headings.get( 0 ).getLevel() );
+    assertEquals( "Heading", headings.get( 0 ).getText() );
+    assertEquals( 2, headings.get( 1 ).getLevel() );
+    assertEquals( "Title", headings.get( 1 ).getText() );
+    assertEquals( DOCUMENT.indexOf( "Title" ), headings.get( 1 ).getOffset() );
+  }
+
+  @Test
+  public void test_Create_Document_SegmentOffsetsMatchText() {
+    final var snapshot = createSnapshot( DOCUMENT );
+
+    for( final var segment : snapshot.getSegments() ) {
+      assertEquals(
+        segment.getText(),
+        DOCUMENT.substring( segment.getBegan(), segment.getEnded() ) );
+    }
+  }
+
+  @Test
+  public void test_Create_Document_PlainTextSeparatesWords() {
+    final var text = createSnapshot( DOCUMENT ).getPlainText();
+
+    assertTrue( text.contains( "First emphasis\nsecond line." ) );
+    assertFalse( text.contains( "*" ) );
+    assertFalse( text.contains( "#" ) );
+  }
+
+  @Test
+  public void test_Create_IncrementalEdit_OffsetsShifted() {
+    final var parser = new IncrementalParser( PARSER );
+    final var prefix = "Intro.\n\n";
+    final var edited = prefix + DOCUMENT;
+    final var factory = new SnapshotFactory( Path.of( "test.md" ), IDENTITY );
+
+    parser.parse( DOCUMENT );
+    parser.edited( 0, 0, prefix.length() );
+    final var snapshot = factory.create( edited, parser.parse( edited ) );
+
+    for( final var segment : snapshot.getSegments() ) {
+      assertEquals(
+        segment.getText(),
+        edited.substring( segment.getBegan(), segment.getEnded() ) );
+    }
+  }
+
+  private static DocumentSnapshot createSnapshot( final String text ) {
+    final var factory = new SnapshotFactory( Path.of( "test.md" ), IDENTITY );
+    return factory.create( text, PARSER.parse( text ) );
+  }
+}
@@ -0,0 +1,98 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.metrics;
+
+import com.keenwrite.processors.ExecutorProcessor;
+import com.keenwrite.processors.Processor;
+import org.junit.jupiter.api.Test;
+
+import static com.keenwrite.processors.metrics.Histogram.toHighestValue;
+import static com.keenwrite.processors.metrics.Histogram.toIndex;
+import static com.keenwrite.processors.metrics.ProcessorMetrics.METRICS;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that percentiles are computed within the histogram's precision and
+ * that processor chains are measured per stage.
+ */
+public class HistogramTest {
+  /**
+   * Test that every bucket maps back to the values it counts.
+   */
+  @Test
+  public void test_Index_BucketBoundaries_RoundTrip() {
+    for( long value = 0; value < 1 << 20; value++ ) {
+      final var index = toIndex( value );
+
+      assertTrue( value <= toHighestValue( index ) );
+      assertTrue( index == 0 || value > toHighestValue( index - 1 ) );
+    }
+
+    assertEquals( Long.MAX_VALUE, toHighestValue( toIndex( Long.MAX_VALUE ) ) );
+  }
+
+  /**
+   * Test that percentiles of a uniform distribution are within three
+   * percent of the exact values.
+   */
+  @Test
+  public void test_Percentile_UniformValues_WithinPrecision() {
+    final var histogram = new Histogram();
+
+    for( long value = 1; value <= 100_000; value++ ) {
+      histogram.record( value * 1_000 );
+    }
+
+    for( final var percentile : new double[]{50, 95, 99} ) {
+      final var expected = percentile * 1_000_000;
+      final var actual = histogram.getValueAtPercentile( percentile );
+
+      assertEquals( expected, actual, expected * 0.03 );
+    }
+
+    assertEquals( 100_000, histogram.getCount() );
+    assertEquals( 100_000_000, histogram.getMax() );
+    assertEquals( 0, new Histogram().getValueAtPercentile( 50 ) );
+  }
+
+  /**
+   * Test that enabling the metrics records each link of a processor chain.
+   */
+  @Test
+  public void test_Apply_EnabledChain_StagesRecorded() throws Exception {
+    final var chain = new ExecutorProcessor<>( new Doubler( new Doubler() ) );
+
+    METRICS.reset();
+    METRICS.setEnabled( true );
+
+    try {
+      assertEquals( "aaaa", chain.apply( "a" ) );
+    } finally {
+      METRICS.setEnabled( false );
+    }
+
+    final var stages = METRICS.getStages();
+    assertEquals( 1, stages.size() );
+
+    final var stage = stages.iterator().next();
+    assertEquals( "Doubler", stage.getName() );
+    assertEquals( 2, stage.getWallTime().getCount() );
+    assertEquals( 4, stage.getOutputSize().getMax() );
+    assertTrue( METRICS.toJson().contains( "\"name\" : \"Doubler\"" ) );
+
+    METRICS.reset();
+  }
+
+  private static final class Doubler extends ExecutorProcessor<String> {
+    Doubler() {
+    }
+
+    Doubler( final Processor<String> successor ) {
+      super( successor );
+    }
+
+    @Override
+    public String apply( final String s ) {
+      return s + s;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import com.keenwrite.processors.text.ResolvedMap;
+import com.keenwrite.sigils.RSigilOperator;
+import com.keenwrite.sigils.SigilOperator;
+import com.keenwrite.sigils.Tokens;
+import com.keenwrite.sigils.YamlSigilOperator;
+import javafx.beans.property.SimpleStringProperty;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that the shared R form of the definitions follows changes to both
+ * the definitions and the delimiters.
+ */
+class RDefinitionsTest {
+  @Test
+  void test_Get_ChangedDefinitions_Merged() {
+    final var definitions = new ResolvedMap( Map.of( "{{a.b}}", "x" ) );
+    final var operator = createOperator( "{{", "}}" );
+
+    assertEquals( "'x'", RDefinitions.of( definitions )
+      .get( operator ).get( "v$a$b" ) );
+
+    definitions.update( Map.of( "{{a.b}}", "y" ) );
+
+    assertEquals( "'y'", RDefinitions.of( definitions )
+      .get( operator ).get( "v$a$b" ) );
+  }
+
+  @Test
+  void test_Get_ChangedDelimiters_Rebuilt() {
+    final var definitions = new ResolvedMap( Map.of( "{{a.b}}", "x" ) );
+    final var braces = createOperator( "{{", "}}" );
+    final var angles = createOperator( "<", ">" );
+
+    assertEquals( "'x'", RDefinitions.of( definitions )
+      .get( braces ).get( "v$a$b" ) );
+
+    final var changes = new HashMap<String, String>();
+    changes.put( "{{a.b}}", null );
+    changes.put( "<c>", "y" );
+    definitions.merge( changes );
+
+    final var map = RDefinitions.of( definitions ).get( angles );
+
+    assertEquals( Map.of( "v$c", "'y'" ), Map.copyOf( map ) );
+  }
+
+  private static SigilOperator createOperator(
+    final String began, final String ended ) {
+    return new RSigilOperator(
+      createTokens( "x(", ")" ),
+      new YamlSigilOperator( createTokens( began, ended ) ) );
+  }
+
+  private static Tokens createTokens( final String began, final String ended ) {
+    return new Tokens(
+      new SimpleStringProperty( began ), new SimpleStringProperty( ended ) );
+  }
+}
@@ -0,0 +1,130 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import org.junit.jupiter.api.Test;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.Reader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link REvalBudget} abandons evaluations that exceed their
+ * budget and returns the results of those that do not.
+ */
+class REvalBudgetTest {
+  @Test
+  void test_Eval_WithinBudget_Result() throws Exception {
+    final var budget = new REvalBudget( 5000, 5000 );
+
+    assertEquals( "fast", budget.eval( createSession(), "fast" ) );
+  }
+
+  @Test
+  void test_Eval_ElapsedExceeded_Abandoned() {
+    final var budget = new REvalBudget( 50, 0 );
+    final var ex = assertThrows(
+      REvalBudget.BudgetExceededException.class,
+      () -> budget.eval( createSession(), "sleep" ) );
+
+    assertTrue( ex.getElapsed() >= 50_000_000L );
+  }
+
+  @Test
+  void test_Eval_CpuExceeded_Abandoned() {
+    final var budget = new REvalBudget( 0, 50 );
+
+    assertThrows(
+      REvalBudget.BudgetExceededException.class,
+      () -> budget.eval( createSession(), "spin" ) );
+  }
+
+  @Test
+  void test_Eval_ReusedWorker_CpuMeasuredPerTask() throws Exception {
+    final var heavy = new REvalBudget( 0, 0 );
+    final var budget = new REvalBudget( 5000, 100 );
+
+    // Use more CPU than the budget allows, across several evaluations.
+    for( int i = 0; i < 5; i++ ) {
+      assertEquals( "burn", heavy.eval( createSession(), "burn" ) );
+    }
+
+    // Outlasts the first poll, so the CPU budget is checked.
+    assertEquals( "nap", budget.eval( createSession(), "nap" ) );
+  }
+
+  @Test
+  void test_Eval_Failure_ScriptException() {
+    final var budget = new REvalBudget( 5000, 5000 );
+
+    assertThrows(
+      ScriptException.class,
+      () -> budget.eval( createSession(), "fail" ) );
+  }
+
+  private static RSession createSession() {
+    return new RSession( new StubEngine(), 0 );
+  }
+
+  /**
+   * Evaluates a few named behaviours in place of R expressions. Slow
+   * behaviours stop when interrupted.
+   */
+  private static final class StubEngine extends AbstractScriptEngine {
+    @Override
+    public Object eval( final String script, final ScriptContext context )
+      throws ScriptException {
+      switch( script ) {
+        case "sleep" -> {
+          try {
+            Thread.sleep( 60_000 );
+          } catch( final InterruptedException ex ) {
+            return "interrupted";
+          }
+        }
+        case "nap" -> {
+          try {
+            Thread.sleep( 100 );
+          } catch( final InterruptedException ex ) {
+            return "interrupted";
+          }
+        }
+        case "spin" -> {
+          while( !Thread.currentThread().isInterrupted() ) {
+            Thread.onSpinWait();
+          }
+        }
+        case "burn" -> {
+          final var began = System.nanoTime();
+
+          while( System.nanoTime() - began < 60_000_000L ) {
+            Thread.onSpinWait();
+          }
+        }
+        case "fail" -> throw new ScriptException( "fail" );
+      }
+
+      return script;
+    }
+
+    @Override
+    public Object eval( final Reader reader, final ScriptContext context ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bindings createBindings() {
+      return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link REvalCache} persists results between instances and
+ * computes keys from everything that could change a result.
+ */
+class REvalCacheTest {
+  @TempDir
+  Path mDirectory;
+
+  @Test
+  void test_Get_NewInstance_ResultPersisted() {
+    final var path = mDirectory.resolve( "r.cache" );
+    final var cache = new REvalCache( path, 1 << 20 );
+    final var key = REvalCache.key( "1 + 1", "", 0, mDirectory );
+
+    cache.put( key, "2" );
+    cache.put( key, "two" );
+    cache.flush();
+
+    final var reopened = new REvalCache( path, 1 << 20 );
+
+    assertEquals( "two", reopened.get( key ) );
+    assertNull( reopened.get( REvalCache.key( "1 + 2", "", 0, mDirectory ) ) );
+  }
+
+  @Test
+  void test_Put_ExceedsBound_LeastRecentlyUsedEvicted() {
+    final var path = mDirectory.resolve( "r.cache" );
+    final var cache = new REvalCache( path, 1024 );
+    final var first = REvalCache.key( "first", "", 0, mDirectory );
+
+    cache.put( first, "x".repeat( 100 ) );
+
+    for( int i = 0; i < 20; i++ ) {
+      // Keep the first result recently used.
+      cache.get( first );
+      cache.put(
+        REvalCache.key( "r" + i, "", 0, mDirectory ), "y".repeat( 100 ) );
+    }
+
+    cache.flush();
+
+    final var reopened = new REvalCache( path, 1024 );
+
+    assertNotNull( reopened.get( first ) );
+    assertNull( reopened.get( REvalCache.key( "r0", "", 0, mDirectory ) ) );
+  }
+
+  @Test
+  void test_Key_Inputs_Distinct() throws Exception {
+    final var data = Files.writeString( mDirectory.resolve( "d.csv" ), "a" );
+    final var r = "csv('d.csv')";
+    final var key = REvalCache.key( r, "", 0, mDirectory );
+
+    assertEquals( key, REvalCache.key( r, "", 0, mDirectory ) );
+    assertNotEquals( key, REvalCache.key( r, "library(x)", 0, mDirectory ) );
+    assertNotEquals( key, REvalCache.key( r, "", 1, mDirectory ) );
+
+    Files.setLastModifiedTime( data, FileTime.fromMillis( 0 ) );
+
+    assertNotEquals( key, REvalCache.key( r, "", 0, mDirectory ) );
+  }
+}
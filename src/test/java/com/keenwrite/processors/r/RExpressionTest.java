@@ -0,0 +1,96 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.keenwrite.processors.r.RExpression.getNames;
+import static com.keenwrite.processors.r.RExpression.isPure;
+import static com.keenwrite.processors.r.RExpression.isVolatile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that {@link RExpression} distinguishes pure and stateful expressions,
+ * and that {@link RDependencies} finds expressions independent of them.
+ */
+class RExpressionTest {
+  @Test
+  void test_IsPure_Expressions_Pure() {
+    assertTrue( isPure( "1 + 1" ) );
+    assertTrue( isPure( "x(a = 1, b == 2)" ) );
+    assertTrue( isPure( "if( a <= 2 ) 'y' else 'n'" ) );
+    assertTrue( isPure( "paste( 'a = b' )" ) );
+  }
+
+  @Test
+  void test_IsPure_Assignments_Stateful() {
+    assertFalse( isPure( "x <- 1" ) );
+    assertFalse( isPure( "1 -> x" ) );
+    assertFalse( isPure( "x = 1" ) );
+    assertFalse( isPure( "x <<- 1" ) );
+    assertFalse( isPure( "library( stats )" ) );
+    assertFalse( isPure( "set.seed( 42 )" ) );
+  }
+
+  @Test
+  void test_IsVolatile_ChangingResults_Volatile() {
+    assertTrue( isVolatile( "format( Sys.Date(), '%Y' )" ) );
+    assertTrue( isVolatile( "Sys.time()" ) );
+    assertTrue( isVolatile( "date()" ) );
+    assertTrue( isVolatile( "runif( 1 )" ) );
+    assertTrue( isVolatile( "rnorm(5)" ) );
+    assertTrue( isVolatile( "sample( 1:10, 3 )" ) );
+    assertTrue( isVolatile( "file.info( 'a.csv' )$size" ) );
+    assertTrue( isVolatile( "nrow( read.csv( path ) )" ) );
+    assertTrue( isVolatile( "length( readLines( f ) )" ) );
+    assertFalse( isPure( "Sys.time()" ) );
+  }
+
+  @Test
+  void test_IsVolatile_StableResults_NotVolatile() {
+    assertFalse( isVolatile( "sqrt( 2 )" ) );
+    assertFalse( isVolatile( "update( model )" ) );
+    assertFalse( isVolatile( "nrow( read.csv( 'data.csv' ) )" ) );
+    assertFalse( isVolatile( "nrow( read.csv( file = \"data.csv\" ) )" ) );
+    assertTrue( isPure( "nrow( read.csv( 'data.csv' ) )" ) );
+  }
+
+  @Test
+  void test_GetNames_Expression_NamesWithoutLiterals() {
+    assertEquals( Set.of( "paste", "x.y", "z_1", "a b" ),
+                  getNames( "paste( 'q', x.y, \"r\", z_1, `a b`, 2 )" ) );
+  }
+
+  @Test
+  void test_IsIndependent_Expressions_IndependentOfAssignments() {
+    final var dependencies = RDependencies.of(
+      List.of( "x <- 5", "y", "mean( z )" ) );
+
+    assertFalse( dependencies.isIndependent( "x * 2" ) );
+    assertFalse( dependencies.isIndependent( "x <- 6" ) );
+    assertTrue( dependencies.isIndependent( "y + mean( z )" ) );
+  }
+
+  @Test
+  void test_IsIndependent_BootstrapFunction_DependentWhenStateful() {
+    final var stateful = RDependencies.of( List.of( "x <- 5", "g()" ) );
+    final var stateless = RDependencies.of( List.of( "g()" ) );
+
+    assertFalse( stateful.isIndependent( "g()" ) );
+    assertTrue( stateful.isIndependent( "round( mean( c( 1, 2 ) ) )" ) );
+    assertTrue( stateless.isIndependent( "g()" ) );
+  }
+
+  @Test
+  void test_IsIndependent_OpaqueExpression_AllDependent() {
+    final var dependencies = RDependencies.of(
+      List.of( "library( stats )", "y" ) );
+
+    assertFalse( dependencies.isIndependent( "y" ) );
+    assertFalse( RDependencies.UNKNOWN.isIndependent( "1 + 1" ) );
+  }
+}
@@ -0,0 +1,101 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.r;
+
+import org.junit.jupiter.api.Test;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.SimpleBindings;
+import java.io.Reader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link RSessionPool} reveals when a document's session was
+ * leased to, and changed by, another document in the meantime.
+ */
+class RSessionPoolTest {
+  @Test
+  void test_Lease_SameOwner_SessionUnchanged() throws Exception {
+    final var pool = createPool();
+    final var owner = new Object();
+
+    final var first = pool.lease( owner, 1 );
+    final var leases = first.getLeases();
+    first.setStateful();
+    pool.release( first );
+
+    final var second = pool.lease( owner, 1 );
+
+    assertSame( first, second );
+    assertEquals( leases + 1, second.getLeases() );
+    assertFalse( second.hasForeignState() );
+  }
+
+  @Test
+  void test_Lease_TwoOwnersOneSession_ChangesDetected() throws Exception {
+    final var pool = createPool();
+    final var a = new Object();
+    final var c = new Object();
+
+    final var first = pool.lease( a, 1 );
+    final var leases = first.getLeases();
+    first.setStateful();
+    pool.release( first );
+
+    // The only session is handed to another document, which changes it.
+    final var borrowed = pool.lease( c, 1 );
+    assertSame( first, borrowed );
+    assertTrue( borrowed.hasForeignState() );
+    borrowed.setStateful();
+    pool.release( borrowed );
+
+    final var returned = pool.lease( a, 1 );
+
+    assertSame( first, returned );
+    assertNotEquals( leases + 1, returned.getLeases() );
+    assertTrue( returned.hasForeignState() );
+  }
+
+  @Test
+  void test_TryLease_AllLeased_Null() throws Exception {
+    final var pool = createPool();
+    final var session = pool.lease( new Object(), 1 );
+
+    assertNotNull( session );
+    assertNull( pool.tryLease( new Object(), 1 ) );
+
+    pool.release( session );
+  }
+
+  private static RSessionPool createPool() {
+    return new RSessionPool( StubEngine::new );
+  }
+
+  /**
+   * Returns every script unevaluated.
+   */
+  private static final class StubEngine extends AbstractScriptEngine {
+    @Override
+    public Object eval( final String script, final ScriptContext context ) {
+      return script;
+    }
+
+    @Override
+    public Object eval( final Reader reader, final ScriptContext context ) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bindings createBindings() {
+      return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+      return null;
+    }
+  }
+}
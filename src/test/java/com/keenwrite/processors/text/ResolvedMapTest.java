@@ -0,0 +1,107 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.text;
+
+import com.keenwrite.sigils.Tokens;
+import javafx.beans.property.SimpleStringProperty;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.keenwrite.processors.text.TextReplacementFactory.replace;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link ResolvedMap} is versioned and that its compiled
+ * automaton replaces definitions.
+ */
+class ResolvedMapTest {
+  private static final Map<String, String> DEFINITIONS = Map.of(
+    "$name$", "Alex", "$city$", "Tokyo"
+  );
+
+  @Test
+  void test_Update_SameDefinitions_VersionRetained() {
+    final var map = new ResolvedMap( DEFINITIONS );
+    final var snapshot = map.snapshot();
+
+    map.update( Map.copyOf( DEFINITIONS ) );
+
+    assertSame( snapshot, map.snapshot() );
+    assertSame( snapshot.getTrie(), map.snapshot().getTrie() );
+  }
+
+  @Test
+  void test_Update_ChangedDefinitions_VersionIncremented() {
+    final var map = new ResolvedMap( DEFINITIONS );
+    final var version = map.getVersion();
+
+    map.update( Map.of( "$name$", "Sam" ) );
+
+    assertEquals( version + 1, map.getVersion() );
+    assertEquals( "Sam", map.get( "$name$" ) );
+    assertFalse( map.containsKey( "$city$" ) );
+  }
+
+  @Test
+  void test_Replace_ResolvedMap_MatchesPlainMap() {
+    final var map = new ResolvedMap( DEFINITIONS );
+    final var replacer = new AhoCorasickReplacer();
+    final var text = "$name$ lives in $city$; $unknown$ is kept.";
+
+    assertEquals(
+      replacer.replace( text, DEFINITIONS ), replacer.replace( text, map ) );
+    assertEquals(
+      "Alex lives in Tokyo; $unknown$ is kept.", replacer.replace( text, map ) );
+  }
+
+  @Test
+  void test_Put_ResolvedMap_Unsupported() {
+    final var map = new ResolvedMap( DEFINITIONS );
+
+    assertThrows(
+      UnsupportedOperationException.class, () -> map.put( "$a$", "b" ) );
+  }
+
+  @Test
+  void test_Merge_ChangedValue_ChangesPublished() {
+    final var tokens = new Tokens(
+      new SimpleStringProperty( "$" ), new SimpleStringProperty( "$" ) );
+    final var map = new ResolvedMap( DEFINITIONS, tokens );
+    final var version = map.getVersion();
+    final var replacer = map.snapshot().getSigilReplacer();
+
+    map.merge( Map.of( "$name$", "Sam" ), tokens );
+
+    final var snapshot = map.snapshot();
+
+    assertEquals( Map.of( "$name$", "Sam" ), snapshot.getChanges( version ) );
+    assertNull( snapshot.getChanges( version - 1 ) );
+    assertEquals( "Alex", replacer.replace( "$name$" ) );
+    assertEquals( "Sam in Tokyo",
+                  snapshot.getSigilReplacer().replace( "$name$ in $city$" ) );
+  }
+
+  @Test
+  void test_Merge_UnknownSigils_TrieReplacesKeys() {
+    final var map = new ResolvedMap( Map.of( "v$name", "'Alex'" ) );
+    final var removed = new HashMap<String, String>();
+    removed.put( "v$name", null );
+
+    map.merge( Map.of( "v$city", "'Tokyo'" ) );
+    assertEquals( "'Alex' in 'Tokyo'", replace( "v$name in v$city", map ) );
+
+    map.merge( removed );
+    assertFalse( map.containsKey( "v$name" ) );
+    assertEquals( "v$name in 'Tokyo'", replace( "v$name in v$city", map ) );
+  }
+
+  @Test
+  void test_GetDerived_SameType_SharedInstance() {
+    final var map = new ResolvedMap( DEFINITIONS );
+    final var type = StringBuilder.class;
+    final var derived = map.getDerived( type, m -> new StringBuilder() );
+
+    assertSame( derived, map.getDerived( type, m -> new StringBuilder() ) );
+  }
+}
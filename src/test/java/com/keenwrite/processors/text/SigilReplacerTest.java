@@ -0,0 +1,67 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.processors.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the {@link SigilReplacer} replaces the same text as the
+ * replacers that search for every key.
+ */
+class SigilReplacerTest {
+  private static final Map<String, String> DEFINITIONS = Map.of(
+    "$name$", "Alex", "$city$", "Tokyo", "$a.b$", "$name$"
+  );
+
+  @Test
+  void test_Replace_Keys_Replaced() {
+    final var replacer = new SigilReplacer( DEFINITIONS, "$", "$" );
+
+    assertEquals(
+      "Alex lives in Tokyo.", replacer.replace( "$name$ lives in $city$." ) );
+  }
+
+  @Test
+  void test_Replace_UnknownAndStraySigils_Retained() {
+    final var replacer = new SigilReplacer( DEFINITIONS, "$", "$" );
+
+    assertEquals( "$5 and Alex", replacer.replace( "$5 and $name$" ) );
+    assertEquals( "$Alex$", replacer.replace( "$$name$$" ) );
+    assertEquals( "$unknown$ $", replacer.replace( "$unknown$ $" ) );
+  }
+
+  @Test
+  void test_Replace_ValuesContainingSigils_NotReplacedAgain() {
+    final var replacer = new SigilReplacer( DEFINITIONS, "$", "$" );
+
+    assertEquals( "$name$!", replacer.replace( "$a.b$!" ) );
+  }
+
+  @Test
+  void test_Replace_NoKeys_SameInstance() {
+    final var replacer = new SigilReplacer( DEFINITIONS, "$", "$" );
+    final var text = "No variables $here$.";
+
+    assertSame( text, replacer.replace( text ) );
+  }
+
+  @Test
+  void test_Replace_DistinctSigils_MatchesAhoCorasick() {
+    final var map = new HashMap<String, String>();
+
+    for( int i = 0; i < 1000; i++ ) {
+      map.put( "{{key" + i + "}}", "value" + i );
+    }
+
+    final var replacer = new SigilReplacer( map, "{{", "}}" );
+    final var text = "{{key1}} {{key999}} {{key}} {{ {{key42}}}}";
+
+    assertEquals(
+      new AhoCorasickReplacer().replace( text, map ),
+      replacer.replace( text ) );
+  }
+}
@@ -0,0 +1,83 @@
+/* Copyright 2020-2021 White Magic Software, Ltd. -- All rights reserved. */
+package com.keenwrite.search;
+
+import com.keenwrite.sigils.Tokens;
+import javafx.beans.property.SimpleStringProperty;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static com.keenwrite.search.VariableUsageIndex.createBlockFilter;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the {@link VariableUsageIndex} records references by document
+ * and by line.
+ */
+class VariableUsageIndexTest {
+  private static final Path CHAPTER_1 = Path.of( "chapter-1.md" );
+  private static final Path CHAPTER_2 = Path.of( "chapter-2.md" );
+
+  @Test
+  void test_GetUsages_References_LinesFound() {
+    final var index = createIndex();
+
+    index.update( CHAPTER_1, "$a.b$ and\n$a.c$ then $a.b$\n$a.b$" );
+    index.update( CHAPTER_2, "costs $5 and $10, not $a.c$" );
+
+    final var usages = index.getUsages( "$a.b$" );
+
+    assertEquals( 3, usages.size() );
+    assertEquals(
+      List.of( 1, 2, 3 ),
+      usages.stream()
+            .map( VariableUsageIndex.Usage::getLine )
+            .collect( toList() ) );
+    assertEquals( 2, index.getUsages( "$a.c$" ).size() );
+    assertTrue( index.getUsages( "$5 and $" ).isEmpty() );
+  }
+
+  @Test
+  void test_References_Update_ReplacesPrevious() {
+    final var index = createIndex();
+
+    index.update( CHAPTER_1, "$a.b$" );
+    assertTrue( index.references( CHAPTER_1, Set.of( "$a.b$" ) ) );
+
+    index.update( CHAPTER_1, "$a.c$" );
+    assertFalse( index.references( CHAPTER_1, Set.of( "$a.b$" ) ) );
+    assertTrue( index.getUsages( "$a.b$" ).isEmpty() );
+
+    // Documents that have not been indexed could refer to anything.
+    assertTrue( index.references( CHAPTER_2, Set.of( "$a.b$" ) ) );
+  }
+
+  @Test
+  void test_References_AdjacentSigils_BothFound() {
+    final var index = createIndex();
+
+    index.update( CHAPTER_1, "$a$b$" );
+
+    assertTrue( index.references( CHAPTER_1, Set.of( "$a$" ) ) );
+    assertTrue( index.references( CHAPTER_1, Set.of( "$b$" ) ) );
+  }
+
+  @Test
+  void test_CreateBlockFilter_KeyForms_Accepted() {
+    final var filter = createBlockFilter( Set.of( "$novel.title$" ) );
+
+    assertTrue( filter.test( "The $novel.title$ begins." ) );
+    assertTrue( filter.test( "`r# x <- v$novel$title`" ) );
+    assertFalse( filter.test( "The $novel.author$ writes." ) );
+  }
+
+  private static VariableUsageIndex createIndex() {
+    return new VariableUsageIndex( () -> new Tokens(
+      new SimpleStringProperty( "$" ), new SimpleStringProperty( "$" ) ) );
+  }
+}